@@ -0,0 +1,49 @@
+package com.ercoles.configserver.benchmarks;
+
+import com.ercoles.configserver.repositories.ConfigCache;
+import com.ercoles.configserver.repositories.ConfigCacheException;
+import com.ercoles.configserver.repositories.ConfigCacheCompact;
+import com.ercoles.configserver.repositories.ConfigCacheMemory;
+import com.ercoles.configserver.repositories.ConfigCacheOffHeap;
+import com.ercoles.configserver.repositories.MeteredConfigCache;
+import io.micrometer.prometheus.PrometheusConfig;
+import io.micrometer.prometheus.PrometheusMeterRegistry;
+
+final class BenchmarkCaches {
+    private BenchmarkCaches() {
+    }
+
+    static ConfigCache create(String implementation) {
+        switch (implementation) {
+            case "memory":
+                return new ConfigCacheMemory();
+            case "compact":
+                return new ConfigCacheCompact();
+            case "offheap":
+                return new ConfigCacheOffHeap();
+            // the memory store behind the metrics decorator, recording into the registry the server exposes
+            case "metered":
+                return new MeteredConfigCache(new ConfigCacheMemory(), new PrometheusMeterRegistry(PrometheusConfig.DEFAULT));
+            default:
+                throw new IllegalArgumentException("Unknown ConfigCache implementation " + implementation + ".");
+        }
+    }
+
+    static void populate(ConfigCache configCache, int size) throws ConfigCacheException {
+        for (int i = 0; i < size; i++) {
+            configCache.create(id(i), name(i), value(i));
+        }
+    }
+
+    static String id(int index) {
+        return "config-" + index;
+    }
+
+    static String name(int index) {
+        return "Benchmark Configuration " + index;
+    }
+
+    static String value(int index) {
+        return "value-" + index;
+    }
+}
@@ -0,0 +1,53 @@
+package com.ercoles.configserver.benchmarks;
+
+import org.openjdk.jmh.runner.BenchmarkList;
+import org.openjdk.jmh.runner.BenchmarkListEntry;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.format.OutputFormatFactory;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.VerboseMode;
+
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+public final class BenchmarkRunner {
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16, 32, 64};
+
+    private BenchmarkRunner() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        if (commandLineOptions.getThreads().hasValue()) {
+            new Runner(commandLineOptions).run();
+            return;
+        }
+        // sweep the thread counts unless a single one was requested with -t;
+        // benchmarks that pin their own count with @Threads run once, with that count
+        Set<String> swept = new TreeSet<>();
+        Set<String> pinned = new TreeSet<>();
+        for (BenchmarkListEntry benchmark : BenchmarkList.defaultList().find(
+                OutputFormatFactory.createFormatInstance(System.out, VerboseMode.SILENT),
+                commandLineOptions.getIncludes(), commandLineOptions.getExcludes())) {
+            (benchmark.getThreads().hasValue() ? pinned : swept).add(benchmark.getUsername());
+        }
+        if (!swept.isEmpty()) {
+            for (int threads : THREAD_COUNTS) {
+                new Runner(excluding(pinned, new OptionsBuilder().parent(commandLineOptions).threads(threads)).build()).run();
+            }
+        }
+        if (!pinned.isEmpty()) {
+            new Runner(excluding(swept, new OptionsBuilder().parent(commandLineOptions)).build()).run();
+        }
+    }
+
+    private static ChainedOptionsBuilder excluding(Set<String> benchmarks, ChainedOptionsBuilder options) {
+        for (String benchmark : benchmarks) {
+            options.exclude("^" + Pattern.quote(benchmark) + "$");
+        }
+        return options;
+    }
+}
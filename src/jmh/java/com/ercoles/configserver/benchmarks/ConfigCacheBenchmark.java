@@ -0,0 +1,139 @@
+package com.ercoles.configserver.benchmarks;
+
+import com.ercoles.configserver.dtos.ConfigurationResponseDto;
+import com.ercoles.configserver.repositories.ConfigCache;
+import com.ercoles.configserver.repositories.ConfigCacheException;
+import com.ercoles.configserver.repositories.ConfigCacheResult;
+import com.ercoles.configserver.repositories.ConfigOperation;
+import com.ercoles.configserver.repositories.ConfigPage;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class ConfigCacheBenchmark {
+    private static final int BATCH_SIZE = 100;
+    private static final int PAGE_SIZE = 200;
+
+    @State(Scope.Benchmark)
+    public static class Store {
+        @Param({"memory"})
+        String implementation;
+
+        @Param({"1000", "100000", "1000000"})
+        int size;
+
+        ConfigCache configCache;
+
+        final AtomicInteger writers = new AtomicInteger();
+
+        @Setup(Level.Trial)
+        public void setUp() throws ConfigCacheException {
+            configCache = BenchmarkCaches.create(implementation);
+            BenchmarkCaches.populate(configCache, size);
+        }
+
+        int randomIndex() {
+            return ThreadLocalRandom.current().nextInt(size);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Writer {
+        final List<String> created = new ArrayList<>();
+        ConfigCache configCache;
+        String prefix;
+        int sequence;
+
+        @Setup(Level.Trial)
+        public void setUp(Store store) {
+            configCache = store.configCache;
+            prefix = "writer-" + store.writers.incrementAndGet() + "-";
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() throws ConfigCacheException {
+            // keep the store at its configured size between iterations of the create benchmark
+            for (String id : created) {
+                configCache.delete(id);
+            }
+            created.clear();
+        }
+
+        String nextId() {
+            return prefix + sequence++;
+        }
+    }
+
+    @Benchmark
+    public ConfigCacheResult get(Store store) throws ConfigCacheException {
+        return store.configCache.get(BenchmarkCaches.id(store.randomIndex()));
+    }
+
+    @Benchmark
+    public ConfigCacheResult getMissing(Store store) throws ConfigCacheException {
+        return store.configCache.get("missing-" + store.randomIndex());
+    }
+
+    @Benchmark
+    public ConfigCacheResult create(Store store, Writer writer) throws ConfigCacheException {
+        String id = writer.nextId();
+        writer.created.add(id);
+        return store.configCache.create(id, "Benchmark Configuration", "value");
+    }
+
+    @Benchmark
+    public ConfigCacheResult update(Store store) throws ConfigCacheException {
+        int index = store.randomIndex();
+        return store.configCache.update(BenchmarkCaches.id(index), BenchmarkCaches.name(index), "updated-" + index);
+    }
+
+    // scores are per operation, so they compare directly with update
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public List<ConfigCacheResult> updateBatch(Store store) throws ConfigCacheException {
+        List<ConfigOperation> operations = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            int index = store.randomIndex();
+            operations.add(ConfigOperation.update(BenchmarkCaches.id(index), BenchmarkCaches.name(index), "updated-" + index));
+        }
+        return store.configCache.apply(operations, false);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public List<ConfigCacheResult> updateBatchAtomic(Store store) throws ConfigCacheException {
+        List<ConfigOperation> operations = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            int index = store.randomIndex();
+            operations.add(ConfigOperation.update(BenchmarkCaches.id(index), BenchmarkCaches.name(index), "updated-" + index));
+        }
+        return store.configCache.apply(operations, true);
+    }
+
+    @Benchmark
+    public ConfigCacheResult createThenDelete(Store store, Writer writer) throws ConfigCacheException {
+        String id = writer.nextId();
+        store.configCache.create(id, "Benchmark Configuration", "value");
+        return store.configCache.delete(id);
+    }
+
+    @Benchmark
+    public List<ConfigurationResponseDto> getAll(Store store) throws ConfigCacheException {
+        return store.configCache.getAll();
+    }
+
+    // a page of a namespace, next to getAll for the whole store
+    @Benchmark
+    public ConfigPage getRange(Store store) throws ConfigCacheException {
+        return store.configCache.getRange(BenchmarkCaches.id(store.randomIndex()), null, PAGE_SIZE);
+    }
+}
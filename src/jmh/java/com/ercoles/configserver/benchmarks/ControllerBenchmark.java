@@ -0,0 +1,66 @@
+package com.ercoles.configserver.benchmarks;
+
+import com.ercoles.configserver.controllers.Controller;
+import com.ercoles.configserver.controllers.InvalidParametersException;
+import com.ercoles.configserver.controllers.ProcessingException;
+import com.ercoles.configserver.controllers.ResponseCompressor;
+import com.ercoles.configserver.repositories.ConfigCacheException;
+import com.ercoles.configserver.repositories.ConfigCacheFactory;
+import com.ercoles.configserver.services.ConfigService;
+import com.ercoles.configserver.services.ConfigSyncService;
+import com.ercoles.configserver.services.ConfigWatchService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.ResponseEntity;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class ControllerBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    int size;
+
+    Controller controller;
+
+    @Setup(Level.Trial)
+    public void setUp() throws ConfigCacheException {
+        ConfigCacheFactory factory = new ConfigCacheFactory();
+        BenchmarkCaches.populate(factory.getConfigCache(), size);
+        controller = new Controller(new ConfigService(factory), new ConfigWatchService(factory, 0, 60_000),
+                new ConfigSyncService(factory, 10_000), new ResponseCompressor());
+    }
+
+    @Benchmark
+    public ResponseEntity<?> getConfiguration() throws ProcessingException {
+        return controller.getConfiguration(BenchmarkCaches.id(ThreadLocalRandom.current().nextInt(size)), null, null);
+    }
+
+    @Benchmark
+    public ResponseEntity<?> getMissingConfiguration() throws ProcessingException {
+        return controller.getConfiguration("missing-" + ThreadLocalRandom.current().nextInt(size), null, null);
+    }
+
+    @Benchmark
+    public ResponseEntity<byte[]> getAll() throws InvalidParametersException, ProcessingException {
+        return controller.getAll(null, null, null, null);
+    }
+
+    // the listing gzipped once, every later call finds it compressed; compare with gzipSnapshot of SerializationBenchmark
+    @Benchmark
+    public ResponseEntity<byte[]> getAllCompressed() throws InvalidParametersException, ProcessingException {
+        return controller.getAll(null, null, null, "gzip");
+    }
+
+    // the whole listing written as NDJSON, one page of entries held at a time
+    @Benchmark
+    public void streamAll() throws IOException, ProcessingException {
+        controller.streamAll().getBody().writeTo(OutputStream.nullOutputStream());
+    }
+}
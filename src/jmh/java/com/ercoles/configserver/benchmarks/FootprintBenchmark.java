@@ -0,0 +1,73 @@
+package com.ercoles.configserver.benchmarks;
+
+import com.ercoles.configserver.dtos.ConfigurationResponseDto;
+import com.ercoles.configserver.repositories.ConfigCache;
+import com.ercoles.configserver.repositories.ConfigCacheException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// heap held per entry by each in-memory representation, and what listing costs with it
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms3g", "-Xmx3g"})
+@Threads(1)
+@State(Scope.Benchmark)
+public class FootprintBenchmark {
+    @Param({"memory", "compact"})
+    String implementation;
+
+    @Param({"1000000"})
+    int size;
+
+    ConfigCache configCache;
+    long heapBytesPerEntry;
+    int changed;
+
+    @Setup(Level.Trial)
+    public void setUp() throws ConfigCacheException {
+        long before = usedHeap();
+        configCache = BenchmarkCaches.create(implementation);
+        BenchmarkCaches.populate(configCache, size);
+        // the memory representation encodes JSON on first use: count it as a served store holds it
+        configCache.getAll().toJson();
+        heapBytesPerEntry = (usedHeap() - before) / size;
+    }
+
+    @Benchmark
+    public List<ConfigurationResponseDto> getAll(Footprint footprint) throws ConfigCacheException {
+        return configCache.getAll();
+    }
+
+    // every listing follows a change, so a listing cached by the store can't be reused
+    @Benchmark
+    public byte[] getAllAfterUpdate(Footprint footprint) throws ConfigCacheException {
+        int index = changed++ % size;
+        configCache.update(BenchmarkCaches.id(index), BenchmarkCaches.name(index), BenchmarkCaches.value(index));
+        return configCache.getAll().toJson();
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Footprint {
+        public long heapBytesPerEntry;
+
+        // JMH clears the counters before each iteration and adds those of the measurement iterations up: divide by
+        // their number
+        @TearDown(Level.Iteration)
+        public void tearDown(FootprintBenchmark benchmark) {
+            heapBytesPerEntry = benchmark.heapBytesPerEntry;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.ercoles.configserver.benchmarks;
+
+import com.ercoles.configserver.repositories.ConfigCache;
+import com.ercoles.configserver.repositories.ConfigCacheException;
+import com.ercoles.configserver.repositories.ConfigCacheResult;
+import org.openjdk.jmh.annotations.*;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// heap held by a store of large values, and GC pauses taken while it serves reads and updates
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(value = 1, jvmArgsAppend = {"-Xms3g", "-Xmx3g", "-XX:MaxDirectMemorySize=2g"})
+@Threads(1)
+@State(Scope.Benchmark)
+public class HeapBenchmark {
+    @Param({"memory", "offheap"})
+    String implementation;
+
+    @Param({"1000000"})
+    int size;
+
+    @Param({"1024"})
+    int valueSize;
+
+    ConfigCache configCache;
+    String padding;
+
+    @Setup(Level.Trial)
+    public void setUp() throws ConfigCacheException {
+        configCache = BenchmarkCaches.create(implementation);
+        padding = "x".repeat(valueSize);
+        for (int i = 0; i < size; i++) {
+            configCache.create(BenchmarkCaches.id(i), BenchmarkCaches.name(i), value(i));
+        }
+    }
+
+    @Benchmark
+    public ConfigCacheResult get(Memory memory) throws ConfigCacheException {
+        return configCache.get(BenchmarkCaches.id(ThreadLocalRandom.current().nextInt(size)));
+    }
+
+    @Benchmark
+    public ConfigCacheResult update(Memory memory) throws ConfigCacheException {
+        int index = ThreadLocalRandom.current().nextInt(size);
+        return configCache.update(BenchmarkCaches.id(index), BenchmarkCaches.name(index), value(index));
+    }
+
+    String value(int index) {
+        return padding.substring(0, valueSize - 16) + BenchmarkCaches.value(index);
+    }
+
+    // JMH adds the counters of the measurement iterations up: divide by their number
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Memory {
+        public long heapMegabytes;
+        public long gcPauses;
+        public long gcPauseMillis;
+        long collections;
+        long collectionTime;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            collections = collections();
+            collectionTime = collectionTime();
+        }
+
+        @TearDown(Level.Iteration)
+        public void tearDown() {
+            gcPauses = collections() - collections;
+            gcPauseMillis = collectionTime() - collectionTime;
+            Runtime runtime = Runtime.getRuntime();
+            System.gc();
+            heapMegabytes = (runtime.totalMemory() - runtime.freeMemory()) >> 20;
+        }
+
+        private static long collections() {
+            return ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(GarbageCollectorMXBean::getCollectionCount).sum();
+        }
+
+        private static long collectionTime() {
+            return ManagementFactory.getGarbageCollectorMXBeans().stream().mapToLong(GarbageCollectorMXBean::getCollectionTime).sum();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.ercoles.configserver.benchmarks;
+
+import com.ercoles.configserver.repositories.ConfigCacheException;
+import com.ercoles.configserver.repositories.ConfigCacheFile;
+import com.ercoles.configserver.repositories.ConfigOperation;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// time to reopen a persistent store and serve a first read, and heap held once it is open: from the write-ahead log
+// alone, from a snapshot read in full, or from a memory-mapped snapshot
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@Threads(1)
+@State(Scope.Benchmark)
+public class RecoveryBenchmark {
+    private static final int BATCH_SIZE = 10_000;
+
+    @Param({"log", "snapshot", "mapped"})
+    String layout;
+
+    @Param({"1000000"})
+    int size;
+
+    Path directory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, ConfigCacheException {
+        directory = Files.createTempDirectory("config-cache-recovery");
+        try (ConfigCacheFile configCache = new ConfigCacheFile(directory, Long.MAX_VALUE)) {
+            // batches share one fsync, a create per entry would take minutes
+            for (int start = 0; start < size; start += BATCH_SIZE) {
+                List<ConfigOperation> operations = new ArrayList<>(BATCH_SIZE);
+                for (int i = start; i < Math.min(size, start + BATCH_SIZE); i++) {
+                    operations.add(ConfigOperation.create(BenchmarkCaches.id(i), BenchmarkCaches.name(i), BenchmarkCaches.value(i)));
+                }
+                configCache.apply(operations, false);
+            }
+            if (!layout.equals("log")) {
+                configCache.compact();
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public Object recover() throws IOException, ConfigCacheException {
+        try (ConfigCacheFile configCache = open()) {
+            return configCache.get(BenchmarkCaches.id(size / 2)).getConfiguration();
+        }
+    }
+
+    // its time includes the collections, only the counter is meaningful
+    @Benchmark
+    public void heapAfterRecovery(Heap heap) throws IOException, ConfigCacheException {
+        try (ConfigCacheFile configCache = open()) {
+            configCache.get(BenchmarkCaches.id(size / 2));
+            heap.usedMegabytes = heap.used() - heap.baseline;
+        }
+    }
+
+    private ConfigCacheFile open() throws ConfigCacheException {
+        return new ConfigCacheFile(directory, Long.MAX_VALUE, layout.equals("mapped"));
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Heap {
+        public long usedMegabytes;
+        long baseline;
+
+        @Setup(Level.Iteration)
+        public void setUp() {
+            baseline = used();
+        }
+
+        long used() {
+            Runtime runtime = Runtime.getRuntime();
+            for (int i = 0; i < 3; i++) {
+                System.gc();
+            }
+            return (runtime.totalMemory() - runtime.freeMemory()) >> 20;
+        }
+    }
+}
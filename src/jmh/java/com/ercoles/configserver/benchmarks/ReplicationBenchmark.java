@@ -0,0 +1,119 @@
+package com.ercoles.configserver.benchmarks;
+
+import com.ercoles.configserver.ConfigServerApplication;
+import com.ercoles.configserver.repositories.ConfigCache;
+import com.ercoles.configserver.repositories.ConfigCacheException;
+import com.ercoles.configserver.repositories.ConfigCacheFactory;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// a leader and followers on localhost, each a whole application on a port of its own: reads spread over every node,
+// and the latency of writes sent to the leader or forwarded by a follower (which answers once its copy has them)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@Threads(16)
+@State(Scope.Benchmark)
+public class ReplicationBenchmark {
+    private static final long CATCH_UP_TIMEOUT = 30_000;
+
+    // the leader and nodes - 1 followers
+    @Param({"1", "2", "3"})
+    int nodes;
+
+    @Param({"1000"})
+    int size;
+
+    List<ConfigurableApplicationContext> contexts;
+    List<String> baseUris;
+    HttpClient requestClient;
+
+    @Setup(Level.Trial)
+    public void setUp() throws ConfigCacheException, InterruptedException {
+        contexts = new ArrayList<>(nodes);
+        baseUris = new ArrayList<>(nodes);
+        // as arguments, which take precedence over application.properties
+        ConfigurableApplicationContext leader = new SpringApplicationBuilder(ConfigServerApplication.class)
+                .run("--configserver.replication.role=leader", "--server.port=0", "--configserver.cache.metrics=false",
+                        "--logging.level.root=warn");
+        add(leader);
+        BenchmarkCaches.populate(leader.getBean(ConfigCacheFactory.class).getConfigCache(), size);
+        for (int i = 1; i < nodes; i++) {
+            ConfigurableApplicationContext follower = new SpringApplicationBuilder(ConfigServerApplication.class)
+                    .run("--configserver.replication.role=follower", "--configserver.replication.leader-uri=" + baseUris.get(0),
+                            "--server.port=0", "--configserver.cache.metrics=false", "--logging.level.root=warn");
+            add(follower);
+            awaitCopy(follower.getBean(ConfigCacheFactory.class).getConfigCache());
+        }
+        requestClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (int i = contexts.size() - 1; i >= 0; i--) {
+            contexts.get(i).close();
+        }
+    }
+
+    // each read goes to any node, as behind a load balancer
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public HttpResponse<byte[]> getConfiguration() throws IOException, InterruptedException {
+        String baseUri = baseUris.get(ThreadLocalRandom.current().nextInt(nodes));
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUri + BenchmarkCaches.id(ThreadLocalRandom.current().nextInt(size)))).build();
+        return requestClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    public HttpResponse<byte[]> updateOnLeader() throws IOException, InterruptedException {
+        return update(baseUris.get(0));
+    }
+
+    // with a single node there is no follower, and the write goes to the leader
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    public HttpResponse<byte[]> updateOnFollower() throws IOException, InterruptedException {
+        return update(baseUris.get(nodes - 1));
+    }
+
+    private HttpResponse<byte[]> update(String baseUri) throws IOException, InterruptedException {
+        int index = ThreadLocalRandom.current().nextInt(size);
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUri + BenchmarkCaches.id(index)))
+                .header("Content-Type", "application/json")
+                .PUT(HttpRequest.BodyPublishers.ofString("{\"name\":\"" + BenchmarkCaches.name(index) + "\",\"value\":\""
+                        + BenchmarkCaches.value(index) + "\"}"))
+                .build();
+        return requestClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    private void add(ConfigurableApplicationContext context) {
+        contexts.add(context);
+        baseUris.add("http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort() + "/");
+    }
+
+    // the follower answers as soon as it has a snapshot, which may be from before the last of the population
+    private void awaitCopy(ConfigCache follower) throws ConfigCacheException, InterruptedException {
+        long deadline = System.currentTimeMillis() + CATCH_UP_TIMEOUT;
+        while (follower.get(BenchmarkCaches.id(size - 1)) == null) {
+            if (System.currentTimeMillis() > deadline) {
+                throw new IllegalStateException("Follower did not catch up with the leader.");
+            }
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.ercoles.configserver.benchmarks;
+
+import com.ercoles.configserver.dtos.ConfigurationResponseDto;
+import com.ercoles.configserver.repositories.ConfigSnapshot;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class SerializationBenchmark {
+    @Param({"1000", "100000", "1000000"})
+    int size;
+
+    ObjectWriter writer;
+    ObjectWriter cborWriter;
+    ObjectReader reader;
+    ObjectReader cborReader;
+    List<ConfigurationResponseDto> configurations;
+    ConfigurationResponseDto configuration;
+    byte[] json;
+    byte[] cbor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        writer = Jackson2ObjectMapperBuilder.json().build().writer();
+        cborWriter = Jackson2ObjectMapperBuilder.cbor().build().writer();
+        reader = Jackson2ObjectMapperBuilder.json().build().readerForListOf(ConfigurationResponseDto.class);
+        cborReader = Jackson2ObjectMapperBuilder.cbor().build().readerForListOf(ConfigurationResponseDto.class);
+        configurations = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            configurations.add(new ConfigurationResponseDto(BenchmarkCaches.id(i), BenchmarkCaches.name(i), BenchmarkCaches.value(i)));
+        }
+        configuration = configurations.get(0);
+        configurations.forEach(ConfigurationResponseDto::toJson);
+        configurations.forEach(ConfigurationResponseDto::toCbor);
+        json = new ConfigSnapshot(size, configurations).toJson();
+        cbor = new ConfigSnapshot(size, configurations).toCbor();
+        // the sizes of the GET / bodies, which the timings alone don't tell
+        System.out.printf("%nGET / with %d configurations: %d bytes of JSON, %d bytes of CBOR%n", size, json.length, cbor.length);
+    }
+
+    @Benchmark
+    public byte[] serializeConfiguration() throws JsonProcessingException {
+        return writer.writeValueAsBytes(configuration);
+    }
+
+    @Benchmark
+    public byte[] serializeConfigurationList() throws JsonProcessingException {
+        return writer.writeValueAsBytes(configurations);
+    }
+
+    @Benchmark
+    public byte[] encodeSnapshotFromCachedEntries() {
+        return new ConfigSnapshot(size, configurations).toJson();
+    }
+
+    @Benchmark
+    public byte[] serializeConfigurationListCbor() throws JsonProcessingException {
+        return cborWriter.writeValueAsBytes(configurations);
+    }
+
+    @Benchmark
+    public byte[] encodeSnapshotFromCachedEntriesCbor() {
+        return new ConfigSnapshot(size, configurations).toCbor();
+    }
+
+    // what compressing the listing on every request would cost, at the level server.compression uses
+    @Benchmark
+    public byte[] gzipSnapshot() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(json.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(json);
+        }
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public List<ConfigurationResponseDto> deserializeConfigurationList() throws IOException {
+        return reader.readValue(json);
+    }
+
+    @Benchmark
+    public List<ConfigurationResponseDto> deserializeConfigurationListCbor() throws IOException {
+        return cborReader.readValue(cbor);
+    }
+}
@@ -0,0 +1,210 @@
+package com.ercoles.configserver.benchmarks;
+
+import com.ercoles.configserver.ConfigServerApplication;
+import com.ercoles.configserver.repositories.ConfigCacheException;
+import com.ercoles.configserver.repositories.ConfigCacheFactory;
+import com.ercoles.configserver.services.ConfigWatchService;
+import com.ercoles.configserver.services.ReactiveConfigWatchService;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// the whole application over HTTP, on Tomcat with the servlet stack (on platform or virtual threads) or on Netty with
+// the reactive one, while a number of clients hold a change feed open and others upload their writes slowly: latency
+// percentiles of reads and of writes (each fanned out to every watcher), with the feeds the server still holds and
+// the threads it took to hold them
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@Threads(16)
+@State(Scope.Benchmark)
+public class WebStackBenchmark {
+    private static final long SLOW_CLIENT_PAUSE = 50;
+
+    @Param({"servlet", "virtual", "reactive"})
+    String stack;
+
+    @Param({"0", "1000"})
+    int watchers;
+
+    // each sends a PUT body a byte at a time, one every SLOW_CLIENT_PAUSE, then starts over
+    @Param({"0", "400"})
+    int slowClients;
+
+    @Param({"1000"})
+    int size;
+
+    ConfigurableApplicationContext context;
+    String baseUri;
+    // requests reuse a pooled connection per thread, each watcher has a connection of its own
+    HttpClient requestClient;
+    HttpClient watchClient;
+    List<Flow.Subscription> feeds;
+    List<Thread> uploads;
+    volatile boolean running;
+    int threadsBeforeWatchers;
+
+    @Setup(Level.Trial)
+    public void setUp() throws ConfigCacheException {
+        // as arguments, which take precedence over application.properties
+        context = new SpringApplicationBuilder(ConfigServerApplication.class)
+                .run("--spring.main.web-application-type=" + (stack.equals("reactive") ? "reactive" : "servlet"),
+                        "--configserver.threads.virtual=" + stack.equals("virtual"), "--server.port=0",
+                        "--configserver.cache.metrics=false", "--logging.level.root=warn");
+        BenchmarkCaches.populate(context.getBean(ConfigCacheFactory.class).getConfigCache(), size);
+        baseUri = "http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort() + "/";
+        requestClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        watchClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        threadsBeforeWatchers = serverThreads();
+        HttpRequest watch = HttpRequest.newBuilder(URI.create(baseUri + "?watch")).header("Accept", "text/event-stream").build();
+        List<CompletableFuture<Flow.Subscription>> opened = new ArrayList<>(watchers);
+        for (int i = 0; i < watchers; i++) {
+            opened.add(watchClient.sendAsync(watch, HttpResponse.BodyHandlers.ofPublisher()).thenApply(WebStackBenchmark::drain));
+        }
+        // the response headers only arrive once the server has registered the watcher
+        feeds = new ArrayList<>(watchers);
+        for (CompletableFuture<Flow.Subscription> feed : opened) {
+            feeds.add(feed.join());
+        }
+        running = true;
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        uploads = new ArrayList<>(slowClients);
+        for (int i = 0; i < slowClients; i++) {
+            int index = i % size;
+            // platform threads, so that the clients keep uploading whatever the server does with its carriers
+            uploads.add(Thread.ofPlatform().name("slow-client-" + i).daemon().start(() -> uploadSlowly(port, index)));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        running = false;
+        for (Thread upload : uploads) {
+            upload.join();
+        }
+        feeds.forEach(Flow.Subscription::cancel);
+        context.close();
+    }
+
+    @Benchmark
+    public HttpResponse<byte[]> getConfiguration(Connections connections) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUri + BenchmarkCaches.id(ThreadLocalRandom.current().nextInt(size)))).build();
+        return requestClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    @Benchmark
+    public HttpResponse<byte[]> updateConfiguration(Connections connections) throws IOException, InterruptedException {
+        int index = ThreadLocalRandom.current().nextInt(size);
+        HttpRequest request = HttpRequest.newBuilder(URI.create(baseUri + BenchmarkCaches.id(index)))
+                .header("Content-Type", "application/json")
+                .PUT(HttpRequest.BodyPublishers.ofString("{\"name\":\"" + BenchmarkCaches.name(index) + "\",\"value\":\""
+                        + BenchmarkCaches.value(index) + "\"}"))
+                .build();
+        return requestClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+    }
+
+    int heldWatchers() {
+        return context.getBeanProvider(ConfigWatchService.class).stream().mapToInt(ConfigWatchService::getWatcherCount).sum()
+                + context.getBeanProvider(ReactiveConfigWatchService.class).stream().mapToInt(ReactiveConfigWatchService::getWatcherCount).sum();
+    }
+
+    private void uploadSlowly(int port, int index) {
+        byte[] body = ("{\"name\":\"" + BenchmarkCaches.name(index) + "\",\"value\":\"" + BenchmarkCaches.value(index) + "\"}")
+                .getBytes(StandardCharsets.UTF_8);
+        byte[] head = ("PUT /" + BenchmarkCaches.id(index) + " HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n"
+                + "Content-Type: application/json\r\nContent-Length: " + body.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+        while (running) {
+            try (Socket socket = new Socket("localhost", port)) {
+                OutputStream out = socket.getOutputStream();
+                out.write(head);
+                for (int i = 0; i < body.length && running; i++) {
+                    out.write(body[i]);
+                    out.flush();
+                    Thread.sleep(SLOW_CLIENT_PAUSE);
+                }
+                // a body left unfinished is dropped with the connection, rather than waited out by the server
+                if (!running) {
+                    return;
+                }
+                socket.getInputStream().readAllBytes();
+            } catch (IOException e) {
+                // the server gave up on the upload, or is shutting down: start over
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    // client and server share the JVM: leave out the threads of the HTTP clients and of JMH
+    static int serverThreads() {
+        int threads = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (!thread.getName().startsWith("HttpClient-") && !thread.getName().startsWith("slow-client-")
+                    && !thread.getName().contains("jmh-worker")) {
+                threads++;
+            }
+        }
+        return threads;
+    }
+
+    // reads and discards the events of a feed as they come, so that no watcher falls behind and is dropped
+    private static Flow.Subscription drain(HttpResponse<Flow.Publisher<List<ByteBuffer>>> response) {
+        CompletableFuture<Flow.Subscription> subscribed = new CompletableFuture<>();
+        response.body().subscribe(new Flow.Subscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+                subscribed.complete(subscription);
+            }
+
+            @Override
+            public void onNext(List<ByteBuffer> buffers) {
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                subscribed.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        return subscribed.join();
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Connections {
+        public double watchersHeld;
+        public double threadsAdded;
+
+        // JMH adds up the counters of every thread and of the measurement iterations: each thread reports its share,
+        // divide by the number of iterations
+        @TearDown(Level.Iteration)
+        public void tearDown(WebStackBenchmark benchmark, BenchmarkParams params) {
+            watchersHeld = (double) benchmark.heldWatchers() / params.getThreads();
+            threadsAdded = (double) (serverThreads() - benchmark.threadsBeforeWatchers) / params.getThreads();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.ercoles.configserver.controllers;
+
+import com.ercoles.configserver.dtos.ConfigurationOperationRequestDto;
+import com.ercoles.configserver.dtos.ConfigurationOperationResultDto;
+import com.ercoles.configserver.repositories.ConfigCacheResult;
+import com.ercoles.configserver.repositories.ConfigOperation;
+import org.springframework.http.HttpStatus;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// a submitted batch split into the operations that can reach the cache and the results of those that can't; the
+// results of the accepted ones are filled in once they are applied, or aborted
+final class BatchRequest {
+    private final List<ConfigOperation> accepted;
+    // in submission order, null where an accepted operation is still waiting for its result
+    private final List<ConfigurationOperationResultDto> results;
+
+    BatchRequest(List<ConfigurationOperationRequestDto> operations) throws InvalidParametersException {
+        if (operations == null || operations.isEmpty()) {
+            throw new InvalidParametersException("Submitted batch is empty.");
+        }
+        accepted = new ArrayList<>(operations.size());
+        results = new ArrayList<>(operations.size());
+        for (ConfigurationOperationRequestDto operation : operations) {
+            ConfigOperation parsed = ControllerSupport.toConfigOperation(operation);
+            if (parsed == null) {
+                results.add(new ConfigurationOperationResultDto(operation == null ? null : operation.getId(),
+                        HttpStatus.BAD_REQUEST.value(), null, "Submitted configuration parameters are not valid."));
+            } else {
+                accepted.add(parsed);
+                results.add(null);
+            }
+        }
+    }
+
+    List<ConfigOperation> getAccepted() {
+        return accepted;
+    }
+
+    List<ConfigurationOperationResultDto> getResults() {
+        return results;
+    }
+
+    boolean hasInvalid() {
+        return accepted.size() < results.size();
+    }
+
+    // nothing reaches the cache, the operations that were valid are reported as aborted
+    HttpStatus abort() {
+        for (int i = 0, next = 0; i < results.size(); i++) {
+            if (results.get(i) == null) {
+                results.set(i, ControllerSupport.toResult(accepted.get(next++), ConfigCacheResult.aborted()));
+            }
+        }
+        return HttpStatus.BAD_REQUEST;
+    }
+
+    // an atomic batch takes the status of the operation that failed it
+    HttpStatus complete(List<ConfigCacheResult> applied, boolean atomic) {
+        HttpStatus status = HttpStatus.OK;
+        for (int i = 0, next = 0; i < results.size(); i++) {
+            if (results.get(i) == null) {
+                ConfigCacheResult result = applied.get(next);
+                results.set(i, ControllerSupport.toResult(accepted.get(next++), result));
+                if (atomic && status == HttpStatus.OK && !result.isSuccess() && result.getOutcome() != ConfigCacheResult.Outcome.ABORTED) {
+                    status = HttpStatus.valueOf(results.get(i).getStatus());
+                }
+            }
+        }
+        return status;
+    }
+}
@@ -0,0 +1,38 @@
+package com.ercoles.configserver.controllers;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.codec.CodecCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.cbor.Jackson2CborDecoder;
+import org.springframework.http.converter.cbor.MappingJackson2CborHttpMessageConverter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+// reads and writes application/cbor with the mapper Spring Boot configures for JSON, so that the request DTOs, which
+// have no default constructor, are built the same way from either format. Spring MVC would add a CBOR converter of its
+// own, without Boot's modules; WebFlux adds none, and ConfigHandler writes its CBOR responses already encoded
+@Configuration(proxyBeanMethods = false)
+public class CborConfiguration {
+
+    // the builder is a prototype bean, each injection gets a fresh copy
+    @Bean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+    public MappingJackson2CborHttpMessageConverter cborHttpMessageConverter(Jackson2ObjectMapperBuilder builder) {
+        return new MappingJackson2CborHttpMessageConverter(cborMapper(builder));
+    }
+
+    @Bean
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+    public CodecCustomizer cborCodecCustomizer(Jackson2ObjectMapperBuilder builder) {
+        // given only a mapper, the decoder claims the JSON media types
+        Jackson2CborDecoder decoder = new Jackson2CborDecoder(cborMapper(builder), MediaType.APPLICATION_CBOR);
+        return configurer -> configurer.customCodecs().register(decoder);
+    }
+
+    private static ObjectMapper cborMapper(Jackson2ObjectMapperBuilder builder) {
+        return builder.factory(new CBORFactory()).build();
+    }
+}
@@ -0,0 +1,296 @@
+package com.ercoles.configserver.controllers;
+
+import com.ercoles.configserver.dtos.CborEncoder;
+import com.ercoles.configserver.dtos.ConfigurationLookupResponseDto;
+import com.ercoles.configserver.dtos.ConfigurationOperationRequestDto;
+import com.ercoles.configserver.dtos.ConfigurationPageResponseDto;
+import com.ercoles.configserver.dtos.ConfigurationRequestDto;
+import com.ercoles.configserver.dtos.ConfigurationResponseDto;
+import com.ercoles.configserver.dtos.ErrorDto;
+import com.ercoles.configserver.repositories.ConfigCacheResult;
+import com.ercoles.configserver.repositories.ConfigPage;
+import com.ercoles.configserver.services.ConfigService;
+import com.ercoles.configserver.services.ConfigServiceException;
+import com.ercoles.configserver.services.ConfigSyncService;
+import com.ercoles.configserver.services.ReactiveConfigService;
+import com.ercoles.configserver.services.ReactiveConfigWatchService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+// the routes of Controller for the reactive stack, see ConfigRouter; the same parameters give the same responses
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ConfigHandler {
+    private static final ParameterizedTypeReference<List<ConfigurationOperationRequestDto>> OPERATIONS =
+            new ParameterizedTypeReference<>() {
+            };
+
+    private final ReactiveConfigService configService;
+    private final ReactiveConfigWatchService configWatchService;
+    private final ConfigSyncService configSyncService;
+    private final ResponseCompressor responseCompressor;
+
+    public ConfigHandler(@Autowired ReactiveConfigService configService, @Autowired ReactiveConfigWatchService configWatchService,
+                         @Autowired ConfigSyncService configSyncService, @Autowired ResponseCompressor responseCompressor) {
+        this.configService = configService;
+        this.configWatchService = configWatchService;
+        this.configSyncService = configSyncService;
+        this.responseCompressor = responseCompressor;
+    }
+
+    public Mono<ServerResponse> getAll(ServerRequest request) {
+        // either parameter asks for pages, which never hold more than limit entries however large the store
+        if (request.queryParam("cursor").isPresent() || request.queryParam("limit").isPresent()) {
+            return getPage(request, "", null);
+        }
+        MediaType type = responseType(request);
+        return checkQuery(request)
+                .then(configService.getAll())
+                .flatMap(snapshot -> toCompressibleResponse(request, ServerResponse.ok(), null, snapshot.getVersion(), type,
+                        ControllerSupport.isCbor(type) ? snapshot.toCbor() : snapshot.toJson()))
+                .onErrorMap(ConfigServiceException.class, ControllerSupport::toProcessingException);
+    }
+
+    // one write per page rather than per configuration, the next page is only read once the client has taken this one;
+    // with a limit the stream is a single page, and the cursor of the next one is sent as a header
+    public Mono<ServerResponse> streamAll(ServerRequest request) {
+        if (request.queryParam("limit").isPresent()) {
+            return checkQuery(request)
+                    .then(Mono.fromCallable(() -> new PageRequest(request)))
+                    .flatMap(page -> configService.getConfigurationRange("", null, page.start, page.limit))
+                    .flatMap(page -> {
+                        ServerResponse.BodyBuilder response = ServerResponse.ok().contentType(MediaType.APPLICATION_NDJSON);
+                        if (page.getNext() != null) {
+                            response.header(ControllerSupport.NEXT_CURSOR, PageCursor.encode(page.getNext()));
+                        }
+                        return response.bodyValue(ControllerSupport.toLines(page.getConfigurations()));
+                    })
+                    .onErrorMap(ConfigServiceException.class, ControllerSupport::toProcessingException);
+        }
+        return checkQuery(request)
+                .then(Mono.fromCallable(() -> PageCursor.decode(request.queryParam("cursor").orElse(""))))
+                .flatMap(start -> ServerResponse.ok()
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .body(configService.getAllPages(start, ControllerSupport.MAX_PAGE_SIZE)
+                                .map(page -> ControllerSupport.toLines(page.getConfigurations()))
+                                .onErrorMap(ConfigServiceException.class, ControllerSupport::toProcessingException), byte[].class));
+    }
+
+    public Mono<ServerResponse> getConfigurations(ServerRequest request) {
+        MediaType type = responseType(request);
+        return checkQuery(request)
+                .then(Mono.fromCallable(() -> ControllerSupport.toUniqueIds(request.queryParams().get("ids"))))
+                .flatMap(configService::getConfigurations)
+                .flatMap(lookup -> {
+                    ConfigurationLookupResponseDto response = new ConfigurationLookupResponseDto(lookup.getConfigurations(), lookup.getMissing());
+                    return ServerResponse.ok()
+                            .contentType(type)
+                            .varyBy(HttpHeaders.ACCEPT)
+                            .bodyValue(ControllerSupport.isCbor(type) ? response.toCbor() : response.toJson());
+                })
+                .onErrorMap(ConfigServiceException.class, ControllerSupport::toProcessingException);
+    }
+
+    public Mono<ServerResponse> getConfigurationsByPrefix(ServerRequest request) {
+        String prefix = request.queryParam("prefix").orElseThrow();
+        return checkQuery(request)
+                .then(Mono.fromCallable(() -> new PageRequest(request)))
+                .flatMap(page -> configService.getConfigurationsByPrefix(prefix, page.start, page.limit))
+                .flatMap(page -> toResponse(page, responseType(request)))
+                .onErrorMap(ConfigServiceException.class, ControllerSupport::toProcessingException);
+    }
+
+    public Mono<ServerResponse> getConfigurationRange(ServerRequest request) {
+        return getPage(request, request.queryParam("from").orElseThrow(), request.queryParam("to").orElse(null));
+    }
+
+    public Mono<ServerResponse> getChanges(ServerRequest request) {
+        MediaType type = responseType(request);
+        return checkQuery(request)
+                .then(configService.read(() -> ControllerSupport.sync(configSyncService, request.queryParam("since").orElse(""),
+                        ControllerSupport.toPageSize(request.queryParam("limit").orElse(null)))))
+                .flatMap(response -> ServerResponse.ok()
+                        .contentType(type)
+                        .varyBy(HttpHeaders.ACCEPT)
+                        .bodyValue(ControllerSupport.isCbor(type) ? response.toCbor() : response.toJson()))
+                .onErrorMap(ConfigServiceException.class, ControllerSupport::toProcessingException);
+    }
+
+    public Mono<ServerResponse> watch(ServerRequest request) {
+        return checkQuery(request)
+                .then(ServerResponse.ok()
+                        .contentType(MediaType.TEXT_EVENT_STREAM)
+                        .body(configWatchService.watch(request.headers().firstHeader("Last-Event-ID")), new ParameterizedTypeReference<ServerSentEvent<String>>() {
+                        }));
+    }
+
+    public Mono<ServerResponse> applyBatch(ServerRequest request) {
+        boolean atomic = request.queryParam("atomic").map(Boolean::parseBoolean).orElse(false);
+        MediaType type = responseType(request);
+        return request.bodyToMono(OPERATIONS)
+                .defaultIfEmpty(List.of())
+                .flatMap(operations -> Mono.fromCallable(() -> new BatchRequest(operations)))
+                .flatMap(batch -> {
+                    if (atomic && batch.hasInvalid()) {
+                        return ServerResponse.status(batch.abort())
+                                .contentType(type)
+                                .bodyValue(toBody(batch.getResults(), type));
+                    }
+                    return configService.applyBatch(batch.getAccepted(), atomic)
+                            .flatMap(applied -> ServerResponse.status(batch.complete(applied, atomic))
+                                    .contentType(type)
+                                    .bodyValue(toBody(batch.getResults(), type)));
+                })
+                .onErrorMap(ConfigServiceException.class, ControllerSupport::toProcessingException);
+    }
+
+    public Mono<ServerResponse> getConfiguration(ServerRequest request) {
+        String configId = request.pathVariable("configId");
+        MediaType type = responseType(request);
+        return configService.getConfiguration(configId)
+                .flatMap(result -> toResponse(request, result, HttpStatus.OK, ConfigService.GET_ERROR, configId, type))
+                .onErrorMap(ConfigServiceException.class, ControllerSupport::toProcessingException);
+    }
+
+    public Mono<ServerResponse> setConfiguration(ServerRequest request) {
+        String configId = request.pathVariable("configId");
+        return checkedBody(request)
+                .flatMap(configuration -> configService.createConfiguration(configId, configuration.getName(), configuration.getValue()))
+                .flatMap(result -> toResponse(request, result, HttpStatus.CREATED, ConfigService.CREATE_ERROR, configId, responseType(request)))
+                .onErrorMap(ConfigServiceException.class, ControllerSupport::toProcessingException);
+    }
+
+    public Mono<ServerResponse> updateConfiguration(ServerRequest request) {
+        String configId = request.pathVariable("configId");
+        return checkedBody(request)
+                .flatMap(configuration -> configService.updateConfiguration(configId, configuration.getName(), configuration.getValue()))
+                .flatMap(result -> toResponse(request, result, HttpStatus.OK, ConfigService.UPDATE_ERROR, configId, responseType(request)))
+                .onErrorMap(ConfigServiceException.class, ControllerSupport::toProcessingException);
+    }
+
+    public Mono<ServerResponse> deleteConfiguration(ServerRequest request) {
+        String configId = request.pathVariable("configId");
+        return configService.deleteConfiguration(configId)
+                .flatMap(result -> toResponse(request, result, HttpStatus.OK, ConfigService.DELETE_ERROR, configId, responseType(request)))
+                .onErrorMap(ConfigServiceException.class, ControllerSupport::toProcessingException);
+    }
+
+    public Mono<ServerResponse> handleInvalidParametersException(Throwable exception, ServerRequest request) {
+        MediaType type = responseType(request);
+        return ServerResponse.badRequest()
+                .contentType(type)
+                .bodyValue(toBody(new ErrorDto(exception.getMessage()), type));
+    }
+
+    public Mono<ServerResponse> handleProcessingException(Throwable exception, ServerRequest request) {
+        MediaType type = responseType(request);
+        HttpStatus status = exception instanceof ServiceUnavailableException ? HttpStatus.SERVICE_UNAVAILABLE : HttpStatus.INTERNAL_SERVER_ERROR;
+        return ServerResponse.status(status)
+                .contentType(type)
+                .bodyValue(toBody(new ErrorDto(exception.getMessage()), type));
+    }
+
+    private Mono<ServerResponse> getPage(ServerRequest request, String from, String to) {
+        return checkQuery(request)
+                .then(Mono.fromCallable(() -> {
+                    ControllerSupport.checkRange(from, to);
+                    return new PageRequest(request);
+                }))
+                .flatMap(page -> configService.getConfigurationRange(from, to, page.start, page.limit))
+                .flatMap(page -> toResponse(page, responseType(request)))
+                .onErrorMap(ConfigServiceException.class, ControllerSupport::toProcessingException);
+    }
+
+    // the routes are tried in order, so a request mixing the parameters of different ones reaches the first of them
+    // and is refused there
+    private static Mono<Void> checkQuery(ServerRequest request) {
+        return Mono.fromCallable(() -> {
+            ControllerSupport.checkQuery(request.queryParams().keySet());
+            return request;
+        }).then();
+    }
+
+    // Accept may come as several headers
+    private static MediaType responseType(ServerRequest request) {
+        return ControllerSupport.toResponseType(String.join(",", request.headers().header(HttpHeaders.ACCEPT)));
+    }
+
+    // a missing body is reported like one without name or value
+    private static Mono<ConfigurationRequestDto> checkedBody(ServerRequest request) {
+        return request.bodyToMono(ConfigurationRequestDto.class)
+                .defaultIfEmpty(new ConfigurationRequestDto(null, null))
+                .flatMap(configuration -> Mono.fromCallable(() -> {
+                    ControllerSupport.checkParameters(configuration);
+                    return configuration;
+                }));
+    }
+
+    private Mono<ServerResponse> toResponse(ServerRequest request, ConfigCacheResult result, HttpStatus successStatus, String errorMessage,
+                                            String configId, MediaType type) {
+        if (!result.isSuccess()) {
+            return ServerResponse.status(ControllerSupport.toErrorStatus(result.getOutcome()))
+                    .contentType(type)
+                    .bodyValue(toBody(new ErrorDto(ControllerSupport.toErrorMessage(result.getOutcome(), errorMessage, configId)), type));
+        }
+        ConfigurationResponseDto configuration = result.getConfiguration();
+        return toCompressibleResponse(request, ServerResponse.status(successStatus), configuration.getId(), configuration.getVersion(), type,
+                ControllerSupport.isCbor(type) ? configuration.toCbor() : configuration.toJson());
+    }
+
+    // the tag depends on the coding, so the body is compressed, or found compressed, before If-None-Match is checked;
+    // writes answer with the configuration they stored, never with 304
+    private Mono<ServerResponse> toCompressibleResponse(ServerRequest request, ServerResponse.BodyBuilder response, String configId,
+                                                        long version, MediaType type, byte[] body) {
+        String epoch = configService.getEpoch();
+        byte[] gzipped = responseCompressor.compress(ControllerSupport.toBodyKey(epoch, configId, version, type), body,
+                String.join(",", request.headers().header(HttpHeaders.ACCEPT_ENCODING)));
+        String eTag = ControllerSupport.toETag(epoch, version, type, gzipped != null);
+        response.contentType(type)
+                .varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING)
+                .eTag(eTag);
+        if (gzipped != null) {
+            response.header(HttpHeaders.CONTENT_ENCODING, ResponseCompressor.GZIP);
+        }
+        Mono<ServerResponse> full = Mono.defer(() -> response.bodyValue(gzipped != null ? gzipped : body));
+        if (request.method() != HttpMethod.GET && request.method() != HttpMethod.HEAD) {
+            return full;
+        }
+        return request.checkNotModified(eTag).switchIfEmpty(full);
+    }
+
+    private static Mono<ServerResponse> toResponse(ConfigPage page, MediaType type) {
+        ConfigurationPageResponseDto response = new ConfigurationPageResponseDto(page.getConfigurations(), PageCursor.encode(page.getNext()));
+        return ServerResponse.ok()
+                .contentType(type)
+                .varyBy(HttpHeaders.ACCEPT)
+                .bodyValue(ControllerSupport.isCbor(type) ? response.toCbor() : response.toJson());
+    }
+
+    // WebFlux 5.3 encodes CBOR only from byte arrays, the Jackson encoder cannot write a response yet
+    private static Object toBody(Object value, MediaType type) {
+        return ControllerSupport.isCbor(type) ? CborEncoder.encode(value) : value;
+    }
+
+    // the cursor and limit of a paged request, checked
+    private static final class PageRequest {
+        private final String start;
+        private final int limit;
+
+        PageRequest(ServerRequest request) throws InvalidParametersException {
+            this.start = PageCursor.decode(request.queryParam("cursor").orElse(null));
+            this.limit = ControllerSupport.toPageSize(request.queryParam("limit").orElse(null));
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.ercoles.configserver.controllers;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.server.RequestPredicate;
+import org.springframework.web.reactive.function.server.RequestPredicates;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+// the endpoints of Controller as WebFlux router functions, served on Netty when the application is started with
+// spring.main.web-application-type=reactive; routes are tried in order, the most specific first
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ConfigRouter {
+
+    // Tomcat is on the classpath for the servlet stack and would otherwise be picked for this one too
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    @Bean
+    public RouterFunction<ServerResponse> configRoutes(ConfigHandler handler) {
+        return RouterFunctions.route()
+                .GET("/", hasParameter("watch"), handler::watch)
+                .GET("/", hasParameter("since"), handler::getChanges)
+                .GET("/", hasParameter("ids"), handler::getConfigurations)
+                .GET("/", hasParameter("prefix"), handler::getConfigurationsByPrefix)
+                .GET("/", hasParameter("from"), handler::getConfigurationRange)
+                .GET("/", acceptsOnly(MediaType.APPLICATION_NDJSON), handler::streamAll)
+                .GET("/", handler::getAll)
+                .POST("/", handler::applyBatch)
+                .GET("/{configId}", handler::getConfiguration)
+                .POST("/{configId}", handler::setConfiguration)
+                .PUT("/{configId}", handler::updateConfiguration)
+                .DELETE("/{configId}", handler::deleteConfiguration)
+                .onError(InvalidParametersException.class, handler::handleInvalidParametersException)
+                .onError(ProcessingException.class, handler::handleProcessingException)
+                .build();
+    }
+
+    // the routes of ShardController, for the other instances of a sharded cluster
+    @Bean
+    @ConditionalOnProperty(name = "configserver.sharding.enabled", havingValue = "true")
+    public RouterFunction<ServerResponse> shardRoutes(ShardHandler handler) {
+        return RouterFunctions.route()
+                .GET("/shard/members", handler::getMembers)
+                .POST("/shard/members", handler::addMember)
+                .DELETE("/shard/members", handler::removeMember)
+                .POST("/shard/handoff", handler::acceptHandoff)
+                .POST("/shard/changes", handler::acceptChanges)
+                .POST("/shard/lookup", handler::getConfigurations)
+                .GET("/shard/configurations", handler::getConfigurationPage)
+                .POST("/shard/apply", handler::apply)
+                .onError(InvalidParametersException.class, handler::handleInvalidParametersException)
+                .onError(ProcessingException.class, handler::handleProcessingException)
+                .build();
+    }
+
+    private static RequestPredicate hasParameter(String name) {
+        return RequestPredicates.queryParam(name, value -> true);
+    }
+
+    // unlike RequestPredicates.accept, a wildcard doesn't count: clients that accept anything get the JSON listing
+    private static RequestPredicate acceptsOnly(MediaType mediaType) {
+        return request -> request.headers().accept().stream()
+                .anyMatch(accepted -> accepted.isConcrete() && accepted.isCompatibleWith(mediaType));
+    }
+}
@@ -1,100 +1,298 @@
 package com.ercoles.configserver.controllers;
 
+import com.ercoles.configserver.dtos.ConfigurationChangesResponseDto;
+import com.ercoles.configserver.dtos.ConfigurationLookupResponseDto;
+import com.ercoles.configserver.dtos.ConfigurationOperationRequestDto;
+import com.ercoles.configserver.dtos.ConfigurationOperationResultDto;
+import com.ercoles.configserver.dtos.ConfigurationPageResponseDto;
 import com.ercoles.configserver.dtos.ConfigurationRequestDto;
 import com.ercoles.configserver.dtos.ConfigurationResponseDto;
 import com.ercoles.configserver.dtos.ErrorDto;
+import com.ercoles.configserver.repositories.ConfigCacheResult;
+import com.ercoles.configserver.repositories.ConfigLookup;
+import com.ercoles.configserver.repositories.ConfigPage;
+import com.ercoles.configserver.repositories.ConfigSnapshot;
+import com.ercoles.configserver.services.ConfigIterator;
 import com.ercoles.configserver.services.ConfigService;
 import com.ercoles.configserver.services.ConfigServiceException;
+import com.ercoles.configserver.services.ConfigSyncService;
+import com.ercoles.configserver.services.ConfigWatchService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class Controller {
     private final ConfigService configService;
+    private final ConfigWatchService configWatchService;
+    private final ConfigSyncService configSyncService;
+    private final ResponseCompressor responseCompressor;
 
-    public Controller(@Autowired ConfigService configService) {
+    public Controller(@Autowired ConfigService configService, @Autowired ConfigWatchService configWatchService,
+                      @Autowired ConfigSyncService configSyncService, @Autowired ResponseCompressor responseCompressor) {
         this.configService = configService;
+        this.configWatchService = configWatchService;
+        this.configSyncService = configSyncService;
+        this.responseCompressor = responseCompressor;
     }
 
+    // the mappings with parameters exclude those before them, in the order of ConfigRouter, so that a request mixing
+    // them reaches a single one and is refused there
     @GetMapping("/")
-    public List<ConfigurationResponseDto> getAll() throws ProcessingException {
+    public ResponseEntity<byte[]> getAll(
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "limit", required = false) Integer limit,
+            @RequestParam Map<String, String> query,
+            @RequestHeader(name = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding
+    ) throws InvalidParametersException, ProcessingException {
+        ControllerSupport.checkQuery(query.keySet());
+        // either parameter asks for pages, which never hold more than limit entries however large the store
+        if (cursor != null || limit != null) {
+            return getConfigurationRange("", null, cursor, limit == null ? ControllerSupport.DEFAULT_PAGE_SIZE : limit, query, accept);
+        }
+
+        MediaType type = ControllerSupport.toResponseType(accept);
+        try {
+            ConfigSnapshot snapshot = configService.getAll();
+            return toCompressibleResponse(ResponseEntity.ok(), null, snapshot.getVersion(), type,
+                    ControllerSupport.isCbor(type) ? snapshot.toCbor() : snapshot.toJson(), acceptEncoding);
+        } catch (ConfigServiceException e) {
+            throw ControllerSupport.toProcessingException(e);
+        }
+    }
+
+    // with a limit the stream is a single page, and the cursor of the next one is sent as a header
+    @GetMapping(value = "/", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> streamAll(
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "limit", required = false) Integer limit,
+            @RequestParam Map<String, String> query
+    ) throws InvalidParametersException, ProcessingException {
+        ControllerSupport.checkQuery(query.keySet());
+        String start = PageCursor.decode(cursor);
+        if (limit != null) {
+            ControllerSupport.checkPageSize(limit);
+            return streamPage(start, limit);
+        }
+
+        ConfigIterator configurations = configService.iterateConfigurations(start, ControllerSupport.MAX_PAGE_SIZE);
+        // fetching the first page here still lets a failure be answered with a 500
         try {
-            return configService.getAll();
+            configurations.hasNext();
         } catch (ConfigServiceException e) {
-            throw new ProcessingException(e.getMessage() + " Caused by: " + e.getCause().getMessage());
+            throw ControllerSupport.toProcessingException(e);
         }
+        StreamingResponseBody body = out -> {
+            try {
+                while (configurations.hasNext()) {
+                    out.write(configurations.next().toJson());
+                    out.write('\n');
+                }
+            } catch (ConfigServiceException e) {
+                // the status is already sent, an incomplete response is all that is left to signal the failure
+                throw new IOException(e.getMessage() + " Caused by: " + e.getCause().getMessage(), e);
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
+    @GetMapping(value = "/", params = {"ids", "!watch", "!since"})
+    public ResponseEntity<byte[]> getConfigurations(
+            @RequestParam(name = "ids") List<String> configIds,
+            @RequestParam Map<String, String> query,
+            @RequestHeader(name = HttpHeaders.ACCEPT, required = false) String accept
+    ) throws InvalidParametersException, ProcessingException {
+        ControllerSupport.checkQuery(query.keySet());
+        Set<String> uniqueIds = ControllerSupport.toUniqueIds(configIds);
+
+        MediaType type = ControllerSupport.toResponseType(accept);
+        try {
+            ConfigLookup lookup = configService.getConfigurations(uniqueIds);
+            ConfigurationLookupResponseDto response = new ConfigurationLookupResponseDto(lookup.getConfigurations(), lookup.getMissing());
+            return ResponseEntity.ok()
+                    .contentType(type)
+                    .varyBy(HttpHeaders.ACCEPT)
+                    .body(ControllerSupport.isCbor(type) ? response.toCbor() : response.toJson());
+        } catch (ConfigServiceException e) {
+            throw ControllerSupport.toProcessingException(e);
+        }
+    }
+
+    @GetMapping(value = "/", params = {"prefix", "!watch", "!since", "!ids"})
+    public ResponseEntity<byte[]> getConfigurationsByPrefix(
+            @RequestParam(name = "prefix") String prefix,
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "limit", defaultValue = "" + ControllerSupport.DEFAULT_PAGE_SIZE) int limit,
+            @RequestParam Map<String, String> query,
+            @RequestHeader(name = HttpHeaders.ACCEPT, required = false) String accept
+    ) throws InvalidParametersException, ProcessingException {
+        ControllerSupport.checkQuery(query.keySet());
+        String start = PageCursor.decode(cursor);
+        ControllerSupport.checkPageSize(limit);
+
+        try {
+            return toResponseEntity(configService.getConfigurationsByPrefix(prefix, start, limit), ControllerSupport.toResponseType(accept));
+        } catch (ConfigServiceException e) {
+            throw ControllerSupport.toProcessingException(e);
+        }
+    }
+
+    @GetMapping(value = "/", params = {"from", "!watch", "!since", "!ids", "!prefix"})
+    public ResponseEntity<byte[]> getConfigurationRange(
+            @RequestParam(name = "from") String from,
+            @RequestParam(name = "to", required = false) String to,
+            @RequestParam(name = "cursor", required = false) String cursor,
+            @RequestParam(name = "limit", defaultValue = "" + ControllerSupport.DEFAULT_PAGE_SIZE) int limit,
+            @RequestParam Map<String, String> query,
+            @RequestHeader(name = HttpHeaders.ACCEPT, required = false) String accept
+    ) throws InvalidParametersException, ProcessingException {
+        ControllerSupport.checkQuery(query.keySet());
+        String start = PageCursor.decode(cursor);
+        ControllerSupport.checkPageSize(limit);
+        ControllerSupport.checkRange(from, to);
+
+        try {
+            return toResponseEntity(configService.getConfigurationRange(from, to, start, limit), ControllerSupport.toResponseType(accept));
+        } catch (ConfigServiceException e) {
+            throw ControllerSupport.toProcessingException(e);
+        }
+    }
+
+    @GetMapping(value = "/", params = {"since", "!watch"})
+    public ResponseEntity<byte[]> getChanges(
+            @RequestParam(name = "since") String since,
+            @RequestParam(name = "limit", defaultValue = "" + ControllerSupport.DEFAULT_PAGE_SIZE) int limit,
+            @RequestParam Map<String, String> query,
+            @RequestHeader(name = HttpHeaders.ACCEPT, required = false) String accept
+    ) throws InvalidParametersException, ProcessingException {
+        ControllerSupport.checkQuery(query.keySet());
+        ControllerSupport.checkPageSize(limit);
+
+        MediaType type = ControllerSupport.toResponseType(accept);
+        try {
+            ConfigurationChangesResponseDto response = ControllerSupport.sync(configSyncService, since, limit);
+            return ResponseEntity.ok()
+                    .contentType(type)
+                    .varyBy(HttpHeaders.ACCEPT)
+                    .body(ControllerSupport.isCbor(type) ? response.toCbor() : response.toJson());
+        } catch (ConfigServiceException e) {
+            throw ControllerSupport.toProcessingException(e);
+        }
+    }
+
+    // watchers only accept events, so a refused watch is answered in JSON whatever the Accept header; the return type
+    // is left open for Spring to pick the handler of either value
+    @GetMapping(value = "/", params = "watch", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Object watch(
+            @RequestParam Map<String, String> query,
+            @RequestHeader(name = "Last-Event-ID", required = false) String lastEventId
+    ) {
+        try {
+            ControllerSupport.checkQuery(query.keySet());
+        } catch (InvalidParametersException e) {
+            return ResponseEntity.badRequest()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .body(new ErrorDto(e.getMessage()));
+        }
+        return configWatchService.watch(lastEventId);
+    }
+
+    @PostMapping("/")
+    public ResponseEntity<List<ConfigurationOperationResultDto>> applyBatch(
+            @RequestBody List<ConfigurationOperationRequestDto> operations,
+            @RequestParam(name = "atomic", defaultValue = "false") boolean atomic
+    ) throws InvalidParametersException, ProcessingException {
+        BatchRequest batch = new BatchRequest(operations);
+        if (atomic && batch.hasInvalid()) {
+            return ResponseEntity.status(batch.abort()).body(batch.getResults());
+        }
+
+        List<ConfigCacheResult> applied;
+        try {
+            applied = configService.applyBatch(batch.getAccepted(), atomic);
+        } catch (ConfigServiceException e) {
+            throw ControllerSupport.toProcessingException(e);
+        }
+        HttpStatus status = batch.complete(applied, atomic);
+        return ResponseEntity.status(status).body(batch.getResults());
     }
 
     @GetMapping("/{configId}")
-    public ConfigurationResponseDto getConfiguration(
-            @PathVariable(name = "configId") String configId
-    ) throws ConfigurationNotFoundException {
+    public ResponseEntity<?> getConfiguration(
+            @PathVariable(name = "configId") String configId,
+            @RequestHeader(name = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding
+    ) throws ProcessingException {
         try {
-            return configService.getConfiguration(configId);
+            return toResponseEntity(configService.getConfiguration(configId), HttpStatus.OK, ConfigService.GET_ERROR, configId,
+                    ControllerSupport.toResponseType(accept), acceptEncoding);
         } catch (ConfigServiceException e) {
-            throw new ConfigurationNotFoundException(e.getMessage() + " Caused by: " + e.getCause().getMessage());
+            throw ControllerSupport.toProcessingException(e);
         }
     }
 
     @PostMapping("/{configId}")
-    @ResponseStatus(value = HttpStatus.CREATED)
-    public ConfigurationResponseDto setConfiguration(
+    public ResponseEntity<?> setConfiguration(
             @PathVariable(name = "configId") String configId,
-            @RequestBody ConfigurationRequestDto configuration
-    ) throws InvalidParametersException, ConfigurationAlreadyExistsException, ProcessingException {
-        if (this.areParametersNotValid(configuration)) {
-            throw new InvalidParametersException("Submitted configuration parameters are not valid.");
-        }
+            @RequestBody ConfigurationRequestDto configuration,
+            @RequestHeader(name = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding
+    ) throws InvalidParametersException, ProcessingException {
+        ControllerSupport.checkParameters(configuration);
 
         try {
-            return configService.createConfiguration(configId, configuration.getName(), configuration.getValue());
+            ConfigCacheResult result = configService.createConfiguration(configId, configuration.getName(), configuration.getValue());
+            return toResponseEntity(result, HttpStatus.CREATED, ConfigService.CREATE_ERROR, configId, ControllerSupport.toResponseType(accept),
+                    acceptEncoding);
         } catch (ConfigServiceException e) {
-            Throwable cause = e.getCause();
-            if (cause.getMessage().contains("already in use")) {
-                throw new ConfigurationAlreadyExistsException(e.getMessage() + " Caused by: " + cause.getMessage());
-            } else {
-                throw new ProcessingException(e.getMessage() + " Caused by: " + cause.getMessage());
-            }
+            throw ControllerSupport.toProcessingException(e);
         }
     }
 
     @PutMapping("/{configId}")
-    public ConfigurationResponseDto updateConfiguration(
+    public ResponseEntity<?> updateConfiguration(
             @PathVariable(name = "configId") String configId,
-            @RequestBody ConfigurationRequestDto configuration
-    ) throws InvalidParametersException, ConfigurationNotFoundException, ProcessingException {
-        if (this.areParametersNotValid(configuration)) {
-            throw new InvalidParametersException("Submitted configuration parameters are not valid.");
-        }
+            @RequestBody ConfigurationRequestDto configuration,
+            @RequestHeader(name = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding
+    ) throws InvalidParametersException, ProcessingException {
+        ControllerSupport.checkParameters(configuration);
 
         try {
-            return configService.updateConfiguration(configId, configuration.getName(), configuration.getValue());
+            ConfigCacheResult result = configService.updateConfiguration(configId, configuration.getName(), configuration.getValue());
+            return toResponseEntity(result, HttpStatus.OK, ConfigService.UPDATE_ERROR, configId, ControllerSupport.toResponseType(accept),
+                    acceptEncoding);
         } catch (ConfigServiceException e) {
-            Throwable cause = e.getCause();
-            if (cause.getMessage().contains("No existing configuration")) {
-                throw new ConfigurationNotFoundException(e.getMessage() + " Caused by: " + cause.getMessage());
-            } else {
-                throw new ProcessingException(e.getMessage() + " Caused by: " + cause.getMessage());
-            }
+            throw ControllerSupport.toProcessingException(e);
         }
     }
 
     @DeleteMapping("/{configId}")
-    public ConfigurationResponseDto deleteConfiguration(
-            @PathVariable(name = "configId") String configId
-    ) throws ConfigurationNotFoundException, ProcessingException {
+    public ResponseEntity<?> deleteConfiguration(
+            @PathVariable(name = "configId") String configId,
+            @RequestHeader(name = HttpHeaders.ACCEPT, required = false) String accept,
+            @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding
+    ) throws ProcessingException {
         try {
-            return configService.deleteConfiguration(configId);
+            return toResponseEntity(configService.deleteConfiguration(configId), HttpStatus.OK, ConfigService.DELETE_ERROR, configId,
+                    ControllerSupport.toResponseType(accept), acceptEncoding);
         } catch (ConfigServiceException e) {
-            Throwable cause = e.getCause();
-            if (cause.getMessage().contains("No existing configuration")) {
-                throw new ConfigurationNotFoundException(e.getMessage() + " Caused by: " + cause.getMessage());
-            } else {
-                throw new ProcessingException(e.getMessage() + " Caused by: " + cause.getMessage());
-            }
+            throw ControllerSupport.toProcessingException(e);
         }
     }
 
@@ -104,27 +302,63 @@ public class Controller {
         return new ErrorDto(exception.getMessage());
     }
 
-    @ResponseStatus(value = HttpStatus.NOT_FOUND)
-    @ExceptionHandler(ConfigurationNotFoundException.class)
-    public ErrorDto handleConfigurationNotFoundException(Exception exception) {
+    @ResponseStatus(value = HttpStatus.INTERNAL_SERVER_ERROR)
+    @ExceptionHandler(ProcessingException.class)
+    public ErrorDto handleProcessingException(Exception exception) {
         return new ErrorDto(exception.getMessage());
     }
 
-    @ResponseStatus(value = HttpStatus.CONFLICT)
-    @ExceptionHandler(ConfigurationAlreadyExistsException.class)
-    public ErrorDto handleConfigurationAlreadyExistsException(Exception exception) {
+    @ResponseStatus(value = HttpStatus.SERVICE_UNAVAILABLE)
+    @ExceptionHandler(ServiceUnavailableException.class)
+    public ErrorDto handleServiceUnavailableException(Exception exception) {
         return new ErrorDto(exception.getMessage());
     }
 
-    @ResponseStatus(value = HttpStatus.INTERNAL_SERVER_ERROR)
-    @ExceptionHandler(ProcessingException.class)
-    public ErrorDto handleProcessingException(Exception exception) {
-        return new ErrorDto(exception.getMessage());
+    // errors are left to the message converters, which pick JSON or CBOR from the Accept header the same way
+    private ResponseEntity<?> toResponseEntity(ConfigCacheResult result, HttpStatus successStatus, String errorMessage, String configId,
+                                               MediaType type, String acceptEncoding) {
+        if (!result.isSuccess()) {
+            return ResponseEntity.status(ControllerSupport.toErrorStatus(result.getOutcome()))
+                    .body(new ErrorDto(ControllerSupport.toErrorMessage(result.getOutcome(), errorMessage, configId)));
+        }
+        ConfigurationResponseDto configuration = result.getConfiguration();
+        return toCompressibleResponse(ResponseEntity.status(successStatus), configuration.getId(), configuration.getVersion(), type,
+                ControllerSupport.isCbor(type) ? configuration.toCbor() : configuration.toJson(), acceptEncoding);
+    }
+
+    private ResponseEntity<byte[]> toCompressibleResponse(ResponseEntity.BodyBuilder response, String configId, long version, MediaType type,
+                                                          byte[] body, String acceptEncoding) {
+        String epoch = configService.getEpoch();
+        byte[] gzipped = responseCompressor.compress(ControllerSupport.toBodyKey(epoch, configId, version, type), body, acceptEncoding);
+        response.contentType(type)
+                .varyBy(HttpHeaders.ACCEPT, HttpHeaders.ACCEPT_ENCODING)
+                .eTag(ControllerSupport.toETag(epoch, version, type, gzipped != null));
+        if (gzipped == null) {
+            return response.body(body);
+        }
+        return response.header(HttpHeaders.CONTENT_ENCODING, ResponseCompressor.GZIP).body(gzipped);
+    }
+
+    private ResponseEntity<StreamingResponseBody> streamPage(String start, int limit) throws ProcessingException {
+        ConfigPage page;
+        try {
+            page = configService.getConfigurationRange("", null, start, limit);
+        } catch (ConfigServiceException e) {
+            throw ControllerSupport.toProcessingException(e);
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON);
+        if (page.getNext() != null) {
+            response.header(ControllerSupport.NEXT_CURSOR, PageCursor.encode(page.getNext()));
+        }
+        byte[] lines = ControllerSupport.toLines(page.getConfigurations());
+        return response.body(out -> out.write(lines));
     }
 
-    private boolean areParametersNotValid(ConfigurationRequestDto configurationRequest) {
-        boolean isNameNotValid = configurationRequest.getName() == null || configurationRequest.getName().isBlank();
-        boolean isValueNotValid = configurationRequest.getValue() == null || configurationRequest.getValue().isBlank();
-        return isNameNotValid || isValueNotValid;
+    private ResponseEntity<byte[]> toResponseEntity(ConfigPage page, MediaType type) {
+        ConfigurationPageResponseDto response = new ConfigurationPageResponseDto(page.getConfigurations(), PageCursor.encode(page.getNext()));
+        return ResponseEntity.ok()
+                .contentType(type)
+                .varyBy(HttpHeaders.ACCEPT)
+                .body(ControllerSupport.isCbor(type) ? response.toCbor() : response.toJson());
     }
 }
@@ -0,0 +1,289 @@
+package com.ercoles.configserver.controllers;
+
+import com.ercoles.configserver.dtos.ConfigurationChangeDto;
+import com.ercoles.configserver.dtos.ConfigurationChangesResponseDto;
+import com.ercoles.configserver.dtos.ConfigurationOperationRequestDto;
+import com.ercoles.configserver.dtos.ConfigurationOperationResultDto;
+import com.ercoles.configserver.dtos.ConfigurationRequestDto;
+import com.ercoles.configserver.dtos.ConfigurationResponseDto;
+import com.ercoles.configserver.repositories.ConfigCacheResult;
+import com.ercoles.configserver.repositories.ConfigCacheUnavailableException;
+import com.ercoles.configserver.repositories.ConfigChange;
+import com.ercoles.configserver.repositories.ConfigCheckpoint;
+import com.ercoles.configserver.repositories.ConfigOperation;
+import com.ercoles.configserver.services.ConfigService;
+import com.ercoles.configserver.services.ConfigServiceException;
+import com.ercoles.configserver.services.ConfigSyncService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+// parameter checks and result mappings shared by the servlet Controller and the reactive ConfigHandler, so both
+// stacks answer the same requests the same way
+final class ControllerSupport {
+    static final int DEFAULT_PAGE_SIZE = 100;
+    static final int MAX_PAGE_SIZE = 1000;
+    // the cursor of what follows a streamed page, the lines themselves only hold configurations
+    static final String NEXT_CURSOR = "Next-Cursor";
+    // the parameters that each pick what GET / answers with, and those each of them goes with; the listing itself
+    // takes the paging ones
+    private static final Map<String, Set<String>> QUERIES = Map.of(
+            "watch", Set.of(),
+            "since", Set.of("limit"),
+            "ids", Set.of(),
+            "prefix", Set.of("cursor", "limit"),
+            "from", Set.of("to", "cursor", "limit"));
+    private static final Set<String> LISTING = Set.of("cursor", "limit");
+    private static final Set<String> KNOWN = Set.of("watch", "since", "ids", "prefix", "from", "to", "cursor", "limit");
+
+    private ControllerSupport() {
+    }
+
+    // accepts both repeated parameters and comma-separated lists, Spring only splits the latter when it is alone
+    static Set<String> toUniqueIds(List<String> configIds) throws InvalidParametersException {
+        Set<String> uniqueIds = new LinkedHashSet<>();
+        for (String configId : configIds) {
+            for (String splitId : configId.split(",")) {
+                if (!splitId.isBlank()) {
+                    uniqueIds.add(splitId);
+                }
+            }
+        }
+        if (uniqueIds.isEmpty()) {
+            throw new InvalidParametersException("Submitted configuration IDs are not valid.");
+        }
+        return uniqueIds;
+    }
+
+    static void checkPageSize(int limit) throws InvalidParametersException {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new InvalidParametersException("Submitted page size is not valid, it must be between 1 and " + MAX_PAGE_SIZE + ".");
+        }
+    }
+
+    // for limits that arrive as text; the servlet Controller has Spring convert them
+    static int toPageSize(String limit) throws InvalidParametersException {
+        int pageSize = 0;
+        if (limit == null) {
+            pageSize = DEFAULT_PAGE_SIZE;
+        } else if (limit.matches("\\d{1,9}")) {
+            pageSize = Integer.parseInt(limit);
+        }
+        checkPageSize(pageSize);
+        return pageSize;
+    }
+
+    // a request mixing parameters of different queries is refused rather than answered for one of them; parameters
+    // the server doesn't know, such as cache busters, are left alone
+    static void checkQuery(Set<String> parameters) throws InvalidParametersException {
+        String query = null;
+        for (String parameter : parameters) {
+            if (QUERIES.containsKey(parameter)) {
+                if (query != null) {
+                    throw new InvalidParametersException("Submitted query parameters cannot be combined.");
+                }
+                query = parameter;
+            }
+        }
+        Set<String> allowed = query == null ? LISTING : QUERIES.get(query);
+        for (String parameter : parameters) {
+            if (KNOWN.contains(parameter) && !parameter.equals(query) && !allowed.contains(parameter)) {
+                throw new InvalidParametersException("Submitted query parameters cannot be combined.");
+            }
+        }
+    }
+
+    static void checkRange(String from, String to) throws InvalidParametersException {
+        if (to != null && to.compareTo(from) < 0) {
+            throw new InvalidParametersException("Submitted range is not valid.");
+        }
+    }
+
+    static void checkParameters(ConfigurationRequestDto configuration) throws InvalidParametersException {
+        if (configuration == null || areParametersNotValid(configuration.getName(), configuration.getValue())) {
+            throw new InvalidParametersException("Submitted configuration parameters are not valid.");
+        }
+    }
+
+    // a store that may answer on a later try gets a 503 rather than a 500
+    static ProcessingException toProcessingException(ConfigServiceException e) {
+        String message = e.getMessage() + " Caused by: " + e.getCause().getMessage();
+        if (e.getCause() instanceof ConfigCacheUnavailableException) {
+            return new ServiceUnavailableException(message);
+        }
+        return new ProcessingException(message);
+    }
+
+    static ConfigurationOperationResultDto toResult(ConfigOperation operation, ConfigCacheResult result) {
+        HttpStatus successStatus = HttpStatus.OK;
+        String errorMessage = ConfigService.DELETE_ERROR;
+        switch (operation.getType()) {
+            case CREATE:
+                successStatus = HttpStatus.CREATED;
+                errorMessage = ConfigService.CREATE_ERROR;
+                break;
+            case UPDATE:
+                errorMessage = ConfigService.UPDATE_ERROR;
+                break;
+            default:
+        }
+        if (!result.isSuccess()) {
+            return new ConfigurationOperationResultDto(operation.getId(), toErrorStatus(result.getOutcome()).value(), null,
+                    toErrorMessage(result.getOutcome(), errorMessage, operation.getId()));
+        }
+        return new ConfigurationOperationResultDto(operation.getId(), successStatus.value(), result.getConfiguration(), null);
+    }
+
+    static HttpStatus toErrorStatus(ConfigCacheResult.Outcome outcome) {
+        switch (outcome) {
+            case NOT_FOUND:
+                return HttpStatus.NOT_FOUND;
+            case CONFLICT:
+                return HttpStatus.CONFLICT;
+            case UNSUPPORTED:
+                return HttpStatus.UNPROCESSABLE_ENTITY;
+            case UNAVAILABLE:
+                return HttpStatus.SERVICE_UNAVAILABLE;
+            default:
+                return HttpStatus.FAILED_DEPENDENCY;
+        }
+    }
+
+    static String toErrorMessage(ConfigCacheResult.Outcome outcome, String errorMessage, String configId) {
+        switch (outcome) {
+            case NOT_FOUND:
+                return errorMessage + " Caused by: No existing configuration for ID " + configId + ".";
+            case CONFLICT:
+                return errorMessage + " Caused by: ID " + configId + " is already in use.";
+            case UNSUPPORTED:
+                return errorMessage + " Caused by: The configurations of the atomic batch are held by different instances.";
+            case UNAVAILABLE:
+                return errorMessage + " Caused by: The instance holding configuration " + configId + " could not be reached.";
+            default:
+                return errorMessage + " Caused by: Another operation of the atomic batch failed.";
+        }
+    }
+
+    // GET requests whose If-None-Match matches this tag are answered with 304 and no body; the epoch of the instance
+    // comes first, as in sync cursors, so that a tag from before a restart, or from another instance, never matches
+    static String toETag(String epoch, long version) {
+        return "\"" + epoch + ":" + version + "\"";
+    }
+
+    // each representation has a tag of its own, so that a cached JSON body is never taken for the CBOR one
+    static String toETag(String epoch, long version, MediaType type) {
+        return isCbor(type) ? "\"" + epoch + ":" + version + "-cbor\"" : toETag(epoch, version);
+    }
+
+    // and so has each content coding, strong tags are only shared by identical bytes
+    static String toETag(String epoch, long version, MediaType type, boolean gzip) {
+        String tag = toETag(epoch, version, type);
+        return gzip ? tag.substring(0, tag.length() - 1) + "-gzip\"" : tag;
+    }
+
+    // what a strong tag stands for, the bytes of one representation, of the listing when configId is null; the
+    // versions of configurations held by different instances of a sharded cluster aren't drawn from the same sequence
+    static String toBodyKey(String epoch, String configId, long version, MediaType type) {
+        String tag = toETag(epoch, version, type);
+        return configId == null ? tag : tag + configId;
+    }
+
+    // CBOR for clients that name it and prefer it to JSON; anything else, wildcards included, gets JSON. Most requests
+    // don't mention CBOR at all and are answered without parsing the header
+    static MediaType toResponseType(String accept) {
+        if (accept == null || !accept.toLowerCase(Locale.ROOT).contains("cbor")) {
+            return MediaType.APPLICATION_JSON;
+        }
+        List<MediaType> accepted;
+        try {
+            accepted = MediaType.parseMediaTypes(accept);
+        } catch (InvalidMediaTypeException e) {
+            return MediaType.APPLICATION_JSON;
+        }
+        MediaType.sortBySpecificityAndQuality(accepted);
+        for (MediaType type : accepted) {
+            if (type.getQualityValue() == 0) {
+                continue;
+            }
+            if (type.isConcrete() && type.isCompatibleWith(MediaType.APPLICATION_CBOR)) {
+                return MediaType.APPLICATION_CBOR;
+            }
+            if (type.isCompatibleWith(MediaType.APPLICATION_JSON)) {
+                return MediaType.APPLICATION_JSON;
+            }
+        }
+        return MediaType.APPLICATION_JSON;
+    }
+
+    static boolean isCbor(MediaType type) {
+        return MediaType.APPLICATION_CBOR.equals(type);
+    }
+
+    // the changes from the cursor on, or, for a first sync or a client the change log has left behind, every
+    // configuration together with the cursor of the first change they don't include
+    static ConfigurationChangesResponseDto sync(ConfigSyncService syncService, String since, int limit)
+            throws InvalidParametersException, ConfigServiceException {
+        SyncCursor cursor = SyncCursor.decode(since);
+        String epoch = syncService.getEpoch();
+        List<ConfigChange> changes = cursor == null ? null : syncService.getChanges(cursor.epoch, cursor.offset, limit);
+        if (changes == null) {
+            ConfigCheckpoint checkpoint = syncService.checkpoint();
+            return new ConfigurationChangesResponseDto(true, null, checkpoint.getConfigurations(),
+                    SyncCursor.encode(epoch, checkpoint.getOffset()));
+        }
+        List<ConfigurationChangeDto> dtos = new ArrayList<>(changes.size());
+        for (ConfigChange change : changes) {
+            dtos.add(new ConfigurationChangeDto(change.getType().name().toLowerCase(Locale.ROOT), change.getSequence(),
+                    change.getConfiguration()));
+        }
+        return new ConfigurationChangesResponseDto(false, dtos, null, SyncCursor.encode(epoch, cursor.offset + changes.size()));
+    }
+
+    // one JSON object per line, for the streamed listing
+    static byte[] toLines(List<ConfigurationResponseDto> configurations) {
+        int length = 0;
+        for (ConfigurationResponseDto configuration : configurations) {
+            length += configuration.toJson().length + 1;
+        }
+        byte[] lines = new byte[length];
+        int position = 0;
+        for (ConfigurationResponseDto configuration : configurations) {
+            byte[] json = configuration.toJson();
+            System.arraycopy(json, 0, lines, position, json.length);
+            position += json.length;
+            lines[position++] = '\n';
+        }
+        return lines;
+    }
+
+    static ConfigOperation toConfigOperation(ConfigurationOperationRequestDto operation) {
+        if (operation == null || operation.getOp() == null || operation.getId() == null || operation.getId().isBlank()) {
+            return null;
+        }
+        switch (operation.getOp().toLowerCase(Locale.ROOT)) {
+            case "create":
+                return areParametersNotValid(operation.getName(), operation.getValue()) ? null
+                        : ConfigOperation.create(operation.getId(), operation.getName(), operation.getValue());
+            case "update":
+                return areParametersNotValid(operation.getName(), operation.getValue()) ? null
+                        : ConfigOperation.update(operation.getId(), operation.getName(), operation.getValue());
+            case "delete":
+                return ConfigOperation.delete(operation.getId());
+            default:
+                return null;
+        }
+    }
+
+    private static boolean areParametersNotValid(String name, String value) {
+        boolean isNameNotValid = name == null || name.isBlank();
+        boolean isValueNotValid = value == null || value.isBlank();
+        return isNameNotValid || isValueNotValid;
+    }
+}
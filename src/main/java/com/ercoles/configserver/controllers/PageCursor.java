@@ -0,0 +1,25 @@
+package com.ercoles.configserver.controllers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+// cursors handed to clients are the ID a page starts from, encoded so that clients treat them as opaque
+final class PageCursor {
+    private PageCursor() {
+    }
+
+    static String encode(String id) {
+        return id == null ? null : Base64.getUrlEncoder().withoutPadding().encodeToString(id.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String decode(String cursor) throws InvalidParametersException {
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidParametersException("Submitted cursor is not valid.");
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.ercoles.configserver.controllers;
+
+import com.ercoles.configserver.dtos.ConfigurationOperationRequestDto;
+import com.ercoles.configserver.dtos.ConfigurationResponseDto;
+import com.ercoles.configserver.dtos.ErrorDto;
+import com.ercoles.configserver.dtos.ReplicationApplyResponseDto;
+import com.ercoles.configserver.repositories.ConfigCacheResult;
+import com.ercoles.configserver.repositories.ConfigChange;
+import com.ercoles.configserver.repositories.ConfigCheckpoint;
+import com.ercoles.configserver.repositories.ConfigOperation;
+import com.ercoles.configserver.services.ConfigServiceException;
+import com.ercoles.configserver.services.ReplicationService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// what followers of this instance call: a checkpoint to start from, the change log to follow from its offset, and the
+// writes they forward
+@RestController
+@RequestMapping("/replication")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(name = "configserver.replication.role", havingValue = "leader")
+public class ReplicationController {
+    static final String EPOCH_HEADER = "Replication-Epoch";
+    static final String OFFSET_HEADER = "Replication-Offset";
+
+    private final ReplicationService replicationService;
+    private final ObjectMapper objectMapper;
+
+    public ReplicationController(@Autowired ReplicationService replicationService, @Autowired ObjectMapper objectMapper) {
+        this.replicationService = replicationService;
+        this.objectMapper = objectMapper;
+    }
+
+    // every configuration as newline-delimited JSON, with versions; the headers tell where to follow the log from
+    @GetMapping("/snapshot")
+    public ResponseEntity<StreamingResponseBody> getSnapshot() throws ProcessingException {
+        ConfigCheckpoint checkpoint;
+        try {
+            checkpoint = replicationService.checkpoint();
+        } catch (ConfigServiceException e) {
+            throw ControllerSupport.toProcessingException(e);
+        }
+        StreamingResponseBody body = out -> {
+            for (ConfigurationResponseDto configuration : checkpoint.getConfigurations()) {
+                ConfigChange entry = new ConfigChange(ConfigChange.Type.CREATED, configuration.getVersion(), configuration);
+                out.write(objectMapper.writeValueAsBytes(ReplicationService.toDto(null, entry)));
+                out.write('\n');
+            }
+        };
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .header(EPOCH_HEADER, replicationService.getEpoch())
+                .header(OFFSET_HEADER, Long.toString(checkpoint.getOffset()))
+                .body(body);
+    }
+
+    // 410 when the log no longer holds the offset, or it is from another epoch: the follower needs a new snapshot
+    @GetMapping("/changes")
+    public ResponseEntity<ResponseBodyEmitter> getChanges(
+            @RequestParam(name = "epoch") String epoch,
+            @RequestParam(name = "from") long from
+    ) {
+        if (!replicationService.isOpen()) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        if (!replicationService.canResume(epoch, from)) {
+            return ResponseEntity.status(HttpStatus.GONE).build();
+        }
+        ResponseBodyEmitter changes = replicationService.streamChanges(from);
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(changes);
+    }
+
+    // the operations arrive checked by the follower; the offset in the response is past every change they made
+    @PostMapping("/apply")
+    public ReplicationApplyResponseDto apply(
+            @RequestBody List<ConfigurationOperationRequestDto> operations,
+            @RequestParam(name = "atomic", defaultValue = "false") boolean atomic
+    ) throws InvalidParametersException, ProcessingException {
+        List<ConfigOperation> parsed = new ArrayList<>(operations.size());
+        for (ConfigurationOperationRequestDto operation : operations) {
+            ConfigOperation configOperation = ControllerSupport.toConfigOperation(operation);
+            if (configOperation == null) {
+                throw new InvalidParametersException("Submitted configuration parameters are not valid.");
+            }
+            parsed.add(configOperation);
+        }
+
+        try {
+            List<ConfigCacheResult> results = replicationService.apply(parsed, atomic);
+            return new ReplicationApplyResponseDto(replicationService.getEpoch(), replicationService.getOffset(),
+                    ReplicationService.toDtos(parsed, results));
+        } catch (ConfigServiceException e) {
+            throw ControllerSupport.toProcessingException(e);
+        }
+    }
+
+    @ResponseStatus(value = HttpStatus.BAD_REQUEST)
+    @ExceptionHandler(InvalidParametersException.class)
+    public ErrorDto handleInvalidParametersException(Exception exception) {
+        return new ErrorDto(exception.getMessage());
+    }
+
+    @ResponseStatus(value = HttpStatus.INTERNAL_SERVER_ERROR)
+    @ExceptionHandler(ProcessingException.class)
+    public ErrorDto handleProcessingException(Exception exception) {
+        return new ErrorDto(exception.getMessage());
+    }
+}
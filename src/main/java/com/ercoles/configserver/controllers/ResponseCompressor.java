@@ -0,0 +1,147 @@
+package com.ercoles.configserver.controllers;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+// gzip for the listing and single configurations, compressed once per body rather than once per response. A body is
+// known by the same epoch, version and representation as its strong tag, plus the ID of its configuration: not every
+// store keeps the same array for as long as a version lasts, the compact and off-heap listings and the entries of a
+// deduplicating store are encoded again on every request. server.compression would compress them again every time.
+// Bodies smaller than min-size are sent as they are, the gzip header isn't worth it
+@Component
+public class ResponseCompressor {
+    static final String GZIP = "gzip";
+
+    private final boolean enabled;
+    private final int minSize;
+    // bodies of versions that are gone are never asked for again and make way for newer ones
+    private final Cache<String, byte[]> compressed;
+    private final Counter compressedResponses;
+    private final Counter smallResponses;
+    private final Counter identityResponses;
+
+    public ResponseCompressor() {
+        this(true, 2048, 64 << 20, (MeterRegistry) null);
+    }
+
+    @Autowired
+    public ResponseCompressor(
+            @Value("${configserver.compression.enabled:true}") boolean enabled,
+            @Value("${configserver.compression.min-size:2048}") int minSize,
+            @Value("${configserver.compression.cache-size:67108864}") long cacheSize,
+            ObjectProvider<MeterRegistry> meterRegistry
+    ) {
+        this(enabled, minSize, cacheSize, meterRegistry.getIfAvailable());
+    }
+
+    public ResponseCompressor(boolean enabled, int minSize, long cacheSize, MeterRegistry registry) {
+        this.enabled = enabled;
+        this.minSize = minSize;
+        this.compressed = Caffeine.newBuilder()
+                .maximumWeight(cacheSize)
+                .weigher((String key, byte[] gzipped) -> key.length() + gzipped.length)
+                .recordStats()
+                .build();
+        if (registry == null) {
+            this.compressedResponses = null;
+            this.smallResponses = null;
+            this.identityResponses = null;
+            return;
+        }
+        this.compressedResponses = responses(registry, "compressed");
+        this.smallResponses = responses(registry, "below_min_size");
+        this.identityResponses = responses(registry, "not_accepted");
+        Gauge.builder("configserver.compression.min.size", () -> minSize)
+                .description("Smallest response body that is compressed")
+                .baseUnit("bytes")
+                .register(registry);
+        // cache.gets by result is the share of compressed responses that cost no compression
+        CaffeineCacheMetrics.monitor(registry, compressed, "configserver.compression");
+    }
+
+    // the gzip encoding of body, or null when it is to be sent as it is; the key stands for the bytes of body, see
+    // ControllerSupport.toBodyKey
+    byte[] compress(String key, byte[] body, String acceptEncoding) {
+        if (!enabled) {
+            return null;
+        }
+        if (!acceptsGzip(acceptEncoding)) {
+            count(identityResponses);
+            return null;
+        }
+        if (body.length < minSize) {
+            count(smallResponses);
+            return null;
+        }
+        count(compressedResponses);
+        return compressed.get(key, unused -> gzip(body));
+    }
+
+    // gzip named with a non-zero quality, or else the wildcard; identity stays acceptable either way
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        Boolean wildcard = null;
+        for (String coding : acceptEncoding.split(",")) {
+            String[] parameters = coding.split(";");
+            String name = parameters[0].trim().toLowerCase(Locale.ROOT);
+            boolean accepted = parameters.length < 2 || !isZeroQuality(parameters[1]);
+            if (name.equals(GZIP) || name.equals("x-gzip")) {
+                return accepted;
+            }
+            if (name.equals("*")) {
+                wildcard = accepted;
+            }
+        }
+        return wildcard != null && wildcard;
+    }
+
+    private static boolean isZeroQuality(String parameter) {
+        String[] quality = parameter.trim().split("=");
+        return quality.length == 2 && quality[0].trim().equalsIgnoreCase("q") && quality[1].trim().matches("0(\\.0{0,3})?");
+    }
+
+    private static void count(Counter counter) {
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
+    private static Counter responses(MeterRegistry registry, String result) {
+        return Counter.builder("configserver.compression.responses")
+                .description("Listing and configuration responses, by whether they were compressed")
+                .tag("result", result)
+                .register(registry);
+    }
+
+    // done once per body, so at the best level
+    private static byte[] gzip(byte[] body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out) {
+            {
+                def.setLevel(Deflater.BEST_COMPRESSION);
+            }
+        }) {
+            gzip.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
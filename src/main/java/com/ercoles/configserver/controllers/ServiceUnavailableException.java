@@ -0,0 +1,7 @@
+package com.ercoles.configserver.controllers;
+
+public class ServiceUnavailableException extends ProcessingException {
+    public ServiceUnavailableException(String message) {
+        super(message);
+    }
+}
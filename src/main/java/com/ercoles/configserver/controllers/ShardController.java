@@ -0,0 +1,142 @@
+package com.ercoles.configserver.controllers;
+
+import com.ercoles.configserver.dtos.ConfigurationOperationRequestDto;
+import com.ercoles.configserver.dtos.ErrorDto;
+import com.ercoles.configserver.dtos.ReplicationChangeDto;
+import com.ercoles.configserver.dtos.ReplicationResultDto;
+import com.ercoles.configserver.dtos.ShardConfigurationDto;
+import com.ercoles.configserver.dtos.ShardMembersDto;
+import com.ercoles.configserver.dtos.ShardPageDto;
+import com.ercoles.configserver.repositories.ConfigCacheResult;
+import com.ercoles.configserver.repositories.ConfigCacheSharded;
+import com.ercoles.configserver.repositories.ConfigLookup;
+import com.ercoles.configserver.repositories.ConfigOperation;
+import com.ercoles.configserver.services.ConfigServiceException;
+import com.ercoles.configserver.services.ReplicationService;
+import com.ercoles.configserver.services.ShardService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+// what the other instances of a sharded cluster call: membership changes, the configurations handed over on those,
+// the changes of their shares, and the operations, lookups and listings of this instance's share; operations on IDs
+// this instance does not hold are answered with 421, the sender then asks for the members and tries again. See
+// ShardHandler for the reactive stack
+@RestController
+@RequestMapping("/shard")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(name = "configserver.sharding.enabled", havingValue = "true")
+public class ShardController {
+    private final ShardService shardService;
+
+    public ShardController(@Autowired ShardService shardService) {
+        this.shardService = shardService;
+    }
+
+    @GetMapping("/members")
+    public ShardMembersDto getMembers() throws ProcessingException {
+        try {
+            return ShardSupport.toDto(shardService.getMembers());
+        } catch (ConfigServiceException e) {
+            throw ControllerSupport.toProcessingException(e);
+        }
+    }
+
+    // answers once the configurations the new member holds have been handed over to it
+    @PostMapping("/members")
+    public ShardMembersDto addMember(@RequestParam(name = "uri") String uri) throws ProcessingException {
+        try {
+            return ShardSupport.toDto(shardService.addMember(uri));
+        } catch (ConfigServiceException e) {
+            throw ControllerSupport.toProcessingException(e);
+        }
+    }
+
+    @DeleteMapping("/members")
+    public ShardMembersDto removeMember(@RequestParam(name = "uri") String uri) throws ProcessingException {
+        try {
+            return ShardSupport.toDto(shardService.removeMember(uri));
+        } catch (ConfigServiceException e) {
+            throw ControllerSupport.toProcessingException(e);
+        }
+    }
+
+    @PostMapping("/handoff")
+    public void acceptHandoff(@RequestBody List<ShardConfigurationDto> configurations) throws ProcessingException {
+        try {
+            shardService.acceptHandoff(ShardSupport.toConfigurations(configurations));
+        } catch (ConfigServiceException e) {
+            throw ControllerSupport.toProcessingException(e);
+        }
+    }
+
+    // the changes of the sender's share, for the listeners of this instance; gap when the sender dropped some before
+    @PostMapping("/changes")
+    public void acceptChanges(
+            @RequestBody List<ReplicationChangeDto> changes,
+            @RequestParam(name = "gap", defaultValue = "false") boolean gap
+    ) {
+        shardService.acceptChanges(ShardSupport.toChanges(changes), gap);
+    }
+
+    @PostMapping("/lookup")
+    public ResponseEntity<ShardPageDto> getConfigurations(@RequestBody List<String> ids) throws ProcessingException {
+        try {
+            ConfigLookup lookup = shardService.getConfigurations(ids);
+            if (lookup == null) {
+                return ResponseEntity.status(ConfigCacheSharded.MISDIRECTED).build();
+            }
+            return ResponseEntity.ok(ShardSupport.toDto(0, lookup.getConfigurations(), null));
+        } catch (ConfigServiceException e) {
+            throw ControllerSupport.toProcessingException(e);
+        }
+    }
+
+    // the whole share, with the version of the store, or a page of it when a range is given
+    @GetMapping("/configurations")
+    public ShardPageDto getConfigurations(
+            @RequestParam(name = "from", required = false) String from,
+            @RequestParam(name = "to", required = false) String to,
+            @RequestParam(name = "limit", required = false) Integer limit
+    ) throws InvalidParametersException, ProcessingException {
+        try {
+            return ShardSupport.getConfigurations(shardService, from, to, limit == null ? ControllerSupport.DEFAULT_PAGE_SIZE : limit);
+        } catch (ConfigServiceException e) {
+            throw ControllerSupport.toProcessingException(e);
+        }
+    }
+
+    @PostMapping("/apply")
+    public ResponseEntity<List<ReplicationResultDto>> apply(
+            @RequestBody List<ConfigurationOperationRequestDto> operations,
+            @RequestParam(name = "atomic", defaultValue = "false") boolean atomic
+    ) throws InvalidParametersException, ProcessingException {
+        List<ConfigOperation> parsed = ShardSupport.toOperations(operations);
+        try {
+            List<ConfigCacheResult> results = shardService.apply(parsed, atomic);
+            if (results == null) {
+                return ResponseEntity.status(ConfigCacheSharded.MISDIRECTED).build();
+            }
+            return ResponseEntity.ok(ReplicationService.toDtos(parsed, results));
+        } catch (ConfigServiceException e) {
+            throw ControllerSupport.toProcessingException(e);
+        }
+    }
+
+    @ResponseStatus(value = HttpStatus.BAD_REQUEST)
+    @ExceptionHandler(InvalidParametersException.class)
+    public ErrorDto handleInvalidParametersException(Exception exception) {
+        return new ErrorDto(exception.getMessage());
+    }
+
+    @ResponseStatus(value = HttpStatus.INTERNAL_SERVER_ERROR)
+    @ExceptionHandler(ProcessingException.class)
+    public ErrorDto handleProcessingException(Exception exception) {
+        return new ErrorDto(exception.getMessage());
+    }
+}
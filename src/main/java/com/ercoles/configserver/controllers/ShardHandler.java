@@ -0,0 +1,144 @@
+package com.ercoles.configserver.controllers;
+
+import com.ercoles.configserver.dtos.ConfigurationOperationRequestDto;
+import com.ercoles.configserver.dtos.ErrorDto;
+import com.ercoles.configserver.dtos.ReplicationChangeDto;
+import com.ercoles.configserver.dtos.ShardConfigurationDto;
+import com.ercoles.configserver.repositories.ConfigCacheResult;
+import com.ercoles.configserver.repositories.ConfigCacheSharded;
+import com.ercoles.configserver.repositories.ConfigLookup;
+import com.ercoles.configserver.repositories.ConfigOperation;
+import com.ercoles.configserver.services.ConfigServiceException;
+import com.ercoles.configserver.services.ReplicationService;
+import com.ercoles.configserver.services.ShardService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+// the routes of ShardController for the reactive stack, see ConfigRouter. Membership changes call the other
+// instances and wait for the handoff, and the share may be kept by a durable store, so every route runs on a thread
+// that may block rather than on the event loop
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@ConditionalOnProperty(name = "configserver.sharding.enabled", havingValue = "true")
+public class ShardHandler {
+    private static final ParameterizedTypeReference<List<ShardConfigurationDto>> CONFIGURATIONS =
+            new ParameterizedTypeReference<>() {
+            };
+    private static final ParameterizedTypeReference<List<ReplicationChangeDto>> CHANGES =
+            new ParameterizedTypeReference<>() {
+            };
+    private static final ParameterizedTypeReference<List<String>> IDS =
+            new ParameterizedTypeReference<>() {
+            };
+    private static final ParameterizedTypeReference<List<ConfigurationOperationRequestDto>> OPERATIONS =
+            new ParameterizedTypeReference<>() {
+            };
+
+    private final ShardService shardService;
+
+    public ShardHandler(@Autowired ShardService shardService) {
+        this.shardService = shardService;
+    }
+
+    public Mono<ServerResponse> getMembers(ServerRequest request) {
+        return ok(() -> ShardSupport.toDto(shardService.getMembers()));
+    }
+
+    // answers once the configurations the new member holds have been handed over to it
+    public Mono<ServerResponse> addMember(ServerRequest request) {
+        return ok(() -> ShardSupport.toDto(shardService.addMember(uriOf(request))));
+    }
+
+    public Mono<ServerResponse> removeMember(ServerRequest request) {
+        return ok(() -> ShardSupport.toDto(shardService.removeMember(uriOf(request))));
+    }
+
+    public Mono<ServerResponse> acceptHandoff(ServerRequest request) {
+        return request.bodyToMono(CONFIGURATIONS)
+                .defaultIfEmpty(List.of())
+                .flatMap(configurations -> blocking(() -> {
+                    shardService.acceptHandoff(ShardSupport.toConfigurations(configurations));
+                    return configurations;
+                }))
+                .flatMap(configurations -> ServerResponse.ok().build())
+                .onErrorMap(ConfigServiceException.class, ControllerSupport::toProcessingException);
+    }
+
+    // the changes of the sender's share, for the listeners of this instance; gap when the sender dropped some before
+    public Mono<ServerResponse> acceptChanges(ServerRequest request) {
+        boolean gap = request.queryParam("gap").map(Boolean::parseBoolean).orElse(false);
+        return request.bodyToMono(CHANGES)
+                .defaultIfEmpty(List.of())
+                .flatMap(changes -> blocking(() -> {
+                    shardService.acceptChanges(ShardSupport.toChanges(changes), gap);
+                    return changes;
+                }))
+                .flatMap(changes -> ServerResponse.ok().build());
+    }
+
+    public Mono<ServerResponse> getConfigurations(ServerRequest request) {
+        return request.bodyToMono(IDS)
+                .defaultIfEmpty(List.of())
+                .flatMap(ids -> blocking(() -> {
+                    ConfigLookup lookup = shardService.getConfigurations(ids);
+                    return lookup == null ? null : ShardSupport.toDto(0, lookup.getConfigurations(), null);
+                }))
+                .flatMap(page -> ServerResponse.ok().bodyValue(page))
+                .switchIfEmpty(Mono.defer(() -> ServerResponse.status(ConfigCacheSharded.MISDIRECTED).build()))
+                .onErrorMap(ConfigServiceException.class, ControllerSupport::toProcessingException);
+    }
+
+    // the whole share, with the version of the store, or a page of it when a range is given
+    public Mono<ServerResponse> getConfigurationPage(ServerRequest request) {
+        return ok(() -> ShardSupport.getConfigurations(shardService, request.queryParam("from").orElse(null),
+                request.queryParam("to").orElse(null), ControllerSupport.toPageSize(request.queryParam("limit").orElse(null))));
+    }
+
+    public Mono<ServerResponse> apply(ServerRequest request) {
+        boolean atomic = request.queryParam("atomic").map(Boolean::parseBoolean).orElse(false);
+        return request.bodyToMono(OPERATIONS)
+                .defaultIfEmpty(List.of())
+                .flatMap(operations -> blocking(() -> {
+                    List<ConfigOperation> parsed = ShardSupport.toOperations(operations);
+                    List<ConfigCacheResult> results = shardService.apply(parsed, atomic);
+                    return results == null ? null : ReplicationService.toDtos(parsed, results);
+                }))
+                .flatMap(results -> ServerResponse.ok().bodyValue(results))
+                .switchIfEmpty(Mono.defer(() -> ServerResponse.status(ConfigCacheSharded.MISDIRECTED).build()))
+                .onErrorMap(ConfigServiceException.class, ControllerSupport::toProcessingException);
+    }
+
+    public Mono<ServerResponse> handleInvalidParametersException(Throwable exception, ServerRequest request) {
+        return ServerResponse.badRequest().bodyValue(new ErrorDto(exception.getMessage()));
+    }
+
+    public Mono<ServerResponse> handleProcessingException(Throwable exception, ServerRequest request) {
+        return ServerResponse.status(HttpStatus.INTERNAL_SERVER_ERROR).bodyValue(new ErrorDto(exception.getMessage()));
+    }
+
+    private Mono<ServerResponse> ok(Callable<?> call) {
+        return blocking(call)
+                .flatMap(body -> ServerResponse.ok().bodyValue(body))
+                .onErrorMap(ConfigServiceException.class, ControllerSupport::toProcessingException);
+    }
+
+    // empty when the call gives null
+    private static <T> Mono<T> blocking(Callable<T> call) {
+        return Mono.fromCallable(call).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private static String uriOf(ServerRequest request) throws InvalidParametersException {
+        return request.queryParam("uri").orElseThrow(() -> new InvalidParametersException("Submitted member URI is missing."));
+    }
+}
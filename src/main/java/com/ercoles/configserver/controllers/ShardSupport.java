@@ -0,0 +1,83 @@
+package com.ercoles.configserver.controllers;
+
+import com.ercoles.configserver.dtos.ConfigurationOperationRequestDto;
+import com.ercoles.configserver.dtos.ConfigurationResponseDto;
+import com.ercoles.configserver.dtos.ReplicationChangeDto;
+import com.ercoles.configserver.dtos.ShardConfigurationDto;
+import com.ercoles.configserver.dtos.ShardMembersDto;
+import com.ercoles.configserver.dtos.ShardPageDto;
+import com.ercoles.configserver.repositories.ConfigCacheSharded;
+import com.ercoles.configserver.repositories.ConfigChange;
+import com.ercoles.configserver.repositories.ConfigOperation;
+import com.ercoles.configserver.repositories.ConfigPage;
+import com.ercoles.configserver.repositories.ConfigSnapshot;
+import com.ercoles.configserver.services.ConfigServiceException;
+import com.ercoles.configserver.services.ShardService;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+// request and response mappings shared by the servlet ShardController and the reactive ShardHandler, so instances of
+// either stack can share a cluster
+final class ShardSupport {
+
+    private ShardSupport() {
+    }
+
+    // the whole share, with the version of the store, or a page of it when a range is given
+    static ShardPageDto getConfigurations(ShardService shardService, String from, String to, int limit)
+            throws InvalidParametersException, ConfigServiceException {
+        if (from == null) {
+            ConfigSnapshot snapshot = shardService.getAll();
+            ShardPageDto share = toDto(snapshot.getVersion(), snapshot, null);
+            share.setEpoch(shardService.getEpoch());
+            return share;
+        }
+        ControllerSupport.checkPageSize(limit);
+        ControllerSupport.checkRange(from, to);
+        ConfigPage page = shardService.getConfigurationRange(from, to, limit);
+        return toDto(0, page.getConfigurations(), page.getNext());
+    }
+
+    static List<ConfigOperation> toOperations(List<ConfigurationOperationRequestDto> operations) throws InvalidParametersException {
+        List<ConfigOperation> parsed = new ArrayList<>(operations.size());
+        for (ConfigurationOperationRequestDto operation : operations) {
+            ConfigOperation configOperation = ControllerSupport.toConfigOperation(operation);
+            if (configOperation == null) {
+                throw new InvalidParametersException("Submitted configuration parameters are not valid.");
+            }
+            parsed.add(configOperation);
+        }
+        return parsed;
+    }
+
+    static List<ConfigurationResponseDto> toConfigurations(List<ShardConfigurationDto> configurations) {
+        List<ConfigurationResponseDto> handedOver = new ArrayList<>(configurations.size());
+        for (ShardConfigurationDto configuration : configurations) {
+            handedOver.add(ConfigCacheSharded.toConfiguration(configuration));
+        }
+        return handedOver;
+    }
+
+    static List<ConfigChange> toChanges(List<ReplicationChangeDto> changes) {
+        List<ConfigChange> accepted = new ArrayList<>(changes.size());
+        for (ReplicationChangeDto change : changes) {
+            accepted.add(ConfigCacheSharded.toChange(change));
+        }
+        return accepted;
+    }
+
+    static ShardMembersDto toDto(Set<String> members) {
+        return new ShardMembersDto(new ArrayList<>(members));
+    }
+
+    static ShardPageDto toDto(long version, Collection<ConfigurationResponseDto> configurations, String next) {
+        List<ShardConfigurationDto> dtos = new ArrayList<>(configurations.size());
+        for (ConfigurationResponseDto configuration : configurations) {
+            dtos.add(ConfigCacheSharded.toDto(configuration));
+        }
+        return new ShardPageDto(version, dtos, next, null);
+    }
+}
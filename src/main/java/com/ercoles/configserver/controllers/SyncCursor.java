@@ -0,0 +1,38 @@
+package com.ercoles.configserver.controllers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+// cursors of delta syncs are the offset of the next change in the change log, with the epoch of the log so that one
+// from before a restart is told apart; encoded, as page cursors are, so that clients treat them as opaque
+final class SyncCursor {
+    final String epoch;
+    final long offset;
+
+    private SyncCursor(String epoch, long offset) {
+        this.epoch = epoch;
+        this.offset = offset;
+    }
+
+    static String encode(String epoch, long offset) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString((epoch + ":" + offset).getBytes(StandardCharsets.UTF_8));
+    }
+
+    // null for an empty cursor, which asks for a first sync
+    static SyncCursor decode(String cursor) throws InvalidParametersException {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = decoded.lastIndexOf(':');
+            long offset = Long.parseLong(decoded.substring(separator + 1));
+            if (separator < 1 || offset < 0) {
+                throw new IllegalArgumentException();
+            }
+            return new SyncCursor(decoded.substring(0, separator), offset);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidParametersException("Submitted sync cursor is not valid.");
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.ercoles.configserver.controllers;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// with configserver.threads.virtual=true Tomcat runs every request on a virtual thread of its own, as do the streamed
+// listings, and server.tomcat.threads.max no longer applies. A request waiting on the file store holds no platform
+// thread; one reading a slow body or writing to a slow client still does, Tomcat 9 waits on a monitor for the socket
+// and the JVM adds carriers to make up for it, up to jdk.virtualThreadScheduler.maxPoolSize (256)
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(name = "configserver.threads.virtual", havingValue = "true")
+public class VirtualThreadConfiguration implements WebMvcConfigurer {
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+        return protocolHandler -> protocolHandler.setExecutor(executor);
+    }
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setTaskExecutor(new TaskExecutorAdapter(executor));
+    }
+
+    // Tomcat leaves an executor it was given running
+    @PreDestroy
+    public void close() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,44 @@
+package com.ercoles.configserver.dtos;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+// the binary counterpart of JsonEncoder: CBOR (RFC 8949) holds the same data model as JSON, so clients decode either
+// into the same objects, with lengths in place of quotes and escapes
+public final class CborEncoder {
+    private static final ObjectWriter WRITER = Jackson2ObjectMapperBuilder.cbor().build().writer();
+
+    private CborEncoder() {
+    }
+
+    public static byte[] encode(Object value) {
+        try {
+            return WRITER.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unable to encode " + value.getClass().getSimpleName() + ".", e);
+        }
+    }
+
+    // the head of an array of length items, which then simply follow: arrays can be joined from encoded entries
+    public static byte[] arrayHead(int length) {
+        return head(0x80, length);
+    }
+
+    static byte[] mapHead(int length) {
+        return head(0xa0, length);
+    }
+
+    private static byte[] head(int majorType, int length) {
+        if (length < 24) {
+            return new byte[]{(byte) (majorType | length)};
+        }
+        if (length < 0x100) {
+            return new byte[]{(byte) (majorType | 24), (byte) length};
+        }
+        if (length < 0x10000) {
+            return new byte[]{(byte) (majorType | 25), (byte) (length >>> 8), (byte) length};
+        }
+        return new byte[]{(byte) (majorType | 26), (byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8), (byte) length};
+    }
+}
@@ -0,0 +1,24 @@
+package com.ercoles.configserver.dtos;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.ToString;
+
+// a change of a delta sync: created, updated or deleted, with the configuration it left, or the one it deleted, and
+// the sequence the store gave the change
+@Getter
+@EqualsAndHashCode
+@ToString
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConfigurationChangeDto {
+    @JsonProperty("type")
+    private String type;
+    @JsonProperty("sequence")
+    private long sequence;
+    @JsonProperty("configuration")
+    private ConfigurationResponseDto configuration;
+}
@@ -0,0 +1,34 @@
+package com.ercoles.configserver.dtos;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// the changes since the cursor a client sent, or, when resync is set, every configuration for it to start over from;
+// next is the cursor to send for the changes that follow either
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ConfigurationChangesResponseDto {
+    @JsonProperty("resync")
+    private boolean resync;
+    @JsonProperty("changes")
+    private List<ConfigurationChangeDto> changes;
+    @JsonProperty("configurations")
+    private List<ConfigurationResponseDto> configurations;
+    @JsonProperty("next")
+    private String next;
+
+    public byte[] toJson() {
+        return JsonEncoder.encode(this);
+    }
+
+    public byte[] toCbor() {
+        return CborEncoder.encode(this);
+    }
+}
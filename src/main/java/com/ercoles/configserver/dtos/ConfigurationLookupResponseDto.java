@@ -0,0 +1,58 @@
+package com.ercoles.configserver.dtos;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConfigurationLookupResponseDto {
+    private static final byte[] CONFIGURATIONS = "{\"configurations\":[".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] MISSING = "],\"missing\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CBOR_CONFIGURATIONS = CborEncoder.encode("configurations");
+    private static final byte[] CBOR_MISSING = CborEncoder.encode("missing");
+
+    @JsonProperty("configurations")
+    private List<ConfigurationResponseDto> configurations;
+    @JsonProperty("missing")
+    private List<String> missing;
+
+    // reuses the bytes each configuration already keeps, only the missing IDs are encoded
+    public byte[] toJson() {
+        byte[] missingJson = JsonEncoder.encode(missing);
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream(CONFIGURATIONS.length + MISSING.length + missingJson.length + 1
+                + configurations.size() * 64);
+        encoded.writeBytes(CONFIGURATIONS);
+        for (int i = 0; i < configurations.size(); i++) {
+            if (i > 0) {
+                encoded.write(',');
+            }
+            encoded.writeBytes(configurations.get(i).toJson());
+        }
+        encoded.writeBytes(MISSING);
+        encoded.writeBytes(missingJson);
+        encoded.write('}');
+        return encoded.toByteArray();
+    }
+
+    public byte[] toCbor() {
+        byte[] missingCbor = CborEncoder.encode(missing);
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream(CBOR_CONFIGURATIONS.length + CBOR_MISSING.length + missingCbor.length + 8
+                + configurations.size() * 64);
+        encoded.writeBytes(CborEncoder.mapHead(2));
+        encoded.writeBytes(CBOR_CONFIGURATIONS);
+        encoded.writeBytes(CborEncoder.arrayHead(configurations.size()));
+        for (ConfigurationResponseDto configuration : configurations) {
+            encoded.writeBytes(configuration.toCbor());
+        }
+        encoded.writeBytes(CBOR_MISSING);
+        encoded.writeBytes(missingCbor);
+        return encoded.toByteArray();
+    }
+}
@@ -0,0 +1,20 @@
+package com.ercoles.configserver.dtos;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Value;
+
+import java.io.Serializable;
+
+@Value
+public class ConfigurationOperationRequestDto implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    @JsonProperty("op")
+    String op;
+    @JsonProperty("id")
+    String id;
+    @JsonProperty("name")
+    String name;
+    @JsonProperty("value")
+    String value;
+}
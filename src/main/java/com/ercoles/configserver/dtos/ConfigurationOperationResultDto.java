@@ -0,0 +1,17 @@
+package com.ercoles.configserver.dtos;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ConfigurationOperationResultDto {
+    String id;
+    int status;
+    ConfigurationResponseDto configuration;
+    String error;
+}
@@ -0,0 +1,59 @@
+package com.ercoles.configserver.dtos;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+@Getter
+@NoArgsConstructor
+@AllArgsConstructor
+public class ConfigurationPageResponseDto {
+    private static final byte[] CONFIGURATIONS = "{\"configurations\":[".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] NEXT = "],\"next\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CBOR_CONFIGURATIONS = CborEncoder.encode("configurations");
+    private static final byte[] CBOR_NEXT = CborEncoder.encode("next");
+
+    @JsonProperty("configurations")
+    private List<ConfigurationResponseDto> configurations;
+    // cursor of the following page, null on the last one
+    @JsonProperty("next")
+    private String next;
+
+    // reuses the bytes each configuration already keeps, only the cursor is encoded
+    public byte[] toJson() {
+        byte[] nextJson = JsonEncoder.encode(next);
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream(CONFIGURATIONS.length + NEXT.length + nextJson.length + 1
+                + configurations.size() * 64);
+        encoded.writeBytes(CONFIGURATIONS);
+        for (int i = 0; i < configurations.size(); i++) {
+            if (i > 0) {
+                encoded.write(',');
+            }
+            encoded.writeBytes(configurations.get(i).toJson());
+        }
+        encoded.writeBytes(NEXT);
+        encoded.writeBytes(nextJson);
+        encoded.write('}');
+        return encoded.toByteArray();
+    }
+
+    public byte[] toCbor() {
+        byte[] nextCbor = CborEncoder.encode(next);
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream(CBOR_CONFIGURATIONS.length + CBOR_NEXT.length + nextCbor.length + 8
+                + configurations.size() * 64);
+        encoded.writeBytes(CborEncoder.mapHead(2));
+        encoded.writeBytes(CBOR_CONFIGURATIONS);
+        encoded.writeBytes(CborEncoder.arrayHead(configurations.size()));
+        for (ConfigurationResponseDto configuration : configurations) {
+            encoded.writeBytes(configuration.toCbor());
+        }
+        encoded.writeBytes(CBOR_NEXT);
+        encoded.writeBytes(nextCbor);
+        return encoded.toByteArray();
+    }
+}
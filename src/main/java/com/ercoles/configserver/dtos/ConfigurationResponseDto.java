@@ -1,29 +1,90 @@
 package com.ercoles.configserver.dtos;
 
 import com.ercoles.configserver.repositories.Configuration;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
-import lombok.AllArgsConstructor;
-import lombok.Data;
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.ToString;
 
 import java.io.Serializable;
 
-@Data
+@Getter
+@EqualsAndHashCode
+@ToString
 @NoArgsConstructor
-@AllArgsConstructor
 public class ConfigurationResponseDto implements Serializable {
     private static final long serialVersionUID = 1L;
 
     @JsonProperty("id")
-    String id;
+    private String id;
     @JsonProperty("name")
-    String name;
+    private String name;
     @JsonProperty("value")
-    String value;
+    private String value;
+
+    @JsonIgnore
+    @EqualsAndHashCode.Exclude
+    private long version;
+
+    @Getter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private transient volatile byte[] json;
+
+    // only for clients asking for CBOR
+    @Getter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private transient volatile byte[] cbor;
+
+    // set for the entries of a store that shares names and values between them: a cached encoding would hold another
+    // copy of both for every entry, so they are encoded on each call instead
+    @Getter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private transient boolean uncached;
+
+    public ConfigurationResponseDto(String id, String name, String value) {
+        this.id = id;
+        this.name = name;
+        this.value = value;
+    }
 
     public ConfigurationResponseDto(Configuration configuration0) {
         this.id = configuration0.getId();
         this.name = configuration0.getName();
         this.value = configuration0.getValue();
+        this.version = configuration0.getVersion();
+    }
+
+    public static ConfigurationResponseDto uncached(Configuration configuration) {
+        ConfigurationResponseDto dto = new ConfigurationResponseDto(configuration);
+        dto.uncached = true;
+        return dto;
+    }
+
+    public byte[] toJson() {
+        byte[] encoded = json;
+        if (encoded == null) {
+            encoded = JsonEncoder.encode(this);
+            if (!uncached) {
+                json = encoded;
+            }
+        }
+        return encoded;
+    }
+
+    public byte[] toCbor() {
+        byte[] encoded = cbor;
+        if (encoded == null) {
+            encoded = CborEncoder.encode(this);
+            if (!uncached) {
+                cbor = encoded;
+            }
+        }
+        return encoded;
     }
 }
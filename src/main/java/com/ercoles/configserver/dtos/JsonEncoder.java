@@ -0,0 +1,20 @@
+package com.ercoles.configserver.dtos;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+final class JsonEncoder {
+    private static final ObjectWriter WRITER = Jackson2ObjectMapperBuilder.json().build().writer();
+
+    private JsonEncoder() {
+    }
+
+    static byte[] encode(Object value) {
+        try {
+            return WRITER.writeValueAsBytes(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unable to encode " + value.getClass().getSimpleName() + ".", e);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.ercoles.configserver.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// every change of the forwarded operations is in the leader's log before the offset
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReplicationApplyResponseDto {
+    String epoch;
+    long offset;
+    List<ReplicationResultDto> results;
+}
@@ -0,0 +1,22 @@
+package com.ercoles.configserver.dtos;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// a change of the leader's log, at the given offset, or an entry of its snapshot, which has none; the configuration
+// is the one the change left, or the one it deleted, and comes with its version
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ReplicationChangeDto {
+    Long offset;
+    String type;
+    long sequence;
+    String id;
+    String name;
+    String value;
+    long version;
+}
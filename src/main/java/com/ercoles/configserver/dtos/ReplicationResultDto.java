@@ -0,0 +1,20 @@
+package com.ercoles.configserver.dtos;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// the outcome of an operation another instance forwarded, a follower to its leader or any instance to the one holding
+// the configuration, with the configuration it wrote or deleted when it succeeded
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ReplicationResultDto {
+    String outcome;
+    String id;
+    String name;
+    String value;
+    Long version;
+}
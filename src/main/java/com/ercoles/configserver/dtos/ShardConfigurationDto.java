@@ -0,0 +1,16 @@
+package com.ercoles.configserver.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// a configuration as the instance holding it has it, version included so that every instance tags it the same way
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ShardConfigurationDto {
+    String id;
+    String name;
+    String value;
+    long version;
+}
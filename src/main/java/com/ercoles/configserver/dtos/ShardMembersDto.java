@@ -0,0 +1,15 @@
+package com.ercoles.configserver.dtos;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// the base URIs of the instances sharing the configurations, sorted
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ShardMembersDto {
+    List<String> members;
+}
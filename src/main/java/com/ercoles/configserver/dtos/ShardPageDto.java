@@ -0,0 +1,22 @@
+package com.ercoles.configserver.dtos;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// what one instance holds of a listing or a lookup; version is the one of its store, with the epoch that tells the
+// store apart from the one before a restart, next where its part of a range carries on, null when it holds nothing
+// further
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ShardPageDto {
+    long version;
+    List<ShardConfigurationDto> configurations;
+    String next;
+    String epoch;
+}
@@ -2,12 +2,104 @@ package com.ercoles.configserver.repositories;
 
 import com.ercoles.configserver.dtos.ConfigurationResponseDto;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.List;
+import java.util.function.LongSupplier;
 
 public interface ConfigCache {
-    List<ConfigurationResponseDto> getAll() throws ConfigCacheException;
-    ConfigurationResponseDto get(String id) throws ConfigCacheException;
-    ConfigurationResponseDto create(String id, String name, String value) throws ConfigCacheException;
-    ConfigurationResponseDto update(String id, String name, String value) throws ConfigCacheException;
-    ConfigurationResponseDto delete(String id) throws ConfigCacheException;
+    ConfigSnapshot getAll() throws ConfigCacheException;
+    ConfigCacheResult get(String id) throws ConfigCacheException;
+    ConfigCacheResult create(String id, String name, String value) throws ConfigCacheException;
+    ConfigCacheResult update(String id, String name, String value) throws ConfigCacheException;
+    ConfigCacheResult delete(String id) throws ConfigCacheException;
+    void addChangeListener(ConfigChangeListener listener);
+
+    // found configurations keep the order of the requested IDs
+    default ConfigLookup getMany(Collection<String> ids) throws ConfigCacheException {
+        List<ConfigurationResponseDto> configurations = new ArrayList<>(ids.size());
+        List<String> missing = new ArrayList<>();
+        for (String id : ids) {
+            ConfigCacheResult result = get(id);
+            if (result.isSuccess()) {
+                configurations.add(result.getConfiguration());
+            } else {
+                missing.add(id);
+            }
+        }
+        return new ConfigLookup(configurations, missing);
+    }
+
+    // configurations with IDs from `from`, inclusive, up to `to`, exclusive or null for no bound, ordered by ID and at
+    // most limit of them; this default sorts the whole listing, implementations keeping their IDs sorted override it
+    default ConfigPage getRange(String from, String to, int limit) throws ConfigCacheException {
+        List<ConfigurationResponseDto> configurations = new ArrayList<>();
+        for (ConfigurationResponseDto configuration : getAll()) {
+            String id = configuration.getId();
+            if (id.compareTo(from) >= 0 && (to == null || id.compareTo(to) < 0)) {
+                configurations.add(configuration);
+            }
+        }
+        configurations.sort(Comparator.comparing(ConfigurationResponseDto::getId));
+        if (configurations.size() <= limit) {
+            return new ConfigPage(configurations, null);
+        }
+        return new ConfigPage(new ArrayList<>(configurations.subList(0, limit)), configurations.get(limit).getId());
+    }
+
+    // for monitoring: the number of configurations, and an estimate of the memory held by their IDs, names and values;
+    // these defaults go through a full listing, implementations that can tell more cheaply override them
+    default int size() throws ConfigCacheException {
+        return getAll().size();
+    }
+
+    default long estimatedBytes() throws ConfigCacheException {
+        long bytes = 0;
+        for (ConfigurationResponseDto configuration : getAll()) {
+            bytes += estimatedBytesOf(configuration);
+        }
+        return bytes;
+    }
+
+    // two bytes per character, which overestimates the strings the JVM keeps as Latin-1
+    static long estimatedBytesOf(ConfigurationResponseDto configuration) {
+        return 2L * (configuration.getId().length() + configuration.getName().length() + configuration.getValue().length());
+    }
+
+    // the whole listing, taken while no write is under way together with the offset the supplier gives, read from
+    // a change log fed by this store: replicas load the listing and replay the log from that offset. Only stores
+    // that can hold their writes off support it
+    default ConfigCheckpoint checkpoint(LongSupplier offset) throws ConfigCacheException {
+        throw new ConfigCacheException("Checkpoints are not supported.");
+    }
+
+    // takes configurations in with the versions they carry, as when they move over from another store, as one batch
+    // told to listeners together; one older than the configuration it meets is ignored, and later writes get versions
+    // past every one taken in. Only stores that can set versions support it
+    default void restore(Collection<ConfigurationResponseDto> configurations) throws ConfigCacheException {
+        throw new ConfigCacheException("Restoring configurations is not supported.");
+    }
+
+    // returns one result per operation, in order; implementations that can apply a batch more cheaply than
+    // one call per operation, or that support atomic batches, override this
+    default List<ConfigCacheResult> apply(List<ConfigOperation> operations, boolean atomic) throws ConfigCacheException {
+        if (atomic) {
+            throw new ConfigCacheException("Atomic batches are not supported.");
+        }
+        List<ConfigCacheResult> results = new ArrayList<>(operations.size());
+        for (ConfigOperation operation : operations) {
+            switch (operation.getType()) {
+                case CREATE:
+                    results.add(create(operation.getId(), operation.getName(), operation.getValue()));
+                    break;
+                case UPDATE:
+                    results.add(update(operation.getId(), operation.getName(), operation.getValue()));
+                    break;
+                default:
+                    results.add(delete(operation.getId()));
+            }
+        }
+        return results;
+    }
 }
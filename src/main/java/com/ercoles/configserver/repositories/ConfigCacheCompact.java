@@ -0,0 +1,52 @@
+package com.ercoles.configserver.repositories;
+
+import com.ercoles.configserver.dtos.ConfigurationResponseDto;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+// keeps each entry in a single byte array next to its ID instead of a configuration with three strings and its
+// cached JSON: [version][name length][name][value], name and value as UTF-8, the value running to the end
+public final class ConfigCacheCompact extends EncodedConfigCache<byte[]> {
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+    private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+    private static final int NAME_LENGTH = Long.BYTES;
+    private static final int NAME = NAME_LENGTH + Integer.BYTES;
+
+    public ConfigCacheCompact() {
+        super(false);
+    }
+
+    @Override
+    byte[] encode(String name, String value) {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+        byte[] entry = new byte[NAME + nameBytes.length + valueBytes.length];
+        INT.set(entry, NAME_LENGTH, nameBytes.length);
+        System.arraycopy(nameBytes, 0, entry, NAME, nameBytes.length);
+        System.arraycopy(valueBytes, 0, entry, NAME + nameBytes.length, valueBytes.length);
+        return entry;
+    }
+
+    @Override
+    long encodedBytes(byte[] entry) {
+        return entry.length;
+    }
+
+    @Override
+    void setVersion(byte[] entry, long version) {
+        LONG.set(entry, 0, version);
+    }
+
+    @Override
+    ConfigurationResponseDto decode(String id, byte[] entry) {
+        int nameLength = (int) INT.get(entry, NAME_LENGTH);
+        int value = NAME + nameLength;
+        return new ConfigurationResponseDto(new Configuration(id,
+                new String(entry, NAME, nameLength, StandardCharsets.UTF_8),
+                new String(entry, value, entry.length - value, StandardCharsets.UTF_8),
+                (long) LONG.get(entry, 0)));
+    }
+}
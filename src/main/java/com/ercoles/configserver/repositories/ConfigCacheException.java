@@ -4,4 +4,7 @@ public class ConfigCacheException extends Exception {
     public ConfigCacheException(String message) {
         super(message);
     }
+    public ConfigCacheException(String message, Throwable cause) {
+        super(message, cause);
+    }
 }
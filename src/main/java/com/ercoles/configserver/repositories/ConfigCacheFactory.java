@@ -1,17 +1,208 @@
 package com.ercoles.configserver.repositories;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.UUID;
+
 @Component
 public class ConfigCacheFactory {
+    private final String type;
+    private final String directory;
+    private final long compactAfter;
+    private final boolean mapSnapshot;
+    private final boolean deduplicate;
+    // 0 for no near cache
+    private final long nearMaximumSize;
+    private final long nearExpireAfterWrite;
+    // base URI of the leader when this instance follows one, null otherwise
+    private final String leaderUri;
+    private final long replicationTimeout;
+    // the instance to join when sharding: empty for the first instance of a cluster, null when not sharding
+    private final String shardSeedUri;
+    private final int shardVirtualNodes;
+    private final long shardTimeout;
+    // null when the store is not metered
+    private final MeterRegistry meterRegistry;
     private ConfigCache configCache;
+    // null when not sharding
+    private ConfigCacheSharded shard;
+    private final String epoch = UUID.randomUUID().toString();
+
+    public ConfigCacheFactory() {
+        this("memory", "data", 100_000, true, false, 0, 0, null, 0, null, 0, 0, null);
+    }
 
-    public ConfigCache getConfigCache() {
+    @Autowired
+    public ConfigCacheFactory(
+            @Value("${configserver.cache.type:memory}") String type,
+            @Value("${configserver.cache.file.directory:data}") String directory,
+            @Value("${configserver.cache.file.compact-after:100000}") long compactAfter,
+            @Value("${configserver.cache.file.map-snapshot:true}") boolean mapSnapshot,
+            @Value("${configserver.cache.memory.deduplicate:false}") boolean deduplicate,
+            @Value("${configserver.cache.near.maximum-size:0}") long nearMaximumSize,
+            @Value("${configserver.cache.near.expire-after-write:30000}") long nearExpireAfterWrite,
+            @Value("${configserver.replication.role:none}") String replicationRole,
+            @Value("${configserver.replication.leader-uri:}") String leaderUri,
+            @Value("${configserver.replication.timeout:5000}") long replicationTimeout,
+            @Value("${configserver.sharding.enabled:false}") boolean sharding,
+            @Value("${configserver.sharding.seed-uri:}") String shardSeedUri,
+            @Value("${configserver.sharding.virtual-nodes:128}") int shardVirtualNodes,
+            @Value("${configserver.sharding.timeout:5000}") long shardTimeout,
+            @Value("${configserver.cache.metrics:true}") boolean metrics,
+            ObjectProvider<MeterRegistry> meterRegistry
+    ) {
+        this(type, directory, compactAfter, mapSnapshot, deduplicate, nearMaximumSize, nearExpireAfterWrite,
+                "follower".equals(replicationRole) ? leaderUri : null, replicationTimeout, sharding ? shardSeedUri : null,
+                shardVirtualNodes, shardTimeout, metrics ? meterRegistry.getIfAvailable() : null);
+        if (sharding && !"none".equals(replicationRole)) {
+            throw new IllegalStateException("Sharding and replication cannot be combined.");
+        }
+    }
+
+    public ConfigCacheFactory(String type, String directory, long compactAfter, boolean mapSnapshot, boolean deduplicate,
+                              long nearMaximumSize, long nearExpireAfterWrite, String leaderUri, long replicationTimeout,
+                              String shardSeedUri, int shardVirtualNodes, long shardTimeout, MeterRegistry meterRegistry) {
+        this.type = type;
+        this.directory = directory;
+        this.compactAfter = compactAfter;
+        this.mapSnapshot = mapSnapshot;
+        this.deduplicate = deduplicate;
+        this.nearMaximumSize = nearMaximumSize;
+        this.nearExpireAfterWrite = nearExpireAfterWrite;
+        this.leaderUri = leaderUri;
+        this.replicationTimeout = replicationTimeout;
+        this.shardSeedUri = shardSeedUri;
+        this.shardVirtualNodes = shardVirtualNodes;
+        this.shardTimeout = shardTimeout;
+        this.meterRegistry = meterRegistry;
+    }
+
+    public synchronized ConfigCache getConfigCache() {
         if (configCache == null) {
-            // can be extended to check for properties specific for a database, or Redis, or filesystem
-            // and instantiate the corresponding implementation
-            configCache = new ConfigCacheMemory();
+            if (leaderUri != null) {
+                if (leaderUri.isEmpty()) {
+                    throw new IllegalStateException("A follower needs configserver.replication.leader-uri.");
+                }
+                // the store type only matters to the leader, a follower keeps its copy in memory
+                configCache = new ConfigCacheFollower(URI.create(leaderUri), replicationTimeout);
+            } else {
+                configCache = newStore();
+            }
+            if (meterRegistry != null) {
+                bindStoreMetrics(configCache);
+            }
+            if (shardSeedUri != null) {
+                // the store holds this instance's share, the rest is a call away
+                shard = new ConfigCacheSharded(configCache, shardSeedUri.isEmpty() ? null : URI.create(shardSeedUri),
+                        shardVirtualNodes, shardTimeout);
+                configCache = shard;
+            }
+            if (nearMaximumSize > 0) {
+                NearConfigCache near = new NearConfigCache(configCache, nearMaximumSize, Duration.ofMillis(nearExpireAfterWrite));
+                if (meterRegistry != null) {
+                    near.bindTo(meterRegistry, "configserver.cache.near");
+                }
+                configCache = near;
+            }
+            if (meterRegistry != null) {
+                configCache = new MeteredConfigCache(configCache, meterRegistry);
+            }
         }
         return configCache;
     }
+
+    // whether writes wait for the disk, or for another instance, which must not happen on a thread serving other requests
+    public boolean isDurable() {
+        return "file".equals(type) || leaderUri != null || shardSeedUri != null;
+    }
+
+    // whether reads may wait for another instance, which holds part of the configurations
+    public boolean isRemote() {
+        return shardSeedUri != null;
+    }
+
+    // tells the versions of this instance apart from those of another one, or of this one before a restart, which
+    // may be the same numbers for other contents
+    public String getEpoch() {
+        return epoch;
+    }
+
+    // the share of this instance when sharding, null otherwise
+    public synchronized ConfigCacheSharded getShard() {
+        getConfigCache();
+        return shard;
+    }
+
+    private ConfigCache newStore() {
+        // can be extended to check for properties specific for a database, or Redis
+        // and instantiate the corresponding implementation; the near cache then saves reads the round trip
+        switch (type) {
+            case "memory":
+                return new ConfigCacheMemory(deduplicate);
+            case "compact":
+                return new ConfigCacheCompact();
+            case "offheap":
+                return new ConfigCacheOffHeap();
+            case "file":
+                try {
+                    return new ConfigCacheFile(Paths.get(directory), compactAfter, mapSnapshot);
+                } catch (ConfigCacheException e) {
+                    throw new IllegalStateException(e.getMessage(), e);
+                }
+            default:
+                throw new IllegalStateException("Unknown configuration store type " + type + ".");
+        }
+    }
+
+    // what only some stores can tell about their memory
+    private void bindStoreMetrics(ConfigCache configCache) {
+        if (configCache instanceof ConfigCacheOffHeap) {
+            ConfigCacheOffHeap offHeap = (ConfigCacheOffHeap) configCache;
+            Gauge.builder("configserver.cache.offheap.reserved", offHeap, ConfigCacheOffHeap::getReservedBytes)
+                    .description("Direct memory reserved for the slabs")
+                    .baseUnit(BaseUnits.BYTES)
+                    .register(meterRegistry);
+            Gauge.builder("configserver.cache.offheap.allocated", offHeap, ConfigCacheOffHeap::getAllocatedBytes)
+                    .description("Direct memory held by the blocks of live entries")
+                    .baseUnit(BaseUnits.BYTES)
+                    .register(meterRegistry);
+        } else if (configCache instanceof ConfigCacheFile) {
+            FunctionCounter.builder("configserver.cache.compaction.failures", (ConfigCacheFile) configCache,
+                            ConfigCacheFile::getCompactionFailures)
+                    .description("Background compactions of the log into a snapshot that failed")
+                    .register(meterRegistry);
+        } else if (configCache instanceof ConfigCacheMemory && deduplicate) {
+            ConfigCacheMemory memory = (ConfigCacheMemory) configCache;
+            Gauge.builder("configserver.cache.deduplication.distinct", memory, cache -> cache.getDeduplicationStats().getDistinct())
+                    .description("Distinct names and values shared between configurations")
+                    .register(meterRegistry);
+            Gauge.builder("configserver.cache.deduplication.ratio", memory, cache -> cache.getDeduplicationStats().getRatio())
+                    .description("Configurations sharing each distinct name or value, on average")
+                    .register(meterRegistry);
+            Gauge.builder("configserver.cache.deduplication.saved", memory, cache -> cache.getDeduplicationStats().getSavedBytes())
+                    .description("Memory saved by sharing names and values")
+                    .baseUnit(BaseUnits.BYTES)
+                    .register(meterRegistry);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        if (configCache instanceof Closeable) {
+            ((Closeable) configCache).close();
+        }
+    }
 }
@@ -0,0 +1,302 @@
+package com.ercoles.configserver.repositories;
+
+import com.ercoles.configserver.dtos.ConfigurationResponseDto;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// keeps every entry in a ConfigCacheMemory and makes each change durable in a write-ahead log before answering;
+// the log is compacted into a snapshot every compactAfter records, startup loads the latest snapshot and replays
+// the log segments written after it. With mapSnapshot the snapshot is memory-mapped instead of loaded, and an entry
+// is only decoded the first time it is read or written
+public final class ConfigCacheFile implements ConfigCache, Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(ConfigCacheFile.class);
+
+    private final ConfigCacheMemory memory;
+    private final Path directory;
+    private final long compactAfter;
+    private final WriteAheadLog log;
+    private final AtomicLong uncompacted = new AtomicLong();
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    private final AtomicLong compactionFailures = new AtomicLong();
+    // held while the snapshot is written, a monitor would pin the carrier of a virtual thread for the whole write
+    private final ReentrantLock compactLock = new ReentrantLock();
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "config-cache-compactor");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ConfigCacheFile(Path directory, long compactAfter) throws ConfigCacheException {
+        this(directory, compactAfter, true);
+    }
+
+    public ConfigCacheFile(Path directory, long compactAfter, boolean mapSnapshot) throws ConfigCacheException {
+        this.directory = directory;
+        this.compactAfter = compactAfter;
+        try {
+            Files.createDirectories(directory);
+            List<Path> files;
+            try (Stream<Path> listed = Files.list(directory)) {
+                files = listed.collect(Collectors.toList());
+            }
+            long snapshot = files.stream().mapToLong(SnapshotFile::generationOf).max().orElse(-1);
+            this.memory = load(snapshot, mapSnapshot);
+            this.log = new WriteAheadLog(directory, recover(files, snapshot));
+        } catch (IOException e) {
+            throw new ConfigCacheException("Unable to open configuration store in " + directory + ".", e);
+        }
+        memory.addChangeListener(new ConfigChangeListener() {
+            @Override
+            public void onChange(ConfigChange change) {
+                log.append(change);
+                logged(1);
+            }
+
+            // one record for the whole batch, so that a crash can't leave part of it on disk
+            @Override
+            public void onChanges(List<ConfigChange> changes) {
+                log.append(changes);
+                logged(changes.size());
+            }
+        });
+    }
+
+    @Override
+    public ConfigSnapshot getAll() throws ConfigCacheException {
+        return memory.getAll();
+    }
+
+    @Override
+    public ConfigCacheResult get(String id) {
+        return memory.get(id);
+    }
+
+    @Override
+    public ConfigLookup getMany(Collection<String> ids) {
+        return memory.getMany(ids);
+    }
+
+    @Override
+    public ConfigPage getRange(String from, String to, int limit) throws ConfigCacheException {
+        return memory.getRange(from, to, limit);
+    }
+
+    @Override
+    public ConfigCacheResult create(String id, String name, String value) throws ConfigCacheException {
+        checkWritable();
+        return durable(memory.create(id, name, value));
+    }
+
+    @Override
+    public ConfigCacheResult update(String id, String name, String value) throws ConfigCacheException {
+        checkWritable();
+        return durable(memory.update(id, name, value));
+    }
+
+    @Override
+    public ConfigCacheResult delete(String id) throws ConfigCacheException {
+        checkWritable();
+        return durable(memory.delete(id));
+    }
+
+    @Override
+    public List<ConfigCacheResult> apply(List<ConfigOperation> operations, boolean atomic) throws ConfigCacheException {
+        checkWritable();
+        List<ConfigCacheResult> results = memory.apply(operations, atomic);
+        if (results.stream().anyMatch(ConfigCacheResult::isSuccess)) {
+            awaitDurable();
+        }
+        return results;
+    }
+
+    // logged as a single record, as atomic batches are
+    @Override
+    public void restore(Collection<ConfigurationResponseDto> configurations) throws ConfigCacheException {
+        checkWritable();
+        memory.restore(configurations);
+        awaitDurable();
+    }
+
+    @Override
+    public int size() {
+        return memory.size();
+    }
+
+    @Override
+    public long estimatedBytes() {
+        return memory.estimatedBytes();
+    }
+
+    @Override
+    public ConfigCheckpoint checkpoint(LongSupplier offset) throws ConfigCacheException {
+        return memory.checkpoint(offset);
+    }
+
+    @Override
+    public void addChangeListener(ConfigChangeListener listener) {
+        memory.addChangeListener(listener);
+    }
+
+    // writes a snapshot of the current entries and drops the log segments it replaces
+    public void compact() throws ConfigCacheException {
+        compactLock.lock();
+        try {
+            // no write may straddle the rotation: its change would go to a segment the snapshot replaces while its
+            // entry is still missing from the snapshot
+            long generation;
+            memory.blockWrites();
+            try {
+                generation = log.rotate();
+            } finally {
+                memory.unblockWrites();
+            }
+            uncompacted.set(0);
+            // read after the rotation: anything missing from the live view is in the new segment
+            SnapshotFile.write(directory, generation, memory.getSequence(), memory.sortedEntries());
+            deleteBefore(generation);
+        } catch (IOException e) {
+            throw new ConfigCacheException("Unable to compact configuration store in " + directory + ".", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConfigCacheException("Interrupted while compacting configuration store in " + directory + ".", e);
+        } finally {
+            compactLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.close();
+    }
+
+    // once the log has failed, writes are refused before they touch the map, the listeners or any replica. Only the
+    // writes already past this check when the log fails are applied in memory and answered with an error
+    private void checkWritable() throws ConfigCacheException {
+        try {
+            log.checkWritable();
+        } catch (IOException e) {
+            throw new ConfigCacheException("Unable to persist configuration change.", e);
+        }
+    }
+
+    // a change is applied in memory first and then waited for on disk
+    private ConfigCacheResult durable(ConfigCacheResult result) throws ConfigCacheException {
+        if (result.isSuccess()) {
+            awaitDurable();
+        }
+        return result;
+    }
+
+    private void awaitDurable() throws ConfigCacheException {
+        try {
+            log.awaitDurable(log.getAppended());
+        } catch (IOException e) {
+            throw new ConfigCacheException("Unable to persist configuration change.", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConfigCacheException("Interrupted while persisting configuration change.", e);
+        }
+    }
+
+    private void logged(int changes) {
+        if (uncompacted.addAndGet(changes) >= compactAfter && compacting.compareAndSet(false, true)) {
+            compactor.execute(this::compactInBackground);
+        }
+    }
+
+    // the background compactions that failed since the store was opened
+    public long getCompactionFailures() {
+        return compactionFailures.get();
+    }
+
+    private void compactInBackground() {
+        try {
+            compact();
+        } catch (ConfigCacheException e) {
+            // the log keeps growing and compaction is retried after the next compactAfter records
+            compactionFailures.incrementAndGet();
+            LOGGER.error(e.getMessage(), e);
+        } finally {
+            compacting.set(false);
+        }
+    }
+
+    // starts from the latest snapshot, mapped if asked to and if its format allows, read in full otherwise
+    private ConfigCacheMemory load(long snapshot, boolean mapSnapshot) throws IOException {
+        if (snapshot < 0) {
+            return new ConfigCacheMemory();
+        }
+        Path file = SnapshotFile.path(directory, snapshot);
+        MappedSnapshot mapped = mapSnapshot ? SnapshotFile.map(file) : null;
+        if (mapped != null) {
+            return new ConfigCacheMemory(mapped);
+        }
+        ConfigCacheMemory loaded = new ConfigCacheMemory();
+        long sequence = SnapshotFile.read(file,
+                entry -> loaded.restore(new ConfigChange(ConfigChange.Type.CREATED, entry.getVersion(), entry)));
+        loaded.restoreSequence(sequence);
+        return loaded;
+    }
+
+    // replays the segments written since the snapshot and returns the generation to append to
+    private long recover(List<Path> files, long snapshot) throws IOException {
+        List<Long> segments = new ArrayList<>();
+        for (Path file : files) {
+            long generation = WriteAheadLog.generationOf(file);
+            if (generation >= snapshot && generation >= 0) {
+                segments.add(generation);
+            }
+        }
+        segments.sort(null);
+        long records = 0;
+        for (long generation : segments) {
+            records += WriteAheadLog.replay(WriteAheadLog.segment(directory, generation), memory::restore);
+        }
+        uncompacted.set(records);
+        long current = Math.max(0, snapshot);
+        if (!segments.isEmpty()) {
+            current = Math.max(current, segments.get(segments.size() - 1));
+        }
+        deleteBefore(Math.max(0, snapshot));
+        return current;
+    }
+
+    private void deleteBefore(long generation) throws IOException {
+        List<Path> obsolete;
+        try (Stream<Path> listed = Files.list(directory)) {
+            obsolete = listed.filter(file -> {
+                long snapshot = SnapshotFile.generationOf(file);
+                long segment = WriteAheadLog.generationOf(file);
+                return (snapshot >= 0 && snapshot < generation) || (segment >= 0 && segment < generation)
+                        || file.getFileName().toString().endsWith(".tmp");
+            }).collect(Collectors.toList());
+        }
+        for (Path file : obsolete) {
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,415 @@
+package com.ercoles.configserver.repositories;
+
+import com.ercoles.configserver.dtos.ConfigurationOperationRequestDto;
+import com.ercoles.configserver.dtos.ConfigurationResponseDto;
+import com.ercoles.configserver.dtos.ReplicationApplyResponseDto;
+import com.ercoles.configserver.dtos.ReplicationChangeDto;
+import com.ercoles.configserver.dtos.ReplicationResultDto;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+// a copy of the store of a leader instance, served locally and kept up to date by following the leader's change log;
+// starts from a snapshot of the leader, and starts over from a new one whenever the log no longer holds where it left
+// off. Writes are forwarded to the leader and only return once the copy has caught up with them, so that a client
+// reads its own writes from the same follower
+public final class ConfigCacheFollower implements ConfigCache, Closeable {
+    private static final String EPOCH_HEADER = "Replication-Epoch";
+    private static final String OFFSET_HEADER = "Replication-Offset";
+    // wait before reconnecting to a leader that could not be reached
+    private static final long RETRY_PAUSE = 500;
+
+    private final URI leader;
+    private final int timeout;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<ConfigChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private final Thread replicator;
+    private volatile boolean running = true;
+    // the connection the replicator is reading from, dropped on close to stop it
+    private volatile HttpURLConnection following;
+    // null until the first snapshot is loaded, replaced whole by every later one
+    private volatile ConfigCacheMemory replica;
+    // where the copy is in the leader's log, null epoch when it has to start over from a snapshot
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition advanced = lock.newCondition();
+    private String epoch;
+    private long offset;
+
+    // the leader's base URI; the timeout applies to every call to the leader, to every wait for the copy to catch up,
+    // and to the initial snapshot, which this constructor waits for
+    public ConfigCacheFollower(URI leader, long timeout) {
+        this.leader = leader.toString().endsWith("/") ? leader : URI.create(leader + "/");
+        this.timeout = (int) timeout;
+        this.replicator = new Thread(this::replicate, "config-cache-replicator");
+        replicator.setDaemon(true);
+        replicator.start();
+        lock.lock();
+        try {
+            long nanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+            while (epoch == null && nanos > 0) {
+                nanos = advanced.awaitNanos(nanos);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public ConfigSnapshot getAll() throws ConfigCacheException {
+        return replica().getAll();
+    }
+
+    @Override
+    public ConfigCacheResult get(String id) throws ConfigCacheException {
+        return replica().get(id);
+    }
+
+    @Override
+    public ConfigLookup getMany(Collection<String> ids) throws ConfigCacheException {
+        return replica().getMany(ids);
+    }
+
+    @Override
+    public ConfigPage getRange(String from, String to, int limit) throws ConfigCacheException {
+        return replica().getRange(from, to, limit);
+    }
+
+    @Override
+    public ConfigCacheResult create(String id, String name, String value) throws ConfigCacheException {
+        return forward(List.of(ConfigOperation.create(id, name, value)), false).get(0);
+    }
+
+    @Override
+    public ConfigCacheResult update(String id, String name, String value) throws ConfigCacheException {
+        return forward(List.of(ConfigOperation.update(id, name, value)), false).get(0);
+    }
+
+    @Override
+    public ConfigCacheResult delete(String id) throws ConfigCacheException {
+        return forward(List.of(ConfigOperation.delete(id)), false).get(0);
+    }
+
+    @Override
+    public List<ConfigCacheResult> apply(List<ConfigOperation> operations, boolean atomic) throws ConfigCacheException {
+        return forward(operations, atomic);
+    }
+
+    @Override
+    public int size() throws ConfigCacheException {
+        return replica().size();
+    }
+
+    @Override
+    public long estimatedBytes() throws ConfigCacheException {
+        return replica().estimatedBytes();
+    }
+
+    // the copy is only ever changed, and its changes told, with its writes held off, so that the listing matches what
+    // the offset's log has been told
+    @Override
+    public ConfigCheckpoint checkpoint(LongSupplier offset) throws ConfigCacheException {
+        return replica().checkpoint(offset);
+    }
+
+    // reports the changes as they are replayed, and what a new snapshot changed compared to the copy it replaces
+    @Override
+    public void addChangeListener(ConfigChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    // the epoch and offset of the leader's log the copy has reached, as "epoch:offset"
+    public String getPosition() {
+        lock.lock();
+        try {
+            return epoch + ":" + offset;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        replicator.interrupt();
+        HttpURLConnection connection = following;
+        if (connection != null) {
+            connection.disconnect();
+        }
+    }
+
+    private ConfigCacheMemory replica() throws ConfigCacheException {
+        ConfigCacheMemory current = replica;
+        if (current == null) {
+            throw new ConfigCacheException("No snapshot received yet from leader " + leader + ".");
+        }
+        return current;
+    }
+
+    private List<ConfigCacheResult> forward(List<ConfigOperation> operations, boolean atomic) throws ConfigCacheException {
+        List<ConfigurationOperationRequestDto> request = new ArrayList<>(operations.size());
+        for (ConfigOperation operation : operations) {
+            request.add(new ConfigurationOperationRequestDto(operation.getType().name().toLowerCase(Locale.ROOT),
+                    operation.getId(), operation.getName(), operation.getValue()));
+        }
+        ReplicationApplyResponseDto response;
+        try {
+            HttpURLConnection connection = open("replication/apply?atomic=" + atomic);
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Content-Type", "application/json");
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                objectMapper.writeValue(out, request);
+            }
+            try (InputStream in = body(connection)) {
+                response = objectMapper.readValue(in, ReplicationApplyResponseDto.class);
+            }
+        } catch (IOException e) {
+            throw new ConfigCacheException("Unable to forward write to leader " + leader + ".", e);
+        }
+        awaitOffset(response.getEpoch(), response.getOffset());
+        List<ConfigCacheResult> results = new ArrayList<>(operations.size());
+        for (ReplicationResultDto result : response.getResults()) {
+            results.add(toResult(result));
+        }
+        return results;
+    }
+
+    // the write is done on the leader either way; a copy that hasn't caught up within the timeout is reported rather
+    // than read from, as it would not show the write to the client that made it
+    private void awaitOffset(String writeEpoch, long writeOffset) throws ConfigCacheException {
+        lock.lock();
+        try {
+            long nanos = TimeUnit.MILLISECONDS.toNanos(timeout);
+            while (!writeEpoch.equals(epoch) || offset < writeOffset) {
+                if (nanos <= 0) {
+                    throw new ConfigCacheUnavailableException("Write applied by leader " + leader + " but not replicated here yet.");
+                }
+                nanos = advanced.awaitNanos(nanos);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConfigCacheException("Interrupted while waiting for write to be replicated from leader " + leader + ".", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void replicate() {
+        while (running) {
+            try {
+                if (currentEpoch() == null) {
+                    loadSnapshot();
+                }
+                followChanges();
+            } catch (IOException | RuntimeException e) {
+                // the leader is down or restarting: reads carry on from the copy meanwhile
+                if (!running) {
+                    return;
+                }
+                try {
+                    Thread.sleep(RETRY_PAUSE);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void loadSnapshot() throws IOException {
+        HttpURLConnection connection = open("replication/snapshot");
+        following = connection;
+        ConfigCacheMemory loaded = new ConfigCacheMemory();
+        String snapshotEpoch;
+        long snapshotOffset;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(body(connection), StandardCharsets.UTF_8))) {
+            snapshotEpoch = connection.getHeaderField(EPOCH_HEADER);
+            snapshotOffset = Long.parseLong(connection.getHeaderField(OFFSET_HEADER));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    loaded.restore(toChange(objectMapper.readValue(line, ReplicationChangeDto.class)));
+                }
+            }
+        }
+        ConfigCacheMemory previous = replica;
+        if (previous != null) {
+            loaded.restoreModifications(previous.getModifications() + 1);
+        }
+        // a checkpoint of the new copy waits for its differences to be told
+        loaded.blockWrites();
+        try {
+            replica = loaded;
+            advance(snapshotEpoch, snapshotOffset);
+            if (previous != null) {
+                announceDifferences(previous, loaded);
+            }
+        } finally {
+            loaded.unblockWrites();
+        }
+    }
+
+    // a line per change and an empty one after each chunk, or alone as a heartbeat; a chunk is applied as a whole,
+    // so that a listing never shows part of an atomic batch. Returns when the leader ends the stream
+    private void followChanges() throws IOException {
+        String followed = currentEpoch();
+        HttpURLConnection connection = open("replication/changes?epoch=" + URLEncoder.encode(followed, StandardCharsets.UTF_8)
+                + "&from=" + currentOffset());
+        following = connection;
+        if (connection.getResponseCode() == HttpURLConnection.HTTP_GONE) {
+            discard(connection);
+            advance(null, 0);
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(body(connection), StandardCharsets.UTF_8))) {
+            List<ConfigChange> chunk = new ArrayList<>();
+            long chunkEnd = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty()) {
+                    ReplicationChangeDto dto = objectMapper.readValue(line, ReplicationChangeDto.class);
+                    chunk.add(toChange(dto));
+                    chunkEnd = dto.getOffset() + 1;
+                } else if (!chunk.isEmpty()) {
+                    apply(chunk);
+                    advance(followed, chunkEnd);
+                    chunk.clear();
+                }
+            }
+        }
+    }
+
+    // the stripes are reentrant, so the batch takes them again under the block that keeps checkpoints out until
+    // the changes are told
+    private void apply(List<ConfigChange> chunk) {
+        ConfigCacheMemory current = replica;
+        current.blockWrites();
+        try {
+            current.restoreAll(chunk);
+            chunk.forEach(this::publish);
+        } finally {
+            current.unblockWrites();
+        }
+    }
+
+    // what a new snapshot changed, as changes of the sequence the leader had reached
+    private void announceDifferences(ConfigCacheMemory previous, ConfigCacheMemory loaded) throws IOException {
+        try {
+            for (ConfigurationResponseDto configuration : loaded.getAll()) {
+                ConfigCacheResult before = previous.get(configuration.getId());
+                if (!before.isSuccess()) {
+                    publish(new ConfigChange(ConfigChange.Type.CREATED, configuration.getVersion(), configuration));
+                } else if (before.getConfiguration().getVersion() != configuration.getVersion()) {
+                    publish(new ConfigChange(ConfigChange.Type.UPDATED, configuration.getVersion(), configuration));
+                }
+            }
+            for (ConfigurationResponseDto configuration : previous.getAll()) {
+                if (!loaded.get(configuration.getId()).isSuccess()) {
+                    publish(new ConfigChange(ConfigChange.Type.DELETED, loaded.getSequence(), configuration));
+                }
+            }
+        } catch (ConfigCacheException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    private void publish(ConfigChange change) {
+        for (ConfigChangeListener listener : listeners) {
+            listener.onChange(change);
+        }
+    }
+
+    private void advance(String reachedEpoch, long reachedOffset) {
+        lock.lock();
+        try {
+            epoch = reachedEpoch;
+            offset = reachedOffset;
+            advanced.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private String currentEpoch() {
+        lock.lock();
+        try {
+            return epoch;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private long currentOffset() {
+        lock.lock();
+        try {
+            return offset;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // the leader sends a heartbeat well within the timeout, a stream that stays silent longer is broken
+    private HttpURLConnection open(String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) leader.resolve(path).toURL().openConnection();
+        connection.setConnectTimeout(timeout);
+        connection.setReadTimeout(timeout);
+        return connection;
+    }
+
+    private static InputStream body(HttpURLConnection connection) throws IOException {
+        int status = connection.getResponseCode();
+        if (status != HttpURLConnection.HTTP_OK) {
+            discard(connection);
+            throw new IOException("Leader answered " + status + " to " + connection.getURL() + ".");
+        }
+        return connection.getInputStream();
+    }
+
+    // lets the connection be reused for the next call
+    private static void discard(HttpURLConnection connection) throws IOException {
+        InputStream error = connection.getErrorStream();
+        if (error != null) {
+            error.close();
+        }
+    }
+
+    private static ConfigChange toChange(ReplicationChangeDto dto) {
+        ConfigurationResponseDto configuration = new ConfigurationResponseDto(
+                new Configuration(dto.getId(), dto.getName(), dto.getValue(), dto.getVersion()));
+        return new ConfigChange(ConfigChange.Type.valueOf(dto.getType().toUpperCase(Locale.ROOT)), dto.getSequence(), configuration);
+    }
+
+    private static ConfigCacheResult toResult(ReplicationResultDto result) {
+        ConfigCacheResult.Outcome outcome = ConfigCacheResult.Outcome.valueOf(result.getOutcome());
+        switch (outcome) {
+            case SUCCESS:
+                return ConfigCacheResult.success(new ConfigurationResponseDto(
+                        new Configuration(result.getId(), result.getName(), result.getValue(), result.getVersion())));
+            case NOT_FOUND:
+                return ConfigCacheResult.notFound();
+            case CONFLICT:
+                return ConfigCacheResult.conflict();
+            default:
+                return ConfigCacheResult.aborted();
+        }
+    }
+}
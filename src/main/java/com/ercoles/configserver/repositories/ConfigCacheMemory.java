@@ -2,57 +2,691 @@ package com.ercoles.configserver.repositories;
 
 import com.ercoles.configserver.dtos.ConfigurationResponseDto;
 
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.NavigableSet;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.function.LongSupplier;
 
 public final class ConfigCacheMemory implements ConfigCache {
-    private final Map<String, Configuration> cache = new HashMap<>();
+    // stands for an entry of the mapped snapshot that has been deleted since
+    private static final ConfigurationResponseDto TOMBSTONE = new ConfigurationResponseDto();
+
+    private final ConcurrentMap<String, ConfigurationResponseDto> cache = new ConcurrentHashMap<>();
+    // IDs of the entries in the map, sorted for range queries; only changed while the ID's bin is locked
+    private final NavigableSet<String> index = new ConcurrentSkipListSet<>();
+    // entries of a memory-mapped snapshot, decoded into the map the first time they are touched; the map always wins
+    private final MappedSnapshot base;
+    // set once every entry of the snapshot is in the map
+    private volatile boolean loaded;
+    // shares the names and values of the entries in the map when enabled
+    private final Deduplicator deduplicator;
+    private final List<ConfigChangeListener> listeners = new CopyOnWriteArrayList<>();
+    // source of versions and change sequences, always drawn while holding the entry's lock so they grow per ID
+    private final AtomicLong sequence = new AtomicLong();
+    // bumped after every successful write, so a snapshot labelled with an older value is never served again
+    private final AtomicLong modifications = new AtomicLong();
+    // kept up to date by the writes, so that the metrics read them without walking the entries: the configurations
+    // there are, the mapped ones included, and what the decoded ones hold
+    private final AtomicInteger entries = new AtomicInteger();
+    private final LongAdder decodedBytes = new LongAdder();
+    private final WriteLocks locks = new WriteLocks();
+    private volatile ConfigSnapshot snapshot = ConfigSnapshot.empty();
+
+    public ConfigCacheMemory() {
+        this(false);
+    }
+
+    public ConfigCacheMemory(boolean deduplicate) {
+        this(null, deduplicate);
+    }
+
+    ConfigCacheMemory(MappedSnapshot base) {
+        this(base, false);
+    }
+
+    private ConfigCacheMemory(MappedSnapshot base, boolean deduplicate) {
+        this.base = base;
+        this.deduplicator = deduplicate ? new Deduplicator() : null;
+        this.loaded = base == null;
+        if (base != null) {
+            sequence.set(base.getSequence());
+            modifications.incrementAndGet();
+            entries.set(base.size());
+        }
+    }
 
     @Override
-    public List<ConfigurationResponseDto> getAll() throws ConfigCacheException {
+    public ConfigSnapshot getAll() throws ConfigCacheException {
+        ConfigSnapshot current = snapshot;
+        long version = modifications.get();
+        if (current.getVersion() == version) {
+            return current;
+        }
         try {
-            return cache.values().stream().map(ConfigurationResponseDto::new).collect(Collectors.toList());
+            // an atomic batch is never listed half applied
+            ConfigSnapshot rebuilt = locks.read(() -> {
+                long listed = modifications.get();
+                loadBase();
+                return new ConfigSnapshot(listed, base != null ? withoutTombstones() : cache.values());
+            });
+            if (rebuilt.getVersion() > snapshot.getVersion()) {
+                snapshot = rebuilt;
+            }
+            return rebuilt;
         } catch (Exception e) {
             throw new ConfigCacheException("Unable to get configuration list.");
         }
     }
 
     @Override
-    public ConfigurationResponseDto get(String id) throws ConfigCacheException {
-        if (!cache.containsKey(id)) {
-            throw new ConfigCacheException("No existing configuration for ID " + id + ".");
+    public ConfigCacheResult get(String id) {
+        ConfigurationResponseDto configuration = lookup(id);
+        if (configuration == null) {
+            return ConfigCacheResult.notFound();
         }
-        return new ConfigurationResponseDto(cache.get(id));
+        return ConfigCacheResult.success(configuration);
     }
 
     @Override
-    public ConfigurationResponseDto create(String id, String name, String value) throws ConfigCacheException {
-        if (cache.containsKey(id)) {
-            throw new ConfigCacheException("ID " + id + " is already in use.");
+    public ConfigLookup getMany(Collection<String> ids) {
+        List<ConfigurationResponseDto> configurations = new ArrayList<>(ids.size());
+        List<String> missing = new ArrayList<>();
+        for (String id : ids) {
+            ConfigurationResponseDto configuration = lookup(id);
+            if (configuration == null) {
+                missing.add(id);
+            } else {
+                configurations.add(configuration);
+            }
         }
-        Configuration configuration = new Configuration(id, name, value);
-        cache.put(id, configuration);
-        return new ConfigurationResponseDto(configuration);
+        return new ConfigLookup(configurations, missing);
     }
 
     @Override
-    public ConfigurationResponseDto update(String id, String name, String value) throws ConfigCacheException {
-        if (!cache.containsKey(id)) {
-            throw new ConfigCacheException("No existing configuration for ID " + id + ".");
+    public ConfigPage getRange(String from, String to, int limit) throws ConfigCacheException {
+        try {
+            // an atomic batch is never listed half applied
+            return locks.read(() -> {
+                if (!loaded) {
+                    ConfigPage page = rangeOverBase(from, to, limit);
+                    if (page != null) {
+                        return page;
+                    }
+                    loadBase();
+                }
+                NavigableSet<String> ids = to == null ? index.tailSet(from, true) : index.subSet(from, true, to, false);
+                List<ConfigurationResponseDto> configurations = new ArrayList<>(Math.min(limit, 256));
+                for (String id : ids) {
+                    ConfigurationResponseDto configuration = lookup(id);
+                    // the ID was deleted since the index was read
+                    if (configuration == null) {
+                        continue;
+                    }
+                    if (configurations.size() == limit) {
+                        return new ConfigPage(configurations, id);
+                    }
+                    configurations.add(configuration);
+                }
+                return new ConfigPage(configurations, null);
+            });
+        } catch (Exception e) {
+            throw new ConfigCacheException("Unable to get configuration range.");
+        }
+    }
+
+    @Override
+    public ConfigCacheResult create(String id, String name, String value) {
+        Lock lock = locks.lock(id);
+        try {
+            return modified(createEntry(id, name, value, null));
+        } finally {
+            lock.unlock();
         }
-        Configuration configuration = new Configuration(id, name, value);
-        cache.replace(id, configuration);
-        return new ConfigurationResponseDto(configuration);
     }
 
     @Override
-    public ConfigurationResponseDto delete(String id) throws ConfigCacheException {
-        if (!cache.containsKey(id)) {
-            throw new ConfigCacheException("No existing configuration for ID " + id + ".");
+    public ConfigCacheResult update(String id, String name, String value) {
+        Lock lock = locks.lock(id);
+        try {
+            return modified(updateEntry(id, name, value, null));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public ConfigCacheResult delete(String id) {
+        Lock lock = locks.lock(id);
+        try {
+            return modified(deleteEntry(id, null));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<ConfigCacheResult> apply(List<ConfigOperation> operations, boolean atomic) {
+        if (atomic) {
+            // no other write can interleave
+            return locks.batch(() -> {
+                List<ConfigCacheResult> rejected = check(operations);
+                if (rejected != null) {
+                    return rejected;
+                }
+                // published together once every operation is applied
+                List<ConfigChange> changes = new ArrayList<>(operations.size());
+                List<ConfigCacheResult> results = applyEntries(operations, changes);
+                if (!changes.isEmpty()) {
+                    for (ConfigChangeListener listener : listeners) {
+                        listener.onChanges(changes);
+                    }
+                }
+                return results;
+            });
+        }
+        return applyEntries(operations, null);
+    }
+
+    @Override
+    public void restore(Collection<ConfigurationResponseDto> configurations) {
+        locks.batch(() -> {
+            List<ConfigChange> changes = new ArrayList<>(configurations.size());
+            for (ConfigurationResponseDto configuration : configurations) {
+                ConfigChange change = new ConfigChange(lookup(configuration.getId()) == null ? ConfigChange.Type.CREATED
+                        : ConfigChange.Type.UPDATED, configuration.getVersion(), configuration);
+                if (restoreEntry(change)) {
+                    changes.add(change);
+                }
+            }
+            if (!changes.isEmpty()) {
+                modifications.incrementAndGet();
+                for (ConfigChangeListener listener : listeners) {
+                    listener.onChanges(changes);
+                }
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void addChangeListener(ConfigChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public int size() {
+        return entries.get();
+    }
+
+    // only the decoded entries: the mapped ones stay in the page cache until they are used. Shared names and values
+    // are counted once per entry
+    @Override
+    public long estimatedBytes() {
+        return decodedBytes.sum();
+    }
+
+    @Override
+    public ConfigCheckpoint checkpoint(LongSupplier offset) throws ConfigCacheException {
+        blockWrites();
+        try {
+            return new ConfigCheckpoint(offset.getAsLong(), getAll());
+        } finally {
+            unblockWrites();
+        }
+    }
+
+    public DeduplicationStats getDeduplicationStats() {
+        return deduplicator == null ? DeduplicationStats.none() : deduplicator.getStats();
+    }
+
+    // the entries ordered by the UTF-8 bytes of their IDs, as snapshots store them; every write completed before the
+    // call is included, entries of the mapped snapshot are decoded one at a time
+    Iterator<ConfigurationResponseDto> sortedEntries() {
+        Set<String> shadowed = new HashSet<>();
+        List<Map.Entry<byte[], ConfigurationResponseDto>> overlay = new ArrayList<>();
+        for (Map.Entry<String, ConfigurationResponseDto> entry : cache.entrySet()) {
+            shadowed.add(entry.getKey());
+            if (entry.getValue() != TOMBSTONE) {
+                overlay.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey().getBytes(StandardCharsets.UTF_8), entry.getValue()));
+            }
+        }
+        overlay.sort((first, second) -> Arrays.compareUnsigned(first.getKey(), second.getKey()));
+        return new SortedEntries(overlay, loaded ? null : base, shadowed);
+    }
+
+    // holds off every write, batches included, until unblockWrites(): a write publishes its change while it still holds
+    // its ID, so this is how a caller knows that every change seen is also listed and the other way round. Reads carry on
+    void blockWrites() {
+        locks.lockAll();
+    }
+
+    void unblockWrites() {
+        locks.unlockAll();
+    }
+
+    long getSequence() {
+        return sequence.get();
+    }
+
+    // applies a change recovered from storage without notifying listeners; a change older than the entry it meets is
+    // ignored. Takes no lock: only for a store nothing else uses yet
+    void restore(ConfigChange change) {
+        restoreEntry(change);
+        modifications.incrementAndGet();
+    }
+
+    // applies changes replayed from another store without notifying listeners, as one batch: a listing shows all of
+    // them or none, and they count as a single modification
+    void restoreAll(List<ConfigChange> changes) {
+        locks.batch(() -> {
+            for (ConfigChange change : changes) {
+                restoreEntry(change);
+            }
+            modifications.incrementAndGet();
+            return null;
+        });
+    }
+
+    long getModifications() {
+        return modifications.get();
+    }
+
+    // the listing versions of a store replacing another one carry on from those of the other
+    void restoreModifications(long restored) {
+        modifications.accumulateAndGet(restored, Math::max);
+    }
+
+    void restoreSequence(long restored) {
+        sequence.accumulateAndGet(restored, Math::max);
+    }
+
+    // false when the change is older than the entry it meets
+    private boolean restoreEntry(ConfigChange change) {
+        ConfigurationResponseDto configuration = change.getConfiguration();
+        boolean[] restored = new boolean[1];
+        cache.compute(configuration.getId(), (key, current) -> {
+            ConfigurationResponseDto existing = resolve(key, current);
+            if (change.getType() == ConfigChange.Type.DELETED) {
+                if (existing == null || existing.getVersion() >= change.getSequence()) {
+                    return current;
+                }
+                release(current);
+                index.remove(key);
+                entries.decrementAndGet();
+                restored[0] = true;
+                return removed(key);
+            }
+            if (existing != null && existing.getVersion() >= configuration.getVersion()) {
+                return current;
+            }
+            release(current);
+            index.add(key);
+            if (existing == null) {
+                entries.incrementAndGet();
+            }
+            restored[0] = true;
+            return retain(configuration);
+        });
+        restoreSequence(change.getSequence());
+        return restored[0];
+    }
+
+    private ConfigCacheResult modified(ConfigCacheResult result) {
+        if (result.isSuccess()) {
+            modifications.incrementAndGet();
+        }
+        return result;
+    }
+
+    // dry-runs an atomic batch against the current entries: returns the results of the aborted batch,
+    // or null when every operation would succeed
+    private List<ConfigCacheResult> check(List<ConfigOperation> operations) {
+        Map<String, Boolean> present = new HashMap<>();
+        List<ConfigCacheResult> results = new ArrayList<>(operations.size());
+        boolean failed = false;
+        for (ConfigOperation operation : operations) {
+            boolean exists = present.computeIfAbsent(operation.getId(), id -> lookup(id) != null);
+            ConfigCacheResult result = ConfigCacheResult.aborted();
+            if (operation.getType() != ConfigOperation.Type.DELETE) {
+                Objects.requireNonNull(operation.getName(), "name");
+                Objects.requireNonNull(operation.getValue(), "value");
+            }
+            if (operation.getType() == ConfigOperation.Type.CREATE && exists) {
+                result = ConfigCacheResult.conflict();
+            } else if (operation.getType() != ConfigOperation.Type.CREATE && !exists) {
+                result = ConfigCacheResult.notFound();
+            } else {
+                present.put(operation.getId(), operation.getType() != ConfigOperation.Type.DELETE);
+            }
+            failed |= result != ConfigCacheResult.aborted();
+            results.add(result);
+        }
+        return failed ? results : null;
+    }
+
+    // each operation locks its own ID and publishes its change, unless the whole batch holds every lock already and
+    // collects the changes
+    private List<ConfigCacheResult> applyEntries(List<ConfigOperation> operations, List<ConfigChange> batched) {
+        List<ConfigCacheResult> results = new ArrayList<>(operations.size());
+        boolean changed = false;
+        for (ConfigOperation operation : operations) {
+            Lock lock = batched == null ? locks.lock(operation.getId()) : null;
+            try {
+                ConfigCacheResult result = applyEntry(operation, batched);
+                changed |= result.isSuccess();
+                results.add(result);
+            } finally {
+                if (lock != null) {
+                    lock.unlock();
+                }
+            }
+        }
+        // a single bump for the whole batch, so the listing snapshot is rebuilt once rather than per operation
+        if (changed) {
+            modifications.incrementAndGet();
+        }
+        return results;
+    }
+
+    private ConfigCacheResult applyEntry(ConfigOperation operation, List<ConfigChange> batched) {
+        switch (operation.getType()) {
+            case CREATE:
+                return createEntry(operation.getId(), operation.getName(), operation.getValue(), batched);
+            case UPDATE:
+                return updateEntry(operation.getId(), operation.getName(), operation.getValue(), batched);
+            default:
+                return deleteEntry(operation.getId(), batched);
+        }
+    }
+
+    private ConfigCacheResult createEntry(String id, String name, String value, List<ConfigChange> batched) {
+        ConfigurationResponseDto[] created = new ConfigurationResponseDto[1];
+        if (base != null) {
+            cache.compute(id, (key, current) -> {
+                if (resolve(key, current) != null) {
+                    return current;
+                }
+                index.add(key);
+                return created[0] = newEntry(id, name, value);
+            });
+        } else {
+            cache.computeIfAbsent(id, key -> {
+                index.add(key);
+                return created[0] = newEntry(id, name, value);
+            });
+        }
+        if (created[0] == null) {
+            return ConfigCacheResult.conflict();
+        }
+        entries.incrementAndGet();
+        publish(new ConfigChange(ConfigChange.Type.CREATED, created[0].getVersion(), created[0]), batched);
+        return ConfigCacheResult.success(created[0]);
+    }
+
+    private ConfigCacheResult updateEntry(String id, String name, String value, List<ConfigChange> batched) {
+        ConfigurationResponseDto[] updated = new ConfigurationResponseDto[1];
+        cache.compute(id, (key, current) -> {
+            if (resolve(key, current) == null) {
+                return current;
+            }
+            release(current);
+            return updated[0] = newEntry(id, name, value);
+        });
+        if (updated[0] == null) {
+            return ConfigCacheResult.notFound();
+        }
+        publish(new ConfigChange(ConfigChange.Type.UPDATED, updated[0].getVersion(), updated[0]), batched);
+        return ConfigCacheResult.success(updated[0]);
+    }
+
+    private ConfigCacheResult deleteEntry(String id, List<ConfigChange> batched) {
+        ConfigurationResponseDto[] deleted = new ConfigurationResponseDto[1];
+        long[] deletedAt = new long[1];
+        cache.compute(id, (key, current) -> {
+            ConfigurationResponseDto existing = resolve(key, current);
+            if (existing == null) {
+                return current;
+            }
+            deleted[0] = existing;
+            deletedAt[0] = sequence.incrementAndGet();
+            release(current);
+            index.remove(key);
+            return removed(key);
+        });
+        if (deleted[0] == null) {
+            return ConfigCacheResult.notFound();
+        }
+        entries.decrementAndGet();
+        publish(new ConfigChange(ConfigChange.Type.DELETED, deletedAt[0], deleted[0]), batched);
+        return ConfigCacheResult.success(deleted[0]);
+    }
+
+    private ConfigurationResponseDto lookup(String id) {
+        ConfigurationResponseDto configuration = cache.get(id);
+        if (configuration != null) {
+            return configuration == TOMBSTONE ? null : configuration;
+        }
+        if (loaded || (configuration = base.get(id)) == null) {
+            return null;
+        }
+        // a write that won the race keeps its value
+        configuration = retain(configuration);
+        ConfigurationResponseDto raced = cache.putIfAbsent(id, configuration);
+        if (raced == null) {
+            return configuration;
+        }
+        release(configuration);
+        return raced == TOMBSTONE ? null : raced;
+    }
+
+    // the entry an ID has while its bin is locked: a mapped one only counts if the map has nothing for the ID
+    private ConfigurationResponseDto resolve(String id, ConfigurationResponseDto current) {
+        if (current != null) {
+            return current == TOMBSTONE ? null : current;
+        }
+        return loaded ? null : base.get(id);
+    }
+
+    // deleted snapshot entries keep a tombstone, so a reader that decoded one just before can't bring it back
+    private ConfigurationResponseDto removed(String id) {
+        return base != null && base.contains(id) ? TOMBSTONE : null;
+    }
+
+    // merges the IDs of the index in the range with the mapped ones, decoding only the entries of the page. An ID the
+    // index holds comes from the index, any other one from the snapshot unless deleted. Null when the bounds or a
+    // mapped ID have characters from U+D800 up: only then do their UTF-8 bytes and the strings sort differently
+    private ConfigPage rangeOverBase(String from, String to, int limit) {
+        if (!sortsAsUtf8(from) || (to != null && !sortsAsUtf8(to))) {
+            return null;
+        }
+        Iterator<String> indexed = (to == null ? index.tailSet(from, true) : index.subSet(from, true, to, false)).iterator();
+        String indexedId = indexed.hasNext() ? indexed.next() : null;
+        int position = base.lowerBound(from.getBytes(StandardCharsets.UTF_8));
+        String mappedId = null;
+        List<ConfigurationResponseDto> configurations = new ArrayList<>(Math.min(limit, 256));
+        while (true) {
+            while (mappedId == null && position < base.size()) {
+                String id = new String(base.idAt(position++), StandardCharsets.UTF_8);
+                if (!sortsAsUtf8(id)) {
+                    return null;
+                }
+                if (to != null && id.compareTo(to) >= 0) {
+                    position = base.size();
+                } else if (!index.contains(id)) {
+                    mappedId = id;
+                }
+            }
+            String id;
+            if (indexedId != null && (mappedId == null || indexedId.compareTo(mappedId) < 0)) {
+                id = indexedId;
+                indexedId = indexed.hasNext() ? indexed.next() : null;
+            } else if (mappedId != null) {
+                id = mappedId;
+                mappedId = null;
+            } else {
+                return new ConfigPage(configurations, null);
+            }
+            ConfigurationResponseDto configuration = lookup(id);
+            // deleted, since the snapshot was taken or the index was read
+            if (configuration == null) {
+                continue;
+            }
+            if (configurations.size() == limit) {
+                return new ConfigPage(configurations, id);
+            }
+            configurations.add(configuration);
+        }
+    }
+
+    private static boolean sortsAsUtf8(String id) {
+        for (int i = 0; i < id.length(); i++) {
+            if (id.charAt(i) >= Character.MIN_SURROGATE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // listing needs every entry: decodes the rest of the mapped snapshot once, lookups stop consulting it afterwards
+    private void loadBase() {
+        if (loaded) {
+            return;
+        }
+        for (int i = 0; i < base.size(); i++) {
+            ConfigurationResponseDto configuration = base.entryAt(i);
+            cache.compute(configuration.getId(), (key, current) -> {
+                if (current == null) {
+                    current = retain(configuration);
+                }
+                if (current != TOMBSTONE) {
+                    index.add(key);
+                }
+                return current;
+            });
+        }
+        loaded = true;
+    }
+
+    private List<ConfigurationResponseDto> withoutTombstones() {
+        List<ConfigurationResponseDto> configurations = new ArrayList<>(cache.size());
+        for (ConfigurationResponseDto configuration : cache.values()) {
+            if (configuration != TOMBSTONE) {
+                configurations.add(configuration);
+            }
+        }
+        return configurations;
+    }
+
+    // an entry with the canonical copies of its name and value, to be released when it leaves the map; it keeps no
+    // encodings, which would copy them again
+    private ConfigurationResponseDto retain(ConfigurationResponseDto configuration) {
+        decodedBytes.add(ConfigCache.estimatedBytesOf(configuration));
+        if (deduplicator == null) {
+            return configuration;
+        }
+        return ConfigurationResponseDto.uncached(new Configuration(configuration.getId(),
+                deduplicator.acquire(configuration.getName()), deduplicator.acquire(configuration.getValue()), configuration.getVersion()));
+    }
+
+    private void release(ConfigurationResponseDto configuration) {
+        if (configuration == null || configuration == TOMBSTONE) {
+            return;
+        }
+        decodedBytes.add(-ConfigCache.estimatedBytesOf(configuration));
+        if (deduplicator != null) {
+            deduplicator.release(configuration.getName());
+            deduplicator.release(configuration.getValue());
+        }
+    }
+
+    private ConfigurationResponseDto newEntry(String id, String name, String value) {
+        ConfigurationResponseDto entry;
+        if (deduplicator != null) {
+            entry = ConfigurationResponseDto.uncached(new Configuration(id, deduplicator.acquire(name), deduplicator.acquire(value),
+                    sequence.incrementAndGet()));
+        } else {
+            entry = new ConfigurationResponseDto(new Configuration(id, name, value, sequence.incrementAndGet()));
+        }
+        decodedBytes.add(ConfigCache.estimatedBytesOf(entry));
+        return entry;
+    }
+
+    // called once the entry is in the map but while its ID is still locked, so listeners see the changes of an ID
+    // in version order without holding up writes of other IDs that share a bin of the map
+    private void publish(ConfigChange change, List<ConfigChange> batched) {
+        if (batched != null) {
+            batched.add(change);
+            return;
+        }
+        for (ConfigChangeListener listener : listeners) {
+            listener.onChange(change);
+        }
+    }
+
+    // merges the sorted map entries with the mapped ones the map doesn't shadow, both ordered by UTF-8 ID bytes
+    private static final class SortedEntries implements Iterator<ConfigurationResponseDto> {
+        private final List<Map.Entry<byte[], ConfigurationResponseDto>> overlay;
+        private final MappedSnapshot base;
+        private final Set<String> shadowed;
+        private int overlayIndex;
+        private int baseIndex;
+        private byte[] baseId;
+
+        SortedEntries(List<Map.Entry<byte[], ConfigurationResponseDto>> overlay, MappedSnapshot base, Set<String> shadowed) {
+            this.overlay = overlay;
+            this.base = base;
+            this.shadowed = shadowed;
+            advanceBase();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return overlayIndex < overlay.size() || baseId != null;
+        }
+
+        @Override
+        public ConfigurationResponseDto next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            if (baseId == null || (overlayIndex < overlay.size()
+                    && Arrays.compareUnsigned(overlay.get(overlayIndex).getKey(), baseId) < 0)) {
+                return overlay.get(overlayIndex++).getValue();
+            }
+            ConfigurationResponseDto configuration = base.entryAt(baseIndex++);
+            advanceBase();
+            return configuration;
+        }
+
+        private void advanceBase() {
+            baseId = null;
+            while (base != null && baseIndex < base.size()) {
+                byte[] id = base.idAt(baseIndex);
+                if (!shadowed.contains(new String(id, StandardCharsets.UTF_8))) {
+                    baseId = id;
+                    return;
+                }
+                baseIndex++;
+            }
         }
-        Configuration configuration = cache.remove(id);
-        return new ConfigurationResponseDto(configuration);
     }
 }
@@ -0,0 +1,99 @@
+package com.ercoles.configserver.repositories;
+
+import com.ercoles.configserver.dtos.ConfigurationResponseDto;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// keeps names and values as UTF-8 in direct memory, with only the ID, the version and the location of the bytes on
+// the heap
+public final class ConfigCacheOffHeap extends EncodedConfigCache<ConfigCacheOffHeap.Entry> {
+    private final SlabAllocator allocator = new SlabAllocator();
+
+    public ConfigCacheOffHeap() {
+        super(true);
+    }
+
+    // direct memory reserved for the slabs, and the part of it held by live entries; values above
+    // SlabAllocator.MAX_BLOCK have buffers of their own and are counted in neither
+    public long getReservedBytes() {
+        return allocator.reservedBytes();
+    }
+
+    public long getAllocatedBytes() {
+        return allocator.allocatedBytes();
+    }
+
+    @Override
+    Entry encode(String name, String value) {
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+        int length = nameBytes.length + valueBytes.length;
+        if (length > SlabAllocator.MAX_BLOCK) {
+            ByteBuffer buffer = SlabAllocator.allocateLarge(length);
+            buffer.put(nameBytes).put(valueBytes);
+            return new Entry(-1, buffer, nameBytes.length, valueBytes.length);
+        }
+        long handle = allocator.allocate(length);
+        ByteBuffer slab = allocator.slab(handle).duplicate();
+        slab.position(SlabAllocator.offset(handle));
+        slab.put(nameBytes).put(valueBytes);
+        return new Entry(handle, null, nameBytes.length, valueBytes.length);
+    }
+
+    // the bytes in use, without the rounding of the block sizes; see getAllocatedBytes for the blocks
+    @Override
+    long encodedBytes(Entry entry) {
+        return entry.nameLength + entry.valueLength;
+    }
+
+    @Override
+    void setVersion(Entry entry, long version) {
+        entry.version = version;
+    }
+
+    @Override
+    ConfigurationResponseDto decode(String id, Entry entry) {
+        ByteBuffer source;
+        int offset;
+        if (entry.buffer != null) {
+            source = entry.buffer.duplicate();
+            offset = 0;
+        } else {
+            source = allocator.slab(entry.handle).duplicate();
+            offset = SlabAllocator.offset(entry.handle);
+        }
+        byte[] bytes = new byte[entry.nameLength + entry.valueLength];
+        source.position(offset);
+        source.get(bytes);
+        String name = new String(bytes, 0, entry.nameLength, StandardCharsets.UTF_8);
+        String value = new String(bytes, entry.nameLength, entry.valueLength, StandardCharsets.UTF_8);
+        return new ConfigurationResponseDto(new Configuration(id, name, value, entry.version));
+    }
+
+    @Override
+    void release(Entry entry) {
+        // a buffer of its own goes with the entry
+        if (entry.buffer == null) {
+            allocator.free(entry.handle, entry.nameLength + entry.valueLength);
+        }
+    }
+
+    // what the heap keeps per entry, besides the ID
+    static final class Entry {
+        // set before the entry is put in the map, which publishes it
+        long version;
+        // location in a slab, or -1 when the bytes have a buffer of their own
+        final long handle;
+        final ByteBuffer buffer;
+        final int nameLength;
+        final int valueLength;
+
+        Entry(long handle, ByteBuffer buffer, int nameLength, int valueLength) {
+            this.handle = handle;
+            this.buffer = buffer;
+            this.nameLength = nameLength;
+            this.valueLength = valueLength;
+        }
+    }
+}
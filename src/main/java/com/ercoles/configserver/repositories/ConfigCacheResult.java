@@ -0,0 +1,60 @@
+package com.ercoles.configserver.repositories;
+
+import com.ercoles.configserver.dtos.ConfigurationResponseDto;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Value;
+
+@Value
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class ConfigCacheResult {
+    private static final ConfigCacheResult NOT_FOUND = new ConfigCacheResult(Outcome.NOT_FOUND, null);
+    private static final ConfigCacheResult CONFLICT = new ConfigCacheResult(Outcome.CONFLICT, null);
+    private static final ConfigCacheResult ABORTED = new ConfigCacheResult(Outcome.ABORTED, null);
+    private static final ConfigCacheResult UNSUPPORTED = new ConfigCacheResult(Outcome.UNSUPPORTED, null);
+    private static final ConfigCacheResult UNAVAILABLE = new ConfigCacheResult(Outcome.UNAVAILABLE, null);
+
+    Outcome outcome;
+    ConfigurationResponseDto configuration;
+
+    public static ConfigCacheResult success(ConfigurationResponseDto configuration) {
+        return new ConfigCacheResult(Outcome.SUCCESS, configuration);
+    }
+
+    public static ConfigCacheResult notFound() {
+        return NOT_FOUND;
+    }
+
+    public static ConfigCacheResult conflict() {
+        return CONFLICT;
+    }
+
+    public static ConfigCacheResult aborted() {
+        return ABORTED;
+    }
+
+    public static ConfigCacheResult unsupported() {
+        return UNSUPPORTED;
+    }
+
+    public static ConfigCacheResult unavailable() {
+        return UNAVAILABLE;
+    }
+
+    public boolean isSuccess() {
+        return outcome == Outcome.SUCCESS;
+    }
+
+    public enum Outcome {
+        SUCCESS,
+        NOT_FOUND,
+        CONFLICT,
+        // not applied because another operation of the same atomic batch failed
+        ABORTED,
+        // not applied because the store cannot apply the atomic batch as a whole, as when sharding spreads its IDs
+        UNSUPPORTED,
+        // the instance holding the ID could not be reached; the operation may still have been applied if the
+        // connection broke once it was sent
+        UNAVAILABLE
+    }
+}
@@ -0,0 +1,874 @@
+package com.ercoles.configserver.repositories;
+
+import com.ercoles.configserver.dtos.ConfigurationOperationRequestDto;
+import com.ercoles.configserver.dtos.ConfigurationResponseDto;
+import com.ercoles.configserver.dtos.ReplicationChangeDto;
+import com.ercoles.configserver.dtos.ReplicationResultDto;
+import com.ercoles.configserver.dtos.ShardConfigurationDto;
+import com.ercoles.configserver.dtos.ShardMembersDto;
+import com.ercoles.configserver.dtos.ShardPageDto;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntFunction;
+import java.util.function.LongSupplier;
+
+// this instance's share of the configurations of a cluster, the IDs spread over the instances by consistent hashing;
+// operations on the IDs of other instances are forwarded to them, listings gather the shares of every instance. An
+// instance joins through any member, which tells it the others, and takes its share over from them; a leaving one
+// hands its share over first. Members only learn about each other from joins and leaves, so an instance turning down
+// a request as not its own makes the sender ask it for the members and try again. The changes of each share are
+// sent on to the other instances, so that listeners everywhere see the changes of the whole cluster
+public final class ConfigCacheSharded implements ConfigCache, Closeable {
+    // what an instance answers to operations on IDs it does not hold, as far as it knows
+    public static final int MISDIRECTED = 421;
+    // a request misdirected by an outdated view of the members is sent again after refreshing it, this many times in all
+    private static final int MAX_ATTEMPTS = 3;
+    // changes sent to another instance in one call at most
+    private static final int MAX_FORWARDED = 1000;
+    // a batch of changes an instance can't be reached for is sent again this many times in all, waiting twice as
+    // long before each try as before the previous one, up to the longest wait
+    private static final int FORWARD_ATTEMPTS = 8;
+    private static final long FIRST_BACKOFF = 100;
+    private static final long LONGEST_BACKOFF = 5000;
+
+    private final ConfigCache local;
+    // the instance to join through, null for the first one
+    private final URI seed;
+    private final int virtualNodes;
+    private final int timeout;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final JavaType resultsType = objectMapper.getTypeFactory().constructCollectionType(List.class, ReplicationResultDto.class);
+    private final List<ConfigChangeListener> listeners = new CopyOnWriteArrayList<>();
+    // calls to other instances wait on the network, a virtual thread each
+    private final ExecutorService gatherer = Executors.newVirtualThreadPerTaskExecutor();
+    // by the instance the changes of this share are sent to
+    private final Map<String, Forwarder> forwarders = new ConcurrentHashMap<>();
+    // operations on the local share take the read side, moving configurations between instances the write side
+    private final ReentrantReadWriteLock rebalanceLock = new ReentrantReadWriteLock();
+    private final CountDownLatch joined = new CountDownLatch(1);
+    // tells the versions of the local share apart from those of the share before a restart
+    private final String epoch = UUID.randomUUID().toString();
+    // the shares of the last listing, each as its instance, epoch and version, and the version it was given
+    private List<String> listedShares = List.of();
+    private long listingVersion;
+    // the base URI the other instances reach this one at, set on joining
+    private volatile String self;
+    // null until joined, and once left
+    private volatile HashRing ring;
+
+    // the timeout applies to every call to another instance, and to operations arriving before this one has joined
+    public ConfigCacheSharded(ConfigCache local, URI seed, int virtualNodes, long timeout) {
+        this.local = local;
+        this.seed = seed;
+        this.virtualNodes = virtualNodes;
+        this.timeout = (int) timeout;
+        local.addChangeListener(new ConfigChangeListener() {
+            @Override
+            public void onChange(ConfigChange change) {
+                publish(List.of(change));
+            }
+
+            @Override
+            public void onChanges(List<ConfigChange> changes) {
+                publish(changes);
+            }
+        });
+    }
+
+    // asks the seed for the members and announces this instance to each of them, which hand over the configurations
+    // it now holds before answering; operations wait for it to end
+    public void join(String selfUri) throws ConfigCacheException {
+        self = trim(selfUri);
+        try {
+            Set<String> members = new TreeSet<>();
+            if (seed != null) {
+                members.addAll(fetchMembers(seed.toString()));
+            }
+            members.add(self);
+            ring = new HashRing(members, virtualNodes);
+            for (String member : members) {
+                if (!member.equals(self)) {
+                    ShardMembersDto announced = call(member, "POST", "shard/members?uri=" + encode(self), null,
+                            objectMapper.constructType(ShardMembersDto.class));
+                    if (announced != null) {
+                        // instances that joined meanwhile, through another seed
+                        members.addAll(announced.getMembers());
+                    }
+                }
+            }
+            ring = new HashRing(members, virtualNodes);
+        } catch (IOException e) {
+            throw new ConfigCacheException("Unable to join the cluster of " + seed + ".", e);
+        } finally {
+            joined.countDown();
+        }
+    }
+
+    // hands every configuration over to the instances holding it once this one is gone, then tells them it left; a
+    // member that could not be told finds out the next time it sends this instance a request
+    public void leave() throws ConfigCacheException {
+        rebalanceLock.writeLock().lock();
+        try {
+            HashRing current = ring;
+            if (current == null) {
+                return;
+            }
+            HashRing next = current.without(self, virtualNodes);
+            if (next != null) {
+                handOff(next);
+                for (String member : next.getNodes()) {
+                    try {
+                        call(member, "DELETE", "shard/members?uri=" + encode(self), null, objectMapper.constructType(ShardMembersDto.class));
+                    } catch (IOException e) {
+                        // gone as well, or unreachable for now
+                    }
+                }
+            }
+            ring = next;
+        } finally {
+            rebalanceLock.writeLock().unlock();
+        }
+    }
+
+    public Set<String> getMembers() throws ConfigCacheException {
+        return awaitRing().getNodes();
+    }
+
+    // a new instance announcing itself: the configurations it now holds move over to it before this returns
+    public Set<String> addMember(String node) throws ConfigCacheException {
+        awaitJoined();
+        rebalanceLock.writeLock().lock();
+        try {
+            HashRing current = currentRing();
+            String member = trim(node);
+            if (current.contains(member)) {
+                return current.getNodes();
+            }
+            HashRing next = current.with(member, virtualNodes);
+            handOff(next);
+            ring = next;
+            return next.getNodes();
+        } finally {
+            rebalanceLock.writeLock().unlock();
+        }
+    }
+
+    // a leaving instance, which already handed its configurations over
+    public Set<String> removeMember(String node) throws ConfigCacheException {
+        awaitJoined();
+        rebalanceLock.writeLock().lock();
+        try {
+            HashRing current = currentRing();
+            String member = trim(node);
+            if (member.equals(self) || !current.contains(member)) {
+                return current.getNodes();
+            }
+            ring = current.without(member, virtualNodes);
+            return ring.getNodes();
+        } finally {
+            rebalanceLock.writeLock().unlock();
+        }
+    }
+
+    // configurations another instance hands over, with their versions, so tags clients hold stay valid; they only
+    // moved, so listeners are not told
+    public void acceptHandoff(Collection<ConfigurationResponseDto> configurations) throws ConfigCacheException {
+        rebalanceLock.writeLock().lock();
+        try {
+            local.restore(configurations);
+        } finally {
+            rebalanceLock.writeLock().unlock();
+        }
+    }
+
+    // the changes of another instance's share, told to the listeners of this one in the order that instance sent them;
+    // with gap, after telling them the sender had to drop some before these
+    public void acceptChanges(List<ConfigChange> changes, boolean gap) {
+        for (ConfigChangeListener listener : listeners) {
+            if (gap) {
+                listener.onGap();
+            }
+            if (!changes.isEmpty()) {
+                listener.onChanges(changes);
+            }
+        }
+    }
+
+    // what other instances forward: null when some of the IDs are not this instance's to hold
+    public ConfigLookup getManyLocal(Collection<String> ids) throws ConfigCacheException {
+        awaitJoined();
+        rebalanceLock.readLock().lock();
+        try {
+            return owns(ids) ? local.getMany(ids) : null;
+        } finally {
+            rebalanceLock.readLock().unlock();
+        }
+    }
+
+    public List<ConfigCacheResult> applyLocal(List<ConfigOperation> operations, boolean atomic) throws ConfigCacheException {
+        awaitJoined();
+        rebalanceLock.readLock().lock();
+        try {
+            List<String> ids = new ArrayList<>(operations.size());
+            for (ConfigOperation operation : operations) {
+                ids.add(operation.getId());
+            }
+            return owns(ids) ? local.apply(operations, atomic) : null;
+        } finally {
+            rebalanceLock.readLock().unlock();
+        }
+    }
+
+    // listings cover whatever the instance holds, the gathering instance drops what two of them hold mid-handoff
+    public ConfigSnapshot getAllLocal() throws ConfigCacheException {
+        rebalanceLock.readLock().lock();
+        try {
+            return local.getAll();
+        } finally {
+            rebalanceLock.readLock().unlock();
+        }
+    }
+
+    public ConfigPage getRangeLocal(String from, String to, int limit) throws ConfigCacheException {
+        rebalanceLock.readLock().lock();
+        try {
+            return local.getRange(from, to, limit);
+        } finally {
+            rebalanceLock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public ConfigSnapshot getAll() throws ConfigCacheException {
+        List<Share> shares = gather(awaitRing().getNodes(), node -> {
+            if (node.equals(self)) {
+                return new Share(node, epoch, getAllLocal());
+            }
+            ShardPageDto page = fetchPage(node, "shard/configurations");
+            return new Share(node, page.getEpoch(), new ConfigSnapshot(page.getVersion(), toConfigurations(page)));
+        });
+        List<String> listed = new ArrayList<>(shares.size());
+        Map<String, ConfigurationResponseDto> configurations = new LinkedHashMap<>();
+        for (Share share : shares) {
+            listed.add(share.node + " " + share.epoch + " " + share.snapshot.getVersion());
+            share.snapshot.forEach(configuration -> configurations.putIfAbsent(configuration.getId(), configuration));
+        }
+        return new ConfigSnapshot(listingVersion(listed), configurations.values());
+    }
+
+    public String getEpoch() {
+        return epoch;
+    }
+
+    @Override
+    public ConfigCacheResult get(String id) throws ConfigCacheException {
+        List<ConfigurationResponseDto> found = getMany(List.of(id)).getConfigurations();
+        return found.isEmpty() ? ConfigCacheResult.notFound() : ConfigCacheResult.success(found.get(0));
+    }
+
+    @Override
+    public ConfigLookup getMany(Collection<String> ids) throws ConfigCacheException {
+        List<String> requested = new ArrayList<>(ids);
+        // filled in by the instances at once
+        Map<String, ConfigurationResponseDto> found = new ConcurrentHashMap<>();
+        route(requested.size(), requested::get, false, (node, indexes) -> {
+            List<String> part = new ArrayList<>(indexes.size());
+            for (int index : indexes) {
+                part.add(requested.get(index));
+            }
+            if (node.equals(self)) {
+                local.getMany(part).getConfigurations().forEach(configuration -> found.put(configuration.getId(), configuration));
+                return true;
+            }
+            ShardPageDto page = call(node, "POST", "shard/lookup", part, objectMapper.constructType(ShardPageDto.class));
+            if (page == null) {
+                return false;
+            }
+            page.getConfigurations().forEach(dto -> found.put(dto.getId(), toConfiguration(dto)));
+            return true;
+        });
+        List<ConfigurationResponseDto> configurations = new ArrayList<>(found.size());
+        List<String> missing = new ArrayList<>();
+        for (String id : requested) {
+            ConfigurationResponseDto configuration = found.get(id);
+            if (configuration != null) {
+                configurations.add(configuration);
+            } else {
+                missing.add(id);
+            }
+        }
+        return new ConfigLookup(configurations, missing);
+    }
+
+    // the first limit IDs of each instance, merged; an instance with more stops the page at its own next ID, past
+    // which the others' may be missing
+    @Override
+    public ConfigPage getRange(String from, String to, int limit) throws ConfigCacheException {
+        List<ConfigPage> pages = gather(awaitRing().getNodes(), node -> {
+            if (node.equals(self)) {
+                return getRangeLocal(from, to, limit);
+            }
+            ShardPageDto page = fetchPage(node, "shard/configurations?from=" + encode(from) + (to != null ? "&to=" + encode(to) : "")
+                    + "&limit=" + limit);
+            return new ConfigPage(toConfigurations(page), page.getNext());
+        });
+        Map<String, ConfigurationResponseDto> configurations = new HashMap<>();
+        String bound = null;
+        for (ConfigPage page : pages) {
+            page.getConfigurations().forEach(configuration -> configurations.putIfAbsent(configuration.getId(), configuration));
+            if (page.getNext() != null && (bound == null || page.getNext().compareTo(bound) < 0)) {
+                bound = page.getNext();
+            }
+        }
+        List<ConfigurationResponseDto> merged = new ArrayList<>();
+        for (ConfigurationResponseDto configuration : configurations.values()) {
+            if (bound == null || configuration.getId().compareTo(bound) < 0) {
+                merged.add(configuration);
+            }
+        }
+        merged.sort(Comparator.comparing(ConfigurationResponseDto::getId));
+        if (merged.size() > limit) {
+            return new ConfigPage(new ArrayList<>(merged.subList(0, limit)), merged.get(limit).getId());
+        }
+        return new ConfigPage(merged, bound);
+    }
+
+    @Override
+    public ConfigCacheResult create(String id, String name, String value) throws ConfigCacheException {
+        return apply(List.of(ConfigOperation.create(id, name, value)), false).get(0);
+    }
+
+    @Override
+    public ConfigCacheResult update(String id, String name, String value) throws ConfigCacheException {
+        return apply(List.of(ConfigOperation.update(id, name, value)), false).get(0);
+    }
+
+    @Override
+    public ConfigCacheResult delete(String id) throws ConfigCacheException {
+        return apply(List.of(ConfigOperation.delete(id)), false).get(0);
+    }
+
+    // atomic batches only when a single instance holds every ID of them, the others are turned down as unsupported.
+    // Operations on IDs of an instance that can't be reached are reported as unavailable, the others are applied; an
+    // atomic batch fails as a whole
+    @Override
+    public List<ConfigCacheResult> apply(List<ConfigOperation> operations, boolean atomic) throws ConfigCacheException {
+        ConfigCacheResult[] results = new ConfigCacheResult[operations.size()];
+        boolean routed = route(operations.size(), index -> operations.get(index).getId(), atomic, (node, indexes) -> {
+            List<ConfigOperation> part = new ArrayList<>(indexes.size());
+            for (int index : indexes) {
+                part.add(operations.get(index));
+            }
+            List<ConfigCacheResult> partResults = node.equals(self) ? local.apply(part, atomic) : applyRemote(node, part, atomic);
+            if (partResults == null) {
+                return false;
+            }
+            for (int i = 0; i < indexes.size(); i++) {
+                results[indexes.get(i)] = partResults.get(i);
+            }
+            return true;
+        });
+        if (!routed) {
+            Arrays.fill(results, ConfigCacheResult.unsupported());
+        }
+        return List.of(results);
+    }
+
+    // null when the instance turns the operations down
+    private List<ConfigCacheResult> applyRemote(String node, List<ConfigOperation> operations, boolean atomic) throws IOException {
+        List<ReplicationResultDto> dtos;
+        try {
+            dtos = call(node, "POST", "shard/apply?atomic=" + atomic, toRequest(operations), resultsType);
+        } catch (IOException e) {
+            if (atomic) {
+                throw e;
+            }
+            return Collections.nCopies(operations.size(), ConfigCacheResult.unavailable());
+        }
+        if (dtos == null) {
+            return null;
+        }
+        List<ConfigCacheResult> results = new ArrayList<>(dtos.size());
+        for (ReplicationResultDto dto : dtos) {
+            results.add(toResult(dto));
+        }
+        return results;
+    }
+
+    // the share of this instance only: each instance reports its own
+    @Override
+    public int size() throws ConfigCacheException {
+        return local.size();
+    }
+
+    @Override
+    public long estimatedBytes() throws ConfigCacheException {
+        return local.estimatedBytes();
+    }
+
+    // the offset comes before the listing, gathered from every instance: a change the log holds before the offset
+    // was made before the listing, so it is listed, while one made in between may be both listed and replayed,
+    // which a copy replaying the log in order ends up the same from. The other instances can't hold their writes off
+    // for this one, so nothing stricter is possible
+    @Override
+    public ConfigCheckpoint checkpoint(LongSupplier offset) throws ConfigCacheException {
+        long from = offset.getAsLong();
+        return new ConfigCheckpoint(from, getAll());
+    }
+
+    // the changes of the whole cluster, those of other instances' shares a little later than those of this one;
+    // configurations moving between instances are not reported
+    @Override
+    public void addChangeListener(ConfigChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void close() throws IOException {
+        forwarders.clear();
+        gatherer.shutdownNow();
+        if (local instanceof Closeable) {
+            ((Closeable) local).close();
+        }
+    }
+
+    // groups the items, by index, by the instance holding their IDs and hands the groups over at once, the local one
+    // while no rebalance is under way; a group an instance turns down is grouped again once the members are refreshed.
+    // False, with nothing handed over, when the items must go to a single instance and more than one holds them
+    private boolean route(int count, IntFunction<String> idOf, boolean single, Part part) throws ConfigCacheException {
+        List<Integer> pending = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            pending.add(i);
+        }
+        for (int attempt = 1; !pending.isEmpty(); attempt++) {
+            if (attempt > MAX_ATTEMPTS) {
+                throw new ConfigCacheException("Unable to find the instance holding configuration " + idOf.apply(pending.get(0)) + ".");
+            }
+            HashRing current = awaitRing();
+            Map<String, List<Integer>> groups = new LinkedHashMap<>();
+            for (int index : pending) {
+                groups.computeIfAbsent(current.ownerOf(idOf.apply(index)), node -> new ArrayList<>()).add(index);
+            }
+            if (single && groups.size() > 1) {
+                return false;
+            }
+            List<Boolean> handled = gather(groups.keySet(), node -> handOver(current, node, groups.get(node), part));
+            List<Integer> misdirected = new ArrayList<>();
+            int group = 0;
+            for (List<Integer> indexes : groups.values()) {
+                if (!handled.get(group++)) {
+                    misdirected.addAll(indexes);
+                }
+            }
+            pending = misdirected;
+        }
+        return true;
+    }
+
+    private boolean handOver(HashRing current, String node, List<Integer> indexes, Part part) throws ConfigCacheException {
+        try {
+            if (node.equals(self)) {
+                rebalanceLock.readLock().lock();
+                try {
+                    // a rebalance in between may have moved them
+                    return ring == current && part.handle(node, indexes);
+                } finally {
+                    rebalanceLock.readLock().unlock();
+                }
+            }
+            if (part.handle(node, indexes)) {
+                return true;
+            }
+            refreshMembers(node);
+            return false;
+        } catch (IOException e) {
+            throw new ConfigCacheException("Unable to reach instance " + node + ".", e);
+        }
+    }
+
+    // runs a call per instance, those to other instances at once and the one to this instance on the calling thread,
+    // and returns their results in the order of the instances; a listing then takes as long as the slowest instance
+    // rather than all of them in turn
+    private <T> List<T> gather(Collection<String> nodes, NodeCall<T> call) throws ConfigCacheException {
+        List<Future<T>> calls = new ArrayList<>(nodes.size());
+        for (String node : nodes) {
+            calls.add(node.equals(self) || nodes.size() == 1 ? null : gatherer.submit(() -> call.apply(node)));
+        }
+        List<T> results = new ArrayList<>(nodes.size());
+        try {
+            int index = 0;
+            for (String node : nodes) {
+                Future<T> remote = calls.get(index++);
+                results.add(remote == null ? call.apply(node) : remote.get());
+            }
+            return results;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConfigCacheException("Interrupted while waiting for the other instances.", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof ConfigCacheException) {
+                throw (ConfigCacheException) e.getCause();
+            }
+            throw new ConfigCacheException("Unable to gather configurations from the other instances.", e.getCause());
+        } finally {
+            // those still running once one failed
+            for (Future<T> remote : calls) {
+                if (remote != null) {
+                    remote.cancel(true);
+                }
+            }
+        }
+    }
+
+    // takes in the members another instance knows of: those that joined meanwhile get their configurations from
+    // this one, those that left are dropped
+    private void refreshMembers(String node) throws IOException, ConfigCacheException {
+        Set<String> members = new TreeSet<>(fetchMembers(node));
+        HashRing current = currentRing();
+        for (String member : members) {
+            if (!current.contains(member)) {
+                addMember(member);
+            }
+        }
+        for (String member : currentRing().getNodes()) {
+            if (!members.contains(member) && !member.equals(self)) {
+                removeMember(member);
+            }
+        }
+    }
+
+    // under the write lock: sends away what the next ring puts on other instances, then drops it here
+    private void handOff(HashRing next) throws ConfigCacheException {
+        Map<String, List<ShardConfigurationDto>> moving = new HashMap<>();
+        for (ConfigurationResponseDto configuration : local.getAll()) {
+            String owner = next.ownerOf(configuration.getId());
+            if (!owner.equals(self)) {
+                moving.computeIfAbsent(owner, node -> new ArrayList<>()).add(toDto(configuration));
+            }
+        }
+        for (Map.Entry<String, List<ShardConfigurationDto>> handoff : moving.entrySet()) {
+            try {
+                call(handoff.getKey(), "POST", "shard/handoff", handoff.getValue(), objectMapper.constructType(Void.class));
+            } catch (IOException e) {
+                throw new ConfigCacheException("Unable to hand configurations over to instance " + handoff.getKey() + ".", e);
+            }
+        }
+        for (List<ShardConfigurationDto> handedOff : moving.values()) {
+            for (ShardConfigurationDto configuration : handedOff) {
+                local.delete(configuration.getId());
+            }
+        }
+    }
+
+    // a version of this instance's own, taken anew whenever the shares listed differ from the last ones, so that it
+    // keeps growing: the versions of the shares start over when an instance restarts, and go with one that leaves,
+    // so their sum does not. The same shares always hold the same configurations
+    private synchronized long listingVersion(List<String> shares) {
+        if (!shares.equals(listedShares)) {
+            listedShares = shares;
+            listingVersion++;
+        }
+        return listingVersion;
+    }
+
+    private boolean owns(Collection<String> ids) {
+        HashRing current = ring;
+        if (current == null) {
+            return false;
+        }
+        for (String id : ids) {
+            if (!current.ownerOf(id).equals(self)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // the changes of this share, told to the listeners here and queued for the other instances
+    private void publish(List<ConfigChange> changes) {
+        if (rebalanceLock.isWriteLockedByCurrentThread()) {
+            return;
+        }
+        for (ConfigChangeListener listener : listeners) {
+            listener.onChanges(changes);
+        }
+        HashRing current = ring;
+        if (current == null) {
+            return;
+        }
+        for (String node : current.getNodes()) {
+            if (!node.equals(self)) {
+                forwarders.computeIfAbsent(node, Forwarder::new).add(changes);
+            }
+        }
+    }
+
+    private void awaitJoined() throws ConfigCacheException {
+        try {
+            if (!joined.await(timeout, TimeUnit.MILLISECONDS)) {
+                throw new ConfigCacheException("This instance has not joined its cluster yet.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ConfigCacheException("Interrupted while joining the cluster.", e);
+        }
+    }
+
+    private HashRing awaitRing() throws ConfigCacheException {
+        awaitJoined();
+        return currentRing();
+    }
+
+    private HashRing currentRing() throws ConfigCacheException {
+        HashRing current = ring;
+        if (current == null) {
+            throw new ConfigCacheException("This instance is not a member of a cluster.");
+        }
+        return current;
+    }
+
+    private Set<String> fetchMembers(String node) throws IOException {
+        ShardMembersDto members = call(node, "GET", "shard/members", null, objectMapper.constructType(ShardMembersDto.class));
+        if (members == null) {
+            throw new IOException("Instance " + node + " is not a member of a cluster.");
+        }
+        return new TreeSet<>(members.getMembers());
+    }
+
+    private ShardPageDto fetchPage(String node, String path) throws ConfigCacheException {
+        try {
+            ShardPageDto page = call(node, "GET", path, null, objectMapper.constructType(ShardPageDto.class));
+            if (page == null) {
+                throw new ConfigCacheException("Instance " + node + " is not a member of a cluster.");
+            }
+            return page;
+        } catch (IOException e) {
+            throw new ConfigCacheException("Unable to reach instance " + node + ".", e);
+        }
+    }
+
+    // null when the instance answers the IDs are not its own
+    private <T> T call(String node, String method, String path, Object body, JavaType type) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) URI.create(node + "/" + path).toURL().openConnection();
+        connection.setConnectTimeout(timeout);
+        connection.setReadTimeout(timeout);
+        connection.setRequestMethod(method);
+        if (body != null) {
+            connection.setRequestProperty("Content-Type", "application/json");
+            connection.setDoOutput(true);
+            try (OutputStream out = connection.getOutputStream()) {
+                objectMapper.writeValue(out, body);
+            }
+        }
+        int status = connection.getResponseCode();
+        if (status != HttpURLConnection.HTTP_OK) {
+            // lets the connection be reused for the next call
+            InputStream error = connection.getErrorStream();
+            if (error != null) {
+                error.close();
+            }
+            if (status == MISDIRECTED) {
+                return null;
+            }
+            throw new IOException("Instance answered " + status + " to " + connection.getURL() + ".");
+        }
+        try (InputStream in = connection.getInputStream()) {
+            if (type.getRawClass() == Void.class) {
+                in.readAllBytes();
+                return null;
+            }
+            return objectMapper.readValue(in, type);
+        }
+    }
+
+    public static ReplicationChangeDto toDto(ConfigChange change) {
+        ConfigurationResponseDto configuration = change.getConfiguration();
+        return new ReplicationChangeDto(null, change.getType().name().toLowerCase(Locale.ROOT), change.getSequence(),
+                configuration.getId(), configuration.getName(), configuration.getValue(), configuration.getVersion());
+    }
+
+    public static ConfigChange toChange(ReplicationChangeDto dto) {
+        ConfigurationResponseDto configuration = new ConfigurationResponseDto(
+                new Configuration(dto.getId(), dto.getName(), dto.getValue(), dto.getVersion()));
+        return new ConfigChange(ConfigChange.Type.valueOf(dto.getType().toUpperCase(Locale.ROOT)), dto.getSequence(), configuration);
+    }
+
+    private static List<ConfigurationResponseDto> toConfigurations(ShardPageDto page) {
+        List<ConfigurationResponseDto> configurations = new ArrayList<>(page.getConfigurations().size());
+        page.getConfigurations().forEach(dto -> configurations.add(toConfiguration(dto)));
+        return configurations;
+    }
+
+    private static List<ConfigurationOperationRequestDto> toRequest(List<ConfigOperation> operations) {
+        List<ConfigurationOperationRequestDto> request = new ArrayList<>(operations.size());
+        for (ConfigOperation operation : operations) {
+            request.add(new ConfigurationOperationRequestDto(operation.getType().name().toLowerCase(Locale.ROOT),
+                    operation.getId(), operation.getName(), operation.getValue()));
+        }
+        return request;
+    }
+
+    public static ShardConfigurationDto toDto(ConfigurationResponseDto configuration) {
+        return new ShardConfigurationDto(configuration.getId(), configuration.getName(), configuration.getValue(), configuration.getVersion());
+    }
+
+    public static ConfigurationResponseDto toConfiguration(ShardConfigurationDto dto) {
+        return new ConfigurationResponseDto(new Configuration(dto.getId(), dto.getName(), dto.getValue(), dto.getVersion()));
+    }
+
+    private static ConfigCacheResult toResult(ReplicationResultDto result) {
+        ConfigCacheResult.Outcome outcome = ConfigCacheResult.Outcome.valueOf(result.getOutcome());
+        switch (outcome) {
+            case SUCCESS:
+                return ConfigCacheResult.success(new ConfigurationResponseDto(
+                        new Configuration(result.getId(), result.getName(), result.getValue(), result.getVersion())));
+            case NOT_FOUND:
+                return ConfigCacheResult.notFound();
+            case CONFLICT:
+                return ConfigCacheResult.conflict();
+            default:
+                return ConfigCacheResult.aborted();
+        }
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+
+    private static String trim(String uri) {
+        return uri.endsWith("/") ? uri.substring(0, uri.length() - 1) : uri;
+    }
+
+    // the changes on their way to one instance, sent in order by a single task at a time so that writing never waits
+    // for the network. A batch the instance can't be reached for is sent again, with backoff, as long as it is a
+    // member; once given up, it is dropped with everything queued behind it, and the next batch the instance gets
+    // tells it of the gap, so that its clients start over rather than go on without those changes
+    private final class Forwarder implements Runnable {
+        private final String node;
+        private final Queue<ConfigChange> pending = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean sending = new AtomicBoolean();
+        // only used by the task sending
+        private boolean gap;
+
+        Forwarder(String node) {
+            this.node = node;
+        }
+
+        void add(List<ConfigChange> changes) {
+            pending.addAll(changes);
+            if (sending.compareAndSet(false, true)) {
+                try {
+                    gatherer.execute(this);
+                } catch (RejectedExecutionException e) {
+                    // closed
+                    pending.clear();
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                List<ReplicationChangeDto> batch = new ArrayList<>();
+                for (ConfigChange change; batch.size() < MAX_FORWARDED && (change = pending.poll()) != null; ) {
+                    batch.add(toDto(change));
+                }
+                if (batch.isEmpty()) {
+                    sending.set(false);
+                    // changes added after the queue was found empty, with no task started for them
+                    if (pending.isEmpty() || !sending.compareAndSet(false, true)) {
+                        return;
+                    }
+                    continue;
+                }
+                if (!send(batch)) {
+                    pending.clear();
+                    gap = true;
+                }
+            }
+        }
+
+        // false once given up, or once the instance is no longer a member
+        private boolean send(List<ReplicationChangeDto> batch) {
+            long backoff = FIRST_BACKOFF;
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    call(node, "POST", gap ? "shard/changes?gap=true" : "shard/changes", batch, objectMapper.constructType(Void.class));
+                    gap = false;
+                    return true;
+                } catch (IOException e) {
+                    HashRing current = ring;
+                    if (attempt == FORWARD_ATTEMPTS || current == null || !current.contains(node)) {
+                        return false;
+                    }
+                }
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException e) {
+                    // closed
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+                backoff = Math.min(backoff * 2, LONGEST_BACKOFF);
+            }
+        }
+    }
+
+    // what an instance holds of a listing, with the epoch of its share
+    private static final class Share {
+        private final String node;
+        private final String epoch;
+        private final ConfigSnapshot snapshot;
+
+        Share(String node, String epoch, ConfigSnapshot snapshot) {
+            this.node = node;
+            this.epoch = epoch;
+            this.snapshot = snapshot;
+        }
+    }
+
+    private interface NodeCall<T> {
+        T apply(String node) throws ConfigCacheException;
+    }
+
+    // hands a group of items over to an instance, this one included; false when the instance turns them down
+    private interface Part {
+        boolean handle(String node, List<Integer> indexes) throws ConfigCacheException, IOException;
+    }
+}
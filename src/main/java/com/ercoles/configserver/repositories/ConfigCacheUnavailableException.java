@@ -0,0 +1,8 @@
+package com.ercoles.configserver.repositories;
+
+// the store can't answer for now, but may well do so if asked again later
+public class ConfigCacheUnavailableException extends ConfigCacheException {
+    public ConfigCacheUnavailableException(String message) {
+        super(message);
+    }
+}
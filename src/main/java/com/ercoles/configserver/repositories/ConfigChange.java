@@ -0,0 +1,20 @@
+package com.ercoles.configserver.repositories;
+
+import com.ercoles.configserver.dtos.ConfigurationResponseDto;
+import lombok.NonNull;
+import lombok.Value;
+
+@Value
+public class ConfigChange {
+    @NonNull
+    Type type;
+    long sequence;
+    @NonNull
+    ConfigurationResponseDto configuration;
+
+    public enum Type {
+        CREATED,
+        UPDATED,
+        DELETED
+    }
+}
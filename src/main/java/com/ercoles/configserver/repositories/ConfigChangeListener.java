@@ -0,0 +1,20 @@
+package com.ercoles.configserver.repositories;
+
+import java.util.List;
+
+@FunctionalInterface
+public interface ConfigChangeListener {
+    void onChange(ConfigChange change);
+
+    // the changes of an atomic batch, in order; a listener that must keep them together overrides this
+    default void onChanges(List<ConfigChange> changes) {
+        for (ConfigChange change : changes) {
+            onChange(change);
+        }
+    }
+
+    // changes were lost on their way to this store, as when another instance could not forward them: a listener
+    // keeping its own history of them has to start it over
+    default void onGap() {
+    }
+}
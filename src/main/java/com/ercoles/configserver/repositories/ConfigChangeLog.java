@@ -0,0 +1,118 @@
+package com.ercoles.configserver.repositories;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// the latest changes of a store in the order it published them, each at the offset after the previous one, for
+// followers to replay; only the last capacity changes are kept. Offsets start over with every log, the epoch tells
+// them apart: an offset of another epoch means nothing here. A gap in the changes the log was told of starts a new
+// epoch, so that readers holding an offset from before start over. The changes of an atomic batch are only read together
+public final class ConfigChangeLog implements ConfigChangeListener {
+    private volatile String epoch = UUID.randomUUID().toString();
+    private final ConfigChange[] changes;
+    // for each change, the offset after the last change of its batch
+    private final long[] batchEnds;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition appended = lock.newCondition();
+    // offset of the next change
+    private long next;
+
+    public ConfigChangeLog(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive.");
+        }
+        this.changes = new ConfigChange[capacity];
+        this.batchEnds = new long[capacity];
+    }
+
+    // called while the store holds the entry, the lock is only held for the store into the ring
+    @Override
+    public void onChange(ConfigChange change) {
+        lock.lock();
+        try {
+            changes[(int) (next % changes.length)] = change;
+            batchEnds[(int) (next % changes.length)] = next + 1;
+            next++;
+            appended.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void onChanges(List<ConfigChange> batch) {
+        lock.lock();
+        try {
+            long end = next + batch.size();
+            for (ConfigChange change : batch) {
+                changes[(int) (next % changes.length)] = change;
+                batchEnds[(int) (next % changes.length)] = end;
+                next++;
+            }
+            appended.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // offsets go on growing, only the epoch changes; readers waiting on an offset of the old one are woken up
+    @Override
+    public void onGap() {
+        lock.lock();
+        try {
+            epoch = UUID.randomUUID().toString();
+            appended.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String getEpoch() {
+        return epoch;
+    }
+
+    public long getNextOffset() {
+        lock.lock();
+        try {
+            return next;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // up to max changes from the given offset on, more if that is what it takes to end with a whole batch, waiting as
+    // long as the timeout for the first one; empty if none came, null if the offset has already been dropped or is
+    // beyond the end
+    public List<ConfigChange> read(long from, int max, long timeout, TimeUnit unit) throws InterruptedException {
+        return read(null, from, max, timeout, unit);
+    }
+
+    // the same for an offset of the given epoch, null as well when the epoch is no longer this log's
+    public List<ConfigChange> read(String fromEpoch, long from, int max, long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (from == next && nanos > 0 && (fromEpoch == null || fromEpoch.equals(epoch))) {
+                nanos = appended.awaitNanos(nanos);
+            }
+            if ((fromEpoch != null && !fromEpoch.equals(epoch)) || from < next - changes.length || from > next) {
+                return null;
+            }
+            int count = (int) Math.min(max, next - from);
+            if (count > 0) {
+                count = (int) (Math.max(from + count, batchEnds[(int) ((from + count - 1) % changes.length)]) - from);
+            }
+            List<ConfigChange> read = new ArrayList<>(count);
+            for (long offset = from; offset < from + count; offset++) {
+                read.add(changes[(int) (offset % changes.length)]);
+            }
+            return read;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package com.ercoles.configserver.repositories;
+
+import lombok.NonNull;
+import lombok.Value;
+
+// every configuration of the store, together with the change log offset taken at the same moment: the changes
+// before it are all in the listing, none from it on is
+@Value
+public class ConfigCheckpoint {
+    long offset;
+    @NonNull
+    ConfigSnapshot configurations;
+}
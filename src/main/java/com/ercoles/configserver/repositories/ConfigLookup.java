@@ -0,0 +1,15 @@
+package com.ercoles.configserver.repositories;
+
+import com.ercoles.configserver.dtos.ConfigurationResponseDto;
+import lombok.NonNull;
+import lombok.Value;
+
+import java.util.List;
+
+@Value
+public class ConfigLookup {
+    @NonNull
+    List<ConfigurationResponseDto> configurations;
+    @NonNull
+    List<String> missing;
+}
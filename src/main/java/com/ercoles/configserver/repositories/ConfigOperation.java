@@ -0,0 +1,35 @@
+package com.ercoles.configserver.repositories;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.NonNull;
+import lombok.Value;
+
+@Value
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class ConfigOperation {
+    @NonNull
+    Type type;
+    @NonNull
+    String id;
+    String name;
+    String value;
+
+    public static ConfigOperation create(String id, String name, String value) {
+        return new ConfigOperation(Type.CREATE, id, name, value);
+    }
+
+    public static ConfigOperation update(String id, String name, String value) {
+        return new ConfigOperation(Type.UPDATE, id, name, value);
+    }
+
+    public static ConfigOperation delete(String id) {
+        return new ConfigOperation(Type.DELETE, id, null, null);
+    }
+
+    public enum Type {
+        CREATE,
+        UPDATE,
+        DELETE
+    }
+}
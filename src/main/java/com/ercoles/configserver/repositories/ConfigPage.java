@@ -0,0 +1,15 @@
+package com.ercoles.configserver.repositories;
+
+import com.ercoles.configserver.dtos.ConfigurationResponseDto;
+import lombok.NonNull;
+import lombok.Value;
+
+import java.util.List;
+
+// configurations in ID order; next is the ID the following page starts from, null on the last page
+@Value
+public class ConfigPage {
+    @NonNull
+    List<ConfigurationResponseDto> configurations;
+    String next;
+}
@@ -0,0 +1,100 @@
+package com.ercoles.configserver.repositories;
+
+import com.ercoles.configserver.dtos.CborEncoder;
+import com.ercoles.configserver.dtos.ConfigurationResponseDto;
+
+import java.util.AbstractList;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+
+public final class ConfigSnapshot extends AbstractList<ConfigurationResponseDto> implements RandomAccess {
+    private static final ConfigurationResponseDto[] NO_CONFIGURATIONS = new ConfigurationResponseDto[0];
+
+    private final long version;
+    private final ConfigurationResponseDto[] configurations;
+    private volatile byte[] json;
+    private volatile byte[] cbor;
+
+    public ConfigSnapshot(long version, Collection<ConfigurationResponseDto> configurations) {
+        this.version = version;
+        this.configurations = configurations.toArray(NO_CONFIGURATIONS);
+    }
+
+    public static ConfigSnapshot empty() {
+        return new ConfigSnapshot(0, List.of());
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public byte[] toJson() {
+        byte[] encoded = json;
+        if (encoded == null) {
+            encoded = encodeJson();
+            json = encoded;
+        }
+        return encoded;
+    }
+
+    public byte[] toCbor() {
+        byte[] encoded = cbor;
+        if (encoded == null) {
+            encoded = encodeCbor();
+            cbor = encoded;
+        }
+        return encoded;
+    }
+
+    @Override
+    public ConfigurationResponseDto get(int index) {
+        return configurations[index];
+    }
+
+    @Override
+    public int size() {
+        return configurations.length;
+    }
+
+    // joins the bytes each configuration already keeps, so unchanged entries are never re-encoded
+    private byte[] encodeJson() {
+        byte[][] parts = new byte[configurations.length][];
+        int length = 2 + Math.max(0, configurations.length - 1);
+        for (int i = 0; i < configurations.length; i++) {
+            parts[i] = configurations[i].toJson();
+            length += parts[i].length;
+        }
+        byte[] encoded = new byte[length];
+        int position = 0;
+        encoded[position++] = '[';
+        for (int i = 0; i < parts.length; i++) {
+            if (i > 0) {
+                encoded[position++] = ',';
+            }
+            System.arraycopy(parts[i], 0, encoded, position, parts[i].length);
+            position += parts[i].length;
+        }
+        encoded[position] = ']';
+        return encoded;
+    }
+
+    // the same for CBOR, where the array head gives the number of entries and no separators are needed
+    private byte[] encodeCbor() {
+        byte[] head = CborEncoder.arrayHead(configurations.length);
+        byte[][] parts = new byte[configurations.length][];
+        int length = head.length;
+        for (int i = 0; i < configurations.length; i++) {
+            parts[i] = configurations[i].toCbor();
+            length += parts[i].length;
+        }
+        byte[] encoded = new byte[length];
+        System.arraycopy(head, 0, encoded, 0, head.length);
+        int position = head.length;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, encoded, position, part.length);
+            position += part.length;
+        }
+        return encoded;
+    }
+}
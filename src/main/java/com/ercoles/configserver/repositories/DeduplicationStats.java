@@ -0,0 +1,26 @@
+package com.ercoles.configserver.repositories;
+
+import lombok.Value;
+
+// names and values held by the entries of a store, counted once per entry and once per distinct content; the entries
+// keep no encodings of them, so these are all the copies there are
+@Value
+public class DeduplicationStats {
+    long distinct;
+    long references;
+    long referencedBytes;
+    long distinctBytes;
+
+    public static DeduplicationStats none() {
+        return new DeduplicationStats(0, 0, 0, 0);
+    }
+
+    // how many entries share a stored string on average
+    public double getRatio() {
+        return distinct == 0 ? 1 : (double) references / distinct;
+    }
+
+    public long getSavedBytes() {
+        return referencedBytes - distinctBytes;
+    }
+}
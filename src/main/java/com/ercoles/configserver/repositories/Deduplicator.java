@@ -0,0 +1,66 @@
+package com.ercoles.configserver.repositories;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+// canonical copies of the names and values entries hold, counted so that a string leaves the table with the last
+// entry using it; a string costs a table node even when nothing shares it
+final class Deduplicator {
+    private final ConcurrentMap<String, Canonical> table = new ConcurrentHashMap<>();
+    private final LongAdder references = new LongAdder();
+    private final LongAdder referencedBytes = new LongAdder();
+    private final LongAdder distinctBytes = new LongAdder();
+
+    String acquire(String content) {
+        Canonical canonical = table.compute(content, (key, current) -> {
+            if (current == null) {
+                current = new Canonical(key);
+                distinctBytes.add(current.bytes);
+            }
+            current.references++;
+            return current;
+        });
+        references.increment();
+        referencedBytes.add(canonical.bytes);
+        return canonical.content;
+    }
+
+    void release(String content) {
+        table.computeIfPresent(content, (key, current) -> {
+            references.decrement();
+            referencedBytes.add(-current.bytes);
+            if (--current.references > 0) {
+                return current;
+            }
+            distinctBytes.add(-current.bytes);
+            return null;
+        });
+    }
+
+    DeduplicationStats getStats() {
+        return new DeduplicationStats(table.size(), references.sum(), referencedBytes.sum(), distinctBytes.sum());
+    }
+
+    private static final class Canonical {
+        final String content;
+        // what the characters take in a compact string
+        final long bytes;
+        // only changed while the table holds the string's bin
+        int references;
+
+        Canonical(String content) {
+            this.content = content;
+            this.bytes = (long) content.length() * (isLatin1(content) ? 1 : 2);
+        }
+
+        private static boolean isLatin1(String content) {
+            for (int i = 0; i < content.length(); i++) {
+                if (content.charAt(i) > 0xFF) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
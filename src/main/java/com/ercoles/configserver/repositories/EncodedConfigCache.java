@@ -0,0 +1,414 @@
+package com.ercoles.configserver.repositories;
+
+import com.ercoles.configserver.dtos.ConfigurationResponseDto;
+
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.function.LongSupplier;
+
+// a ConfigCache that keeps each entry encoded and decodes it into a configuration when it is read; subclasses decide
+// how an entry is encoded and where its bytes live. Listings are decoded per request and not kept, holding one would
+// put every value back on the heap
+abstract class EncodedConfigCache<E> implements ConfigCache {
+    private final ConcurrentMap<String, E> cache = new ConcurrentHashMap<>();
+    // IDs of the entries, sorted for range queries; only changed while the ID's bin is locked
+    private final NavigableSet<String> index = new ConcurrentSkipListSet<>();
+    // whether the bytes of a released entry can be handed to another one while a reader decodes them
+    private final boolean reusesReleased;
+    private final List<ConfigChangeListener> listeners = new CopyOnWriteArrayList<>();
+    // source of versions and change sequences, always drawn while holding the entry's lock so they grow per ID
+    private final AtomicLong sequence = new AtomicLong();
+    // bumped after every successful write, labels the listings
+    private final AtomicLong modifications = new AtomicLong();
+    private final WriteLocks locks = new WriteLocks();
+
+    EncodedConfigCache(boolean reusesReleased) {
+        this.reusesReleased = reusesReleased;
+    }
+
+    @Override
+    public ConfigSnapshot getAll() throws ConfigCacheException {
+        try {
+            // an atomic batch is never listed half applied
+            return locks.read(() -> {
+                long version = modifications.get();
+                List<ConfigurationResponseDto> configurations = new ArrayList<>(cache.size());
+                for (Map.Entry<String, E> entry : cache.entrySet()) {
+                    ConfigurationResponseDto configuration = reusesReleased ? lookup(entry.getKey()) : decode(entry.getKey(), entry.getValue());
+                    if (configuration != null) {
+                        configurations.add(configuration);
+                    }
+                }
+                return new ConfigSnapshot(version, configurations);
+            });
+        } catch (Exception e) {
+            throw new ConfigCacheException("Unable to get configuration list.");
+        }
+    }
+
+    @Override
+    public ConfigCacheResult get(String id) {
+        ConfigurationResponseDto configuration = lookup(id);
+        if (configuration == null) {
+            return ConfigCacheResult.notFound();
+        }
+        return ConfigCacheResult.success(configuration);
+    }
+
+    @Override
+    public ConfigLookup getMany(Collection<String> ids) {
+        List<ConfigurationResponseDto> configurations = new ArrayList<>(ids.size());
+        List<String> missing = new ArrayList<>();
+        for (String id : ids) {
+            ConfigurationResponseDto configuration = lookup(id);
+            if (configuration == null) {
+                missing.add(id);
+            } else {
+                configurations.add(configuration);
+            }
+        }
+        return new ConfigLookup(configurations, missing);
+    }
+
+    @Override
+    public ConfigPage getRange(String from, String to, int limit) throws ConfigCacheException {
+        try {
+            // an atomic batch is never listed half applied
+            return locks.read(() -> {
+                NavigableSet<String> ids = to == null ? index.tailSet(from, true) : index.subSet(from, true, to, false);
+                List<ConfigurationResponseDto> configurations = new ArrayList<>(Math.min(limit, 256));
+                for (String id : ids) {
+                    ConfigurationResponseDto configuration = lookup(id);
+                    // the ID was deleted since the index was read
+                    if (configuration == null) {
+                        continue;
+                    }
+                    if (configurations.size() == limit) {
+                        return new ConfigPage(configurations, id);
+                    }
+                    configurations.add(configuration);
+                }
+                return new ConfigPage(configurations, null);
+            });
+        } catch (Exception e) {
+            throw new ConfigCacheException("Unable to get configuration range.");
+        }
+    }
+
+    @Override
+    public ConfigCacheResult create(String id, String name, String value) {
+        Lock lock = locks.lock(id);
+        try {
+            return modified(createEntry(id, name, value, null));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public ConfigCacheResult update(String id, String name, String value) {
+        Lock lock = locks.lock(id);
+        try {
+            return modified(updateEntry(id, name, value, null));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public ConfigCacheResult delete(String id) {
+        Lock lock = locks.lock(id);
+        try {
+            return modified(deleteEntry(id, null));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public List<ConfigCacheResult> apply(List<ConfigOperation> operations, boolean atomic) {
+        if (atomic) {
+            // no other write can interleave
+            return locks.batch(() -> {
+                List<ConfigCacheResult> rejected = check(operations);
+                if (rejected != null) {
+                    return rejected;
+                }
+                // published together once every operation is applied
+                List<ConfigChange> changes = new ArrayList<>(operations.size());
+                List<ConfigCacheResult> results = applyEntries(operations, changes);
+                if (!changes.isEmpty()) {
+                    for (ConfigChangeListener listener : listeners) {
+                        listener.onChanges(changes);
+                    }
+                }
+                return results;
+            });
+        }
+        return applyEntries(operations, null);
+    }
+
+    @Override
+    public void restore(Collection<ConfigurationResponseDto> configurations) {
+        locks.batch(() -> {
+            List<ConfigChange> changes = new ArrayList<>(configurations.size());
+            for (ConfigurationResponseDto configuration : configurations) {
+                ConfigChange change = restoreEntry(configuration);
+                if (change != null) {
+                    changes.add(change);
+                }
+            }
+            if (!changes.isEmpty()) {
+                modifications.incrementAndGet();
+                for (ConfigChangeListener listener : listeners) {
+                    listener.onChanges(changes);
+                }
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void addChangeListener(ConfigChangeListener listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public ConfigCheckpoint checkpoint(LongSupplier offset) throws ConfigCacheException {
+        locks.lockAll();
+        try {
+            return new ConfigCheckpoint(offset.getAsLong(), getAll());
+        } finally {
+            locks.unlockAll();
+        }
+    }
+
+    @Override
+    public int size() {
+        return cache.size();
+    }
+
+    // the IDs on the heap and the encoded entries, without decoding any of them
+    @Override
+    public long estimatedBytes() {
+        long bytes = 0;
+        for (Map.Entry<String, E> entry : cache.entrySet()) {
+            bytes += 2L * entry.getKey().length() + encodedBytes(entry.getValue());
+        }
+        return bytes;
+    }
+
+    abstract E encode(String name, String value);
+
+    abstract long encodedBytes(E entry);
+
+    // called before the entry is put in the map, which publishes it
+    abstract void setVersion(E entry, long version);
+
+    abstract ConfigurationResponseDto decode(String id, E entry);
+
+    // called once the map no longer points at the entry, or when it never made it into the map
+    void release(E entry) {
+    }
+
+    private ConfigCacheResult modified(ConfigCacheResult result) {
+        if (result.isSuccess()) {
+            modifications.incrementAndGet();
+        }
+        return result;
+    }
+
+    // dry-runs an atomic batch against the current entries: returns the results of the aborted batch,
+    // or null when every operation would succeed
+    private List<ConfigCacheResult> check(List<ConfigOperation> operations) {
+        Map<String, Boolean> present = new HashMap<>();
+        List<ConfigCacheResult> results = new ArrayList<>(operations.size());
+        boolean failed = false;
+        for (ConfigOperation operation : operations) {
+            boolean exists = present.computeIfAbsent(operation.getId(), cache::containsKey);
+            ConfigCacheResult result = ConfigCacheResult.aborted();
+            if (operation.getType() != ConfigOperation.Type.DELETE) {
+                Objects.requireNonNull(operation.getName(), "name");
+                Objects.requireNonNull(operation.getValue(), "value");
+            }
+            if (operation.getType() == ConfigOperation.Type.CREATE && exists) {
+                result = ConfigCacheResult.conflict();
+            } else if (operation.getType() != ConfigOperation.Type.CREATE && !exists) {
+                result = ConfigCacheResult.notFound();
+            } else {
+                present.put(operation.getId(), operation.getType() != ConfigOperation.Type.DELETE);
+            }
+            failed |= result != ConfigCacheResult.aborted();
+            results.add(result);
+        }
+        return failed ? results : null;
+    }
+
+    // each operation locks its own ID and publishes its change, unless the whole batch holds every lock already and
+    // collects the changes
+    private List<ConfigCacheResult> applyEntries(List<ConfigOperation> operations, List<ConfigChange> batched) {
+        List<ConfigCacheResult> results = new ArrayList<>(operations.size());
+        boolean changed = false;
+        for (ConfigOperation operation : operations) {
+            Lock lock = batched == null ? locks.lock(operation.getId()) : null;
+            try {
+                ConfigCacheResult result = applyEntry(operation, batched);
+                changed |= result.isSuccess();
+                results.add(result);
+            } finally {
+                if (lock != null) {
+                    lock.unlock();
+                }
+            }
+        }
+        if (changed) {
+            modifications.incrementAndGet();
+        }
+        return results;
+    }
+
+    private ConfigCacheResult applyEntry(ConfigOperation operation, List<ConfigChange> batched) {
+        switch (operation.getType()) {
+            case CREATE:
+                return createEntry(operation.getId(), operation.getName(), operation.getValue(), batched);
+            case UPDATE:
+                return updateEntry(operation.getId(), operation.getName(), operation.getValue(), batched);
+            default:
+                return deleteEntry(operation.getId(), batched);
+        }
+    }
+
+    private ConfigCacheResult createEntry(String id, String name, String value, List<ConfigChange> batched) {
+        E encoded = encode(name, value);
+        ConfigurationResponseDto[] created = new ConfigurationResponseDto[1];
+        cache.computeIfAbsent(id, key -> {
+            created[0] = newEntry(id, name, value);
+            setVersion(encoded, created[0].getVersion());
+            index.add(key);
+            return encoded;
+        });
+        if (created[0] == null) {
+            release(encoded);
+            return ConfigCacheResult.conflict();
+        }
+        publish(new ConfigChange(ConfigChange.Type.CREATED, created[0].getVersion(), created[0]), batched);
+        return ConfigCacheResult.success(created[0]);
+    }
+
+    private ConfigCacheResult updateEntry(String id, String name, String value, List<ConfigChange> batched) {
+        E encoded = encode(name, value);
+        E[] replaced = newArray();
+        ConfigurationResponseDto[] updated = new ConfigurationResponseDto[1];
+        cache.computeIfPresent(id, (key, current) -> {
+            replaced[0] = current;
+            updated[0] = newEntry(id, name, value);
+            setVersion(encoded, updated[0].getVersion());
+            return encoded;
+        });
+        // only once the map no longer points at it, see lookup
+        release(replaced[0] != null ? replaced[0] : encoded);
+        if (updated[0] == null) {
+            return ConfigCacheResult.notFound();
+        }
+        publish(new ConfigChange(ConfigChange.Type.UPDATED, updated[0].getVersion(), updated[0]), batched);
+        return ConfigCacheResult.success(updated[0]);
+    }
+
+    private ConfigCacheResult deleteEntry(String id, List<ConfigChange> batched) {
+        E[] removed = newArray();
+        ConfigurationResponseDto[] deleted = new ConfigurationResponseDto[1];
+        long[] deletedAt = new long[1];
+        cache.computeIfPresent(id, (key, current) -> {
+            removed[0] = current;
+            deleted[0] = decode(id, current);
+            deletedAt[0] = sequence.incrementAndGet();
+            index.remove(key);
+            return null;
+        });
+        if (removed[0] == null) {
+            return ConfigCacheResult.notFound();
+        }
+        release(removed[0]);
+        publish(new ConfigChange(ConfigChange.Type.DELETED, deletedAt[0], deleted[0]), batched);
+        return ConfigCacheResult.success(deleted[0]);
+    }
+
+    // null when the configuration is older than the entry it meets
+    private ConfigChange restoreEntry(ConfigurationResponseDto configuration) {
+        E encoded = encode(configuration.getName(), configuration.getValue());
+        setVersion(encoded, configuration.getVersion());
+        E[] replaced = newArray();
+        boolean[] restored = new boolean[1];
+        cache.compute(configuration.getId(), (key, current) -> {
+            if (current != null && decode(key, current).getVersion() >= configuration.getVersion()) {
+                return current;
+            }
+            replaced[0] = current;
+            restored[0] = true;
+            index.add(key);
+            return encoded;
+        });
+        sequence.accumulateAndGet(configuration.getVersion(), Math::max);
+        if (!restored[0]) {
+            release(encoded);
+            return null;
+        }
+        if (replaced[0] != null) {
+            release(replaced[0]);
+        }
+        return new ConfigChange(replaced[0] == null ? ConfigChange.Type.CREATED : ConfigChange.Type.UPDATED,
+                configuration.getVersion(), decode(configuration.getId(), encoded));
+    }
+
+    // with reused bytes, a decoded copy only counts if the map still holds the same entry afterwards, as entries are
+    // released after they are replaced
+    private ConfigurationResponseDto lookup(String id) {
+        E entry = cache.get(id);
+        while (entry != null) {
+            ConfigurationResponseDto configuration = decode(id, entry);
+            if (!reusesReleased) {
+                return configuration;
+            }
+            VarHandle.loadLoadFence();
+            E current = cache.get(id);
+            if (current == entry) {
+                return configuration;
+            }
+            entry = current;
+        }
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private E[] newArray() {
+        return (E[]) new Object[1];
+    }
+
+    private ConfigurationResponseDto newEntry(String id, String name, String value) {
+        return new ConfigurationResponseDto(new Configuration(id, name, value, sequence.incrementAndGet()));
+    }
+
+    // called once the entry is in the map but while its ID is still locked, so listeners see the changes of an ID
+    // in version order without holding up writes of other IDs that share a bin of the map
+    private void publish(ConfigChange change, List<ConfigChange> batched) {
+        if (batched != null) {
+            batched.add(change);
+            return;
+        }
+        for (ConfigChangeListener listener : listeners) {
+            listener.onChange(change);
+        }
+    }
+}
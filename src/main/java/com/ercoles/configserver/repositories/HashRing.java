@@ -0,0 +1,73 @@
+package com.ercoles.configserver.repositories;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+// consistent hashing of configuration IDs over the nodes of a cluster: each node takes virtualNodes points of the ring,
+// and an ID belongs to the node of the first point at or after its own hash. Adding or removing a node only moves the
+// IDs between its points and the ones before them, about one in (nodes) of the total. Immutable, membership changes
+// make a new ring
+public final class HashRing {
+    private final Set<String> nodes;
+    private final NavigableMap<Long, String> points = new TreeMap<>();
+
+    public HashRing(Collection<String> nodes, int virtualNodes) {
+        if (nodes.isEmpty() || virtualNodes <= 0) {
+            throw new IllegalArgumentException("A hash ring needs nodes, and points for each of them.");
+        }
+        this.nodes = new TreeSet<>(nodes);
+        for (String node : this.nodes) {
+            for (int i = 0; i < virtualNodes; i++) {
+                // on the rare collision the node that sorts first keeps the point, the same on every instance
+                points.putIfAbsent(hash(node + "#" + i), node);
+            }
+        }
+    }
+
+    public String ownerOf(String id) {
+        Map.Entry<Long, String> point = points.ceilingEntry(hash(id));
+        return point != null ? point.getValue() : points.firstEntry().getValue();
+    }
+
+    // sorted, so that every instance lists the members the same way
+    public Set<String> getNodes() {
+        return nodes;
+    }
+
+    public boolean contains(String node) {
+        return nodes.contains(node);
+    }
+
+    public HashRing with(String node, int virtualNodes) {
+        Set<String> next = new TreeSet<>(nodes);
+        next.add(node);
+        return new HashRing(next, virtualNodes);
+    }
+
+    // null when the node is the last one
+    public HashRing without(String node, int virtualNodes) {
+        Set<String> next = new TreeSet<>(nodes);
+        next.remove(node);
+        return next.isEmpty() ? null : new HashRing(next, virtualNodes);
+    }
+
+    // 64-bit FNV-1a, finished with the MurmurHash3 mix so that IDs differing in their last characters spread over the
+    // whole ring, which the 32 bits of String.hashCode would not
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,114 @@
+package com.ercoles.configserver.repositories;
+
+import com.ercoles.configserver.dtos.ConfigurationResponseDto;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// read-only view of a memory-mapped snapshot: entries are decoded from the mapping when asked for, and looked up by a
+// binary search over the offset index, which is sorted by the UTF-8 bytes of the IDs
+final class MappedSnapshot {
+    private final ByteBuffer buffer;
+    private final long sequence;
+    private final int size;
+    private final int indexOffset;
+
+    MappedSnapshot(ByteBuffer buffer, long sequence, int size, int indexOffset) {
+        this.buffer = buffer;
+        this.sequence = sequence;
+        this.size = size;
+        this.indexOffset = indexOffset;
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    int size() {
+        return size;
+    }
+
+    ConfigurationResponseDto get(String id) {
+        int index = indexOf(id.getBytes(StandardCharsets.UTF_8));
+        return index < 0 ? null : entryAt(index);
+    }
+
+    boolean contains(String id) {
+        return indexOf(id.getBytes(StandardCharsets.UTF_8)) >= 0;
+    }
+
+    // entries are at [version][id length][id][name length][name][value length][value]
+    ConfigurationResponseDto entryAt(int index) {
+        int position = offsetAt(index);
+        long version = buffer.getLong(position);
+        position += Long.BYTES;
+        String id = stringAt(position);
+        position += Integer.BYTES + buffer.getInt(position);
+        String name = stringAt(position);
+        position += Integer.BYTES + buffer.getInt(position);
+        String value = stringAt(position);
+        return new ConfigurationResponseDto(new Configuration(id, name, value, version));
+    }
+
+    byte[] idAt(int index) {
+        int position = offsetAt(index) + Long.BYTES;
+        byte[] bytes = new byte[buffer.getInt(position)];
+        buffer.duplicate().position(position + Integer.BYTES).get(bytes);
+        return bytes;
+    }
+
+    // the position of the first ID at or above id, size() when there is none
+    int lowerBound(byte[] id) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compareIdAt(offsetAt(middle) + Long.BYTES, id) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private int indexOf(byte[] id) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int comparison = compareIdAt(offsetAt(middle) + Long.BYTES, id);
+            if (comparison < 0) {
+                low = middle + 1;
+            } else if (comparison > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    private int compareIdAt(int position, byte[] id) {
+        int length = buffer.getInt(position);
+        int start = position + Integer.BYTES;
+        int common = Math.min(length, id.length);
+        for (int i = 0; i < common; i++) {
+            int comparison = Byte.compareUnsigned(buffer.get(start + i), id[i]);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return Integer.compare(length, id.length);
+    }
+
+    private int offsetAt(int index) {
+        return (int) buffer.getLong(indexOffset + index * Long.BYTES);
+    }
+
+    private String stringAt(int position) {
+        byte[] bytes = new byte[buffer.getInt(position)];
+        buffer.duplicate().position(position + Integer.BYTES).get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
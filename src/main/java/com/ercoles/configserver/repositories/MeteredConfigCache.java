@@ -0,0 +1,242 @@
+package com.ercoles.configserver.repositories;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.BaseUnits;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+// times every operation of the wrapped cache and counts the outcomes of its results; the size of the store is only
+// measured when the registry is read, so writes pay for nothing but their own timer and counter
+public final class MeteredConfigCache implements ConfigCache, Closeable {
+    private static final ConfigCacheResult.Outcome[] OUTCOMES = ConfigCacheResult.Outcome.values();
+
+    private final ConfigCache delegate;
+    // every meter is registered up front, recording is then a plain call on a field
+    private final Timer[] timers = new Timer[Operation.values().length];
+    private final Counter[] errors = new Counter[Operation.values().length];
+    private final Counter[][] outcomes = new Counter[Operation.values().length][OUTCOMES.length];
+
+    public MeteredConfigCache(ConfigCache delegate, MeterRegistry registry) {
+        this.delegate = delegate;
+        for (Operation operation : Operation.values()) {
+            timers[operation.ordinal()] = Timer.builder("configserver.cache.operations")
+                    .description("Latency of the configuration store operations")
+                    .tag("operation", operation.tag)
+                    .publishPercentileHistogram()
+                    .minimumExpectedValue(Duration.ofNanos(100))
+                    .maximumExpectedValue(Duration.ofSeconds(10))
+                    .register(registry);
+            errors[operation.ordinal()] = Counter.builder("configserver.cache.errors")
+                    .description("Operations of the configuration store that failed")
+                    .tag("operation", operation.tag)
+                    .register(registry);
+            for (ConfigCacheResult.Outcome outcome : OUTCOMES) {
+                outcomes[operation.ordinal()][outcome.ordinal()] = Counter.builder("configserver.cache.results")
+                        .description("Results of the configuration store operations, misses and conflicts included")
+                        .tag("operation", operation.tag)
+                        .tag("outcome", outcome.name().toLowerCase(Locale.ROOT))
+                        .register(registry);
+            }
+        }
+        Gauge.builder("configserver.cache.entries", this, MeteredConfigCache::sampleSize)
+                .description("Configurations in the store")
+                .register(registry);
+        Gauge.builder("configserver.cache.estimated.size", this, MeteredConfigCache::sampleEstimatedBytes)
+                .description("Estimated memory held by the IDs, names and values of the configurations")
+                .baseUnit(BaseUnits.BYTES)
+                .register(registry);
+    }
+
+    @Override
+    public ConfigSnapshot getAll() throws ConfigCacheException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getAll();
+        } catch (ConfigCacheException | RuntimeException e) {
+            errors[Operation.GET_ALL.ordinal()].increment();
+            throw e;
+        } finally {
+            record(Operation.GET_ALL, start);
+        }
+    }
+
+    @Override
+    public ConfigCacheResult get(String id) throws ConfigCacheException {
+        long start = System.nanoTime();
+        try {
+            return counted(Operation.GET, delegate.get(id));
+        } catch (ConfigCacheException | RuntimeException e) {
+            errors[Operation.GET.ordinal()].increment();
+            throw e;
+        } finally {
+            record(Operation.GET, start);
+        }
+    }
+
+    @Override
+    public ConfigLookup getMany(Collection<String> ids) throws ConfigCacheException {
+        long start = System.nanoTime();
+        try {
+            ConfigLookup lookup = delegate.getMany(ids);
+            Counter[] counters = outcomes[Operation.GET_MANY.ordinal()];
+            counters[ConfigCacheResult.Outcome.SUCCESS.ordinal()].increment(lookup.getConfigurations().size());
+            counters[ConfigCacheResult.Outcome.NOT_FOUND.ordinal()].increment(lookup.getMissing().size());
+            return lookup;
+        } catch (ConfigCacheException | RuntimeException e) {
+            errors[Operation.GET_MANY.ordinal()].increment();
+            throw e;
+        } finally {
+            record(Operation.GET_MANY, start);
+        }
+    }
+
+    @Override
+    public ConfigPage getRange(String from, String to, int limit) throws ConfigCacheException {
+        long start = System.nanoTime();
+        try {
+            return delegate.getRange(from, to, limit);
+        } catch (ConfigCacheException | RuntimeException e) {
+            errors[Operation.GET_RANGE.ordinal()].increment();
+            throw e;
+        } finally {
+            record(Operation.GET_RANGE, start);
+        }
+    }
+
+    @Override
+    public ConfigCacheResult create(String id, String name, String value) throws ConfigCacheException {
+        long start = System.nanoTime();
+        try {
+            return counted(Operation.CREATE, delegate.create(id, name, value));
+        } catch (ConfigCacheException | RuntimeException e) {
+            errors[Operation.CREATE.ordinal()].increment();
+            throw e;
+        } finally {
+            record(Operation.CREATE, start);
+        }
+    }
+
+    @Override
+    public ConfigCacheResult update(String id, String name, String value) throws ConfigCacheException {
+        long start = System.nanoTime();
+        try {
+            return counted(Operation.UPDATE, delegate.update(id, name, value));
+        } catch (ConfigCacheException | RuntimeException e) {
+            errors[Operation.UPDATE.ordinal()].increment();
+            throw e;
+        } finally {
+            record(Operation.UPDATE, start);
+        }
+    }
+
+    @Override
+    public ConfigCacheResult delete(String id) throws ConfigCacheException {
+        long start = System.nanoTime();
+        try {
+            return counted(Operation.DELETE, delegate.delete(id));
+        } catch (ConfigCacheException | RuntimeException e) {
+            errors[Operation.DELETE.ordinal()].increment();
+            throw e;
+        } finally {
+            record(Operation.DELETE, start);
+        }
+    }
+
+    // one timing for the whole batch, one result counted per operation
+    @Override
+    public List<ConfigCacheResult> apply(List<ConfigOperation> operations, boolean atomic) throws ConfigCacheException {
+        long start = System.nanoTime();
+        try {
+            List<ConfigCacheResult> results = delegate.apply(operations, atomic);
+            for (ConfigCacheResult result : results) {
+                counted(Operation.APPLY, result);
+            }
+            return results;
+        } catch (ConfigCacheException | RuntimeException e) {
+            errors[Operation.APPLY.ordinal()].increment();
+            throw e;
+        } finally {
+            record(Operation.APPLY, start);
+        }
+    }
+
+    @Override
+    public int size() throws ConfigCacheException {
+        return delegate.size();
+    }
+
+    @Override
+    public long estimatedBytes() throws ConfigCacheException {
+        return delegate.estimatedBytes();
+    }
+
+    @Override
+    public ConfigCheckpoint checkpoint(LongSupplier offset) throws ConfigCacheException {
+        return delegate.checkpoint(offset);
+    }
+
+    @Override
+    public void addChangeListener(ConfigChangeListener listener) {
+        delegate.addChangeListener(listener);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (delegate instanceof Closeable) {
+            ((Closeable) delegate).close();
+        }
+    }
+
+    private ConfigCacheResult counted(Operation operation, ConfigCacheResult result) {
+        outcomes[operation.ordinal()][result.getOutcome().ordinal()].increment();
+        return result;
+    }
+
+    private void record(Operation operation, long start) {
+        timers[operation.ordinal()].record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    // gauges report NaN rather than fail the whole scrape
+    private double sampleSize() {
+        try {
+            return delegate.size();
+        } catch (ConfigCacheException e) {
+            return Double.NaN;
+        }
+    }
+
+    private double sampleEstimatedBytes() {
+        try {
+            return delegate.estimatedBytes();
+        } catch (ConfigCacheException e) {
+            return Double.NaN;
+        }
+    }
+
+    private enum Operation {
+        GET_ALL("get_all"),
+        GET("get"),
+        GET_MANY("get_many"),
+        GET_RANGE("get_range"),
+        CREATE("create"),
+        UPDATE("update"),
+        DELETE("delete"),
+        APPLY("apply");
+
+        private final String tag;
+
+        Operation(String tag) {
+            this.tag = tag;
+        }
+    }
+}
@@ -0,0 +1,220 @@
+package com.ercoles.configserver.repositories;
+
+import com.ercoles.configserver.dtos.ConfigurationResponseDto;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+
+// keeps recently read configurations, and IDs found missing, in front of a slower store so that repeated reads skip
+// the round trip; bounded in size, with W-TinyLFU eviction, and in age. Writes go through to the backend and drop the
+// local copy, changes the backend reports are dropped too. Listings always go to the backend
+public final class NearConfigCache implements ConfigCache, Closeable {
+    // cached for IDs the backend doesn't have
+    private static final ConfigurationResponseDto MISSING = new ConfigurationResponseDto();
+    private static final int STRIPES = 64;
+
+    private final ConfigCache backend;
+    private final Cache<String, ConfigurationResponseDto> cache;
+    // bumped before every invalidation: a read only keeps what it fetched if no write to its stripe started meanwhile,
+    // otherwise a value read before a write could be cached after the write dropped it
+    private final AtomicLongArray writes = new AtomicLongArray(STRIPES);
+    // the backend reports changes while it holds the entry, which must not wait on this cache
+    private final ExecutorService invalidator = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "config-cache-near-invalidator");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public NearConfigCache(ConfigCache backend, long maximumSize, Duration expireAfterWrite) {
+        this(backend, maximumSize, expireAfterWrite, Ticker.systemTicker());
+    }
+
+    public NearConfigCache(ConfigCache backend, long maximumSize, Duration expireAfterWrite, Ticker ticker) {
+        this.backend = backend;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(expireAfterWrite)
+                .ticker(ticker)
+                .recordStats()
+                .build();
+        backend.addChangeListener(new ConfigChangeListener() {
+            @Override
+            public void onChange(ConfigChange change) {
+                String id = change.getConfiguration().getId();
+                writes.incrementAndGet(stripe(id));
+                invalidator.execute(() -> cache.invalidate(id));
+            }
+
+            // any entry may be one whose change was lost
+            @Override
+            public void onGap() {
+                for (int stripe = 0; stripe < STRIPES; stripe++) {
+                    writes.incrementAndGet(stripe);
+                }
+                invalidator.execute(cache::invalidateAll);
+            }
+        });
+    }
+
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    // cache.gets by result, cache.evictions, cache.size and the like, tagged with the given cache name
+    public void bindTo(MeterRegistry registry, String name) {
+        CaffeineCacheMetrics.monitor(registry, cache, name);
+    }
+
+    @Override
+    public ConfigSnapshot getAll() throws ConfigCacheException {
+        return backend.getAll();
+    }
+
+    @Override
+    public ConfigCacheResult get(String id) throws ConfigCacheException {
+        ConfigurationResponseDto configuration = cache.getIfPresent(id);
+        if (configuration == null) {
+            long seen = writes.get(stripe(id));
+            ConfigCacheResult result = backend.get(id);
+            keep(id, result.isSuccess() ? result.getConfiguration() : MISSING, seen);
+            return result;
+        }
+        return configuration == MISSING ? ConfigCacheResult.notFound() : ConfigCacheResult.success(configuration);
+    }
+
+    // the IDs not held locally are fetched with a single call
+    @Override
+    public ConfigLookup getMany(Collection<String> ids) throws ConfigCacheException {
+        Map<String, ConfigurationResponseDto> present = cache.getAllPresent(ids);
+        Map<String, Long> absent = new HashMap<>();
+        for (String id : ids) {
+            if (!present.containsKey(id)) {
+                absent.put(id, writes.get(stripe(id)));
+            }
+        }
+        Map<String, ConfigurationResponseDto> fetched = new HashMap<>();
+        if (!absent.isEmpty()) {
+            ConfigLookup lookup = backend.getMany(absent.keySet());
+            for (ConfigurationResponseDto configuration : lookup.getConfigurations()) {
+                fetched.put(configuration.getId(), configuration);
+            }
+            for (Map.Entry<String, Long> entry : absent.entrySet()) {
+                keep(entry.getKey(), fetched.getOrDefault(entry.getKey(), MISSING), entry.getValue());
+            }
+        }
+        List<ConfigurationResponseDto> configurations = new ArrayList<>(ids.size());
+        List<String> missing = new ArrayList<>();
+        for (String id : ids) {
+            ConfigurationResponseDto configuration = present.containsKey(id) ? present.get(id) : fetched.get(id);
+            if (configuration == null || configuration == MISSING) {
+                missing.add(id);
+            } else {
+                configurations.add(configuration);
+            }
+        }
+        return new ConfigLookup(configurations, missing);
+    }
+
+    @Override
+    public ConfigPage getRange(String from, String to, int limit) throws ConfigCacheException {
+        return backend.getRange(from, to, limit);
+    }
+
+    @Override
+    public ConfigCacheResult create(String id, String name, String value) throws ConfigCacheException {
+        try {
+            return backend.create(id, name, value);
+        } finally {
+            invalidate(id);
+        }
+    }
+
+    @Override
+    public ConfigCacheResult update(String id, String name, String value) throws ConfigCacheException {
+        try {
+            return backend.update(id, name, value);
+        } finally {
+            invalidate(id);
+        }
+    }
+
+    @Override
+    public ConfigCacheResult delete(String id) throws ConfigCacheException {
+        try {
+            return backend.delete(id);
+        } finally {
+            invalidate(id);
+        }
+    }
+
+    @Override
+    public List<ConfigCacheResult> apply(List<ConfigOperation> operations, boolean atomic) throws ConfigCacheException {
+        try {
+            return backend.apply(operations, atomic);
+        } finally {
+            for (ConfigOperation operation : operations) {
+                invalidate(operation.getId());
+            }
+        }
+    }
+
+    @Override
+    public int size() throws ConfigCacheException {
+        return backend.size();
+    }
+
+    @Override
+    public long estimatedBytes() throws ConfigCacheException {
+        return backend.estimatedBytes();
+    }
+
+    @Override
+    public ConfigCheckpoint checkpoint(LongSupplier offset) throws ConfigCacheException {
+        return backend.checkpoint(offset);
+    }
+
+    @Override
+    public void addChangeListener(ConfigChangeListener listener) {
+        backend.addChangeListener(listener);
+    }
+
+    @Override
+    public void close() throws IOException {
+        invalidator.shutdown();
+        if (backend instanceof Closeable) {
+            ((Closeable) backend).close();
+        }
+    }
+
+    // a failed write may still have reached the backend, so the local copy goes either way
+    private void invalidate(String id) {
+        writes.incrementAndGet(stripe(id));
+        cache.invalidate(id);
+    }
+
+    // compute is atomic with invalidate: a write either sees the fetched value and drops it, or has already bumped
+    // the stripe and the value is not kept
+    private void keep(String id, ConfigurationResponseDto configuration, long seen) {
+        cache.asMap().compute(id, (key, current) -> writes.get(stripe(key)) == seen ? configuration : current);
+    }
+
+    private static int stripe(String id) {
+        return id.hashCode() & (STRIPES - 1);
+    }
+}
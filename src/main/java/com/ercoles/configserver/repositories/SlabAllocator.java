@@ -0,0 +1,82 @@
+package com.ercoles.configserver.repositories;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// hands out blocks of direct memory carved from fixed-size slabs; a block is rounded up to a power of two and reused
+// through a free list of its size, slabs are never given back. A block is addressed by a handle holding the slab in
+// the high half and the offset in the low half
+final class SlabAllocator {
+    static final int SLAB_SIZE = 1 << 23;
+    // larger blocks are not worth pooling and get a buffer of their own, see allocateLarge
+    static final int MAX_BLOCK = 1 << 20;
+    private static final int MIN_SHIFT = 5;
+    private static final int MAX_SHIFT = 20;
+
+    private final long[][] free = new long[MAX_SHIFT - MIN_SHIFT + 1][];
+    private final int[] freeCount = new int[free.length];
+    // replaced as a whole when a slab is added, so readers never see a partially grown array
+    private volatile ByteBuffer[] slabs = new ByteBuffer[0];
+    private int top = SLAB_SIZE;
+    private long allocated;
+
+    SlabAllocator() {
+        Arrays.setAll(free, size -> new long[16]);
+    }
+
+    static ByteBuffer allocateLarge(int length) {
+        return ByteBuffer.allocateDirect(length);
+    }
+
+    synchronized long allocate(int length) {
+        int sizeClass = sizeClass(length);
+        int blockSize = 1 << (sizeClass + MIN_SHIFT);
+        allocated += blockSize;
+        if (freeCount[sizeClass] > 0) {
+            return free[sizeClass][--freeCount[sizeClass]];
+        }
+        if (top + blockSize > SLAB_SIZE) {
+            ByteBuffer[] grown = Arrays.copyOf(slabs, slabs.length + 1);
+            grown[slabs.length] = ByteBuffer.allocateDirect(SLAB_SIZE);
+            slabs = grown;
+            top = 0;
+        }
+        long handle = ((long) (slabs.length - 1) << 32) | top;
+        top += blockSize;
+        return handle;
+    }
+
+    synchronized void free(long handle, int length) {
+        int sizeClass = sizeClass(length);
+        allocated -= 1 << (sizeClass + MIN_SHIFT);
+        if (freeCount[sizeClass] == free[sizeClass].length) {
+            free[sizeClass] = Arrays.copyOf(free[sizeClass], freeCount[sizeClass] * 2);
+        }
+        free[sizeClass][freeCount[sizeClass]++] = handle;
+    }
+
+    ByteBuffer slab(long handle) {
+        return slabs[(int) (handle >>> 32)];
+    }
+
+    static int offset(long handle) {
+        return (int) handle;
+    }
+
+    // bytes reserved from the operating system, and the part of them held by live blocks
+    long reservedBytes() {
+        return (long) slabs.length * SLAB_SIZE;
+    }
+
+    synchronized long allocatedBytes() {
+        return allocated;
+    }
+
+    private static int sizeClass(int length) {
+        if (length > MAX_BLOCK) {
+            throw new IllegalArgumentException("Block of " + length + " bytes is too large for a slab.");
+        }
+        int shift = 32 - Integer.numberOfLeadingZeros(Math.max(length, 1) - 1);
+        return Math.max(shift, MIN_SHIFT) - MIN_SHIFT;
+    }
+}
@@ -0,0 +1,213 @@
+package com.ercoles.configserver.repositories;
+
+import com.ercoles.configserver.dtos.ConfigurationResponseDto;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+// full copy of the entries, written to a temporary file and renamed, so a snapshot under its final name is complete.
+// Format 2, which can be memory-mapped: [magic][format][sequence], the entries sorted by the UTF-8 bytes of their IDs
+// as [version][id][name][value], the offset of each entry in the same order, then [count][index offset] and a CRC32
+// of everything before it. Offsets are longs, a snapshot past 2 GB is written the same way but can't be mapped in one
+// piece and is read in full instead.
+// Format 1, still read: [magic][format][sequence], [1][version][id][name][value] per entry, [0] and the CRC32.
+final class SnapshotFile {
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".dat";
+    private static final int MAGIC = 0x43464753;
+    private static final int STREAMED = 1;
+    private static final int INDEXED = 2;
+    private static final int HEADER = Integer.BYTES * 2 + Long.BYTES;
+    private static final int FOOTER = Integer.BYTES + Long.BYTES * 2;
+
+    private SnapshotFile() {
+    }
+
+    static Path path(Path directory, long generation) {
+        return directory.resolve(PREFIX + generation + SUFFIX);
+    }
+
+    static long generationOf(Path file) {
+        String name = file.getFileName().toString();
+        if (!name.startsWith(PREFIX) || !name.endsWith(SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // the entries must come sorted by the UTF-8 bytes of their IDs, the order the index is searched in
+    static void write(Path directory, long generation, long sequence, Iterator<ConfigurationResponseDto> sortedEntries) throws IOException {
+        Path target = path(directory, generation);
+        Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            CheckedOutputStream checked = new CheckedOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16), new CRC32());
+            // DataOutputStream.size() stops counting at 2 GB
+            CountingOutputStream counted = new CountingOutputStream(checked);
+            DataOutputStream out = new DataOutputStream(counted);
+            out.writeInt(MAGIC);
+            out.writeInt(INDEXED);
+            out.writeLong(sequence);
+            long[] offsets = new long[1024];
+            int count = 0;
+            while (sortedEntries.hasNext()) {
+                ConfigurationResponseDto entry = sortedEntries.next();
+                if (count == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, count * 2);
+                }
+                offsets[count++] = counted.getCount();
+                out.writeLong(entry.getVersion());
+                WriteAheadLog.writeString(out, entry.getId());
+                WriteAheadLog.writeString(out, entry.getName());
+                WriteAheadLog.writeString(out, entry.getValue());
+            }
+            long indexOffset = counted.getCount();
+            for (int i = 0; i < count; i++) {
+                out.writeLong(offsets[i]);
+            }
+            out.writeInt(count);
+            out.writeLong(indexOffset);
+            out.writeLong(checked.getChecksum().getValue());
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        syncDirectory(directory);
+    }
+
+    // makes the rename itself durable; not every platform can open a directory, those don't need it
+    static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // nothing to do
+        }
+    }
+
+    // maps an indexed snapshot after checking it; returns null for a snapshot that can only be read in full
+    static MappedSnapshot map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER + FOOTER || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            // the mapping stays valid once the channel is closed
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt(0) != MAGIC) {
+                throw new IOException("Unknown snapshot format in " + file + ".");
+            }
+            if (buffer.getInt(Integer.BYTES) != INDEXED) {
+                return null;
+            }
+            int checked = (int) size - Long.BYTES;
+            CRC32 crc = new CRC32();
+            crc.update(buffer.duplicate().limit(checked));
+            if (crc.getValue() != buffer.getLong(checked)) {
+                throw new IOException("Corrupt snapshot " + file + ".");
+            }
+            int count = buffer.getInt((int) size - FOOTER);
+            long indexOffset = buffer.getLong((int) size - FOOTER + Integer.BYTES);
+            return new MappedSnapshot(buffer, buffer.getLong(Integer.BYTES * 2), count, (int) indexOffset);
+        }
+    }
+
+    // feeds every entry to the consumer and returns the sequence the snapshot was taken at
+    static long read(Path file, Consumer<ConfigurationResponseDto> consumer) throws IOException {
+        int count = -1;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() >= HEADER + FOOTER) {
+                ByteBuffer footer = ByteBuffer.allocate(FOOTER);
+                channel.read(footer, channel.size() - FOOTER);
+                count = footer.getInt(0);
+            }
+        }
+        try (InputStream stream = Files.newInputStream(file)) {
+            CheckedInputStream checked = new CheckedInputStream(new BufferedInputStream(stream, 1 << 16), new CRC32());
+            DataInputStream in = new DataInputStream(checked);
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Unknown snapshot format in " + file + ".");
+            }
+            int format = in.readInt();
+            long sequence = in.readLong();
+            if (format == STREAMED) {
+                while (in.readByte() == 1) {
+                    consumer.accept(readEntry(in));
+                }
+            } else if (format == INDEXED && count >= 0) {
+                for (int i = 0; i < count; i++) {
+                    consumer.accept(readEntry(in));
+                }
+                // the index and the rest of the footer only count towards the checksum
+                for (int i = 0; i < count; i++) {
+                    in.readLong();
+                }
+                in.readInt();
+                in.readLong();
+            } else {
+                throw new IOException("Unknown snapshot format in " + file + ".");
+            }
+            long expected = checked.getChecksum().getValue();
+            if (in.readLong() != expected) {
+                throw new IOException("Corrupt snapshot " + file + ".");
+            }
+            return sequence;
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+
+        long getCount() {
+            return count;
+        }
+    }
+
+    private static ConfigurationResponseDto readEntry(DataInputStream in) throws IOException {
+        long version = in.readLong();
+        String id = WriteAheadLog.readString(in);
+        String name = WriteAheadLog.readString(in);
+        String value = WriteAheadLog.readString(in);
+        return new ConfigurationResponseDto(new Configuration(id, name, value, version));
+    }
+}
@@ -0,0 +1,362 @@
+package com.ercoles.configserver.repositories;
+
+import com.ercoles.configserver.dtos.ConfigurationResponseDto;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+// append-only log of ConfigChanges, split in numbered segments; each record is framed as
+// [payload length][CRC32 of payload][payload] so that a record torn by a crash is detected and dropped. A record holds
+// one change, or all the changes of an atomic batch so that a crash keeps the whole batch or none of it
+final class WriteAheadLog implements Closeable {
+    private static final String PREFIX = "wal-";
+    private static final String SUFFIX = ".log";
+    private static final ConfigChange.Type[] TYPES = ConfigChange.Type.values();
+    // first byte of a batch record, followed by the number of changes; a single change starts with its type
+    private static final byte BATCH = (byte) 0xFF;
+
+    private final Path directory;
+    // a lock rather than a monitor: writers waiting for an fsync then leave the carrier free on virtual threads
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final Thread writer;
+    private FileChannel channel;
+    private long generation;
+    // all guarded by lock
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private ByteArrayOutputStream flushing = new ByteArrayOutputStream();
+    private long appended;
+    private long durable;
+    private boolean rotationRequested;
+    private volatile boolean closed;
+    // volatile so that writes can be refused without taking the lock
+    private volatile IOException failure;
+
+    WriteAheadLog(Path directory, long generation) throws IOException {
+        this.directory = directory;
+        this.generation = generation;
+        this.channel = open(generation);
+        this.writer = new Thread(this::run, "config-cache-log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    static Path segment(Path directory, long generation) {
+        return directory.resolve(PREFIX + generation + SUFFIX);
+    }
+
+    static long generationOf(Path file) {
+        String name = file.getFileName().toString();
+        if (!name.startsWith(PREFIX) || !name.endsWith(SUFFIX)) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // feeds the changes of a segment to the consumer and cuts off a torn tail; returns the number of records read
+    static long replay(Path segment, Consumer<ConfigChange> consumer) throws IOException {
+        long size = Files.size(segment);
+        long records = 0;
+        long valid = 0;
+        try (InputStream file = Files.newInputStream(segment);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(file, 1 << 16))) {
+            CRC32 crc = new CRC32();
+            while (true) {
+                byte[] payload;
+                try {
+                    int length = in.readInt();
+                    int checksum = in.readInt();
+                    if (length < 0 || length > size - valid - Integer.BYTES * 2) {
+                        break;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                    crc.reset();
+                    crc.update(payload);
+                    if ((int) crc.getValue() != checksum) {
+                        break;
+                    }
+                } catch (EOFException e) {
+                    break;
+                }
+                decode(payload, consumer);
+                valid += Integer.BYTES * 2 + payload.length;
+                records++;
+            }
+        }
+        if (valid < size) {
+            try (FileChannel truncated = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+                truncated.truncate(valid);
+                truncated.force(true);
+            }
+        }
+        return records;
+    }
+
+    // called while the entry is locked: only copies the record into the pending buffer
+    void append(ConfigChange change) {
+        append(frame(encode(change)));
+    }
+
+    void append(List<ConfigChange> changes) {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(64 * changes.size());
+        try (DataOutputStream out = new DataOutputStream(payload)) {
+            out.writeByte(BATCH);
+            out.writeInt(changes.size());
+            for (ConfigChange change : changes) {
+                writeChange(out, change);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to encode configuration change.", e);
+        }
+        append(frame(payload.toByteArray()));
+    }
+
+    private void append(byte[] record) {
+        lock.lock();
+        try {
+            pending.writeBytes(record);
+            appended++;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // throws what stopped the writer, so that a change is refused before it is applied anywhere
+    void checkWritable() throws IOException {
+        IOException failed = failure;
+        if (failed != null) {
+            throw failed;
+        }
+        if (closed) {
+            throw new IOException("Log is closed.");
+        }
+    }
+
+    long getAppended() {
+        lock.lock();
+        try {
+            return appended;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // blocks until the first count records appended are on disk; all callers waiting during an fsync share the next one
+    void awaitDurable(long count) throws IOException, InterruptedException {
+        lock.lock();
+        try {
+            while (durable < count) {
+                if (failure != null) {
+                    throw failure;
+                }
+                if (closed) {
+                    throw new IOException("Log is closed.");
+                }
+                changed.await();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // records appended after this call returns go to a new segment; returns the new generation
+    long rotate() throws IOException, InterruptedException {
+        lock.lock();
+        try {
+            long current = generation;
+            rotationRequested = true;
+            changed.signalAll();
+            while (generation == current) {
+                if (failure != null) {
+                    throw failure;
+                }
+                if (closed) {
+                    throw new IOException("Log is closed.");
+                }
+                changed.await();
+            }
+            return generation;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            closed = true;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    private void run() {
+        while (true) {
+            long target;
+            boolean rotate;
+            ByteArrayOutputStream batch;
+            lock.lock();
+            try {
+                while (pending.size() == 0 && !rotationRequested && !closed) {
+                    try {
+                        changed.await();
+                    } catch (InterruptedException e) {
+                        closed = true;
+                    }
+                }
+                if (pending.size() == 0 && !rotationRequested) {
+                    return;
+                }
+                batch = pending;
+                pending = flushing;
+                flushing = batch;
+                target = appended;
+                rotate = rotationRequested;
+                rotationRequested = false;
+            } finally {
+                lock.unlock();
+            }
+            long nextGeneration = generation + 1;
+            try {
+                if (batch.size() > 0) {
+                    ByteBuffer buffer = ByteBuffer.wrap(batch.toByteArray());
+                    while (buffer.hasRemaining()) {
+                        channel.write(buffer);
+                    }
+                    channel.force(false);
+                }
+                if (rotate) {
+                    FileChannel next = open(nextGeneration);
+                    channel.close();
+                    channel = next;
+                }
+            } catch (IOException e) {
+                lock.lock();
+                try {
+                    failure = e;
+                    changed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                return;
+            } finally {
+                batch.reset();
+            }
+            lock.lock();
+            try {
+                durable = target;
+                if (rotate) {
+                    generation = nextGeneration;
+                }
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private FileChannel open(long generation) throws IOException {
+        return FileChannel.open(segment(directory, generation),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private static byte[] encode(ConfigChange change) {
+        ByteArrayOutputStream payload = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(payload)) {
+            writeChange(out, change);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to encode configuration change.", e);
+        }
+        return payload.toByteArray();
+    }
+
+    private static void writeChange(DataOutputStream out, ConfigChange change) throws IOException {
+        ConfigurationResponseDto configuration = change.getConfiguration();
+        out.writeByte(change.getType().ordinal());
+        out.writeLong(change.getSequence());
+        writeString(out, configuration.getId());
+        writeString(out, configuration.getName());
+        writeString(out, configuration.getValue());
+    }
+
+    private static byte[] frame(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer record = ByteBuffer.allocate(Integer.BYTES * 2 + payload.length);
+        record.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+        return record.array();
+    }
+
+    private static void decode(byte[] payload, Consumer<ConfigChange> consumer) {
+        ByteBuffer in = ByteBuffer.wrap(payload);
+        if (in.get(0) != BATCH) {
+            consumer.accept(readChange(in));
+            return;
+        }
+        in.get();
+        int count = in.getInt();
+        for (int i = 0; i < count; i++) {
+            consumer.accept(readChange(in));
+        }
+    }
+
+    private static ConfigChange readChange(ByteBuffer in) {
+        ConfigChange.Type type = TYPES[in.get()];
+        long sequence = in.getLong();
+        String id = readString(in);
+        String name = readString(in);
+        String value = readString(in);
+        // a deleted entry keeps its own version, the sequence of the delete only orders the change
+        long version = type == ConfigChange.Type.DELETED ? 0 : sequence;
+        return new ConfigChange(type, sequence, new ConfigurationResponseDto(new Configuration(id, name, value, version)));
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,77 @@
+package com.ercoles.configserver.repositories;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+// the locks behind the writes of a store: a plain write only holds the stripe of its ID, so writes to different IDs
+// never wait for each other, while atomic batches and checkpoints hold every stripe. Listings take no lock at all
+// and are only repeated, with batches held off, when a batch ran while they were read
+final class WriteLocks {
+    private static final int STRIPES = 256;
+
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+    // write-locked by a batch once it holds every stripe, so a listing can tell that it may have seen half of it
+    private final StampedLock batches = new StampedLock();
+
+    WriteLocks() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    // locks the stripe of an ID and returns it to be unlocked; writes of the same ID are serialized by it
+    ReentrantLock lock(String id) {
+        int hash = id.hashCode();
+        ReentrantLock lock = stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+        lock.lock();
+        return lock;
+    }
+
+    // holds off every write until unlockAll(); the stripes are always taken in the same order
+    void lockAll() {
+        for (ReentrantLock stripe : stripes) {
+            stripe.lock();
+        }
+    }
+
+    void unlockAll() {
+        for (int i = STRIPES - 1; i >= 0; i--) {
+            stripes[i].unlock();
+        }
+    }
+
+    // runs writes that a listing must see all or none of. The stripes come first: a checkpoint holding them lists
+    // the store, which must not find a batch waiting for them with listings already held off
+    <T> T batch(Supplier<T> writes) {
+        lockAll();
+        try {
+            long stamp = batches.writeLock();
+            try {
+                return writes.get();
+            } finally {
+                batches.unlockWrite(stamp);
+            }
+        } finally {
+            unlockAll();
+        }
+    }
+
+    // runs a read over many entries, again with batches held off if one ran in the meantime; the read must be
+    // harmless to repeat
+    <T> T read(Supplier<T> read) {
+        long stamp = batches.tryOptimisticRead();
+        if (stamp != 0) {
+            T result = read.get();
+            if (batches.validate(stamp)) {
+                return result;
+            }
+        }
+        stamp = batches.readLock();
+        try {
+            return read.get();
+        } finally {
+            batches.unlockRead(stamp);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.ercoles.configserver.services;
+
+import com.ercoles.configserver.dtos.ConfigurationResponseDto;
+import com.ercoles.configserver.repositories.ConfigPage;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+
+// walks every configuration in ID order, fetching one page at a time, so only a page is held however large the store.
+// It is not a snapshot: a configuration changed during the walk is seen as it is when its page is fetched
+public class ConfigIterator {
+    private final ConfigService configService;
+    private final int pageSize;
+    private List<ConfigurationResponseDto> page = List.of();
+    private int position;
+    // where the following page starts, null once the last page has been fetched
+    private String next;
+
+    // from the given ID on, or from the first configuration when it is null
+    ConfigIterator(ConfigService configService, String start, int pageSize) {
+        this.configService = configService;
+        this.pageSize = pageSize;
+        this.next = start == null ? "" : start;
+    }
+
+    public boolean hasNext() throws ConfigServiceException {
+        while (position == page.size() && next != null) {
+            ConfigPage fetched = configService.getConfigurationRange("", null, next, pageSize);
+            page = fetched.getConfigurations();
+            position = 0;
+            next = fetched.getNext();
+        }
+        return position < page.size();
+    }
+
+    public ConfigurationResponseDto next() throws ConfigServiceException {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return page.get(position++);
+    }
+}
@@ -1,59 +1,128 @@
 package com.ercoles.configserver.services;
 
-import com.ercoles.configserver.dtos.ConfigurationResponseDto;
 import com.ercoles.configserver.repositories.ConfigCache;
 import com.ercoles.configserver.repositories.ConfigCacheException;
 import com.ercoles.configserver.repositories.ConfigCacheFactory;
+import com.ercoles.configserver.repositories.ConfigCacheResult;
+import com.ercoles.configserver.repositories.ConfigLookup;
+import com.ercoles.configserver.repositories.ConfigOperation;
+import com.ercoles.configserver.repositories.ConfigPage;
+import com.ercoles.configserver.repositories.ConfigSnapshot;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
 import java.util.List;
 
 @Service
 public class ConfigService {
+    public static final String GET_ALL_ERROR = "Error retrieving configuration list.";
+    public static final String GET_ERROR = "Error retrieving configuration.";
+    public static final String GET_MANY_ERROR = "Error retrieving configurations.";
+    public static final String GET_RANGE_ERROR = "Error retrieving configuration range.";
+    public static final String CREATE_ERROR = "Error creating new configuration.";
+    public static final String UPDATE_ERROR = "Error updating configuration.";
+    public static final String DELETE_ERROR = "Error deleting configuration.";
+    public static final String BATCH_ERROR = "Error applying configuration batch.";
+
     private final ConfigCache configCache;
+    private final String epoch;
 
     public ConfigService(@Autowired ConfigCacheFactory factory) {
         this.configCache = factory.getConfigCache();
+        this.epoch = factory.getEpoch();
+    }
+
+    // what the versions of this instance are tagged with
+    public String getEpoch() {
+        return epoch;
     }
 
-    public List<ConfigurationResponseDto> getAll() throws ConfigServiceException {
+    public ConfigSnapshot getAll() throws ConfigServiceException {
         try {
             return configCache.getAll();
         } catch (ConfigCacheException e) {
-            throw new ConfigServiceException("Error retrieving configuration list.", e);
+            throw new ConfigServiceException(GET_ALL_ERROR, e);
         }
     }
 
-    public ConfigurationResponseDto getConfiguration(String configId) throws ConfigServiceException {
+    public ConfigCacheResult getConfiguration(String configId) throws ConfigServiceException {
         try {
             return configCache.get(configId);
         } catch (ConfigCacheException e) {
-            throw new ConfigServiceException("Error retrieving configuration.", e);
+            throw new ConfigServiceException(GET_ERROR, e);
+        }
+    }
+
+    public ConfigLookup getConfigurations(Collection<String> configIds) throws ConfigServiceException {
+        try {
+            return configCache.getMany(configIds);
+        } catch (ConfigCacheException e) {
+            throw new ConfigServiceException(GET_MANY_ERROR, e);
         }
     }
 
-    public ConfigurationResponseDto createConfiguration(String configId, String configName, String configValue) throws ConfigServiceException {
+    // start is where a previous page left off, or null for the first page
+    public ConfigPage getConfigurationRange(String from, String to, String start, int limit) throws ConfigServiceException {
+        try {
+            return configCache.getRange(start != null && start.compareTo(from) > 0 ? start : from, to, limit);
+        } catch (ConfigCacheException e) {
+            throw new ConfigServiceException(GET_RANGE_ERROR, e);
+        }
+    }
+
+    public ConfigPage getConfigurationsByPrefix(String prefix, String start, int limit) throws ConfigServiceException {
+        return getConfigurationRange(prefix, prefixEnd(prefix), start, limit);
+    }
+
+    public ConfigIterator iterateConfigurations(int pageSize) {
+        return iterateConfigurations(null, pageSize);
+    }
+
+    public ConfigIterator iterateConfigurations(String start, int pageSize) {
+        return new ConfigIterator(this, start, pageSize);
+    }
+
+    public ConfigCacheResult createConfiguration(String configId, String configName, String configValue) throws ConfigServiceException {
         try {
             return configCache.create(configId, configName, configValue);
         } catch (ConfigCacheException e) {
-            throw new ConfigServiceException("Error creating new configuration.", e);
+            throw new ConfigServiceException(CREATE_ERROR, e);
         }
     }
 
-    public ConfigurationResponseDto updateConfiguration(String configId, String configName, String configValue) throws ConfigServiceException {
+    public ConfigCacheResult updateConfiguration(String configId, String configName, String configValue) throws ConfigServiceException {
         try {
             return configCache.update(configId, configName, configValue);
         } catch (ConfigCacheException e) {
-            throw new ConfigServiceException("Error updating configuration.", e);
+            throw new ConfigServiceException(UPDATE_ERROR, e);
         }
     }
 
-    public ConfigurationResponseDto deleteConfiguration(String configId) throws ConfigServiceException {
+    public ConfigCacheResult deleteConfiguration(String configId) throws ConfigServiceException {
         try {
             return configCache.delete(configId);
         } catch (ConfigCacheException e) {
-            throw new ConfigServiceException("Error deleting configuration.", e);
+            throw new ConfigServiceException(DELETE_ERROR, e);
+        }
+    }
+
+    public List<ConfigCacheResult> applyBatch(List<ConfigOperation> operations, boolean atomic) throws ConfigServiceException {
+        try {
+            return configCache.apply(operations, atomic);
+        } catch (ConfigCacheException e) {
+            throw new ConfigServiceException(BATCH_ERROR, e);
+        }
+    }
+
+    // the smallest string above every string starting with prefix, null when there is none
+    private static String prefixEnd(String prefix) {
+        for (int i = prefix.length() - 1; i >= 0; i--) {
+            char last = prefix.charAt(i);
+            if (last != Character.MAX_VALUE) {
+                return prefix.substring(0, i) + (char) (last + 1);
+            }
         }
+        return null;
     }
 }
@@ -0,0 +1,72 @@
+package com.ercoles.configserver.services;
+
+import com.ercoles.configserver.repositories.ConfigCache;
+import com.ercoles.configserver.repositories.ConfigCacheException;
+import com.ercoles.configserver.repositories.ConfigCacheFactory;
+import com.ercoles.configserver.repositories.ConfigChange;
+import com.ercoles.configserver.repositories.ConfigChangeLog;
+import com.ercoles.configserver.repositories.ConfigCheckpoint;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// delta syncs for clients keeping a copy of the store: the latest changes, in the order the store made them, kept in
+// a bounded log that clients read from where they left off; one that comes too late, or from before a restart, starts
+// over from a checkpoint. Only stores that support checkpoints can start clients over. The log only starts following
+// the store with the first checkpoint, which every client starts from, so writes don't feed it while nobody syncs
+@Service
+public class ConfigSyncService {
+    public static final String SYNC_ERROR = "Error retrieving configuration changes.";
+
+    private final ConfigCache configCache;
+    private final ConfigChangeLog log;
+    private volatile boolean following;
+
+    public ConfigSyncService(
+            @Autowired ConfigCacheFactory factory,
+            @Value("${configserver.sync.log-size:10000}") int logSize
+    ) {
+        this.configCache = factory.getConfigCache();
+        this.log = new ConfigChangeLog(logSize);
+    }
+
+    public String getEpoch() {
+        return log.getEpoch();
+    }
+
+    // up to max changes from the offset on, without waiting for any; null when the log no longer holds them, or the
+    // offset belongs to the log of another epoch
+    public List<ConfigChange> getChanges(String epoch, long offset, int max) {
+        try {
+            return log.read(epoch, offset, max, 0, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    // every configuration, with the offset of the first change they don't include
+    public ConfigCheckpoint checkpoint() throws ConfigServiceException {
+        follow();
+        try {
+            return configCache.checkpoint(log::getNextOffset);
+        } catch (ConfigCacheException e) {
+            throw new ConfigServiceException(SYNC_ERROR, e);
+        }
+    }
+
+    // registered before the checkpoint is taken, so the log holds every change from the offset it hands out on
+    private void follow() {
+        if (!following) {
+            synchronized (this) {
+                if (!following) {
+                    configCache.addChangeListener(log);
+                    following = true;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.ercoles.configserver.services;
+
+import com.ercoles.configserver.repositories.ConfigCacheFactory;
+import com.ercoles.configserver.repositories.ConfigChange;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+public class ConfigWatchService {
+    // events a watcher can fall behind by before it is disconnected, it resumes from the last one it got then
+    static final int MAX_PENDING = 1024;
+
+    private final WatchFeed feed;
+    private final Set<Watcher> watchers = ConcurrentHashMap.newKeySet();
+    // each watcher is sent its events by a task of its own, so a slow one only holds itself up
+    private final ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor();
+    private final ScheduledExecutorService heartbeats = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "config-watch-heartbeat");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final long timeout;
+
+    public ConfigWatchService(
+            @Autowired ConfigCacheFactory factory,
+            @Value("${configserver.watch.timeout:1800000}") long timeout,
+            @Value("${configserver.watch.heartbeat:15000}") long heartbeat,
+            @Value("${configserver.watch.replay-size:1024}") int replaySize
+    ) {
+        this.timeout = timeout;
+        this.feed = new WatchFeed(factory.getConfigCache(), replaySize);
+        heartbeats.scheduleAtFixedRate(this::heartbeat, heartbeat, heartbeat, TimeUnit.MILLISECONDS);
+    }
+
+    // resumes after the event of the given ID, if the client sends one; a client that can't be resumed is sent a
+    // resync event first, it has to list the configurations again
+    public SseEmitter watch(String lastEventId) {
+        SseEmitter emitter = new SseEmitter(timeout);
+        Watcher watcher = new Watcher(emitter);
+        emitter.onCompletion(() -> remove(watcher));
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(error -> remove(watcher));
+        watchers.add(watcher);
+        // an initial comment commits the response headers, so clients know the subscription is live
+        watcher.offer(SseEmitter.event().comment("watching"));
+        feed.subscribe(lastEventId, watcher);
+        return emitter;
+    }
+
+    public int getWatcherCount() {
+        return feed.getWatcherCount();
+    }
+
+    // the web server has stopped by now and dropped the connections, completing them would dispatch to requests
+    // that are gone
+    @PreDestroy
+    public void close() {
+        heartbeats.shutdownNow();
+        feed.close();
+        senders.shutdownNow();
+        watchers.forEach(feed::unsubscribe);
+        watchers.clear();
+    }
+
+    private void heartbeat() {
+        for (Watcher watcher : watchers) {
+            if (!watcher.offer(SseEmitter.event().comment("heartbeat"))) {
+                watcher.drop();
+            }
+        }
+    }
+
+    private void remove(Watcher watcher) {
+        watchers.remove(watcher);
+        feed.unsubscribe(watcher);
+    }
+
+    // the events of one client in a bounded queue, sent by at most one task at a time so they keep their order
+    private final class Watcher implements WatchFeed.Subscriber {
+        private final SseEmitter emitter;
+        private final Queue<SseEmitter.SseEventBuilder> pending = new ArrayBlockingQueue<>(MAX_PENDING);
+        private final AtomicBoolean sending = new AtomicBoolean();
+        private final AtomicBoolean dropped = new AtomicBoolean();
+
+        private Watcher(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+
+        @Override
+        public boolean offer(String id, ConfigChange change) {
+            return offer(SseEmitter.event().id(id).name(change.getType().name().toLowerCase(Locale.ROOT))
+                    .data(change.getConfiguration().toJson(), MediaType.APPLICATION_JSON));
+        }
+
+        @Override
+        public void missed() {
+            offer(SseEmitter.event().name("resync").data("{}", MediaType.APPLICATION_JSON));
+        }
+
+        // the connection is closed once what it was already sent is through, the client reconnects from there
+        @Override
+        public void drop() {
+            if (dropped.compareAndSet(false, true)) {
+                remove(this);
+                pending.clear();
+                schedule();
+            }
+        }
+
+        private boolean offer(SseEmitter.SseEventBuilder event) {
+            if (dropped.get() || !pending.offer(event)) {
+                return false;
+            }
+            schedule();
+            return true;
+        }
+
+        private void schedule() {
+            if (sending.compareAndSet(false, true)) {
+                try {
+                    senders.execute(this::send);
+                } catch (RuntimeException e) {
+                    // shutting down
+                    sending.set(false);
+                }
+            }
+        }
+
+        private void send() {
+            do {
+                SseEmitter.SseEventBuilder event;
+                while ((event = pending.poll()) != null) {
+                    try {
+                        emitter.send(event);
+                    } catch (IOException | IllegalStateException e) {
+                        // the container has seen the failure too and ends the request itself; completing it from
+                        // here as well could race with that, on a request it may already have recycled
+                        dropped.set(true);
+                        remove(this);
+                        pending.clear();
+                        return;
+                    }
+                }
+                if (dropped.get()) {
+                    emitter.complete();
+                    return;
+                }
+                sending.set(false);
+                // an event offered, or a drop, after the queue was found empty but before the flag was cleared is
+                // seen to now
+            } while ((!pending.isEmpty() || dropped.get()) && sending.compareAndSet(false, true));
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.ercoles.configserver.services;
+
+import com.ercoles.configserver.repositories.ConfigCacheFactory;
+import com.ercoles.configserver.repositories.ConfigCacheResult;
+import com.ercoles.configserver.repositories.ConfigLookup;
+import com.ercoles.configserver.repositories.ConfigOperation;
+import com.ercoles.configserver.repositories.ConfigPage;
+import com.ercoles.configserver.repositories.ConfigSnapshot;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+// ConfigService for the reactive stack: the in-memory stores answer in microseconds without waiting on anything, so
+// their operations run on the calling event loop; only the writes of a durable store, which wait for the disk, and
+// the reads of a sharded one, which wait for the other instances, are moved to a thread that may block
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveConfigService {
+    private final ConfigService configService;
+    private final Scheduler readScheduler;
+    private final Scheduler writeScheduler;
+
+    public ReactiveConfigService(@Autowired ConfigService configService, @Autowired ConfigCacheFactory factory) {
+        this.configService = configService;
+        this.readScheduler = factory.isRemote() ? Schedulers.boundedElastic() : Schedulers.immediate();
+        this.writeScheduler = factory.isDurable() ? Schedulers.boundedElastic() : Schedulers.immediate();
+    }
+
+    public String getEpoch() {
+        return configService.getEpoch();
+    }
+
+    public Mono<ConfigSnapshot> getAll() {
+        return read(configService::getAll);
+    }
+
+    public Mono<ConfigCacheResult> getConfiguration(String configId) {
+        return read(() -> configService.getConfiguration(configId));
+    }
+
+    public Mono<ConfigLookup> getConfigurations(Collection<String> configIds) {
+        return read(() -> configService.getConfigurations(configIds));
+    }
+
+    public Mono<ConfigPage> getConfigurationRange(String from, String to, String start, int limit) {
+        return read(() -> configService.getConfigurationRange(from, to, start, limit));
+    }
+
+    public Mono<ConfigPage> getConfigurationsByPrefix(String prefix, String start, int limit) {
+        return read(() -> configService.getConfigurationsByPrefix(prefix, start, limit));
+    }
+
+    // any other read of the store, such as a delta sync starting over from every configuration
+    public <T> Mono<T> read(Callable<T> read) {
+        return Mono.fromCallable(read).subscribeOn(readScheduler);
+    }
+
+    // every configuration in ID order from the given ID on, or from the first when it is null, a page at a time; the
+    // next page is only read once the previous one is consumed
+    public Flux<ConfigPage> getAllPages(String start, int pageSize) {
+        return getConfigurationRange("", null, start, pageSize)
+                .expand(page -> page.getNext() == null ? Mono.empty() : getConfigurationRange("", null, page.getNext(), pageSize));
+    }
+
+    public Mono<ConfigCacheResult> createConfiguration(String configId, String configName, String configValue) {
+        return Mono.fromCallable(() -> configService.createConfiguration(configId, configName, configValue))
+                .subscribeOn(writeScheduler);
+    }
+
+    public Mono<ConfigCacheResult> updateConfiguration(String configId, String configName, String configValue) {
+        return Mono.fromCallable(() -> configService.updateConfiguration(configId, configName, configValue))
+                .subscribeOn(writeScheduler);
+    }
+
+    public Mono<ConfigCacheResult> deleteConfiguration(String configId) {
+        return Mono.fromCallable(() -> configService.deleteConfiguration(configId))
+                .subscribeOn(writeScheduler);
+    }
+
+    public Mono<List<ConfigCacheResult>> applyBatch(List<ConfigOperation> operations, boolean atomic) {
+        return Mono.fromCallable(() -> configService.applyBatch(operations, atomic))
+                .subscribeOn(writeScheduler);
+    }
+}
@@ -0,0 +1,97 @@
+package com.ercoles.configserver.services;
+
+import com.ercoles.configserver.repositories.ConfigCacheFactory;
+import com.ercoles.configserver.repositories.ConfigChange;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.concurrent.Queues;
+
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Locale;
+
+// ConfigWatchService for the reactive stack: the same events, with watchers held by the event loops instead of threads
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveConfigWatchService {
+    // events a watcher can fall behind by before it is disconnected, it resumes from the last one it got then
+    private static final int MAX_PENDING = 1024;
+
+    private final WatchFeed feed;
+    private final Duration timeout;
+    private final Duration heartbeat;
+
+    public ReactiveConfigWatchService(
+            @Autowired ConfigCacheFactory factory,
+            @Value("${configserver.watch.timeout:1800000}") long timeout,
+            @Value("${configserver.watch.heartbeat:15000}") long heartbeat,
+            @Value("${configserver.watch.replay-size:1024}") int replaySize
+    ) {
+        this.feed = new WatchFeed(factory.getConfigCache(), replaySize);
+        this.timeout = Duration.ofMillis(timeout);
+        this.heartbeat = Duration.ofMillis(heartbeat);
+    }
+
+    // resumes after the event of the given ID, if the client sends one; a client that can't be resumed is sent a
+    // resync event first, it has to list the configurations again
+    public Flux<ServerSentEvent<String>> watch(String lastEventId) {
+        return Flux.defer(() -> {
+            Watcher watcher = new Watcher();
+            feed.subscribe(lastEventId, watcher);
+            // they stop once the watcher is dropped, so that the stream ends with its events
+            Flux<ServerSentEvent<String>> heartbeats = Flux.interval(heartbeat, heartbeat)
+                    .map(tick -> ServerSentEvent.<String>builder().comment("heartbeat").build())
+                    .takeUntilOther(watcher.dropped.asMono());
+            // an initial comment commits the response headers, so clients know the subscription is live; the events
+            // the watcher missed wait in its queue until then
+            Flux<ServerSentEvent<String>> watching = Flux.just(ServerSentEvent.<String>builder().comment("watching").build());
+            return Flux.merge(watching, watcher.events.asFlux().publishOn(Schedulers.parallel()), heartbeats)
+                    .take(timeout)
+                    .doFinally(signal -> feed.unsubscribe(watcher));
+        });
+    }
+
+    public int getWatcherCount() {
+        return feed.getWatcherCount();
+    }
+
+    @PreDestroy
+    public void close() {
+        feed.close();
+    }
+
+    // the events of one client in a bounded queue: a change only takes a place in it on the writing thread, the
+    // client is sent it from a scheduler thread
+    private static final class Watcher implements WatchFeed.Subscriber {
+        private final Sinks.Many<ServerSentEvent<String>> events =
+                Sinks.many().unicast().onBackpressureBuffer(Queues.<ServerSentEvent<String>>get(MAX_PENDING).get());
+        private final Sinks.Empty<Void> dropped = Sinks.empty();
+
+        @Override
+        public boolean offer(String id, ConfigChange change) {
+            return events.tryEmitNext(ServerSentEvent.builder(new String(change.getConfiguration().toJson(), StandardCharsets.UTF_8))
+                    .id(id)
+                    .event(change.getType().name().toLowerCase(Locale.ROOT))
+                    .build()).isSuccess();
+        }
+
+        @Override
+        public void missed() {
+            events.tryEmitNext(ServerSentEvent.builder("{}").event("resync").build());
+        }
+
+        // the stream ends once what it was already sent is through, the client reconnects from there
+        @Override
+        public void drop() {
+            events.tryEmitComplete();
+            dropped.tryEmitEmpty();
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.ercoles.configserver.services;
+
+import com.ercoles.configserver.dtos.ConfigurationResponseDto;
+import com.ercoles.configserver.dtos.ReplicationChangeDto;
+import com.ercoles.configserver.dtos.ReplicationResultDto;
+import com.ercoles.configserver.repositories.ConfigCache;
+import com.ercoles.configserver.repositories.ConfigCacheException;
+import com.ercoles.configserver.repositories.ConfigCacheFactory;
+import com.ercoles.configserver.repositories.ConfigCacheResult;
+import com.ercoles.configserver.repositories.ConfigChange;
+import com.ercoles.configserver.repositories.ConfigChangeLog;
+import com.ercoles.configserver.repositories.ConfigCheckpoint;
+import com.ercoles.configserver.repositories.ConfigOperation;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+// the leader's side of replication: logs every change of the store, hands followers a checkpoint to start from and
+// streams them the log from there on, and applies the writes they forward
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
+@ConditionalOnProperty(name = "configserver.replication.role", havingValue = "leader")
+public class ReplicationService {
+    public static final String CHECKPOINT_ERROR = "Error taking configuration checkpoint.";
+    // changes sent to a follower in one go
+    private static final int CHUNK = 1000;
+
+    private final ConfigCache configCache;
+    private final ConfigChangeLog log;
+    private final ObjectMapper objectMapper;
+    private final long timeout;
+    private final long heartbeat;
+    // one per follower, each waiting on the log for the next changes
+    private final Set<Thread> streams = ConcurrentHashMap.newKeySet();
+    private volatile boolean closed;
+
+    public ReplicationService(
+            @Autowired ConfigCacheFactory factory,
+            @Autowired ObjectMapper objectMapper,
+            @Value("${configserver.replication.log-size:100000}") int logSize,
+            @Value("${configserver.watch.timeout:1800000}") long timeout,
+            @Value("${configserver.replication.heartbeat:1000}") long heartbeat
+    ) {
+        this.configCache = factory.getConfigCache();
+        this.log = new ConfigChangeLog(logSize);
+        this.objectMapper = objectMapper;
+        this.timeout = timeout;
+        this.heartbeat = heartbeat;
+        configCache.addChangeListener(log);
+    }
+
+    public String getEpoch() {
+        return log.getEpoch();
+    }
+
+    // read after a write returns, every change of the write is before it
+    public long getOffset() {
+        return log.getNextOffset();
+    }
+
+    public ConfigCheckpoint checkpoint() throws ConfigServiceException {
+        try {
+            return configCache.checkpoint(log::getNextOffset);
+        } catch (ConfigCacheException e) {
+            throw new ConfigServiceException(CHECKPOINT_ERROR, e);
+        }
+    }
+
+    public List<ConfigCacheResult> apply(List<ConfigOperation> operations, boolean atomic) throws ConfigServiceException {
+        try {
+            return configCache.apply(operations, atomic);
+        } catch (ConfigCacheException e) {
+            throw new ConfigServiceException(ConfigService.BATCH_ERROR, e);
+        }
+    }
+
+    // whether the log still holds the changes from the offset on, which a follower can then resume from
+    public boolean canResume(String epoch, long offset) {
+        try {
+            return log.getEpoch().equals(epoch) && log.read(offset, 0, 0, TimeUnit.MILLISECONDS) != null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // the log from the offset on as newline-delimited JSON. An empty line ends every chunk of changes, which never
+    // splits an atomic batch, and comes every heartbeat while nothing changes; ends once the follower has fallen so far behind that the log dropped what it still needs
+    public ResponseBodyEmitter streamChanges(long offset) {
+        ResponseBodyEmitter follower = new ResponseBodyEmitter(timeout);
+        Thread stream = new Thread(() -> ship(follower, offset), "config-replication-stream");
+        stream.setDaemon(true);
+        follower.onCompletion(stream::interrupt);
+        follower.onTimeout(follower::complete);
+        follower.onError(error -> stream.interrupt());
+        streams.add(stream);
+        stream.start();
+        return follower;
+    }
+
+    // false once the application is shutting down, followers then try again later
+    public boolean isOpen() {
+        return !closed;
+    }
+
+    public int getFollowerCount() {
+        return streams.size();
+    }
+
+    // before the web server stops, which would otherwise wait for the streams to end
+    @EventListener(ContextClosedEvent.class)
+    public void close() {
+        closed = true;
+        streams.forEach(Thread::interrupt);
+    }
+
+    public static ReplicationChangeDto toDto(Long offset, ConfigChange change) {
+        ConfigurationResponseDto configuration = change.getConfiguration();
+        return new ReplicationChangeDto(offset, change.getType().name().toLowerCase(Locale.ROOT), change.getSequence(),
+                configuration.getId(), configuration.getName(), configuration.getValue(), configuration.getVersion());
+    }
+
+    // every result of a batch, in order
+    public static List<ReplicationResultDto> toDtos(List<ConfigOperation> operations, List<ConfigCacheResult> results) {
+        List<ReplicationResultDto> dtos = new ArrayList<>(results.size());
+        for (int i = 0; i < results.size(); i++) {
+            dtos.add(toDto(operations.get(i), results.get(i)));
+        }
+        return dtos;
+    }
+
+    private static ReplicationResultDto toDto(ConfigOperation operation, ConfigCacheResult result) {
+        if (!result.isSuccess()) {
+            return new ReplicationResultDto(result.getOutcome().name(), operation.getId(), null, null, null);
+        }
+        ConfigurationResponseDto configuration = result.getConfiguration();
+        return new ReplicationResultDto(result.getOutcome().name(), configuration.getId(), configuration.getName(),
+                configuration.getValue(), configuration.getVersion());
+    }
+
+    private void ship(ResponseBodyEmitter follower, long from) {
+        long offset = from;
+        try {
+            while (true) {
+                List<ConfigChange> changes = log.read(offset, CHUNK, heartbeat, TimeUnit.MILLISECONDS);
+                if (changes == null) {
+                    // the follower reconnects, finds its offset gone and starts over from a checkpoint
+                    follower.complete();
+                    return;
+                }
+                ByteArrayOutputStream lines = new ByteArrayOutputStream();
+                for (ConfigChange change : changes) {
+                    objectMapper.writeValue(lines, toDto(offset++, change));
+                    lines.write('\n');
+                }
+                lines.write('\n');
+                follower.send(lines.toByteArray(), MediaType.APPLICATION_NDJSON);
+            }
+        } catch (IOException | IllegalStateException e) {
+            // the follower is gone, or the emitter timed out
+            follower.completeWithError(e);
+        } catch (InterruptedException e) {
+            follower.complete();
+        } finally {
+            streams.remove(Thread.currentThread());
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.ercoles.configserver.services;
+
+import com.ercoles.configserver.dtos.ConfigurationResponseDto;
+import com.ercoles.configserver.repositories.ConfigCacheException;
+import com.ercoles.configserver.repositories.ConfigCacheFactory;
+import com.ercoles.configserver.repositories.ConfigCacheResult;
+import com.ercoles.configserver.repositories.ConfigCacheSharded;
+import com.ercoles.configserver.repositories.ConfigChange;
+import com.ercoles.configserver.repositories.ConfigLookup;
+import com.ercoles.configserver.repositories.ConfigOperation;
+import com.ercoles.configserver.repositories.ConfigPage;
+import com.ercoles.configserver.repositories.ConfigSnapshot;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.context.WebServerInitializedEvent;
+import org.springframework.context.event.ContextClosedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+// this instance's part in a sharded cluster, on either web stack: joins it once the web server is up, so that the
+// others can reach this instance, leaves it on shutdown, and serves what the others forward to this instance's share
+@Service
+@ConditionalOnProperty(name = "configserver.sharding.enabled", havingValue = "true")
+public class ShardService {
+    public static final String MEMBERS_ERROR = "Error updating cluster members.";
+    public static final String HANDOFF_ERROR = "Error taking configurations over.";
+
+    private final ConfigCacheSharded shard;
+    private final String selfUri;
+
+    public ShardService(
+            @Autowired ConfigCacheFactory factory,
+            @Value("${configserver.sharding.self-uri:}") String selfUri
+    ) {
+        this.shard = factory.getShard();
+        this.selfUri = selfUri;
+    }
+
+    @EventListener
+    public void join(WebServerInitializedEvent event) {
+        if (event.getApplicationContext().getServerNamespace() != null) {
+            // the management server, on a port of its own
+            return;
+        }
+        try {
+            shard.join(selfUri.isEmpty() ? "http://localhost:" + event.getWebServer().getPort() : selfUri);
+        } catch (ConfigCacheException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    // before the web server stops, which the others still forward requests to while the share moves
+    @EventListener(ContextClosedEvent.class)
+    public void leave() {
+        try {
+            shard.leave();
+        } catch (ConfigCacheException e) {
+            throw new IllegalStateException(e.getMessage(), e);
+        }
+    }
+
+    public Set<String> getMembers() throws ConfigServiceException {
+        try {
+            return shard.getMembers();
+        } catch (ConfigCacheException e) {
+            throw new ConfigServiceException(MEMBERS_ERROR, e);
+        }
+    }
+
+    public Set<String> addMember(String uri) throws ConfigServiceException {
+        try {
+            return shard.addMember(uri);
+        } catch (ConfigCacheException e) {
+            throw new ConfigServiceException(MEMBERS_ERROR, e);
+        }
+    }
+
+    public Set<String> removeMember(String uri) throws ConfigServiceException {
+        try {
+            return shard.removeMember(uri);
+        } catch (ConfigCacheException e) {
+            throw new ConfigServiceException(MEMBERS_ERROR, e);
+        }
+    }
+
+    public void acceptHandoff(Collection<ConfigurationResponseDto> configurations) throws ConfigServiceException {
+        try {
+            shard.acceptHandoff(configurations);
+        } catch (ConfigCacheException e) {
+            throw new ConfigServiceException(HANDOFF_ERROR, e);
+        }
+    }
+
+    public void acceptChanges(List<ConfigChange> changes, boolean gap) {
+        shard.acceptChanges(changes, gap);
+    }
+
+    // null when some of the IDs belong to another instance
+    public ConfigLookup getConfigurations(Collection<String> ids) throws ConfigServiceException {
+        try {
+            return shard.getManyLocal(ids);
+        } catch (ConfigCacheException e) {
+            throw new ConfigServiceException(ConfigService.GET_MANY_ERROR, e);
+        }
+    }
+
+    public List<ConfigCacheResult> apply(List<ConfigOperation> operations, boolean atomic) throws ConfigServiceException {
+        try {
+            return shard.applyLocal(operations, atomic);
+        } catch (ConfigCacheException e) {
+            throw new ConfigServiceException(ConfigService.BATCH_ERROR, e);
+        }
+    }
+
+    public String getEpoch() {
+        return shard.getEpoch();
+    }
+
+    public ConfigSnapshot getAll() throws ConfigServiceException {
+        try {
+            return shard.getAllLocal();
+        } catch (ConfigCacheException e) {
+            throw new ConfigServiceException(ConfigService.GET_ALL_ERROR, e);
+        }
+    }
+
+    public ConfigPage getConfigurationRange(String from, String to, int limit) throws ConfigServiceException {
+        try {
+            return shard.getRangeLocal(from, to, limit);
+        } catch (ConfigCacheException e) {
+            throw new ConfigServiceException(ConfigService.GET_RANGE_ERROR, e);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.ercoles.configserver.services;
+
+import com.ercoles.configserver.repositories.ConfigCache;
+import com.ercoles.configserver.repositories.ConfigChange;
+import com.ercoles.configserver.repositories.ConfigChangeLog;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+// the changes sent to the watchers of both web stacks, each with the ID of its event: the offset after it in a log of
+// the latest changes of this instance, with the epoch of the log, so that a watcher reconnecting with the ID of the
+// last event it got is sent what it missed. Offsets are this instance's own, so IDs hold with sharding as well. The
+// log only starts following the store with the first watcher, so writes don't feed it while nobody watches. Writes
+// only append to the log, a dispatcher thread reads it from there and hands each change to every watcher
+final class WatchFeed {
+    // changes handed out between two checks for new watchers
+    private static final int CHUNK = 256;
+
+    private final ConfigCache configCache;
+    private final ConfigChangeLog log;
+    private final Set<Subscriber> watchers = ConcurrentHashMap.newKeySet();
+    // held while the dispatcher hands changes out, and while a watcher is handed what it missed, so that each watcher
+    // gets every change once and in the order of the log
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile boolean following;
+    private Thread dispatcher;
+    // where the dispatcher is in the log: every change before the offset has been handed out
+    private String dispatchedEpoch;
+    private long dispatched;
+
+    // what a watch service does with the events of one of its watchers
+    interface Subscriber {
+        // false when the watcher is too far behind to take the event; it is dropped then and has to reconnect
+        boolean offer(String id, ConfigChange change);
+
+        // the watcher missed changes it can't be sent, and has to list the configurations again
+        void missed();
+
+        void drop();
+    }
+
+    WatchFeed(ConfigCache configCache, int logSize) {
+        this.configCache = configCache;
+        this.log = new ConfigChangeLog(logSize);
+    }
+
+    // hands the watcher the changes after the given event ID, if any, then every later one; one whose ID is no longer
+    // in the log, or belongs to another epoch as after a restart, is told it missed changes and gets the later ones
+    void subscribe(String lastEventId, Subscriber watcher) {
+        follow();
+        lock.lock();
+        try {
+            watchers.add(watcher);
+            if (lastEventId == null || lastEventId.isEmpty()) {
+                return;
+            }
+            List<ConfigChange> missed = missedSince(lastEventId);
+            if (missed == null) {
+                watcher.missed();
+                return;
+            }
+            long offset = dispatched - missed.size();
+            for (ConfigChange change : missed) {
+                if (!watcher.offer(encode(dispatchedEpoch, ++offset), change)) {
+                    unsubscribe(watcher);
+                    watcher.drop();
+                    break;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void unsubscribe(Subscriber watcher) {
+        watchers.remove(watcher);
+    }
+
+    int getWatcherCount() {
+        return watchers.size();
+    }
+
+    synchronized void close() {
+        if (dispatcher != null) {
+            dispatcher.interrupt();
+        }
+    }
+
+    private void follow() {
+        if (!following) {
+            synchronized (this) {
+                if (!following) {
+                    dispatchedEpoch = log.getEpoch();
+                    dispatched = log.getNextOffset();
+                    configCache.addChangeListener(log);
+                    dispatcher = new Thread(this::dispatch, "config-watch-dispatcher");
+                    dispatcher.setDaemon(true);
+                    dispatcher.start();
+                    following = true;
+                }
+            }
+        }
+    }
+
+    // a read that finds its offset gone, to a gap or because the writes got a whole log ahead, leaves every watcher
+    // to list the configurations again; events carry on from the end of the log
+    private void dispatch() {
+        String epoch = dispatchedEpoch;
+        long offset = dispatched;
+        while (true) {
+            List<ConfigChange> changes;
+            try {
+                changes = log.read(epoch, offset, CHUNK, 1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (changes != null && changes.isEmpty()) {
+                continue;
+            }
+            lock.lock();
+            try {
+                if (changes == null) {
+                    epoch = log.getEpoch();
+                    offset = log.getNextOffset();
+                    for (Subscriber watcher : watchers) {
+                        watcher.missed();
+                    }
+                } else {
+                    for (ConfigChange change : changes) {
+                        String id = encode(epoch, ++offset);
+                        for (Subscriber watcher : watchers) {
+                            if (!watcher.offer(id, change)) {
+                                unsubscribe(watcher);
+                                watcher.drop();
+                            }
+                        }
+                    }
+                }
+                dispatchedEpoch = epoch;
+                dispatched = offset;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // null for an ID this log can't resume from, whatever it holds; only what the dispatcher has handed out so far,
+    // it hands out the rest
+    private List<ConfigChange> missedSince(String lastEventId) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(lastEventId), StandardCharsets.UTF_8);
+            int separator = decoded.lastIndexOf(':');
+            if (separator < 1 || !decoded.substring(0, separator).equals(dispatchedEpoch)) {
+                return null;
+            }
+            long from = Long.parseLong(decoded.substring(separator + 1));
+            if (from > dispatched) {
+                return null;
+            }
+            return log.read(dispatchedEpoch, from, (int) Math.min(Integer.MAX_VALUE, dispatched - from), 0, TimeUnit.MILLISECONDS);
+        } catch (IllegalArgumentException e) {
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    // encoded, as sync cursors are, so that clients treat event IDs as opaque
+    private static String encode(String epoch, long offset) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString((epoch + ":" + offset).getBytes(StandardCharsets.UTF_8));
+    }
+}
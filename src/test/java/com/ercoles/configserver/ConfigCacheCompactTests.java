@@ -0,0 +1,68 @@
+package com.ercoles.configserver;
+
+import com.ercoles.configserver.dtos.ConfigurationResponseDto;
+import com.ercoles.configserver.repositories.ConfigCacheCompact;
+import com.ercoles.configserver.repositories.ConfigCacheException;
+import com.ercoles.configserver.repositories.ConfigCacheResult;
+import com.ercoles.configserver.repositories.ConfigOperation;
+import com.ercoles.configserver.repositories.ConfigPage;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ConfigCacheCompactTests {
+
+    @Test
+    void testConfigCacheCompact_storesAndDecodesEntries() throws ConfigCacheException {
+        // GIVEN
+        ConfigCacheCompact configCache = new ConfigCacheCompact();
+        // WHEN
+        configCache.create("test1", "Test Configuration 1", "test-1");
+        configCache.create("test2", "Tèst Cönfiguration 2", "tést-2 ✓");
+        configCache.create("test3", "", "");
+        ConfigCacheResult updated = configCache.update("test1", "Test Configuration 1", "test-1a");
+        // THEN
+        assertThat(configCache.get("test1").getConfiguration().getVersion()).isEqualTo(updated.getConfiguration().getVersion());
+        assertThat(configCache.getAll()).containsExactlyInAnyOrder(
+                new ConfigurationResponseDto("test1", "Test Configuration 1", "test-1a"),
+                new ConfigurationResponseDto("test2", "Tèst Cönfiguration 2", "tést-2 ✓"),
+                new ConfigurationResponseDto("test3", "", ""));
+        assertThat(configCache.delete("test2").getConfiguration().getValue()).isEqualTo("tést-2 ✓");
+        assertThat(configCache.getMany(List.of("test2", "test3")).getMissing()).containsExactly("test2");
+    }
+
+    @Test
+    void testConfigCacheCompact_appliesBatch() throws ConfigCacheException {
+        // GIVEN
+        ConfigCacheCompact configCache = new ConfigCacheCompact();
+        configCache.create("test1", "Test Configuration 1", "test-1");
+        // WHEN
+        List<ConfigCacheResult> results = configCache.apply(List.of(
+                ConfigOperation.create("test1", "Test Configuration 1", "test-1a"),
+                ConfigOperation.create("test2", "Test Configuration 2", "test-2"),
+                ConfigOperation.delete("test1")), false);
+        // THEN
+        assertThat(results).extracting(ConfigCacheResult::getOutcome).containsExactly(
+                ConfigCacheResult.Outcome.CONFLICT, ConfigCacheResult.Outcome.SUCCESS, ConfigCacheResult.Outcome.SUCCESS);
+        assertThat(configCache.getAll()).containsExactly(new ConfigurationResponseDto("test2", "Test Configuration 2", "test-2"));
+    }
+
+    @Test
+    void testConfigCacheCompact_retrievesRangeInIdOrder() throws ConfigCacheException {
+        // GIVEN
+        ConfigCacheCompact configCache = new ConfigCacheCompact();
+        for (String id : List.of("payments.b", "orders.a", "payments.a", "payments.c", "paymentsx")) {
+            configCache.create(id, "Test Configuration", id);
+        }
+        configCache.delete("payments.b");
+        // WHEN
+        ConfigPage page = configCache.getRange("payments.", "payments/", 1);
+        ConfigPage rest = configCache.getRange(page.getNext(), "payments/", 10);
+        // THEN
+        assertThat(page.getConfigurations()).extracting(ConfigurationResponseDto::getId).containsExactly("payments.a");
+        assertThat(rest.getConfigurations()).extracting(ConfigurationResponseDto::getId).containsExactly("payments.c");
+        assertThat(rest.getNext()).isNull();
+    }
+}
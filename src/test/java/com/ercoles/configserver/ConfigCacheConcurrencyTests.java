@@ -0,0 +1,205 @@
+package com.ercoles.configserver;
+
+import com.ercoles.configserver.dtos.ConfigurationResponseDto;
+import com.ercoles.configserver.repositories.ConfigCache;
+import com.ercoles.configserver.repositories.ConfigCacheMemory;
+import com.ercoles.configserver.repositories.ConfigCacheOffHeap;
+import com.ercoles.configserver.repositories.ConfigCacheResult;
+import com.ercoles.configserver.repositories.ConfigOperation;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ConfigCacheConcurrencyTests {
+    private static final int THREADS = 16;
+    private static final int OPERATIONS_PER_THREAD = 20_000;
+    private static final int KEYS = 64;
+
+    @Test
+    void testConfigCache_concurrentCreateSameId_onlyOneSucceeds() throws Exception {
+        // GIVEN
+        ConfigCache configCache = new ConfigCacheMemory();
+        String configId = "test-race";
+        AtomicInteger created = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        // WHEN
+        runConcurrently(thread -> {
+            ConfigCacheResult result = configCache.create(configId, "Test Race", "thread-" + thread);
+            if (result.isSuccess()) {
+                created.incrementAndGet();
+            } else if (result.getOutcome() == ConfigCacheResult.Outcome.CONFLICT) {
+                rejected.incrementAndGet();
+            }
+        });
+        // THEN
+        assertThat(created.get()).isEqualTo(1);
+        assertThat(rejected.get()).isEqualTo(THREADS - 1);
+        assertThat(configCache.getAll()).hasSize(1);
+    }
+
+    @Test
+    void testConfigCache_concurrentMixedOperations() throws Exception {
+        // GIVEN
+        ConfigCache configCache = new ConfigCacheMemory();
+        AtomicIntegerArray balance = new AtomicIntegerArray(KEYS);
+        List<Throwable> unexpected = new CopyOnWriteArrayList<>();
+        // WHEN
+        runConcurrently(thread -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                int key = random.nextInt(KEYS);
+                String configId = "test" + key;
+                String configValue = "test-" + thread + "-" + i;
+                try {
+                    switch (random.nextInt(5)) {
+                        case 0:
+                            if (configCache.create(configId, "Test Configuration " + key, configValue).isSuccess()) {
+                                balance.incrementAndGet(key);
+                            }
+                            break;
+                        case 1:
+                            ConfigCacheResult updated = configCache.update(configId, "Test Configuration " + key, configValue);
+                            if (updated.isSuccess()) {
+                                assertThat(updated.getConfiguration().getValue()).isEqualTo(configValue);
+                            }
+                            break;
+                        case 2:
+                            ConfigCacheResult deleted = configCache.delete(configId);
+                            if (deleted.isSuccess()) {
+                                assertThat(deleted.getConfiguration().getId()).isEqualTo(configId);
+                                balance.decrementAndGet(key);
+                            }
+                            break;
+                        case 3:
+                            ConfigCacheResult retrieved = configCache.get(configId);
+                            if (retrieved.isSuccess()) {
+                                assertThat(retrieved.getConfiguration().getId()).isEqualTo(configId);
+                            }
+                            break;
+                        default:
+                            assertThat(configCache.getAll().size()).isLessThanOrEqualTo(KEYS);
+                    }
+                } catch (Throwable t) {
+                    unexpected.add(t);
+                }
+            }
+        });
+        // THEN
+        assertThat(unexpected).isEmpty();
+        List<ConfigurationResponseDto> configurations = configCache.getAll();
+        int expectedSize = 0;
+        for (int key = 0; key < KEYS; key++) {
+            assertThat(balance.get(key)).isBetween(0, 1);
+            expectedSize += balance.get(key);
+            assertThat(configCache.get("test" + key).isSuccess()).isEqualTo(balance.get(key) == 1);
+        }
+        assertThat(configurations).hasSize(expectedSize);
+    }
+
+    @Test
+    void testConfigCache_listingsNeverSeeHalfAnAtomicBatch() throws Exception {
+        // GIVEN
+        ConfigCache configCache = new ConfigCacheMemory();
+        List<Throwable> unexpected = new CopyOnWriteArrayList<>();
+        // WHEN
+        runConcurrently(thread -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < OPERATIONS_PER_THREAD / 10; i++) {
+                int key = random.nextInt(KEYS);
+                try {
+                    if (thread % 2 == 0) {
+                        // the two entries of a pair are always created and deleted together
+                        configCache.apply(List.of(
+                                ConfigOperation.create("test" + key + "a", "Test Configuration " + key, "test-" + key),
+                                ConfigOperation.create("test" + key + "b", "Test Configuration " + key, "test-" + key)), true);
+                        configCache.apply(List.of(
+                                ConfigOperation.delete("test" + key + "a"),
+                                ConfigOperation.delete("test" + key + "b")), true);
+                    } else if (thread % 4 == 1) {
+                        // plain writes of other IDs carry on meanwhile
+                        configCache.update("other" + key, "Other Configuration " + key, "other-" + i);
+                        configCache.create("other" + key, "Other Configuration " + key, "other-" + i);
+                    } else {
+                        Set<String> ids = new HashSet<>();
+                        configCache.getAll().forEach(configuration -> ids.add(configuration.getId()));
+                        for (int pair = 0; pair < KEYS; pair++) {
+                            assertThat(ids.contains("test" + pair + "a")).isEqualTo(ids.contains("test" + pair + "b"));
+                        }
+                    }
+                } catch (Throwable t) {
+                    unexpected.add(t);
+                }
+            }
+        });
+        // THEN
+        assertThat(unexpected).isEmpty();
+        assertThat(configCache.getAll()).allMatch(configuration -> configuration.getId().startsWith("other"));
+    }
+
+    @Test
+    void testConfigCacheOffHeap_readsNeverSeeReusedBytes() throws Exception {
+        // GIVEN
+        ConfigCache configCache = new ConfigCacheOffHeap();
+        for (int key = 0; key < KEYS; key++) {
+            configCache.create("test" + key, "Test Configuration " + key, "test-" + key);
+        }
+        List<Throwable> unexpected = new CopyOnWriteArrayList<>();
+        // WHEN
+        runConcurrently(thread -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (int i = 0; i < OPERATIONS_PER_THREAD; i++) {
+                int key = random.nextInt(KEYS);
+                try {
+                    if (thread % 2 == 0) {
+                        // values of different lengths move between blocks of different sizes
+                        configCache.update("test" + key, "Test Configuration " + key, "test-" + key + "-" + "x".repeat(random.nextInt(100)));
+                    } else {
+                        ConfigurationResponseDto configuration = configCache.get("test" + key).getConfiguration();
+                        assertThat(configuration.getName()).isEqualTo("Test Configuration " + key);
+                        assertThat(configuration.getValue()).startsWith("test-" + key);
+                    }
+                } catch (Throwable t) {
+                    unexpected.add(t);
+                }
+            }
+        });
+        // THEN
+        assertThat(unexpected).isEmpty();
+        assertThat(configCache.getAll()).hasSize(KEYS);
+    }
+
+    private void runConcurrently(ThreadTask task) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int thread = 0; thread < THREADS; thread++) {
+                int threadIndex = thread;
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    task.run(threadIndex);
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @FunctionalInterface
+    private interface ThreadTask {
+        void run(int thread) throws Exception;
+    }
+}
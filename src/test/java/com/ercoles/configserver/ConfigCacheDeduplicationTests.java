@@ -0,0 +1,76 @@
+package com.ercoles.configserver;
+
+import com.ercoles.configserver.dtos.ConfigurationResponseDto;
+import com.ercoles.configserver.repositories.ConfigCacheMemory;
+import com.ercoles.configserver.repositories.ConfigOperation;
+import com.ercoles.configserver.repositories.DeduplicationStats;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ConfigCacheDeduplicationTests {
+
+    @Test
+    void testConfigCacheMemory_sharesIdenticalValues() {
+        // GIVEN
+        ConfigCacheMemory configCache = new ConfigCacheMemory(true);
+        // WHEN
+        for (int i = 0; i < 100; i++) {
+            configCache.create("test" + i, "Endpoint", new String("https://config.example.com"));
+        }
+        // THEN
+        assertThat(configCache.get("test1").getConfiguration().getValue())
+                .isSameAs(configCache.get("test2").getConfiguration().getValue());
+        DeduplicationStats stats = configCache.getDeduplicationStats();
+        assertThat(stats.getDistinct()).isEqualTo(2);
+        assertThat(stats.getReferences()).isEqualTo(200);
+        assertThat(stats.getRatio()).isEqualTo(100);
+        assertThat(stats.getSavedBytes()).isEqualTo(99 * ("Endpoint".length() + "https://config.example.com".length()));
+    }
+
+    @Test
+    void testConfigCacheMemory_releasesReplacedValues() {
+        // GIVEN
+        ConfigCacheMemory configCache = new ConfigCacheMemory(true);
+        configCache.create("test1", "Test Configuration", "shared");
+        configCache.create("test2", "Test Configuration", "shared");
+        // WHEN
+        configCache.update("test1", "Test Configuration", "own");
+        configCache.apply(List.of(ConfigOperation.delete("test2"), ConfigOperation.create("test3", "Other", "shared")), false);
+        // THEN
+        DeduplicationStats stats = configCache.getDeduplicationStats();
+        assertThat(stats.getDistinct()).isEqualTo(4);
+        assertThat(stats.getReferences()).isEqualTo(4);
+        assertThat(stats.getSavedBytes()).isZero();
+        configCache.delete("test1");
+        configCache.delete("test3");
+        assertThat(configCache.getDeduplicationStats()).isEqualTo(DeduplicationStats.none());
+    }
+
+    @Test
+    void testConfigCacheMemory_keepsNoEncodingsOfSharedValues() {
+        // GIVEN
+        ConfigCacheMemory configCache = new ConfigCacheMemory(true);
+        ConfigCacheMemory plainCache = new ConfigCacheMemory();
+        // WHEN
+        ConfigurationResponseDto configuration = configCache.create("test1", "Test Configuration", "shared").getConfiguration();
+        ConfigurationResponseDto plainConfiguration = plainCache.create("test1", "Test Configuration", "shared").getConfiguration();
+        // THEN
+        assertThat(configuration.toJson()).isEqualTo(plainConfiguration.toJson()).isNotSameAs(configuration.toJson());
+        assertThat(configuration.toCbor()).isEqualTo(plainConfiguration.toCbor()).isNotSameAs(configuration.toCbor());
+        assertThat(plainConfiguration.toJson()).isSameAs(plainConfiguration.toJson());
+    }
+
+    @Test
+    void testConfigCacheMemory_reportsNothingWithoutDeduplication() {
+        // GIVEN
+        ConfigCacheMemory configCache = new ConfigCacheMemory();
+        // WHEN
+        configCache.create("test1", "Test Configuration", "shared");
+        configCache.create("test2", "Test Configuration", "shared");
+        // THEN
+        assertThat(configCache.getDeduplicationStats()).isEqualTo(DeduplicationStats.none());
+    }
+}
@@ -0,0 +1,357 @@
+package com.ercoles.configserver;
+
+import com.ercoles.configserver.dtos.ConfigurationResponseDto;
+import com.ercoles.configserver.repositories.ConfigCacheException;
+import com.ercoles.configserver.repositories.ConfigCacheFile;
+import com.ercoles.configserver.repositories.ConfigCacheResult;
+import com.ercoles.configserver.repositories.ConfigOperation;
+import com.ercoles.configserver.repositories.ConfigPage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.ercoles.configserver.TestSupport.handedOver;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+public class ConfigCacheFileTests {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testConfigCacheFile_recoversChangesFromLog() throws ConfigCacheException, IOException {
+        // GIVEN
+        try (ConfigCacheFile configCache = new ConfigCacheFile(directory, Long.MAX_VALUE)) {
+            configCache.create("test1", "Test Configuration 1", "test-1");
+            configCache.create("test2", "Test Configuration 2", "test-2");
+            configCache.update("test1", "Test Configuration 1", "test-1a");
+            configCache.delete("test2");
+            configCache.apply(List.of(
+                    ConfigOperation.create("test3", "Test Configuration 3", "test-3"),
+                    ConfigOperation.create("test2", "Test Configuration 2", "test-2a")), false);
+        }
+        // WHEN
+        try (ConfigCacheFile recovered = new ConfigCacheFile(directory, Long.MAX_VALUE)) {
+            // THEN
+            assertThat(recovered.getAll()).containsExactlyInAnyOrder(
+                    new ConfigurationResponseDto("test1", "Test Configuration 1", "test-1a"),
+                    new ConfigurationResponseDto("test2", "Test Configuration 2", "test-2a"),
+                    new ConfigurationResponseDto("test3", "Test Configuration 3", "test-3"));
+            long version = recovered.get("test2").getConfiguration().getVersion();
+            assertThat(recovered.update("test1", "Test Configuration 1", "test-1b").getConfiguration().getVersion())
+                    .isGreaterThan(version);
+        }
+    }
+
+    @Test
+    void testConfigCacheFile_recoversChangesFromSnapshotAndLog() throws ConfigCacheException, IOException {
+        // GIVEN
+        try (ConfigCacheFile configCache = new ConfigCacheFile(directory, Long.MAX_VALUE)) {
+            configCache.create("test1", "Test Configuration 1", "test-1");
+            configCache.create("test2", "Test Configuration 2", "test-2");
+            configCache.compact();
+            configCache.delete("test1");
+            configCache.update("test2", "Test Configuration 2", "test-2a");
+        }
+        // WHEN
+        try (ConfigCacheFile recovered = new ConfigCacheFile(directory, Long.MAX_VALUE)) {
+            // THEN
+            assertThat(recovered.getAll()).containsExactly(new ConfigurationResponseDto("test2", "Test Configuration 2", "test-2a"));
+            assertThat(files()).containsExactlyInAnyOrder("snapshot-1.dat", "wal-1.log");
+        }
+    }
+
+    @Test
+    void testConfigCacheFile_compactsAfterThreshold() throws ConfigCacheException, IOException, InterruptedException {
+        // GIVEN
+        try (ConfigCacheFile configCache = new ConfigCacheFile(directory, 10)) {
+            // WHEN
+            for (int i = 0; i < 25; i++) {
+                configCache.create("test" + i, "Test Configuration " + i, "test-" + i);
+            }
+        }
+        // THEN
+        assertThat(files()).anyMatch(file -> file.startsWith("snapshot-"));
+        try (ConfigCacheFile recovered = new ConfigCacheFile(directory, Long.MAX_VALUE)) {
+            assertThat(recovered.getAll()).hasSize(25);
+        }
+    }
+
+    @Test
+    void testConfigCacheFile_countsFailedCompactions() throws ConfigCacheException, IOException, InterruptedException {
+        // GIVEN
+        try (ConfigCacheFile configCache = new ConfigCacheFile(directory, 2)) {
+            // the snapshot after the first rotation can't be written where a directory stands
+            Files.createDirectories(directory.resolve("snapshot-1.dat.tmp"));
+            // WHEN
+            configCache.create("test1", "Test Configuration 1", "test-1");
+            configCache.create("test2", "Test Configuration 2", "test-2");
+            for (int i = 0; i < 100 && configCache.getCompactionFailures() == 0; i++) {
+                Thread.sleep(50);
+            }
+            // THEN
+            assertThat(configCache.getCompactionFailures()).isEqualTo(1);
+            assertThat(configCache.create("test3", "Test Configuration 3", "test-3").isSuccess()).isTrue();
+        }
+        assertThat(files()).noneMatch(file -> file.startsWith("snapshot-") && file.endsWith(".dat"));
+        try (ConfigCacheFile recovered = new ConfigCacheFile(directory, Long.MAX_VALUE)) {
+            assertThat(recovered.getAll()).hasSize(3);
+        }
+    }
+
+    @Test
+    void testConfigCacheFile_persistsWritesFromVirtualThreads() throws ConfigCacheException, IOException, InterruptedException, ExecutionException {
+        // GIVEN
+        try (ConfigCacheFile configCache = new ConfigCacheFile(directory, 100)) {
+            // WHEN
+            // far more writers than carrier threads, all waiting on the log at once
+            List<Future<ConfigCacheResult>> results = new ArrayList<>();
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < 1000; i++) {
+                    int index = i;
+                    results.add(executor.submit(() -> configCache.create("test" + index, "Test Configuration " + index, "test-" + index)));
+                }
+            }
+            // THEN
+            for (Future<ConfigCacheResult> result : results) {
+                assertThat(result.get().isSuccess()).isTrue();
+            }
+        }
+        try (ConfigCacheFile recovered = new ConfigCacheFile(directory, Long.MAX_VALUE)) {
+            assertThat(recovered.size()).isEqualTo(1000);
+        }
+    }
+
+    @Test
+    void testConfigCacheFile_dropsTornRecord() throws ConfigCacheException, IOException {
+        // GIVEN
+        try (ConfigCacheFile configCache = new ConfigCacheFile(directory, Long.MAX_VALUE)) {
+            configCache.create("test1", "Test Configuration 1", "test-1");
+            configCache.create("test2", "Test Configuration 2", "test-2");
+        }
+        Path log = directory.resolve("wal-0.log");
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+        // WHEN
+        try (ConfigCacheFile recovered = new ConfigCacheFile(directory, Long.MAX_VALUE)) {
+            recovered.create("test3", "Test Configuration 3", "test-3");
+        }
+        try (ConfigCacheFile recovered = new ConfigCacheFile(directory, Long.MAX_VALUE)) {
+            // THEN
+            assertThat(recovered.getAll()).containsExactlyInAnyOrder(
+                    new ConfigurationResponseDto("test1", "Test Configuration 1", "test-1"),
+                    new ConfigurationResponseDto("test3", "Test Configuration 3", "test-3"));
+        }
+    }
+
+    @Test
+    void testConfigCacheFile_dropsTornAtomicBatchWhole() throws ConfigCacheException, IOException {
+        // GIVEN
+        try (ConfigCacheFile configCache = new ConfigCacheFile(directory, Long.MAX_VALUE)) {
+            configCache.create("test1", "Test Configuration 1", "test-1");
+            configCache.apply(List.of(
+                    ConfigOperation.create("test2", "Test Configuration 2", "test-2"),
+                    ConfigOperation.create("test3", "Test Configuration 3", "test-3")), true);
+        }
+        Path log = directory.resolve("wal-0.log");
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+        // WHEN
+        try (ConfigCacheFile recovered = new ConfigCacheFile(directory, Long.MAX_VALUE)) {
+            // THEN
+            assertThat(recovered.getAll()).containsExactly(new ConfigurationResponseDto("test1", "Test Configuration 1", "test-1"));
+        }
+    }
+
+    @Test
+    void testConfigCacheFile_recoversAtomicBatch() throws ConfigCacheException, IOException {
+        // GIVEN
+        try (ConfigCacheFile configCache = new ConfigCacheFile(directory, Long.MAX_VALUE)) {
+            configCache.create("test1", "Test Configuration 1", "test-1");
+            configCache.apply(List.of(
+                    ConfigOperation.update("test1", "Test Configuration 1", "test-1a"),
+                    ConfigOperation.create("test2", "Test Configuration 2", "test-2"),
+                    ConfigOperation.delete("test1")), true);
+        }
+        // WHEN
+        try (ConfigCacheFile recovered = new ConfigCacheFile(directory, Long.MAX_VALUE)) {
+            // THEN
+            assertThat(recovered.getAll()).containsExactly(new ConfigurationResponseDto("test2", "Test Configuration 2", "test-2"));
+        }
+    }
+
+    @Test
+    void testConfigCacheFile_recoversRestoredVersions() throws ConfigCacheException, IOException {
+        // GIVEN
+        try (ConfigCacheFile configCache = new ConfigCacheFile(directory, Long.MAX_VALUE)) {
+            configCache.create("test1", "Test Configuration 1", "test-1");
+            configCache.restore(List.of(
+                    handedOver("test1", "Test Configuration 1", "test-1a", 40),
+                    handedOver("test2", "Test Configuration 2", "test-2", 30)));
+        }
+        // WHEN
+        try (ConfigCacheFile recovered = new ConfigCacheFile(directory, Long.MAX_VALUE)) {
+            // THEN
+            assertThat(recovered.get("test1").getConfiguration().getValue()).isEqualTo("test-1a");
+            assertThat(recovered.get("test1").getConfiguration().getVersion()).isEqualTo(40);
+            assertThat(recovered.get("test2").getConfiguration().getVersion()).isEqualTo(30);
+            assertThat(recovered.create("test3", "Test Configuration 3", "test-3").getConfiguration().getVersion()).isGreaterThan(40);
+        }
+    }
+
+    @Test
+    void testConfigCacheFile_refusesWritesOnceLogFailed() throws ConfigCacheException, IOException {
+        // GIVEN
+        try (ConfigCacheFile configCache = new ConfigCacheFile(directory, Long.MAX_VALUE)) {
+            configCache.create("test1", "Test Configuration 1", "test-1");
+            List<String> seen = new ArrayList<>();
+            configCache.addChangeListener(change -> seen.add(change.getConfiguration().getId()));
+            // the next segment can't be created once the directory is gone
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : files.collect(Collectors.toList())) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+            catchThrowable(configCache::compact);
+            // WHEN
+            Throwable thrown = catchThrowable(() -> configCache.create("test2", "Test Configuration 2", "test-2"));
+            // THEN
+            assertThat(thrown).isInstanceOf(ConfigCacheException.class);
+            assertThat(configCache.get("test2").isSuccess()).isFalse();
+            assertThat(seen).isEmpty();
+        }
+    }
+
+    @Test
+    void testConfigCacheFile_servesMappedSnapshotLazily() throws ConfigCacheException, IOException {
+        // GIVEN
+        try (ConfigCacheFile configCache = new ConfigCacheFile(directory, Long.MAX_VALUE)) {
+            configCache.create("test1", "Test Configuration 1", "test-1");
+            configCache.create("test2", "Test Configuration 2", "test-2");
+            configCache.create("test3", "Test Configuration 3", "test-3");
+            configCache.compact();
+        }
+        // WHEN
+        try (ConfigCacheFile recovered = new ConfigCacheFile(directory, Long.MAX_VALUE, true)) {
+            // THEN
+            assertThat(recovered.get("test1").getConfiguration())
+                    .isEqualTo(new ConfigurationResponseDto("test1", "Test Configuration 1", "test-1"));
+            assertThat(recovered.get("test4").isSuccess()).isFalse();
+            assertThat(recovered.create("test2", "Test Configuration 2", "test-2a").isSuccess()).isFalse();
+            assertThat(recovered.update("test2", "Test Configuration 2", "test-2a").isSuccess()).isTrue();
+            assertThat(recovered.delete("test3").isSuccess()).isTrue();
+            assertThat(recovered.get("test3").isSuccess()).isFalse();
+            assertThat(recovered.update("test3", "Test Configuration 3", "test-3a").isSuccess()).isFalse();
+            assertThat(recovered.create("test0", "Test Configuration 0", "test-0").isSuccess()).isTrue();
+            assertThat(recovered.getMany(List.of("test1", "test3")).getMissing()).containsExactly("test3");
+            // a snapshot taken before the mapped entries are all loaded merges them with the changed ones
+            recovered.compact();
+        }
+        try (ConfigCacheFile recovered = new ConfigCacheFile(directory, Long.MAX_VALUE, true)) {
+            assertThat(recovered.getAll()).containsExactlyInAnyOrder(
+                    new ConfigurationResponseDto("test0", "Test Configuration 0", "test-0"),
+                    new ConfigurationResponseDto("test1", "Test Configuration 1", "test-1"),
+                    new ConfigurationResponseDto("test2", "Test Configuration 2", "test-2a"));
+            assertThat(recovered.create("test3", "Test Configuration 3", "test-3b").isSuccess()).isTrue();
+            assertThat(recovered.getAll()).hasSize(4);
+        }
+    }
+
+    @Test
+    void testConfigCacheFile_countsMappedEntriesWithoutLoading() throws ConfigCacheException, IOException {
+        // GIVEN
+        try (ConfigCacheFile configCache = new ConfigCacheFile(directory, Long.MAX_VALUE)) {
+            for (int i = 0; i < 10; i++) {
+                configCache.create("test" + i, "Test Configuration " + i, "test-" + i);
+            }
+            configCache.compact();
+        }
+        // WHEN
+        try (ConfigCacheFile recovered = new ConfigCacheFile(directory, Long.MAX_VALUE, true)) {
+            recovered.get("test1");
+            recovered.delete("test2");
+            recovered.update("test3", "Test Configuration 3", "test-3a");
+            recovered.create("test10", "Test Configuration 10", "test-10");
+            // THEN
+            assertThat(recovered.size()).isEqualTo(10);
+            // only the decoded entries count
+            assertThat(recovered.estimatedBytes()).isEqualTo(2 * ("test1Test Configuration 1test-1".length()
+                    + "test3Test Configuration 3test-3a".length() + "test10Test Configuration 10test-10".length()));
+            assertThat(recovered.getAll()).hasSize(10);
+            assertThat(recovered.size()).isEqualTo(10);
+        }
+    }
+
+    @Test
+    void testConfigCacheFile_recoversSameEntriesMappedOrRead() throws ConfigCacheException, IOException {
+        // GIVEN
+        try (ConfigCacheFile configCache = new ConfigCacheFile(directory, Long.MAX_VALUE)) {
+            for (int i = 0; i < 50; i++) {
+                configCache.create("test" + i, "Test Configuration " + i, "test-" + i);
+            }
+            configCache.compact();
+            configCache.delete("test7");
+            configCache.update("test8", "Test Configuration 8", "test-8a");
+        }
+        // WHEN
+        List<ConfigurationResponseDto> mapped;
+        try (ConfigCacheFile recovered = new ConfigCacheFile(directory, Long.MAX_VALUE, true)) {
+            mapped = List.copyOf(recovered.getAll());
+        }
+        try (ConfigCacheFile recovered = new ConfigCacheFile(directory, Long.MAX_VALUE, false)) {
+            // THEN
+            assertThat(recovered.getAll()).hasSize(49).containsExactlyInAnyOrderElementsOf(mapped);
+            assertThat(recovered.get("test8").getConfiguration().getValue()).isEqualTo("test-8a");
+        }
+    }
+
+    @Test
+    void testConfigCacheFile_retrievesRangeOverMappedSnapshot() throws ConfigCacheException, IOException {
+        // GIVEN
+        try (ConfigCacheFile configCache = new ConfigCacheFile(directory, Long.MAX_VALUE)) {
+            for (int i = 0; i < 10; i++) {
+                configCache.create("test" + i, "Test Configuration " + i, "test-" + i);
+            }
+            configCache.compact();
+        }
+        try (ConfigCacheFile recovered = new ConfigCacheFile(directory, Long.MAX_VALUE, true)) {
+            recovered.delete("test3");
+            recovered.update("test4", "Test Configuration 4", "test-4a");
+            // WHEN
+            ConfigPage page = recovered.getRange("test2", "test6", 10);
+            ConfigPage limited = recovered.getRange("test2", null, 2);
+            // THEN
+            assertThat(page.getConfigurations()).extracting(ConfigurationResponseDto::getValue)
+                    .containsExactly("test-2", "test-4a", "test-5");
+            assertThat(limited.getConfigurations()).extracting(ConfigurationResponseDto::getValue)
+                    .containsExactly("test-2", "test-4a");
+            assertThat(limited.getNext()).isEqualTo("test5");
+            // the entries of the pages are decoded, not the whole snapshot
+            assertThat(recovered.estimatedBytes()).isEqualTo(2 * ("test2Test Configuration 2test-2".length()
+                    + "test4Test Configuration 4test-4a".length() + "test5Test Configuration 5test-5".length()));
+        }
+    }
+
+    private List<String> files() throws IOException {
+        try (Stream<Path> listed = Files.list(directory)) {
+            return listed.map(file -> file.getFileName().toString()).collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.ercoles.configserver;
+
+import com.ercoles.configserver.dtos.ConfigurationResponseDto;
+import com.ercoles.configserver.repositories.ConfigCacheException;
+import com.ercoles.configserver.repositories.ConfigCacheOffHeap;
+import com.ercoles.configserver.repositories.ConfigCacheResult;
+import com.ercoles.configserver.repositories.ConfigChange;
+import com.ercoles.configserver.repositories.ConfigOperation;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.ercoles.configserver.TestSupport.handedOver;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ConfigCacheOffHeapTests {
+
+    @Test
+    void testConfigCacheOffHeap_storesAndDecodesEntries() throws ConfigCacheException {
+        // GIVEN
+        ConfigCacheOffHeap configCache = new ConfigCacheOffHeap();
+        List<ConfigChange> changes = new ArrayList<>();
+        configCache.addChangeListener(changes::add);
+        // WHEN
+        configCache.create("test1", "Test Configuration 1", "test-1");
+        configCache.create("test2", "Tèst Cönfiguration 2", "tést-2 ✓");
+        ConfigCacheResult updated = configCache.update("test1", "Test Configuration 1", "test-1a");
+        ConfigCacheResult deleted = configCache.delete("test2");
+        // THEN
+        assertThat(updated.getConfiguration().getVersion()).isEqualTo(3);
+        assertThat(deleted.getConfiguration()).isEqualTo(new ConfigurationResponseDto("test2", "Tèst Cönfiguration 2", "tést-2 ✓"));
+        assertThat(configCache.get("test1").getConfiguration())
+                .isEqualTo(new ConfigurationResponseDto("test1", "Test Configuration 1", "test-1a"));
+        assertThat(configCache.get("test1").getConfiguration().getVersion()).isEqualTo(3);
+        assertThat(configCache.get("test2").getOutcome()).isEqualTo(ConfigCacheResult.Outcome.NOT_FOUND);
+        assertThat(configCache.create("test1", "Test Configuration 1", "test-1b").getOutcome()).isEqualTo(ConfigCacheResult.Outcome.CONFLICT);
+        assertThat(configCache.getAll()).containsExactly(new ConfigurationResponseDto("test1", "Test Configuration 1", "test-1a"));
+        assertThat(changes).extracting(ConfigChange::getSequence).containsExactly(1L, 2L, 3L, 4L);
+    }
+
+    @Test
+    void testConfigCacheOffHeap_restoresVersions() throws ConfigCacheException {
+        // GIVEN
+        ConfigCacheOffHeap configCache = new ConfigCacheOffHeap();
+        configCache.create("test1", "Test Configuration 1", "test-1");
+        configCache.create("test2", "Test Configuration 2", "test-2");
+        List<ConfigChange> changes = new ArrayList<>();
+        configCache.addChangeListener(changes::add);
+        // WHEN
+        configCache.restore(List.of(
+                handedOver("test1", "Test Configuration 1", "test-1a", 1),
+                handedOver("test2", "Test Configuration 2", "test-2a", 20),
+                handedOver("test3", "Test Configuration 3", "test-3", 10)));
+        // THEN
+        // older than the entry it met
+        assertThat(configCache.get("test1").getConfiguration().getValue()).isEqualTo("test-1");
+        assertThat(configCache.get("test2").getConfiguration().getValue()).isEqualTo("test-2a");
+        assertThat(configCache.get("test2").getConfiguration().getVersion()).isEqualTo(20);
+        assertThat(configCache.get("test3").getConfiguration().getVersion()).isEqualTo(10);
+        assertThat(changes).extracting(ConfigChange::getType).containsExactly(ConfigChange.Type.UPDATED, ConfigChange.Type.CREATED);
+        assertThat(configCache.update("test3", "Test Configuration 3", "test-3a").getConfiguration().getVersion()).isEqualTo(21);
+    }
+
+    @Test
+    void testConfigCacheOffHeap_reusesFreedBlocks() throws ConfigCacheException {
+        // GIVEN
+        ConfigCacheOffHeap configCache = new ConfigCacheOffHeap();
+        for (int i = 0; i < 1000; i++) {
+            configCache.create("test" + i, "Test Configuration " + i, "test-" + i);
+        }
+        long reserved = configCache.getReservedBytes();
+        long allocated = configCache.getAllocatedBytes();
+        // WHEN
+        for (int round = 0; round < 10; round++) {
+            for (int i = 0; i < 1000; i++) {
+                configCache.update("test" + i, "Test Configuration " + i, "test-" + i + "-" + round);
+            }
+        }
+        for (int i = 0; i < 500; i++) {
+            configCache.delete("test" + i);
+        }
+        // THEN
+        assertThat(configCache.getReservedBytes()).isEqualTo(reserved);
+        assertThat(configCache.getAllocatedBytes()).isLessThan(allocated);
+        assertThat(configCache.get("test999").getConfiguration().getValue()).isEqualTo("test-999-9");
+    }
+
+    @Test
+    void testConfigCacheOffHeap_keepsLargeValuesInTheirOwnBuffer() throws ConfigCacheException {
+        // GIVEN
+        ConfigCacheOffHeap configCache = new ConfigCacheOffHeap();
+        String value = "x".repeat(3 << 20);
+        // WHEN
+        configCache.create("test1", "Test Configuration 1", value);
+        // THEN
+        assertThat(configCache.get("test1").getConfiguration().getValue()).isEqualTo(value);
+        assertThat(configCache.getAllocatedBytes()).isZero();
+        assertThat(configCache.delete("test1").getConfiguration().getValue()).isEqualTo(value);
+    }
+
+    @Test
+    void testConfigCacheOffHeap_abortsAtomicBatch() throws ConfigCacheException {
+        // GIVEN
+        ConfigCacheOffHeap configCache = new ConfigCacheOffHeap();
+        configCache.create("test1", "Test Configuration 1", "test-1");
+        // WHEN
+        List<ConfigCacheResult> results = configCache.apply(List.of(
+                ConfigOperation.update("test1", "Test Configuration 1", "test-1a"),
+                ConfigOperation.delete("test2")), true);
+        // THEN
+        assertThat(results).extracting(ConfigCacheResult::getOutcome)
+                .containsExactly(ConfigCacheResult.Outcome.ABORTED, ConfigCacheResult.Outcome.NOT_FOUND);
+        assertThat(configCache.get("test1").getConfiguration().getValue()).isEqualTo("test-1");
+    }
+}
@@ -4,6 +4,12 @@ import com.ercoles.configserver.dtos.ConfigurationResponseDto;
 import com.ercoles.configserver.repositories.ConfigCache;
 import com.ercoles.configserver.repositories.ConfigCacheException;
 import com.ercoles.configserver.repositories.ConfigCacheFactory;
+import com.ercoles.configserver.repositories.ConfigCacheResult;
+import com.ercoles.configserver.repositories.ConfigLookup;
+import com.ercoles.configserver.repositories.ConfigOperation;
+import com.ercoles.configserver.repositories.ConfigPage;
+import com.ercoles.configserver.repositories.ConfigSnapshot;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.MethodOrderer;
 import org.junit.jupiter.api.Order;
 import org.junit.jupiter.api.Test;
@@ -11,6 +17,7 @@ import org.junit.jupiter.api.TestMethodOrder;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
+import java.io.IOException;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -43,7 +50,7 @@ public class ConfigCacheTests {
         String configName1 = "Test Configuration 1";
         String configValue1 = "test-1";
         // WHEN
-        ConfigurationResponseDto testConfiguration1 = configCache.create(configId1, configName1, configValue1);
+        ConfigurationResponseDto testConfiguration1 = configCache.create(configId1, configName1, configValue1).getConfiguration();
         List<ConfigurationResponseDto> configurations = configCache.getAll();
         // THEN
         assertThat(testConfiguration1.getId()).isEqualTo(configId1);
@@ -58,7 +65,7 @@ public class ConfigCacheTests {
         String configName2 = "Test Configuration 2";
         String configValue2 = "test-2";
         // WHEN
-        ConfigurationResponseDto testConfiguration2 = configCache.create(configId2, configName2, configValue2);
+        ConfigurationResponseDto testConfiguration2 = configCache.create(configId2, configName2, configValue2).getConfiguration();
         configurations = configCache.getAll();
         // THEN
         assertThat(testConfiguration2.getId()).isEqualTo(configId2);
@@ -89,15 +96,16 @@ public class ConfigCacheTests {
 
     @Test
     @Order(3)
-    void testConfigCache_createConfigurationException_configurationAlreadyExists() {
+    void testConfigCache_createConfigurationConflict_configurationAlreadyExists() throws ConfigCacheException {
         // GIVEN
         String configId = "test1";
         String configName = "Test Exception";
         String configValue = "test-exception";
         // WHEN
-        Throwable thrown = catchThrowable(() -> configCache.create(configId, configName, configValue));
+        ConfigCacheResult result = configCache.create(configId, configName, configValue);
         // THEN
-        assertThat(thrown).isInstanceOf(ConfigCacheException.class).hasMessageContaining("already in use");
+        assertThat(result.getOutcome()).isEqualTo(ConfigCacheResult.Outcome.CONFLICT);
+        assertThat(result.getConfiguration()).isNull();
     }
 
     @Test
@@ -113,8 +121,8 @@ public class ConfigCacheTests {
         String configValue2 = "test-2";
         ConfigurationResponseDto testConfiguration2 = new ConfigurationResponseDto(configId2, configName2, configValue2);
         // WHEN
-        ConfigurationResponseDto storedConfiguration1 = configCache.get(configId1);
-        ConfigurationResponseDto storedConfiguration2 = configCache.get(configId2);
+        ConfigurationResponseDto storedConfiguration1 = configCache.get(configId1).getConfiguration();
+        ConfigurationResponseDto storedConfiguration2 = configCache.get(configId2).getConfiguration();
         // THEN
         assertThat(storedConfiguration1).isInstanceOf(ConfigurationResponseDto.class);
         assertThat(storedConfiguration1).isEqualTo(testConfiguration1);
@@ -122,15 +130,49 @@ public class ConfigCacheTests {
         assertThat(storedConfiguration2).isEqualTo(testConfiguration2);
     }
 
+    @Test
+    @Order(4)
+    void testConfigCache_retrieveManyConfigurations() throws ConfigCacheException {
+        // GIVEN
+        List<String> configIds = List.of("test2", "test-exception", "test1");
+        // WHEN
+        ConfigLookup lookup = configCache.getMany(configIds);
+        // THEN
+        assertThat(lookup.getConfigurations()).containsExactly(
+                new ConfigurationResponseDto("test2", "Test Configuration 2", "test-2"),
+                new ConfigurationResponseDto("test1", "Test Configuration 1", "test-1"));
+        assertThat(lookup.getMissing()).containsExactly("test-exception");
+    }
+
+    @Test
+    @Order(4)
+    void testConfigCache_retrieveRange() throws ConfigCacheException {
+        // GIVEN
+        String from = "test";
+        String to = "tesu";
+        // WHEN
+        ConfigPage firstPage = configCache.getRange(from, to, 1);
+        ConfigPage secondPage = configCache.getRange(firstPage.getNext(), to, 1);
+        ConfigPage outside = configCache.getRange("test3", to, 10);
+        // THEN
+        assertThat(firstPage.getConfigurations()).containsExactly(new ConfigurationResponseDto("test1", "Test Configuration 1", "test-1"));
+        assertThat(firstPage.getNext()).isEqualTo("test2");
+        assertThat(secondPage.getConfigurations()).containsExactly(new ConfigurationResponseDto("test2", "Test Configuration 2", "test-2"));
+        assertThat(secondPage.getNext()).isNull();
+        assertThat(outside.getConfigurations()).isEmpty();
+        assertThat(outside.getNext()).isNull();
+    }
+
     @Test
     @Order(5)
-    void testConfigCache_retrieveConfigurationException() {
+    void testConfigCache_retrieveConfigurationNotFound() throws ConfigCacheException {
         // GIVEN
         String configId = "test-exception";
         // WHEN
-        Throwable thrown = catchThrowable(() -> configCache.get(configId));
+        ConfigCacheResult result = configCache.get(configId);
         // THEN
-        assertThat(thrown).isInstanceOf(ConfigCacheException.class).hasMessageContaining("No existing configuration");
+        assertThat(result.getOutcome()).isEqualTo(ConfigCacheResult.Outcome.NOT_FOUND);
+        assertThat(result.getConfiguration()).isNull();
     }
 
     @Test
@@ -140,23 +182,26 @@ public class ConfigCacheTests {
         String configId1 = "test1";
         String configName1 = "Test Configuration 1";
         String configValue1Updated = "test-1a";
+        long previousVersion = configCache.get(configId1).getConfiguration().getVersion();
         // WHEN
-        ConfigurationResponseDto testConfigurationUpdated = configCache.update(configId1, configName1, configValue1Updated);
+        ConfigurationResponseDto testConfigurationUpdated = configCache.update(configId1, configName1, configValue1Updated).getConfiguration();
         // THEN
         assertThat(testConfigurationUpdated.getValue()).isEqualTo(configValue1Updated);
+        assertThat(testConfigurationUpdated.getVersion()).isGreaterThan(previousVersion);
     }
 
     @Test
     @Order(7)
-    void testConfigCache_updateConfigurationException() {
+    void testConfigCache_updateConfigurationNotFound() throws ConfigCacheException {
         // GIVEN
         String configId = "test-exception";
         String configName = "Test Exception";
         String configValue = "test-1ex";
         // WHEN
-        Throwable thrown = catchThrowable(() -> configCache.update(configId, configName, configValue));
+        ConfigCacheResult result = configCache.update(configId, configName, configValue);
         // THEN
-        assertThat(thrown).isInstanceOf(ConfigCacheException.class).hasMessageContaining("No existing configuration");
+        assertThat(result.getOutcome()).isEqualTo(ConfigCacheResult.Outcome.NOT_FOUND);
+        assertThat(result.getConfiguration()).isNull();
     }
 
     @Test
@@ -180,33 +225,130 @@ public class ConfigCacheTests {
         assertThat(configurations).containsExactlyInAnyOrder(testConfiguration1, testConfiguration2);
     }
 
+    @Test
+    @Order(8)
+    void testConfigCache_retrieveAllReusesSnapshotUntilWrite() throws ConfigCacheException {
+        // GIVEN
+        ConfigSnapshot snapshot = configCache.getAll();
+        // WHEN
+        ConfigSnapshot unchangedSnapshot = configCache.getAll();
+        configCache.update("test2", "Test Configuration 2", "test-2");
+        ConfigSnapshot changedSnapshot = configCache.getAll();
+        // THEN
+        assertThat(unchangedSnapshot).isSameAs(snapshot);
+        assertThat(changedSnapshot).isNotSameAs(snapshot);
+        assertThat(changedSnapshot.getVersion()).isGreaterThan(snapshot.getVersion());
+        assertThat(changedSnapshot).containsExactlyInAnyOrderElementsOf(snapshot);
+        assertThat(catchThrowable(() -> changedSnapshot.add(new ConfigurationResponseDto("test3", "Test Configuration 3", "test-3"))))
+                .isInstanceOf(UnsupportedOperationException.class);
+    }
+
+    @Test
+    @Order(8)
+    void testConfigCache_retrieveAllEncodesJsonOnce() throws ConfigCacheException, IOException {
+        // GIVEN
+        ConfigSnapshot snapshot = configCache.getAll();
+        ObjectMapper objectMapper = new ObjectMapper();
+        // WHEN
+        byte[] json = snapshot.toJson();
+        List<ConfigurationResponseDto> decoded = objectMapper.readerForListOf(ConfigurationResponseDto.class).readValue(json);
+        ConfigurationResponseDto decodedFirst = objectMapper.readValue(snapshot.get(0).toJson(), ConfigurationResponseDto.class);
+        // THEN
+        assertThat(snapshot.toJson()).isSameAs(json);
+        assertThat(decoded).containsExactlyElementsOf(snapshot);
+        assertThat(decodedFirst).isEqualTo(snapshot.get(0));
+    }
+
     @Test
     @Order(9)
     void testConfigCache_deleteConfigurationSuccess() throws ConfigCacheException {
         // GIVEN
         String configId2 = "test2";
         // WHEN
-        ConfigurationResponseDto deletedConfiguration2 = configCache.delete(configId2);
+        ConfigurationResponseDto deletedConfiguration2 = configCache.delete(configId2).getConfiguration();
         // THEN
         assertThat(configCache.getAll()).doesNotContain(deletedConfiguration2);
 
         // GIVEN
         String configId1 = "test1";
         // WHEN
-        ConfigurationResponseDto deletedConfiguration1 = configCache.delete(configId1);
+        ConfigurationResponseDto deletedConfiguration1 = configCache.delete(configId1).getConfiguration();
         // THEN
         assertThat(configCache.getAll()).doesNotContain(deletedConfiguration1);
     }
 
     @Test
     @Order(10)
-    void testConfigCache_deleteConfigurationException() {
+    void testConfigCache_deleteConfigurationNotFound() throws ConfigCacheException {
         // GIVEN
         String configId = "test-exception";
         // WHEN
-        Throwable thrown = catchThrowable(() -> configCache.delete(configId));
+        ConfigCacheResult result = configCache.delete(configId);
+        // THEN
+        assertThat(result.getOutcome()).isEqualTo(ConfigCacheResult.Outcome.NOT_FOUND);
+        assertThat(result.getConfiguration()).isNull();
+    }
+
+    @Test
+    @Order(10)
+    void testConfigCache_applyBatch() throws ConfigCacheException {
+        // GIVEN
+        List<ConfigOperation> operations = List.of(
+                ConfigOperation.create("test-batch1", "Test Batch 1", "test-batch-1"),
+                ConfigOperation.create("test-batch2", "Test Batch 2", "test-batch-2"),
+                ConfigOperation.create("test-batch1", "Test Batch 1", "test-batch-1a"),
+                ConfigOperation.update("test-batch3", "Test Batch 3", "test-batch-3"),
+                ConfigOperation.delete("test-batch2"));
+        long version = configCache.getAll().getVersion();
+        // WHEN
+        List<ConfigCacheResult> results = configCache.apply(operations, false);
+        ConfigSnapshot snapshot = configCache.getAll();
+        // THEN
+        assertThat(results).extracting(ConfigCacheResult::getOutcome).containsExactly(
+                ConfigCacheResult.Outcome.SUCCESS,
+                ConfigCacheResult.Outcome.SUCCESS,
+                ConfigCacheResult.Outcome.CONFLICT,
+                ConfigCacheResult.Outcome.NOT_FOUND,
+                ConfigCacheResult.Outcome.SUCCESS);
+        assertThat(snapshot).containsExactly(new ConfigurationResponseDto("test-batch1", "Test Batch 1", "test-batch-1"));
+        assertThat(snapshot.getVersion()).isEqualTo(version + 1);
+
+        // WHEN
+        configCache.apply(List.of(ConfigOperation.delete("test-batch1")), false);
+        // THEN
+        assertThat(configCache.getAll()).isEmpty();
+    }
+
+    @Test
+    @Order(10)
+    void testConfigCache_applyAtomicBatch() throws ConfigCacheException {
+        // GIVEN
+        configCache.create("test-batch1", "Test Batch 1", "test-batch-1");
+        List<ConfigOperation> conflicting = List.of(
+                ConfigOperation.update("test-batch1", "Test Batch 1", "test-batch-1a"),
+                ConfigOperation.create("test-batch2", "Test Batch 2", "test-batch-2"),
+                ConfigOperation.create("test-batch1", "Test Batch 1", "test-batch-1b"));
+        // WHEN
+        List<ConfigCacheResult> results = configCache.apply(conflicting, true);
+        // THEN
+        assertThat(results).extracting(ConfigCacheResult::getOutcome).containsExactly(
+                ConfigCacheResult.Outcome.ABORTED,
+                ConfigCacheResult.Outcome.ABORTED,
+                ConfigCacheResult.Outcome.CONFLICT);
+        assertThat(configCache.getAll()).containsExactly(new ConfigurationResponseDto("test-batch1", "Test Batch 1", "test-batch-1"));
+
+        // GIVEN
+        List<ConfigOperation> valid = List.of(
+                ConfigOperation.update("test-batch1", "Test Batch 1", "test-batch-1a"),
+                ConfigOperation.delete("test-batch1"),
+                ConfigOperation.create("test-batch1", "Test Batch 1", "test-batch-1b"),
+                ConfigOperation.delete("test-batch1"));
+        // WHEN
+        results = configCache.apply(valid, true);
         // THEN
-        assertThat(thrown).isInstanceOf(ConfigCacheException.class).hasMessageContaining("No existing configuration");
+        assertThat(results).allMatch(ConfigCacheResult::isSuccess);
+        assertThat(results.get(2).getConfiguration().getValue()).isEqualTo("test-batch-1b");
+        assertThat(configCache.getAll()).isEmpty();
     }
 
     @Test
@@ -0,0 +1,135 @@
+package com.ercoles.configserver;
+
+import com.ercoles.configserver.dtos.ConfigurationResponseDto;
+import com.ercoles.configserver.repositories.ConfigCacheException;
+import com.ercoles.configserver.repositories.ConfigCacheMemory;
+import com.ercoles.configserver.repositories.ConfigChange;
+import com.ercoles.configserver.repositories.ConfigChangeLog;
+import com.ercoles.configserver.repositories.ConfigCheckpoint;
+import com.ercoles.configserver.repositories.ConfigOperation;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ConfigChangeLogTests {
+
+    @Test
+    void testConfigChangeLog_readsChangesInOrderFromOffset() throws InterruptedException {
+        // GIVEN
+        ConfigCacheMemory configCache = new ConfigCacheMemory();
+        ConfigChangeLog log = new ConfigChangeLog(16);
+        configCache.addChangeListener(log);
+        // WHEN
+        configCache.create("test1", "Test Configuration 1", "test-1");
+        configCache.update("test1", "Test Configuration 1", "test-1a");
+        configCache.delete("test1");
+        List<ConfigChange> all = log.read(0, 10, 0, TimeUnit.MILLISECONDS);
+        List<ConfigChange> last = log.read(2, 10, 0, TimeUnit.MILLISECONDS);
+        List<ConfigChange> none = log.read(3, 10, 10, TimeUnit.MILLISECONDS);
+        // THEN
+        assertThat(all).extracting(ConfigChange::getType)
+                .containsExactly(ConfigChange.Type.CREATED, ConfigChange.Type.UPDATED, ConfigChange.Type.DELETED);
+        assertThat(all).extracting(ConfigChange::getSequence).containsExactly(1L, 2L, 3L);
+        assertThat(last).containsExactly(all.get(2));
+        assertThat(none).isEmpty();
+        assertThat(log.getNextOffset()).isEqualTo(3);
+    }
+
+    @Test
+    void testConfigChangeLog_readsAtomicBatchWhole() throws InterruptedException {
+        // GIVEN
+        ConfigCacheMemory configCache = new ConfigCacheMemory();
+        ConfigChangeLog log = new ConfigChangeLog(16);
+        configCache.addChangeListener(log);
+        configCache.create("test1", "Test Configuration 1", "test-1");
+        configCache.apply(List.of(
+                ConfigOperation.create("test2", "Test Configuration 2", "test-2"),
+                ConfigOperation.create("test3", "Test Configuration 3", "test-3"),
+                ConfigOperation.delete("test1")), true);
+        configCache.create("test4", "Test Configuration 4", "test-4");
+        // WHEN
+        List<ConfigChange> first = log.read(0, 2, 0, TimeUnit.MILLISECONDS);
+        List<ConfigChange> second = log.read(first.size(), 1, 0, TimeUnit.MILLISECONDS);
+        // THEN
+        assertThat(first).extracting(change -> change.getConfiguration().getId()).containsExactly("test1", "test2", "test3", "test1");
+        assertThat(second).extracting(change -> change.getConfiguration().getId()).containsExactly("test4");
+    }
+
+    @Test
+    void testConfigChangeLog_startsNewEpochOnGap() throws InterruptedException {
+        // GIVEN
+        ConfigCacheMemory configCache = new ConfigCacheMemory();
+        ConfigChangeLog log = new ConfigChangeLog(16);
+        configCache.addChangeListener(log);
+        configCache.create("test1", "Test Configuration 1", "test-1");
+        String epoch = log.getEpoch();
+        // WHEN
+        log.onGap();
+        configCache.create("test2", "Test Configuration 2", "test-2");
+        List<ConfigChange> stale = log.read(epoch, 1, 10, 0, TimeUnit.MILLISECONDS);
+        List<ConfigChange> current = log.read(log.getEpoch(), 1, 10, 0, TimeUnit.MILLISECONDS);
+        // THEN
+        assertThat(log.getEpoch()).isNotEqualTo(epoch);
+        assertThat(stale).isNull();
+        assertThat(current).extracting(change -> change.getConfiguration().getId()).containsExactly("test2");
+        assertThat(log.getNextOffset()).isEqualTo(2);
+    }
+
+    @Test
+    void testConfigChangeLog_wakesReaderOnChange() throws Exception {
+        // GIVEN
+        ConfigCacheMemory configCache = new ConfigCacheMemory();
+        ConfigChangeLog log = new ConfigChangeLog(16);
+        configCache.addChangeListener(log);
+        CompletableFuture<List<ConfigChange>> read = CompletableFuture.supplyAsync(() -> {
+            try {
+                return log.read(0, 10, 10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        // WHEN
+        Thread.sleep(50);
+        configCache.create("test1", "Test Configuration 1", "test-1");
+        // THEN
+        assertThat(read.get(5, TimeUnit.SECONDS)).extracting(change -> change.getConfiguration().getId()).containsExactly("test1");
+    }
+
+    @Test
+    void testConfigChangeLog_dropsOldestChanges() throws InterruptedException {
+        // GIVEN
+        ConfigCacheMemory configCache = new ConfigCacheMemory();
+        ConfigChangeLog log = new ConfigChangeLog(4);
+        configCache.addChangeListener(log);
+        // WHEN
+        for (int i = 0; i < 10; i++) {
+            configCache.create("test" + i, "Test Configuration " + i, "test-" + i);
+        }
+        // THEN
+        assertThat(log.read(5, 10, 0, TimeUnit.MILLISECONDS)).isNull();
+        assertThat(log.read(11, 10, 0, TimeUnit.MILLISECONDS)).isNull();
+        assertThat(log.read(6, 10, 0, TimeUnit.MILLISECONDS)).extracting(change -> change.getConfiguration().getId())
+                .containsExactly("test6", "test7", "test8", "test9");
+    }
+
+    @Test
+    void testConfigChangeLog_checkpointListsEveryChangeBeforeItsOffset() throws ConfigCacheException {
+        // GIVEN
+        ConfigCacheMemory configCache = new ConfigCacheMemory();
+        ConfigChangeLog log = new ConfigChangeLog(16);
+        configCache.addChangeListener(log);
+        configCache.create("test1", "Test Configuration 1", "test-1");
+        configCache.create("test2", "Test Configuration 2", "test-2");
+        // WHEN
+        ConfigCheckpoint checkpoint = configCache.checkpoint(log::getNextOffset);
+        configCache.delete("test1");
+        // THEN
+        assertThat(checkpoint.getOffset()).isEqualTo(2);
+        assertThat(checkpoint.getConfigurations()).extracting(ConfigurationResponseDto::getId).containsExactlyInAnyOrder("test1", "test2");
+        assertThat(log.getNextOffset()).isEqualTo(3);
+    }
+}
@@ -1,24 +1,31 @@
 package com.ercoles.configserver;
 
+import com.ercoles.configserver.dtos.ConfigurationLookupResponseDto;
+import com.ercoles.configserver.dtos.ConfigurationOperationResultDto;
+import com.ercoles.configserver.dtos.ConfigurationPageResponseDto;
 import com.ercoles.configserver.dtos.ConfigurationResponseDto;
 import com.ercoles.configserver.dtos.ErrorDto;
 import com.ercoles.configserver.repositories.Configuration;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.*;
 import org.apache.http.entity.ContentType;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.util.EntityUtils;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.junit.jupiter.api.MethodOrderer;
 import org.junit.jupiter.api.Order;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestMethodOrder;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
-import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.boot.test.web.server.LocalServerPort;
 import org.springframework.http.HttpStatus;
 
 import java.io.IOException;
@@ -27,6 +34,7 @@ import java.util.List;
 import static org.assertj.core.api.Assertions.assertThat;
 
 @SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
+@AutoConfigureMetrics
 @TestMethodOrder(MethodOrderer.OrderAnnotation.class)
 public class ConfigServerApiTests {
 
@@ -190,6 +198,189 @@ public class ConfigServerApiTests {
         assertThat(resource.getValue()).isEqualTo("test-1");
     }
 
+    @Test
+    @Order(4)
+    void testApi_retrieveConfigurationNotModified() throws IOException {
+        // GIVEN
+        String url = "http://localhost:" + port + "/test1";
+        HttpResponse response1 = httpClient.execute(new HttpGet(url));
+        EntityUtils.consume(response1.getEntity());
+        String eTag = response1.getFirstHeader(HttpHeaders.ETAG).getValue();
+        HttpGet request = new HttpGet(url);
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, eTag);
+        // WHEN
+        HttpResponse response2 = httpClient.execute(request);
+        // THEN
+        assertThat(eTag).matches("\"[0-9a-f-]+:\\d+\"");
+        assertThat(response2.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED.value());
+        assertThat(response2.getEntity()).isNull();
+        assertThat(response2.getFirstHeader(HttpHeaders.ETAG).getValue()).isEqualTo(eTag);
+    }
+
+    @Test
+    @Order(4)
+    void testApi_retrieveManyConfigurations() throws IOException {
+        // GIVEN
+        String url = "http://localhost:" + port + "/?ids=test2,test-missing&ids=test1&ids=test2";
+        HttpGet request = new HttpGet(url);
+        // WHEN
+        HttpResponse response = httpClient.execute(request);
+        String mimeType = ContentType.getOrDefault(response.getEntity()).getMimeType();
+        ConfigurationLookupResponseDto resource = objectMapper.readValue(response.getEntity().getContent(), ConfigurationLookupResponseDto.class);
+        // THEN
+        assertThat(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.OK.value());
+        assertThat(mimeType).isEqualTo("application/json");
+        assertThat(resource.getConfigurations()).containsExactly(
+                new ConfigurationResponseDto("test2", "Test Configuration 2", "test-2"),
+                new ConfigurationResponseDto("test1", "Test Configuration 1", "test-1"));
+        assertThat(resource.getMissing()).containsExactly("test-missing");
+    }
+
+    @Test
+    @Order(4)
+    void testApi_retrieveConfigurationsByPrefix() throws IOException {
+        // GIVEN
+        String url = "http://localhost:" + port + "/?prefix=test&limit=1";
+        HttpGet request = new HttpGet(url);
+        // WHEN
+        HttpResponse response = httpClient.execute(request);
+        ConfigurationPageResponseDto firstPage = objectMapper.readValue(response.getEntity().getContent(), ConfigurationPageResponseDto.class);
+        HttpResponse nextResponse = httpClient.execute(new HttpGet(url + "&cursor=" + firstPage.getNext()));
+        ConfigurationPageResponseDto secondPage = objectMapper.readValue(nextResponse.getEntity().getContent(), ConfigurationPageResponseDto.class);
+        // THEN
+        assertThat(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.OK.value());
+        assertThat(firstPage.getConfigurations()).containsExactly(new ConfigurationResponseDto("test1", "Test Configuration 1", "test-1"));
+        assertThat(firstPage.getNext()).isNotNull();
+        assertThat(nextResponse.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.OK.value());
+        assertThat(secondPage.getConfigurations()).containsExactly(new ConfigurationResponseDto("test2", "Test Configuration 2", "test-2"));
+        assertThat(secondPage.getNext()).isNull();
+    }
+
+    @Test
+    @Order(4)
+    void testApi_retrieveConfigurationRange() throws IOException {
+        // GIVEN
+        String url = "http://localhost:" + port + "/?from=test2&to=test3";
+        HttpGet request = new HttpGet(url);
+        // WHEN
+        HttpResponse response = httpClient.execute(request);
+        ConfigurationPageResponseDto page = objectMapper.readValue(response.getEntity().getContent(), ConfigurationPageResponseDto.class);
+        HttpResponse invalidResponse = httpClient.execute(new HttpGet(url + "&limit=0"));
+        ErrorDto error = objectMapper.readValue(invalidResponse.getEntity().getContent(), ErrorDto.class);
+        // THEN
+        assertThat(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.OK.value());
+        assertThat(page.getConfigurations()).containsExactly(new ConfigurationResponseDto("test2", "Test Configuration 2", "test-2"));
+        assertThat(page.getNext()).isNull();
+        assertThat(invalidResponse.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST.value());
+        assertThat(error.getError()).startsWith("Submitted page size is not valid");
+    }
+
+    @Test
+    @Order(4)
+    void testApi_retrieveAllPaged() throws IOException {
+        // GIVEN
+        String url = "http://localhost:" + port + "/?limit=1";
+        HttpGet request = new HttpGet(url);
+        // WHEN
+        HttpResponse response = httpClient.execute(request);
+        ConfigurationPageResponseDto firstPage = objectMapper.readValue(response.getEntity().getContent(), ConfigurationPageResponseDto.class);
+        HttpResponse nextResponse = httpClient.execute(new HttpGet("http://localhost:" + port + "/?cursor=" + firstPage.getNext()));
+        ConfigurationPageResponseDto secondPage = objectMapper.readValue(nextResponse.getEntity().getContent(), ConfigurationPageResponseDto.class);
+        // THEN
+        assertThat(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.OK.value());
+        assertThat(firstPage.getConfigurations()).containsExactly(new ConfigurationResponseDto("test1", "Test Configuration 1", "test-1"));
+        assertThat(nextResponse.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.OK.value());
+        assertThat(secondPage.getConfigurations()).containsExactly(new ConfigurationResponseDto("test2", "Test Configuration 2", "test-2"));
+        assertThat(secondPage.getNext()).isNull();
+    }
+
+    @Test
+    @Order(4)
+    void testApi_retrieveAllStreamed() throws IOException {
+        // GIVEN
+        HttpGet request = new HttpGet("http://localhost:" + port + "/");
+        request.addHeader(HttpHeaders.ACCEPT, "application/x-ndjson");
+        // WHEN
+        HttpResponse response = httpClient.execute(request);
+        String mimeType = ContentType.getOrDefault(response.getEntity()).getMimeType();
+        String[] lines = EntityUtils.toString(response.getEntity()).split("\n");
+        // THEN
+        assertThat(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.OK.value());
+        assertThat(mimeType).isEqualTo("application/x-ndjson");
+        assertThat(lines).hasSize(2);
+        assertThat(objectMapper.readValue(lines[0], ConfigurationResponseDto.class))
+                .isEqualTo(new ConfigurationResponseDto("test1", "Test Configuration 1", "test-1"));
+        assertThat(objectMapper.readValue(lines[1], ConfigurationResponseDto.class))
+                .isEqualTo(new ConfigurationResponseDto("test2", "Test Configuration 2", "test-2"));
+    }
+
+    @Test
+    @Order(4)
+    void testApi_retrieveAllStreamedInPages() throws IOException {
+        // GIVEN
+        HttpGet request = new HttpGet("http://localhost:" + port + "/?limit=1");
+        request.addHeader(HttpHeaders.ACCEPT, "application/x-ndjson");
+        // WHEN
+        HttpResponse response = httpClient.execute(request);
+        String[] lines = EntityUtils.toString(response.getEntity()).split("\n");
+        HttpGet nextRequest = new HttpGet("http://localhost:" + port + "/?cursor=" + response.getFirstHeader("Next-Cursor").getValue());
+        nextRequest.addHeader(HttpHeaders.ACCEPT, "application/x-ndjson");
+        HttpResponse nextResponse = httpClient.execute(nextRequest);
+        String[] nextLines = EntityUtils.toString(nextResponse.getEntity()).split("\n");
+        // THEN
+        assertThat(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.OK.value());
+        assertThat(lines).hasSize(1);
+        assertThat(objectMapper.readValue(lines[0], ConfigurationResponseDto.class))
+                .isEqualTo(new ConfigurationResponseDto("test1", "Test Configuration 1", "test-1"));
+        assertThat(nextResponse.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.OK.value());
+        assertThat(nextResponse.getFirstHeader("Next-Cursor")).isNull();
+        assertThat(nextLines).hasSize(1);
+        assertThat(objectMapper.readValue(nextLines[0], ConfigurationResponseDto.class))
+                .isEqualTo(new ConfigurationResponseDto("test2", "Test Configuration 2", "test-2"));
+    }
+
+    @Test
+    @Order(4)
+    void testApi_retrieveError_combinedQueries() throws IOException {
+        // GIVEN
+        String url = "http://localhost:" + port + "/";
+        HttpGet watchRequest = new HttpGet(url + "?watch&ids=test1");
+        watchRequest.addHeader(HttpHeaders.ACCEPT, "text/event-stream");
+        // WHEN
+        HttpResponse idsAndPrefix = httpClient.execute(new HttpGet(url + "?ids=test1&prefix=test"));
+        ErrorDto error = objectMapper.readValue(idsAndPrefix.getEntity().getContent(), ErrorDto.class);
+        HttpResponse sinceAndPrefix = httpClient.execute(new HttpGet(url + "?since=&prefix=test"));
+        EntityUtils.consume(sinceAndPrefix.getEntity());
+        HttpResponse sinceAndCursor = httpClient.execute(new HttpGet(url + "?since=&cursor=dGVzdDI"));
+        EntityUtils.consume(sinceAndCursor.getEntity());
+        HttpResponse toAlone = httpClient.execute(new HttpGet(url + "?to=test2"));
+        EntityUtils.consume(toAlone.getEntity());
+        HttpResponse watchAndIds = httpClient.execute(watchRequest);
+        EntityUtils.consume(watchAndIds.getEntity());
+        // THEN
+        assertThat(idsAndPrefix.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST.value());
+        assertThat(error.getError()).isEqualTo("Submitted query parameters cannot be combined.");
+        assertThat(sinceAndPrefix.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST.value());
+        assertThat(sinceAndCursor.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST.value());
+        assertThat(toAlone.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST.value());
+        assertThat(watchAndIds.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST.value());
+    }
+
+    @Test
+    @Order(4)
+    void testApi_exposesStoreMetrics() throws IOException {
+        // GIVEN
+        HttpGet request = new HttpGet("http://localhost:" + port + "/actuator/prometheus");
+        // WHEN
+        HttpResponse response = httpClient.execute(request);
+        String metrics = EntityUtils.toString(response.getEntity());
+        // THEN
+        assertThat(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.OK.value());
+        assertThat(metrics).contains("configserver_cache_operations_seconds_bucket{operation=\"get\"");
+        assertThat(metrics).contains("configserver_cache_results_total{operation=\"create\",outcome=\"success\",}");
+        assertThat(metrics).contains("configserver_cache_entries 2.0");
+    }
+
     @Test
     @Order(5)
     void testApi_retrieveConfigurationError() throws IOException {
@@ -282,6 +473,40 @@ public class ConfigServerApiTests {
         assertThat(resources).containsExactlyInAnyOrder(testConfiguration1, testConfiguration2);
     }
 
+    @Test
+    @Order(8)
+    void testApi_retrieveAllNotModifiedUntilChanged() throws IOException, JSONException {
+        // GIVEN
+        String url = "http://localhost:" + port + "/";
+        HttpResponse response1 = httpClient.execute(new HttpGet(url));
+        EntityUtils.consume(response1.getEntity());
+        String eTag = response1.getFirstHeader(HttpHeaders.ETAG).getValue();
+        HttpGet request2 = new HttpGet(url);
+        request2.addHeader(HttpHeaders.IF_NONE_MATCH, eTag);
+        // WHEN
+        HttpResponse response2 = httpClient.execute(request2);
+        // THEN
+        assertThat(response2.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED.value());
+        assertThat(response2.getEntity()).isNull();
+
+        // GIVEN
+        JSONObject jsonObject = new JSONObject();
+        jsonObject.put("name", "Test Configuration 2");
+        jsonObject.put("value", "test-2");
+        HttpPut update = new HttpPut("http://localhost:" + port + "/test2");
+        update.addHeader("content-type", "application/json");
+        update.setEntity(new StringEntity(jsonObject.toString()));
+        EntityUtils.consume(httpClient.execute(update).getEntity());
+        HttpGet request3 = new HttpGet(url);
+        request3.addHeader(HttpHeaders.IF_NONE_MATCH, eTag);
+        // WHEN
+        HttpResponse response3 = httpClient.execute(request3);
+        EntityUtils.consume(response3.getEntity());
+        // THEN
+        assertThat(response3.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.OK.value());
+        assertThat(response3.getFirstHeader(HttpHeaders.ETAG).getValue()).isNotEqualTo(eTag);
+    }
+
     @Test
     @Order(9)
     void testApi_deleteConfigurationSuccess() throws IOException {
@@ -321,6 +546,63 @@ public class ConfigServerApiTests {
         assertThat(resource.getError()).contains("No existing configuration");
     }
 
+    @Test
+    @Order(10)
+    void testApi_applyBatch() throws IOException, JSONException {
+        // GIVEN
+        String url = "http://localhost:" + port + "/";
+        JSONArray operations = new JSONArray();
+        operations.put(operation("create", "test-batch1", "Test Batch 1", "test-batch-1"));
+        operations.put(operation("create", "test-batch1", "Test Batch 1", "test-batch-1a"));
+        operations.put(operation("update", "test-batch1", "Test Batch 1", ""));
+        operations.put(operation("delete", "test-batch2", null, null));
+        operations.put(operation("delete", "test-batch1", null, null));
+        HttpPost request = new HttpPost(url);
+        request.addHeader("content-type", "application/json");
+        request.setEntity(new StringEntity(operations.toString()));
+        // WHEN
+        HttpResponse response = httpClient.execute(request);
+        String mimeType = ContentType.getOrDefault(response.getEntity()).getMimeType();
+        List<ConfigurationOperationResultDto> results = objectMapper.readerForListOf(ConfigurationOperationResultDto.class)
+                .readValue(response.getEntity().getContent());
+        // THEN
+        assertThat(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.OK.value());
+        assertThat(mimeType).isEqualTo("application/json");
+        assertThat(results).extracting(ConfigurationOperationResultDto::getStatus).containsExactly(
+                HttpStatus.CREATED.value(),
+                HttpStatus.CONFLICT.value(),
+                HttpStatus.BAD_REQUEST.value(),
+                HttpStatus.NOT_FOUND.value(),
+                HttpStatus.OK.value());
+        assertThat(results.get(0).getConfiguration()).isEqualTo(new ConfigurationResponseDto("test-batch1", "Test Batch 1", "test-batch-1"));
+        assertThat(results.get(1).getError()).contains("is already in use");
+    }
+
+    @Test
+    @Order(10)
+    void testApi_applyAtomicBatchError() throws IOException, JSONException {
+        // GIVEN
+        String url = "http://localhost:" + port + "/?atomic=true";
+        JSONArray operations = new JSONArray();
+        operations.put(operation("create", "test-batch1", "Test Batch 1", "test-batch-1"));
+        operations.put(operation("update", "test-batch2", "Test Batch 2", "test-batch-2"));
+        HttpPost request = new HttpPost(url);
+        request.addHeader("content-type", "application/json");
+        request.setEntity(new StringEntity(operations.toString()));
+        // WHEN
+        HttpResponse response = httpClient.execute(request);
+        List<ConfigurationOperationResultDto> results = objectMapper.readerForListOf(ConfigurationOperationResultDto.class)
+                .readValue(response.getEntity().getContent());
+        HttpResponse retrieved = httpClient.execute(new HttpGet("http://localhost:" + port + "/test-batch1"));
+        EntityUtils.consume(retrieved.getEntity());
+        // THEN
+        assertThat(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND.value());
+        assertThat(results).extracting(ConfigurationOperationResultDto::getStatus).containsExactly(
+                HttpStatus.FAILED_DEPENDENCY.value(),
+                HttpStatus.NOT_FOUND.value());
+        assertThat(retrieved.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND.value());
+    }
+
     @Test
     @Order(11)
     void testApi_emptyAtEnd() throws IOException {
@@ -336,4 +618,13 @@ public class ConfigServerApiTests {
         assertThat(mimeType).isEqualTo("application/json");
         assertThat(resources).isEmpty();
     }
-}
\ No newline at end of file
+
+    private JSONObject operation(String op, String id, String name, String value) throws JSONException {
+        JSONObject jsonObject = new JSONObject();
+        jsonObject.put("op", op);
+        jsonObject.put("id", id);
+        jsonObject.putOpt("name", name);
+        jsonObject.putOpt("value", value);
+        return jsonObject;
+    }
+}
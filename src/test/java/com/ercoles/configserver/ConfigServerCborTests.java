@@ -0,0 +1,186 @@
+package com.ercoles.configserver;
+
+import com.ercoles.configserver.dtos.ConfigurationLookupResponseDto;
+import com.ercoles.configserver.dtos.ConfigurationOperationRequestDto;
+import com.ercoles.configserver.dtos.ConfigurationOperationResultDto;
+import com.ercoles.configserver.dtos.ConfigurationPageResponseDto;
+import com.ercoles.configserver.dtos.ConfigurationRequestDto;
+import com.ercoles.configserver.dtos.ConfigurationResponseDto;
+import com.ercoles.configserver.dtos.ErrorDto;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.databind.CBORMapper;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.*;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.util.EntityUtils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpStatus;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// the same resources as CBOR, for clients asking for it, on both web stacks
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+public class ConfigServerCborTests {
+    private static final String CBOR = "application/cbor";
+
+    private static ConfigurableApplicationContext servlet;
+    private static ConfigurableApplicationContext reactive;
+
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper;
+    private final CBORMapper cborMapper;
+
+    public ConfigServerCborTests() {
+        this.httpClient = HttpClientBuilder.create()
+                .setDefaultRequestConfig(RequestConfig.custom().setSocketTimeout(10_000).build())
+                .build();
+        this.objectMapper = new ObjectMapper();
+        this.cborMapper = new CBORMapper();
+    }
+
+    @BeforeAll
+    static void startServers() {
+        // as arguments, which take precedence over application.properties
+        servlet = new SpringApplicationBuilder(ConfigServerApplication.class).run("--server.port=0");
+        reactive = new SpringApplicationBuilder(ConfigServerApplication.class)
+                .run("--spring.main.web-application-type=reactive", "--server.port=0");
+    }
+
+    @AfterAll
+    static void stopServers() {
+        servlet.close();
+        reactive.close();
+    }
+
+    @Test
+    @Order(1)
+    void testCbor_acceptsAndAnswersConfigurations() throws IOException {
+        for (String baseUrl : baseUrls()) {
+            // GIVEN
+            HttpPost request = withCborBody(new HttpPost(baseUrl + "test1"), new ConfigurationRequestDto("Test Configuration 1", "test-1"));
+            request.addHeader(HttpHeaders.ACCEPT, CBOR);
+            // WHEN
+            HttpResponse response = httpClient.execute(request);
+            String mimeType = ContentType.getOrDefault(response.getEntity()).getMimeType();
+            ConfigurationResponseDto created = cborMapper.readValue(response.getEntity().getContent(), ConfigurationResponseDto.class);
+            // THEN
+            assertThat(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.CREATED.value());
+            assertThat(mimeType).isEqualTo(CBOR);
+            assertThat(created).isEqualTo(new ConfigurationResponseDto("test1", "Test Configuration 1", "test-1"));
+            assertThat(getJson(baseUrl + "test1", ConfigurationResponseDto.class)).isEqualTo(created);
+        }
+    }
+
+    @Test
+    @Order(2)
+    void testCbor_servesListingsLookupsAndPages() throws IOException {
+        for (String baseUrl : baseUrls()) {
+            // GIVEN
+            HttpPut update = withCborBody(new HttpPut(baseUrl + "test1"), new ConfigurationRequestDto("Test Configuration 1", "test-1a"));
+            EntityUtils.consume(httpClient.execute(update).getEntity());
+            // WHEN
+            HttpResponse listing = httpClient.execute(withAccept(new HttpGet(baseUrl), CBOR));
+            List<ConfigurationResponseDto> all = cborMapper.readerForListOf(ConfigurationResponseDto.class).readValue(listing.getEntity().getContent());
+            HttpResponse jsonListing = httpClient.execute(new HttpGet(baseUrl));
+            EntityUtils.consume(jsonListing.getEntity());
+            ConfigurationLookupResponseDto lookup = getCbor(baseUrl + "?ids=test1,missing", ConfigurationLookupResponseDto.class);
+            ConfigurationPageResponseDto page = getCbor(baseUrl + "?prefix=test&limit=1", ConfigurationPageResponseDto.class);
+            // THEN
+            assertThat(all).containsExactly(new ConfigurationResponseDto("test1", "Test Configuration 1", "test-1a"));
+            assertThat(listing.getFirstHeader(HttpHeaders.VARY).getValue()).contains(HttpHeaders.ACCEPT);
+            // a tag of its own, so that a cached JSON listing is never revalidated as the CBOR one
+            assertThat(listing.getFirstHeader(HttpHeaders.ETAG).getValue()).isNotEqualTo(jsonListing.getFirstHeader(HttpHeaders.ETAG).getValue());
+            assertThat(lookup.getConfigurations()).containsExactlyElementsOf(all);
+            assertThat(lookup.getMissing()).containsExactly("missing");
+            assertThat(page.getConfigurations()).containsExactlyElementsOf(all);
+            assertThat(page.getNext()).isNull();
+        }
+    }
+
+    @Test
+    @Order(3)
+    void testCbor_answersBatchesAndErrors() throws IOException {
+        for (String baseUrl : baseUrls()) {
+            // GIVEN
+            HttpPost batch = withCborBody(new HttpPost(baseUrl), List.of(
+                    new ConfigurationOperationRequestDto("create", "test2", "Test Configuration 2", "test-2"),
+                    new ConfigurationOperationRequestDto("delete", "test3", null, null)));
+            batch.addHeader(HttpHeaders.ACCEPT, CBOR);
+            // WHEN
+            HttpResponse applied = httpClient.execute(batch);
+            List<ConfigurationOperationResultDto> results = cborMapper.readerForListOf(ConfigurationOperationResultDto.class)
+                    .readValue(applied.getEntity().getContent());
+            HttpResponse missing = httpClient.execute(withAccept(new HttpGet(baseUrl + "test3"), CBOR));
+            ErrorDto error = cborMapper.readValue(missing.getEntity().getContent(), ErrorDto.class);
+            HttpResponse deleted = httpClient.execute(withAccept(new HttpDelete(baseUrl + "test2"), CBOR));
+            EntityUtils.consume(deleted.getEntity());
+            // THEN
+            assertThat(applied.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.OK.value());
+            assertThat(results).extracting(ConfigurationOperationResultDto::getStatus).containsExactly(201, 404);
+            assertThat(missing.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND.value());
+            assertThat(ContentType.getOrDefault(missing.getEntity()).getMimeType()).isEqualTo(CBOR);
+            assertThat(error.getError()).contains("test3");
+            assertThat(deleted.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.OK.value());
+        }
+    }
+
+    @Test
+    @Order(4)
+    void testCbor_jsonUnlessPreferred() throws IOException {
+        for (String baseUrl : baseUrls()) {
+            // WHEN
+            HttpResponse anything = httpClient.execute(withAccept(new HttpGet(baseUrl + "test1"), "*/*"));
+            EntityUtils.consume(anything.getEntity());
+            HttpResponse jsonFirst = httpClient.execute(withAccept(new HttpGet(baseUrl + "test1"), "application/json, application/cbor;q=0.5"));
+            EntityUtils.consume(jsonFirst.getEntity());
+            HttpResponse cborFirst = httpClient.execute(withAccept(new HttpGet(baseUrl + "test1"), "application/json;q=0.5, application/cbor"));
+            EntityUtils.consume(cborFirst.getEntity());
+            // THEN
+            assertThat(ContentType.getOrDefault(anything.getEntity()).getMimeType()).isEqualTo("application/json");
+            assertThat(ContentType.getOrDefault(jsonFirst.getEntity()).getMimeType()).isEqualTo("application/json");
+            assertThat(ContentType.getOrDefault(cborFirst.getEntity()).getMimeType()).isEqualTo(CBOR);
+        }
+    }
+
+    private static List<String> baseUrls() {
+        return List.of(baseUrl(servlet), baseUrl(reactive));
+    }
+
+    private static String baseUrl(ConfigurableApplicationContext context) {
+        return "http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort() + "/";
+    }
+
+    private <T> T getCbor(String url, Class<T> type) throws IOException {
+        return cborMapper.readValue(httpClient.execute(withAccept(new HttpGet(url), CBOR)).getEntity().getContent(), type);
+    }
+
+    private <T> T getJson(String url, Class<T> type) throws IOException {
+        return objectMapper.readValue(httpClient.execute(new HttpGet(url)).getEntity().getContent(), type);
+    }
+
+    private static <T extends HttpRequestBase> T withAccept(T request, String accept) {
+        request.addHeader(HttpHeaders.ACCEPT, accept);
+        return request;
+    }
+
+    private <T extends HttpEntityEnclosingRequestBase> T withCborBody(T request, Object body) throws IOException {
+        request.setEntity(new ByteArrayEntity(cborMapper.writeValueAsBytes(body), ContentType.create(CBOR)));
+        return request;
+    }
+}
@@ -0,0 +1,218 @@
+package com.ercoles.configserver;
+
+import com.ercoles.configserver.repositories.ConfigCacheFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.util.EntityUtils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpStatus;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// listings and large values gzipped for clients accepting it, compressed once per version, on both web stacks
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+public class ConfigServerCompressionTests {
+    private static ConfigurableApplicationContext servlet;
+    private static ConfigurableApplicationContext reactive;
+
+    private final HttpClient httpClient;
+
+    public ConfigServerCompressionTests() {
+        // the client would otherwise ask for gzip itself and hide the coding of the responses
+        this.httpClient = HttpClientBuilder.create()
+                .setDefaultRequestConfig(RequestConfig.custom().setSocketTimeout(10_000).build())
+                .disableContentCompression()
+                .build();
+    }
+
+    @BeforeAll
+    static void startServers() {
+        // as arguments, which take precedence over application.properties
+        servlet = new SpringApplicationBuilder(ConfigServerApplication.class)
+                .run("--server.port=0", "--configserver.compression.min-size=512");
+        reactive = new SpringApplicationBuilder(ConfigServerApplication.class)
+                .run("--spring.main.web-application-type=reactive", "--server.port=0", "--configserver.compression.min-size=512");
+    }
+
+    @AfterAll
+    static void stopServers() {
+        servlet.close();
+        reactive.close();
+    }
+
+    @Test
+    @Order(1)
+    void testCompression_compressesLargeBodiesOnce() throws IOException {
+        for (ConfigurableApplicationContext context : List.of(servlet, reactive)) {
+            // GIVEN
+            String baseUrl = baseUrl(context);
+            create(baseUrl, "small", "x");
+            create(baseUrl, "large", "large-value-".repeat(100));
+            String listing = EntityUtils.toString(httpClient.execute(new HttpGet(baseUrl)).getEntity());
+            // WHEN
+            HttpResponse first = httpClient.execute(withGzip(new HttpGet(baseUrl)));
+            byte[] firstBody = EntityUtils.toByteArray(first.getEntity());
+            HttpResponse second = httpClient.execute(withGzip(new HttpGet(baseUrl)));
+            byte[] secondBody = EntityUtils.toByteArray(second.getEntity());
+            // THEN
+            assertThat(first.getFirstHeader(HttpHeaders.CONTENT_ENCODING).getValue()).isEqualTo("gzip");
+            assertThat(first.getFirstHeader(HttpHeaders.VARY).getValue()).contains(HttpHeaders.ACCEPT_ENCODING);
+            assertThat(first.getFirstHeader(HttpHeaders.ETAG).getValue()).isEqualTo("\"" + epoch(context) + ":2-gzip\"");
+            assertThat(firstBody.length).isLessThan(listing.length());
+            assertThat(gunzip(firstBody)).isEqualTo(listing);
+            assertThat(secondBody).isEqualTo(firstBody);
+            assertThat(cacheGets(context, "hit")).isEqualTo(1);
+            assertThat(cacheGets(context, "miss")).isEqualTo(1);
+        }
+    }
+
+    @Test
+    @Order(2)
+    void testCompression_leavesSmallBodiesAlone() throws IOException {
+        for (ConfigurableApplicationContext context : List.of(servlet, reactive)) {
+            // GIVEN
+            String baseUrl = baseUrl(context);
+            // WHEN
+            HttpResponse small = httpClient.execute(withGzip(new HttpGet(baseUrl + "small")));
+            EntityUtils.consume(small.getEntity());
+            HttpResponse large = httpClient.execute(withGzip(new HttpGet(baseUrl + "large")));
+            EntityUtils.consume(large.getEntity());
+            HttpResponse identity = httpClient.execute(new HttpGet(baseUrl + "large"));
+            EntityUtils.consume(identity.getEntity());
+            // THEN
+            assertThat(small.getFirstHeader(HttpHeaders.CONTENT_ENCODING)).isNull();
+            assertThat(large.getFirstHeader(HttpHeaders.CONTENT_ENCODING).getValue()).isEqualTo("gzip");
+            assertThat(identity.getFirstHeader(HttpHeaders.CONTENT_ENCODING)).isNull();
+            assertThat(identity.getFirstHeader(HttpHeaders.ETAG).getValue()).isEqualTo("\"" + epoch(context) + ":2\"");
+            assertThat(responses(context, "compressed")).isEqualTo(3);
+            assertThat(responses(context, "below_min_size")).isEqualTo(1);
+            // the writes and the listing of the first test asked for no coding either
+            assertThat(responses(context, "not_accepted")).isEqualTo(4);
+            assertThat(context.getBean(MeterRegistry.class).get("configserver.compression.min.size").gauge().value()).isEqualTo(512);
+        }
+    }
+
+    @Test
+    @Order(3)
+    void testCompression_revalidatesTheCompressedBody() throws IOException {
+        for (ConfigurableApplicationContext context : List.of(servlet, reactive)) {
+            // GIVEN
+            String baseUrl = baseUrl(context);
+            String epoch = epoch(context);
+            HttpGet request = withGzip(new HttpGet(baseUrl));
+            request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"" + epoch + ":2-gzip\"");
+            // WHEN
+            HttpResponse notModified = httpClient.execute(request);
+            EntityUtils.consume(notModified.getEntity());
+            EntityUtils.consume(httpClient.execute(new HttpDelete(baseUrl + "small")).getEntity());
+            HttpResponse changed = httpClient.execute(request);
+            EntityUtils.consume(changed.getEntity());
+            EntityUtils.consume(httpClient.execute(new HttpDelete(baseUrl + "large")).getEntity());
+            // THEN
+            assertThat(notModified.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED.value());
+            assertThat(changed.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.OK.value());
+            assertThat(changed.getFirstHeader(HttpHeaders.ETAG).getValue()).isEqualTo("\"" + epoch + ":3-gzip\"");
+        }
+    }
+
+    @Test
+    @Order(4)
+    void testCompression_compressesCompactListingOnce() throws IOException {
+        // GIVEN
+        // the compact store encodes its listing again on every request
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(ConfigServerApplication.class)
+                .run("--server.port=0", "--configserver.compression.min-size=512", "--configserver.cache.type=compact")) {
+            String baseUrl = baseUrl(context);
+            create(baseUrl, "large", "large-value-".repeat(100));
+            // WHEN
+            HttpResponse first = httpClient.execute(withGzip(new HttpGet(baseUrl)));
+            byte[] firstBody = EntityUtils.toByteArray(first.getEntity());
+            HttpResponse second = httpClient.execute(withGzip(new HttpGet(baseUrl)));
+            byte[] secondBody = EntityUtils.toByteArray(second.getEntity());
+            // THEN
+            assertThat(second.getFirstHeader(HttpHeaders.CONTENT_ENCODING).getValue()).isEqualTo("gzip");
+            assertThat(secondBody).isEqualTo(firstBody);
+            assertThat(cacheGets(context, "hit")).isEqualTo(1);
+            assertThat(cacheGets(context, "miss")).isEqualTo(1);
+        }
+    }
+
+    @Test
+    @Order(5)
+    void testCompression_compressesDeduplicatedEntriesOnce() throws IOException {
+        // GIVEN
+        // a deduplicating store encodes its entries again on every request
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(ConfigServerApplication.class)
+                .run("--server.port=0", "--configserver.compression.min-size=512", "--configserver.cache.memory.deduplicate=true")) {
+            String baseUrl = baseUrl(context);
+            create(baseUrl, "large", "large-value-".repeat(100));
+            // WHEN
+            HttpResponse first = httpClient.execute(withGzip(new HttpGet(baseUrl + "large")));
+            byte[] firstBody = EntityUtils.toByteArray(first.getEntity());
+            HttpResponse second = httpClient.execute(withGzip(new HttpGet(baseUrl + "large")));
+            byte[] secondBody = EntityUtils.toByteArray(second.getEntity());
+            // THEN
+            assertThat(second.getFirstHeader(HttpHeaders.CONTENT_ENCODING).getValue()).isEqualTo("gzip");
+            assertThat(secondBody).isEqualTo(firstBody);
+            assertThat(cacheGets(context, "hit")).isEqualTo(1);
+            assertThat(cacheGets(context, "miss")).isEqualTo(1);
+        }
+    }
+
+    private void create(String baseUrl, String configId, String value) throws IOException {
+        HttpPost request = new HttpPost(baseUrl + configId);
+        request.setEntity(new StringEntity("{\"name\": \"Test Configuration\", \"value\": \"" + value + "\"}", ContentType.APPLICATION_JSON));
+        EntityUtils.consume(httpClient.execute(request).getEntity());
+    }
+
+    private static HttpGet withGzip(HttpGet request) {
+        request.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate");
+        return request;
+    }
+
+    private static String gunzip(byte[] body) throws IOException {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static double cacheGets(ConfigurableApplicationContext context, String result) {
+        return context.getBean(MeterRegistry.class).get("cache.gets")
+                .tag("cache", "configserver.compression").tag("result", result).functionCounter().count();
+    }
+
+    private static double responses(ConfigurableApplicationContext context, String result) {
+        return context.getBean(MeterRegistry.class).get("configserver.compression.responses").tag("result", result).counter().count();
+    }
+
+    private static String epoch(ConfigurableApplicationContext context) {
+        return context.getBean(ConfigCacheFactory.class).getEpoch();
+    }
+
+    private static String baseUrl(ConfigurableApplicationContext context) {
+        return "http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort() + "/";
+    }
+}
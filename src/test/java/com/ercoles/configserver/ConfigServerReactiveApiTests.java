@@ -0,0 +1,326 @@
+package com.ercoles.configserver;
+
+import com.ercoles.configserver.controllers.Controller;
+import com.ercoles.configserver.dtos.ConfigurationLookupResponseDto;
+import com.ercoles.configserver.dtos.ConfigurationOperationResultDto;
+import com.ercoles.configserver.dtos.ConfigurationPageResponseDto;
+import com.ercoles.configserver.dtos.ConfigurationResponseDto;
+import com.ercoles.configserver.dtos.ErrorDto;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.*;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.util.EntityUtils;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.embedded.netty.NettyWebServer;
+import org.springframework.boot.web.reactive.context.ReactiveWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpStatus;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static com.ercoles.configserver.TestSupport.withBody;
+import static org.assertj.core.api.Assertions.assertThat;
+
+// the same requests as ConfigServerApiTests, served by the router functions on Netty; the application is started
+// here because @SpringBootTest picks the stack from the classpath, which has both
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+public class ConfigServerReactiveApiTests {
+    private static ConfigurableApplicationContext context;
+    private static int port;
+
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper;
+
+    public ConfigServerReactiveApiTests() {
+        this.httpClient = HttpClientBuilder.create()
+                .setDefaultRequestConfig(RequestConfig.custom().setSocketTimeout(10_000).build())
+                .build();
+        this.objectMapper = new ObjectMapper();
+    }
+
+    @BeforeAll
+    static void startServer() {
+        context = new SpringApplicationBuilder(ConfigServerApplication.class)
+                .properties("spring.main.web-application-type=reactive", "server.port=0")
+                .run();
+        port = ((ReactiveWebServerApplicationContext) context).getWebServer().getPort();
+    }
+
+    @AfterAll
+    static void stopServer() {
+        context.close();
+    }
+
+    @Test
+    @Order(0)
+    void testReactiveApi_servedByNetty() {
+        assertThat(context).isInstanceOf(ReactiveWebServerApplicationContext.class);
+        assertThat(((ReactiveWebServerApplicationContext) context).getWebServer()).isInstanceOf(NettyWebServer.class);
+        assertThat(context.getBeanNamesForType(Controller.class)).isEmpty();
+    }
+
+    @Test
+    @Order(1)
+    void testReactiveApi_createConfiguration() throws IOException, JSONException {
+        // GIVEN
+        String url = "http://localhost:" + port + "/test1";
+        // WHEN
+        HttpResponse response = httpClient.execute(withBody(new HttpPost(url), "Test Configuration 1", "test-1"));
+        ConfigurationResponseDto resource = objectMapper.readValue(response.getEntity().getContent(), ConfigurationResponseDto.class);
+        HttpResponse conflictResponse = httpClient.execute(withBody(new HttpPost(url), "Test Configuration 1", "test-1"));
+        ErrorDto conflict = objectMapper.readValue(conflictResponse.getEntity().getContent(), ErrorDto.class);
+        HttpResponse invalidResponse = httpClient.execute(withBody(new HttpPost("http://localhost:" + port + "/test2"), " ", "test-2"));
+        ErrorDto invalid = objectMapper.readValue(invalidResponse.getEntity().getContent(), ErrorDto.class);
+        // THEN
+        assertThat(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.CREATED.value());
+        assertThat(response.getFirstHeader(HttpHeaders.ETAG)).isNotNull();
+        assertThat(resource).isEqualTo(new ConfigurationResponseDto("test1", "Test Configuration 1", "test-1"));
+        assertThat(conflictResponse.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.CONFLICT.value());
+        assertThat(conflict.getError()).contains("ID test1 is already in use");
+        assertThat(invalidResponse.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST.value());
+        assertThat(invalid.getError()).isEqualTo("Submitted configuration parameters are not valid.");
+    }
+
+    @Test
+    @Order(2)
+    void testReactiveApi_applyBatch() throws IOException, JSONException {
+        // GIVEN
+        JSONArray operations = new JSONArray()
+                .put(new JSONObject().put("op", "create").put("id", "test2").put("name", "Test Configuration 2").put("value", "test-2"))
+                .put(new JSONObject().put("op", "create").put("id", "test3").put("name", "Test Configuration 3").put("value", "test-3"));
+        HttpPost request = new HttpPost("http://localhost:" + port + "/?atomic=true");
+        request.addHeader("content-type", "application/json");
+        request.setEntity(new StringEntity(operations.toString()));
+        // WHEN
+        HttpResponse response = httpClient.execute(request);
+        List<ConfigurationOperationResultDto> results = objectMapper.readerForListOf(ConfigurationOperationResultDto.class)
+                .readValue(response.getEntity().getContent());
+        // THEN
+        assertThat(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.OK.value());
+        assertThat(results).extracting(ConfigurationOperationResultDto::getStatus).containsExactly(201, 201);
+    }
+
+    @Test
+    @Order(3)
+    void testReactiveApi_retrieveConfiguration() throws IOException {
+        // GIVEN
+        String url = "http://localhost:" + port + "/test1";
+        // WHEN
+        HttpResponse response = httpClient.execute(new HttpGet(url));
+        ConfigurationResponseDto resource = objectMapper.readValue(response.getEntity().getContent(), ConfigurationResponseDto.class);
+        HttpGet conditional = new HttpGet(url);
+        conditional.addHeader(HttpHeaders.IF_NONE_MATCH, response.getFirstHeader(HttpHeaders.ETAG).getValue());
+        HttpResponse notModified = httpClient.execute(conditional);
+        HttpResponse missing = httpClient.execute(new HttpGet("http://localhost:" + port + "/testX"));
+        EntityUtils.consume(missing.getEntity());
+        // THEN
+        assertThat(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.OK.value());
+        assertThat(resource).isEqualTo(new ConfigurationResponseDto("test1", "Test Configuration 1", "test-1"));
+        assertThat(notModified.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED.value());
+        assertThat(missing.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND.value());
+    }
+
+    @Test
+    @Order(3)
+    void testReactiveApi_retrieveAll() throws IOException {
+        // GIVEN
+        String url = "http://localhost:" + port + "/";
+        // WHEN
+        HttpResponse response = httpClient.execute(new HttpGet(url));
+        String mimeType = ContentType.getOrDefault(response.getEntity()).getMimeType();
+        List<ConfigurationResponseDto> resources = objectMapper.readerForListOf(ConfigurationResponseDto.class)
+                .readValue(response.getEntity().getContent());
+        HttpGet conditional = new HttpGet(url);
+        conditional.addHeader(HttpHeaders.IF_NONE_MATCH, response.getFirstHeader(HttpHeaders.ETAG).getValue());
+        HttpResponse notModified = httpClient.execute(conditional);
+        // THEN
+        assertThat(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.OK.value());
+        assertThat(mimeType).isEqualTo("application/json");
+        assertThat(resources).extracting(ConfigurationResponseDto::getId).containsExactlyInAnyOrder("test1", "test2", "test3");
+        assertThat(notModified.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.NOT_MODIFIED.value());
+    }
+
+    @Test
+    @Order(3)
+    void testReactiveApi_retrieveQueries() throws IOException {
+        // GIVEN
+        String url = "http://localhost:" + port + "/";
+        // WHEN
+        HttpResponse lookupResponse = httpClient.execute(new HttpGet(url + "?ids=test1,testX"));
+        ConfigurationLookupResponseDto lookup = objectMapper.readValue(lookupResponse.getEntity().getContent(), ConfigurationLookupResponseDto.class);
+        HttpResponse prefixResponse = httpClient.execute(new HttpGet(url + "?prefix=test&limit=2"));
+        ConfigurationPageResponseDto prefixPage = objectMapper.readValue(prefixResponse.getEntity().getContent(), ConfigurationPageResponseDto.class);
+        HttpResponse nextResponse = httpClient.execute(new HttpGet(url + "?limit=2&cursor=" + prefixPage.getNext()));
+        ConfigurationPageResponseDto nextPage = objectMapper.readValue(nextResponse.getEntity().getContent(), ConfigurationPageResponseDto.class);
+        HttpResponse rangeResponse = httpClient.execute(new HttpGet(url + "?from=test2&to=test3"));
+        ConfigurationPageResponseDto rangePage = objectMapper.readValue(rangeResponse.getEntity().getContent(), ConfigurationPageResponseDto.class);
+        HttpResponse invalidResponse = httpClient.execute(new HttpGet(url + "?prefix=test&limit=none"));
+        ErrorDto invalid = objectMapper.readValue(invalidResponse.getEntity().getContent(), ErrorDto.class);
+        // THEN
+        assertThat(lookup.getConfigurations()).extracting(ConfigurationResponseDto::getId).containsExactly("test1");
+        assertThat(lookup.getMissing()).containsExactly("testX");
+        assertThat(prefixPage.getConfigurations()).extracting(ConfigurationResponseDto::getId).containsExactly("test1", "test2");
+        assertThat(nextPage.getConfigurations()).extracting(ConfigurationResponseDto::getId).containsExactly("test3");
+        assertThat(nextPage.getNext()).isNull();
+        assertThat(rangePage.getConfigurations()).extracting(ConfigurationResponseDto::getId).containsExactly("test2");
+        assertThat(invalidResponse.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST.value());
+        assertThat(invalid.getError()).startsWith("Submitted page size is not valid");
+    }
+
+    @Test
+    @Order(3)
+    void testReactiveApi_retrieveAllStreamed() throws IOException {
+        // GIVEN
+        HttpGet request = new HttpGet("http://localhost:" + port + "/");
+        request.addHeader(HttpHeaders.ACCEPT, "application/x-ndjson");
+        // WHEN
+        HttpResponse response = httpClient.execute(request);
+        String mimeType = ContentType.getOrDefault(response.getEntity()).getMimeType();
+        String[] lines = EntityUtils.toString(response.getEntity()).split("\n");
+        // THEN
+        assertThat(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.OK.value());
+        assertThat(mimeType).isEqualTo("application/x-ndjson");
+        assertThat(lines).hasSize(3);
+        assertThat(objectMapper.readValue(lines[2], ConfigurationResponseDto.class))
+                .isEqualTo(new ConfigurationResponseDto("test3", "Test Configuration 3", "test-3"));
+    }
+
+    @Test
+    @Order(3)
+    void testReactiveApi_retrieveAllStreamedInPages() throws IOException {
+        // GIVEN
+        HttpGet request = new HttpGet("http://localhost:" + port + "/?limit=2");
+        request.addHeader(HttpHeaders.ACCEPT, "application/x-ndjson");
+        // WHEN
+        HttpResponse response = httpClient.execute(request);
+        String[] lines = EntityUtils.toString(response.getEntity()).split("\n");
+        HttpGet nextRequest = new HttpGet("http://localhost:" + port + "/?cursor=" + response.getFirstHeader("Next-Cursor").getValue());
+        nextRequest.addHeader(HttpHeaders.ACCEPT, "application/x-ndjson");
+        HttpResponse nextResponse = httpClient.execute(nextRequest);
+        String[] nextLines = EntityUtils.toString(nextResponse.getEntity()).split("\n");
+        // THEN
+        assertThat(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.OK.value());
+        assertThat(lines).hasSize(2);
+        assertThat(nextResponse.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.OK.value());
+        assertThat(nextLines).hasSize(1);
+        assertThat(objectMapper.readValue(nextLines[0], ConfigurationResponseDto.class))
+                .isEqualTo(new ConfigurationResponseDto("test3", "Test Configuration 3", "test-3"));
+    }
+
+    @Test
+    @Order(3)
+    void testReactiveApi_retrieveError_combinedQueries() throws IOException {
+        // GIVEN
+        String url = "http://localhost:" + port + "/";
+        // WHEN
+        HttpResponse idsAndPrefix = httpClient.execute(new HttpGet(url + "?ids=test1&prefix=test"));
+        ErrorDto error = objectMapper.readValue(idsAndPrefix.getEntity().getContent(), ErrorDto.class);
+        HttpResponse sinceAndCursor = httpClient.execute(new HttpGet(url + "?since=&cursor=dGVzdDI"));
+        EntityUtils.consume(sinceAndCursor.getEntity());
+        HttpResponse watchAndIds = httpClient.execute(new HttpGet(url + "?watch&ids=test1"));
+        EntityUtils.consume(watchAndIds.getEntity());
+        // THEN
+        assertThat(idsAndPrefix.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST.value());
+        assertThat(error.getError()).isEqualTo("Submitted query parameters cannot be combined.");
+        assertThat(sinceAndCursor.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST.value());
+        assertThat(watchAndIds.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST.value());
+    }
+
+    @Test
+    @Order(4)
+    void testReactiveApi_watchReceivesChanges() throws IOException, JSONException {
+        // GIVEN
+        HttpGet watchRequest = new HttpGet("http://localhost:" + port + "/?watch");
+        watchRequest.addHeader(HttpHeaders.ACCEPT, "text/event-stream");
+        HttpResponse watchResponse = httpClient.execute(watchRequest);
+        BufferedReader events = new BufferedReader(new InputStreamReader(watchResponse.getEntity().getContent(), StandardCharsets.UTF_8));
+        try {
+            // WHEN
+            EntityUtils.consume(httpClient.execute(withBody(new HttpPut("http://localhost:" + port + "/test2"), "Test Configuration 2", "test-2a")).getEntity());
+            StringBuilder received = new StringBuilder();
+            String line;
+            while ((line = events.readLine()) != null && !line.startsWith("data:")) {
+                received.append(line).append('\n');
+            }
+            received.append(line);
+            // THEN
+            assertThat(watchResponse.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.OK.value());
+            assertThat(received.toString()).contains("event:updated").contains("\"value\":\"test-2a\"");
+        } finally {
+            watchRequest.abort();
+        }
+    }
+
+    @Test
+    @Order(5)
+    void testReactiveApi_deleteConfiguration() throws IOException {
+        // GIVEN
+        String url = "http://localhost:" + port + "/test3";
+        // WHEN
+        HttpResponse response = httpClient.execute(new HttpDelete(url));
+        EntityUtils.consume(response.getEntity());
+        HttpResponse missingResponse = httpClient.execute(new HttpDelete(url));
+        ErrorDto missing = objectMapper.readValue(missingResponse.getEntity().getContent(), ErrorDto.class);
+        // THEN
+        assertThat(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.OK.value());
+        assertThat(missingResponse.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND.value());
+        assertThat(missing.getError()).contains("No existing configuration for ID test3");
+    }
+
+    @Test
+    @Order(6)
+    void testReactiveApi_watchResumesAfterTheLastEventId() throws IOException, JSONException {
+        // GIVEN
+        HttpGet firstRequest = new HttpGet("http://localhost:" + port + "/?watch");
+        String lastEventId = null;
+        try {
+            BufferedReader events = new BufferedReader(new InputStreamReader(httpClient.execute(firstRequest).getEntity().getContent(), StandardCharsets.UTF_8));
+            EntityUtils.consume(httpClient.execute(withBody(new HttpPost("http://localhost:" + port + "/test4"), "Test Configuration 4", "test-4")).getEntity());
+            String line;
+            while ((line = events.readLine()) != null && !line.startsWith("data:")) {
+                if (line.startsWith("id:")) {
+                    lastEventId = line.substring("id:".length());
+                }
+            }
+        } finally {
+            firstRequest.abort();
+        }
+        EntityUtils.consume(httpClient.execute(withBody(new HttpPut("http://localhost:" + port + "/test4"), "Test Configuration 4", "test-4a")).getEntity());
+        // WHEN
+        HttpGet resumedRequest = new HttpGet("http://localhost:" + port + "/?watch");
+        resumedRequest.addHeader("Last-Event-ID", lastEventId);
+        try {
+            BufferedReader events = new BufferedReader(new InputStreamReader(httpClient.execute(resumedRequest).getEntity().getContent(), StandardCharsets.UTF_8));
+            StringBuilder received = new StringBuilder();
+            String line;
+            while ((line = events.readLine()) != null && !line.startsWith("data:")) {
+                received.append(line).append('\n');
+            }
+            received.append(line);
+            // THEN
+            assertThat(lastEventId).isNotNull();
+            assertThat(received.toString()).contains("event:updated").contains("\"value\":\"test-4a\"");
+        } finally {
+            resumedRequest.abort();
+        }
+    }
+}
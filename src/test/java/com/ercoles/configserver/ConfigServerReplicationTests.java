@@ -0,0 +1,252 @@
+package com.ercoles.configserver;
+
+import com.ercoles.configserver.dtos.ConfigurationChangesResponseDto;
+import com.ercoles.configserver.dtos.ConfigurationOperationResultDto;
+import com.ercoles.configserver.dtos.ConfigurationResponseDto;
+import com.ercoles.configserver.repositories.ConfigCacheFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.*;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.util.EntityUtils;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpStatus;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.ercoles.configserver.TestSupport.withBody;
+import static org.assertj.core.api.Assertions.assertThat;
+
+// a leader and two followers on localhost, each a whole application on a port of its own
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+public class ConfigServerReplicationTests {
+    private static final int LOG_SIZE = 16;
+
+    private static ConfigurableApplicationContext leader;
+    private static int leaderPort;
+    private static final List<ConfigurableApplicationContext> followers = new ArrayList<>();
+    private static final List<Integer> followerPorts = new ArrayList<>();
+
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper;
+
+    public ConfigServerReplicationTests() {
+        this.httpClient = HttpClientBuilder.create()
+                .setDefaultRequestConfig(RequestConfig.custom().setSocketTimeout(10_000).build())
+                .build();
+        this.objectMapper = new ObjectMapper();
+    }
+
+    @BeforeAll
+    static void startServers() {
+        leader = startLeader(0);
+        leaderPort = port(leader);
+        for (int i = 0; i < 2; i++) {
+            startFollower();
+        }
+    }
+
+    @AfterAll
+    static void stopServers() {
+        followers.forEach(ConfigurableApplicationContext::close);
+        leader.close();
+    }
+
+    @Test
+    @Order(1)
+    void testReplication_followersReceiveLeaderWrites() throws IOException, JSONException, InterruptedException {
+        // GIVEN
+        String url = "http://localhost:" + leaderPort + "/test1";
+        // WHEN
+        HttpResponse response = httpClient.execute(withBody(new HttpPost(url), "Test Configuration 1", "test-1"));
+        EntityUtils.consume(response.getEntity());
+        // THEN
+        assertThat(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.CREATED.value());
+        for (int port : followerPorts) {
+            assertThat(awaitConfiguration(port, "test1", "test-1")).isEqualTo(new ConfigurationResponseDto("test1", "Test Configuration 1", "test-1"));
+        }
+    }
+
+    @Test
+    @Order(2)
+    void testReplication_followerForwardsWritesAndReadsThemBack() throws IOException, JSONException {
+        // GIVEN
+        int follower = followerPorts.get(0);
+        // WHEN
+        HttpResponse created = httpClient.execute(withBody(new HttpPost("http://localhost:" + follower + "/test2"), "Test Configuration 2", "test-2"));
+        EntityUtils.consume(created.getEntity());
+        ConfigurationResponseDto readBack = getConfiguration(follower, "test2");
+        HttpResponse updated = httpClient.execute(withBody(new HttpPut("http://localhost:" + follower + "/test2"), "Test Configuration 2", "test-2a"));
+        EntityUtils.consume(updated.getEntity());
+        ConfigurationResponseDto updatedBack = getConfiguration(follower, "test2");
+        HttpResponse conflict = httpClient.execute(withBody(new HttpPost("http://localhost:" + follower + "/test1"), "Test Configuration 1", "test-1"));
+        EntityUtils.consume(conflict.getEntity());
+        // THEN
+        // every write answered by the follower is already in its copy, and on the leader
+        assertThat(created.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.CREATED.value());
+        assertThat(created.getFirstHeader("ETag")).isNotNull();
+        assertThat(readBack).isEqualTo(new ConfigurationResponseDto("test2", "Test Configuration 2", "test-2"));
+        assertThat(updated.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.OK.value());
+        assertThat(updatedBack.getValue()).isEqualTo("test-2a");
+        assertThat(getConfiguration(leaderPort, "test2").getValue()).isEqualTo("test-2a");
+        assertThat(conflict.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.CONFLICT.value());
+    }
+
+    @Test
+    @Order(3)
+    void testReplication_followerForwardsAtomicBatches() throws IOException, JSONException {
+        // GIVEN
+        int follower = followerPorts.get(1);
+        JSONArray operations = new JSONArray()
+                .put(new JSONObject().put("op", "create").put("id", "test3").put("name", "Test Configuration 3").put("value", "test-3"))
+                .put(new JSONObject().put("op", "delete").put("id", "test2"));
+        JSONArray failing = new JSONArray()
+                .put(new JSONObject().put("op", "create").put("id", "test4").put("name", "Test Configuration 4").put("value", "test-4"))
+                .put(new JSONObject().put("op", "update").put("id", "test2").put("name", "Test Configuration 2").put("value", "test-2b"));
+        // WHEN
+        HttpResponse applied = httpClient.execute(withBody(new HttpPost("http://localhost:" + follower + "/?atomic=true"), operations));
+        List<ConfigurationOperationResultDto> results = objectMapper.readerForListOf(ConfigurationOperationResultDto.class)
+                .readValue(applied.getEntity().getContent());
+        HttpResponse aborted = httpClient.execute(withBody(new HttpPost("http://localhost:" + follower + "/?atomic=true"), failing));
+        List<ConfigurationOperationResultDto> abortedResults = objectMapper.readerForListOf(ConfigurationOperationResultDto.class)
+                .readValue(aborted.getEntity().getContent());
+        // THEN
+        assertThat(applied.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.OK.value());
+        assertThat(results).extracting(ConfigurationOperationResultDto::getStatus).containsExactly(201, 200);
+        assertThat(getConfiguration(follower, "test3").getValue()).isEqualTo("test-3");
+        assertThat(getConfiguration(follower, "test2")).isNull();
+        assertThat(aborted.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND.value());
+        assertThat(abortedResults).extracting(ConfigurationOperationResultDto::getStatus).containsExactly(424, 404);
+        assertThat(getConfiguration(leaderPort, "test4")).isNull();
+    }
+
+    @Test
+    @Order(4)
+    void testReplication_newFollowerStartsFromSnapshot() throws IOException, JSONException {
+        // GIVEN
+        // more changes than the leader's log keeps, so only a snapshot has them all
+        for (int i = 0; i < LOG_SIZE * 2; i++) {
+            HttpResponse response = httpClient.execute(withBody(new HttpPost("http://localhost:" + leaderPort + "/bulk" + i), "Bulk " + i, "bulk-" + i));
+            EntityUtils.consume(response.getEntity());
+        }
+        // WHEN
+        int follower = startFollower();
+        // THEN
+        assertThat(getAll(follower)).containsExactlyInAnyOrderElementsOf(getAll(leaderPort));
+        assertThat(getConfiguration(follower, "bulk0").getValue()).isEqualTo("bulk-0");
+    }
+
+    @Test
+    @Order(5)
+    void testReplication_followerSyncsClients() throws IOException, JSONException, InterruptedException {
+        // GIVEN
+        int follower = followerPorts.get(0);
+        ConfigurationChangesResponseDto first = sync(follower, "");
+        // WHEN
+        HttpResponse response = httpClient.execute(withBody(new HttpPut("http://localhost:" + leaderPort + "/test1"), "Test Configuration 1", "synced"));
+        EntityUtils.consume(response.getEntity());
+        awaitConfiguration(follower, "test1", "synced");
+        ConfigurationChangesResponseDto next = sync(follower, first.getNext());
+        // THEN
+        assertThat(first.isResync()).isTrue();
+        assertThat(first.getConfigurations()).extracting(ConfigurationResponseDto::getId).contains("test1");
+        assertThat(next.isResync()).isFalse();
+        assertThat(next.getChanges()).extracting(change -> change.getConfiguration().getValue()).containsExactly("synced");
+    }
+
+    @Test
+    @Order(6)
+    void testReplication_followersStartOverWhenLeaderRestarts() throws IOException, JSONException, InterruptedException {
+        // GIVEN
+        int follower = followerPorts.get(0);
+        long listed = getListingVersion(follower);
+        leader.close();
+        // WHEN
+        // the new leader starts empty, with a log of another epoch
+        leader = startLeader(leaderPort);
+        HttpResponse response = httpClient.execute(withBody(new HttpPost("http://localhost:" + leaderPort + "/test5"), "Test Configuration 5", "test-5"));
+        EntityUtils.consume(response.getEntity());
+        // THEN
+        for (int port : followerPorts) {
+            assertThat(awaitConfiguration(port, "test5", "test-5").getName()).isEqualTo("Test Configuration 5");
+            assertThat(getAll(port)).containsExactly(new ConfigurationResponseDto("test5", "Test Configuration 5", "test-5"));
+        }
+        // fewer configurations, from a leader with fewer changes, yet a later listing
+        assertThat(getListingVersion(follower)).isGreaterThan(listed);
+    }
+
+    private static ConfigurableApplicationContext startLeader(int port) {
+        // as arguments, which take precedence over application.properties
+        return new SpringApplicationBuilder(ConfigServerApplication.class)
+                .run("--configserver.replication.role=leader", "--configserver.replication.log-size=" + LOG_SIZE,
+                        "--server.port=" + port);
+    }
+
+    private static int startFollower() {
+        ConfigurableApplicationContext follower = new SpringApplicationBuilder(ConfigServerApplication.class)
+                .run("--configserver.replication.role=follower", "--configserver.replication.leader-uri=http://localhost:" + leaderPort,
+                        "--server.port=0");
+        assertThat(follower.getBean(ConfigCacheFactory.class).isDurable()).isTrue();
+        followers.add(follower);
+        followerPorts.add(port(follower));
+        return port(follower);
+    }
+
+    private static int port(ConfigurableApplicationContext context) {
+        return ((WebServerApplicationContext) context).getWebServer().getPort();
+    }
+
+    // followers apply the leader's own writes a moment later
+    private ConfigurationResponseDto awaitConfiguration(int port, String id, String value) throws IOException, InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        ConfigurationResponseDto configuration = getConfiguration(port, id);
+        while ((configuration == null || !configuration.getValue().equals(value)) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+            configuration = getConfiguration(port, id);
+        }
+        return configuration;
+    }
+
+    private ConfigurationResponseDto getConfiguration(int port, String id) throws IOException {
+        HttpResponse response = httpClient.execute(new HttpGet("http://localhost:" + port + "/" + id));
+        if (response.getStatusLine().getStatusCode() == HttpStatus.NOT_FOUND.value()) {
+            EntityUtils.consume(response.getEntity());
+            return null;
+        }
+        return objectMapper.readValue(response.getEntity().getContent(), ConfigurationResponseDto.class);
+    }
+
+    private ConfigurationChangesResponseDto sync(int port, String since) throws IOException {
+        HttpResponse response = httpClient.execute(new HttpGet("http://localhost:" + port + "/?since=" + since));
+        assertThat(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.OK.value());
+        return objectMapper.readValue(response.getEntity().getContent(), ConfigurationChangesResponseDto.class);
+    }
+
+    private long getListingVersion(int port) throws IOException {
+        HttpResponse response = httpClient.execute(new HttpGet("http://localhost:" + port + "/"));
+        EntityUtils.consume(response.getEntity());
+        String eTag = response.getFirstHeader("ETag").getValue().replace("\"", "");
+        // past the epoch, and before the suffix of the representation
+        return Long.parseLong(eTag.substring(eTag.lastIndexOf(':') + 1).split("-")[0]);
+    }
+
+    private List<ConfigurationResponseDto> getAll(int port) throws IOException {
+        HttpResponse response = httpClient.execute(new HttpGet("http://localhost:" + port + "/"));
+        return objectMapper.readerForListOf(ConfigurationResponseDto.class).readValue(response.getEntity().getContent());
+    }
+}
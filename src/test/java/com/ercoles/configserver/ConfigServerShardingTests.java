@@ -0,0 +1,394 @@
+package com.ercoles.configserver;
+
+import com.ercoles.configserver.dtos.ConfigurationChangesResponseDto;
+import com.ercoles.configserver.dtos.ConfigurationOperationResultDto;
+import com.ercoles.configserver.dtos.ConfigurationResponseDto;
+import com.ercoles.configserver.repositories.ConfigCacheException;
+import com.ercoles.configserver.repositories.ConfigCacheFactory;
+import com.ercoles.configserver.repositories.ConfigChange;
+import com.ercoles.configserver.repositories.HashRing;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.*;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.util.EntityUtils;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.springframework.boot.autoconfigure.web.reactive.function.client.ClientHttpConnectorAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpStatus;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static com.ercoles.configserver.TestSupport.withBody;
+import static org.assertj.core.api.Assertions.assertThat;
+
+// a cluster of instances on localhost, each a whole application on a port of its own holding a share of the configurations
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+public class ConfigServerShardingTests {
+    private static final int CONFIGURATIONS = 60;
+    private static final int VIRTUAL_NODES = 128;
+
+    private static final List<ConfigurableApplicationContext> nodes = new ArrayList<>();
+
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper;
+
+    public ConfigServerShardingTests() {
+        this.httpClient = HttpClientBuilder.create()
+                .setDefaultRequestConfig(RequestConfig.custom().setSocketTimeout(10_000).build())
+                .build();
+        this.objectMapper = new ObjectMapper();
+    }
+
+    @BeforeAll
+    static void startCluster() {
+        for (int i = 0; i < 3; i++) {
+            startNode(false);
+        }
+    }
+
+    @AfterAll
+    static void stopCluster() {
+        nodes.forEach(ConfigurableApplicationContext::close);
+    }
+
+    @Test
+    @Order(1)
+    void testSharding_spreadsWritesAndServesThemFromAnyInstance() throws IOException, JSONException, ConfigCacheException {
+        // WHEN
+        // every write through the first instance, which forwards what is not its own
+        for (int i = 0; i < CONFIGURATIONS; i++) {
+            HttpResponse response = httpClient.execute(withBody(new HttpPost(url(0, "/shared" + i)), "Shared " + i, "shared-" + i));
+            EntityUtils.consume(response.getEntity());
+            assertThat(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.CREATED.value());
+        }
+        // THEN
+        assertSharesCoverEveryConfigurationOnce();
+        for (int node = 0; node < nodes.size(); node++) {
+            assertThat(getConfiguration(node, "shared7").getValue()).isEqualTo("shared-7");
+            assertThat(getAll(node)).hasSize(CONFIGURATIONS);
+        }
+        // the same version whichever instance answers, tagged with the epoch of that instance
+        HttpResponse first = httpClient.execute(new HttpGet(url(1, "/shared3")));
+        EntityUtils.consume(first.getEntity());
+        HttpResponse second = httpClient.execute(new HttpGet(url(2, "/shared3")));
+        EntityUtils.consume(second.getEntity());
+        assertThat(getVersion(1, "shared3")).isEqualTo(getVersion(2, "shared3"));
+        assertThat(first.getFirstHeader("ETag").getValue())
+                .startsWith("\"" + nodes.get(1).getBean(ConfigCacheFactory.class).getEpoch() + ":")
+                .isNotEqualTo(second.getFirstHeader("ETag").getValue());
+    }
+
+    @Test
+    @Order(2)
+    void testSharding_forwardsUpdatesDeletesAndConflicts() throws IOException, JSONException {
+        // WHEN
+        HttpResponse updated = httpClient.execute(withBody(new HttpPut(url(1, "/shared1")), "Shared 1", "shared-1a"));
+        EntityUtils.consume(updated.getEntity());
+        HttpResponse deleted = httpClient.execute(new HttpDelete(url(2, "/shared2")));
+        EntityUtils.consume(deleted.getEntity());
+        HttpResponse conflict = httpClient.execute(withBody(new HttpPost(url(2, "/shared3")), "Shared 3", "shared-3"));
+        EntityUtils.consume(conflict.getEntity());
+        HttpResponse missing = httpClient.execute(new HttpGet(url(1, "/shared2")));
+        EntityUtils.consume(missing.getEntity());
+        // THEN
+        assertThat(updated.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.OK.value());
+        assertThat(getConfiguration(0, "shared1").getValue()).isEqualTo("shared-1a");
+        assertThat(deleted.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.OK.value());
+        assertThat(missing.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND.value());
+        assertThat(conflict.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.CONFLICT.value());
+        HttpResponse restored = httpClient.execute(withBody(new HttpPost(url(0, "/shared2")), "Shared 2", "shared-2"));
+        EntityUtils.consume(restored.getEntity());
+    }
+
+    @Test
+    @Order(3)
+    void testSharding_gathersLookupsAndPagesFromEveryInstance() throws IOException {
+        // WHEN
+        JsonNode lookup = objectMapper.readTree(httpClient.execute(new HttpGet(url(1, "/?ids=shared0,shared5,shared9,nothere")))
+                .getEntity().getContent());
+        List<String> paged = new ArrayList<>();
+        String cursor = null;
+        do {
+            JsonNode page = objectMapper.readTree(httpClient.execute(new HttpGet(url(2, "/?limit=7" + (cursor != null ? "&cursor=" + cursor : ""))))
+                    .getEntity().getContent());
+            page.get("configurations").forEach(configuration -> paged.add(configuration.get("id").asText()));
+            cursor = page.hasNonNull("next") ? page.get("next").asText() : null;
+        } while (cursor != null);
+        // THEN
+        assertThat(lookup.get("configurations")).extracting(configuration -> configuration.get("id").asText())
+                .containsExactly("shared0", "shared5", "shared9");
+        assertThat(lookup.get("missing")).extracting(JsonNode::asText).containsExactly("nothere");
+        assertThat(paged).hasSize(CONFIGURATIONS).isSorted();
+    }
+
+    @Test
+    @Order(4)
+    void testSharding_appliesAtomicBatchesHeldByOneInstance() throws IOException, JSONException {
+        // GIVEN
+        List<String> nodeUris = members();
+        HashRing ring = new HashRing(nodeUris, VIRTUAL_NODES);
+        List<String> sameOwner = new ArrayList<>();
+        String otherOwner = null;
+        for (int i = 0; i < CONFIGURATIONS; i++) {
+            String owner = ring.ownerOf("shared" + i);
+            if (owner.equals(ring.ownerOf("shared0"))) {
+                sameOwner.add("shared" + i);
+            } else if (otherOwner == null) {
+                otherOwner = "shared" + i;
+            }
+        }
+        JSONArray operations = new JSONArray()
+                .put(new JSONObject().put("op", "update").put("id", sameOwner.get(0)).put("name", "Shared").put("value", "atomic"))
+                .put(new JSONObject().put("op", "update").put("id", sameOwner.get(1)).put("name", "Shared").put("value", "atomic"));
+        JSONArray spread = new JSONArray()
+                .put(new JSONObject().put("op", "update").put("id", sameOwner.get(0)).put("name", "Shared").put("value", "spread"))
+                .put(new JSONObject().put("op", "update").put("id", otherOwner).put("name", "Shared").put("value", "spread"));
+        // WHEN
+        HttpResponse applied = httpClient.execute(withBody(new HttpPost(url(1, "/?atomic=true")), operations));
+        List<ConfigurationOperationResultDto> results = objectMapper.readerForListOf(ConfigurationOperationResultDto.class)
+                .readValue(applied.getEntity().getContent());
+        HttpResponse rejected = httpClient.execute(withBody(new HttpPost(url(1, "/?atomic=true")), spread));
+        List<ConfigurationOperationResultDto> rejectedResults = objectMapper.readerForListOf(ConfigurationOperationResultDto.class)
+                .readValue(rejected.getEntity().getContent());
+        // THEN
+        assertThat(applied.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.OK.value());
+        assertThat(results).extracting(ConfigurationOperationResultDto::getStatus).containsExactly(200, 200);
+        assertThat(getConfiguration(2, sameOwner.get(1)).getValue()).isEqualTo("atomic");
+        assertThat(rejected.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.UNPROCESSABLE_ENTITY.value());
+        assertThat(rejectedResults).extracting(ConfigurationOperationResultDto::getStatus).containsExactly(422, 422);
+        assertThat(getConfiguration(2, otherOwner).getValue()).isNotEqualTo("spread");
+    }
+
+    @Test
+    @Order(5)
+    void testSharding_tellsListenersOfChangesOnOtherInstances() throws IOException, JSONException, InterruptedException {
+        // GIVEN
+        HashRing ring = new HashRing(members(), VIRTUAL_NODES);
+        String listening = "http://localhost:" + port(nodes.get(2));
+        String id = null;
+        for (int i = 0; id == null; i++) {
+            if (!ring.ownerOf("shared" + i).equals(listening)) {
+                id = "shared" + i;
+            }
+        }
+        List<ConfigChange> seen = new CopyOnWriteArrayList<>();
+        nodes.get(2).getBean(ConfigCacheFactory.class).getConfigCache().addChangeListener(seen::add);
+        // WHEN
+        HttpResponse updated = httpClient.execute(withBody(new HttpPut(url(0, "/" + id)), "Shared", "told"));
+        EntityUtils.consume(updated.getEntity());
+        // THEN
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (seen.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        assertThat(seen).extracting(change -> change.getConfiguration().getId()).containsExactly(id);
+        assertThat(seen.get(0).getType()).isEqualTo(ConfigChange.Type.UPDATED);
+        assertThat(seen.get(0).getConfiguration().getValue()).isEqualTo("told");
+        assertThat(seen.get(0).getConfiguration().getVersion()).isEqualTo(getVersion(2, id));
+    }
+
+    @Test
+    @Order(6)
+    void testSharding_syncsClientsWithTheWholeCluster() throws IOException, JSONException, InterruptedException {
+        // GIVEN
+        HashRing ring = new HashRing(members(), VIRTUAL_NODES);
+        String syncing = "http://localhost:" + port(nodes.get(1));
+        String id = null;
+        for (int i = 0; id == null; i++) {
+            if (!ring.ownerOf("shared" + i).equals(syncing)) {
+                id = "shared" + i;
+            }
+        }
+        ConfigurationChangesResponseDto first = sync(1, "");
+        // WHEN
+        HttpResponse updated = httpClient.execute(withBody(new HttpPut(url(0, "/" + id)), "Shared", "synced"));
+        EntityUtils.consume(updated.getEntity());
+        // THEN
+        assertThat(first.isResync()).isTrue();
+        assertThat(first.getConfigurations()).hasSize(CONFIGURATIONS);
+        // the change reaches the syncing instance a moment later
+        long deadline = System.currentTimeMillis() + 10_000;
+        ConfigurationChangesResponseDto next = sync(1, first.getNext());
+        while (next.getChanges().isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+            next = sync(1, first.getNext());
+        }
+        assertThat(next.getChanges()).extracting(change -> change.getConfiguration().getId()).containsExactly(id);
+        assertThat(next.getChanges().get(0).getConfiguration().getValue()).isEqualTo("synced");
+    }
+
+    @Test
+    @Order(7)
+    void testSharding_newInstanceTakesItsShareOver() throws IOException, ConfigCacheException {
+        // GIVEN
+        List<ConfigurationResponseDto> before = getAll(0);
+        Map<String, Long> versions = versions(0);
+        long listed = getVersion(0, "");
+        // WHEN
+        // on the reactive stack, which shares a cluster with the servlet one
+        startNode(true);
+        // THEN
+        assertThat(members()).hasSize(4);
+        // the configurations that moved kept their versions
+        assertThat(versions(3)).isEqualTo(versions);
+        // the listing has a new version, though the same configurations
+        assertThat(getVersion(0, "")).isGreaterThan(listed);
+        assertThat(nodes.get(3).getBean(ConfigCacheFactory.class).getShard().getAllLocal()).isNotEmpty();
+        assertSharesCoverEveryConfigurationOnce();
+        for (int node = 0; node < nodes.size(); node++) {
+            assertThat(getAll(node)).containsExactlyInAnyOrderElementsOf(before);
+        }
+    }
+
+    @Test
+    @Order(8)
+    void testSharding_leavingInstanceHandsItsShareOver() throws IOException, ConfigCacheException {
+        // GIVEN
+        List<ConfigurationResponseDto> before = getAll(0);
+        long listed = getVersion(0, "");
+        // WHEN
+        nodes.remove(1).close();
+        // THEN
+        assertThat(members()).hasSize(3);
+        assertSharesCoverEveryConfigurationOnce();
+        for (int node = 0; node < nodes.size(); node++) {
+            assertThat(getAll(node)).containsExactlyInAnyOrderElementsOf(before);
+            assertThat(getConfiguration(node, "shared11").getValue()).isEqualTo("shared-11");
+        }
+        assertThat(getVersion(0, "")).isGreaterThan(listed);
+    }
+
+    @Test
+    @Order(9)
+    void testSharding_reportsOperationsOnAnUnreachableInstance() throws IOException, JSONException {
+        // GIVEN
+        // the instance stops answering without leaving the cluster
+        ConfigurableApplicationContext lost = nodes.get(nodes.size() - 1);
+        String lostUri = "http://localhost:" + port(lost);
+        String self = "http://localhost:" + port(nodes.get(0));
+        HashRing ring = new HashRing(members(), VIRTUAL_NODES);
+        String unreachable = null;
+        String held = null;
+        for (int i = 0; i < CONFIGURATIONS; i++) {
+            String owner = ring.ownerOf("shared" + i);
+            if (owner.equals(lostUri) && unreachable == null) {
+                unreachable = "shared" + i;
+            } else if (owner.equals(self) && held == null) {
+                held = "shared" + i;
+            }
+        }
+        ((WebServerApplicationContext) lost).getWebServer().stop();
+        JSONArray operations = new JSONArray()
+                .put(new JSONObject().put("op", "update").put("id", unreachable).put("name", "Shared").put("value", "lost"))
+                .put(new JSONObject().put("op", "update").put("id", held).put("name", "Shared").put("value", "kept"));
+        // WHEN
+        HttpResponse applied = httpClient.execute(withBody(new HttpPost(url(0, "/")), operations));
+        List<ConfigurationOperationResultDto> results = objectMapper.readerForListOf(ConfigurationOperationResultDto.class)
+                .readValue(applied.getEntity().getContent());
+        HttpResponse single = httpClient.execute(withBody(new HttpPut(url(0, "/" + unreachable)), "Shared", "lost"));
+        EntityUtils.consume(single.getEntity());
+        // THEN
+        assertThat(applied.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.OK.value());
+        assertThat(results).extracting(ConfigurationOperationResultDto::getStatus).containsExactly(503, 200);
+        assertThat(getConfiguration(0, held).getValue()).isEqualTo("kept");
+        assertThat(single.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.SERVICE_UNAVAILABLE.value());
+    }
+
+    private static void startNode(boolean reactive) {
+        // as arguments, which take precedence over application.properties
+        String seed = nodes.isEmpty() ? "" : "http://localhost:" + port(nodes.get(0));
+        nodes.add(new SpringApplicationBuilder(ConfigServerApplication.class)
+                .run("--configserver.sharding.enabled=true", "--configserver.sharding.seed-uri=" + seed,
+                        "--configserver.sharding.virtual-nodes=" + VIRTUAL_NODES, "--server.port=0",
+                        "--spring.main.web-application-type=" + (reactive ? "reactive" : "servlet"),
+                        // a closing context disposes the Reactor Netty resources of the whole JVM, which the reactive
+                        // instance serves on; the servlet ones don't need them
+                        reactive ? "" : "--spring.autoconfigure.exclude=" + ClientHttpConnectorAutoConfiguration.class.getName()));
+    }
+
+    private static int port(ConfigurableApplicationContext context) {
+        return ((WebServerApplicationContext) context).getWebServer().getPort();
+    }
+
+    private static String url(int node, String path) {
+        return "http://localhost:" + port(nodes.get(node)) + path;
+    }
+
+    // every configuration is held by exactly one instance, the one the hash ring gives
+    private void assertSharesCoverEveryConfigurationOnce() throws IOException, ConfigCacheException {
+        HashRing ring = new HashRing(members(), VIRTUAL_NODES);
+        Set<String> held = new HashSet<>();
+        for (ConfigurableApplicationContext node : nodes) {
+            String self = "http://localhost:" + port(node);
+            for (ConfigurationResponseDto configuration : node.getBean(ConfigCacheFactory.class).getShard().getAllLocal()) {
+                assertThat(held.add(configuration.getId())).isTrue();
+                assertThat(ring.ownerOf(configuration.getId())).isEqualTo(self);
+            }
+        }
+        assertThat(held).hasSize(CONFIGURATIONS);
+    }
+
+    private long getVersion(int node, String id) throws IOException {
+        HttpResponse response = httpClient.execute(new HttpGet(url(node, "/" + id)));
+        EntityUtils.consume(response.getEntity());
+        String eTag = response.getFirstHeader("ETag").getValue().replace("\"", "");
+        // past the epoch, and before the suffix of the representation
+        return Long.parseLong(eTag.substring(eTag.lastIndexOf(':') + 1).split("-")[0]);
+    }
+
+    private ConfigurationChangesResponseDto sync(int node, String since) throws IOException {
+        HttpResponse response = httpClient.execute(new HttpGet(url(node, "/?since=" + since)));
+        assertThat(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.OK.value());
+        return objectMapper.readValue(response.getEntity().getContent(), ConfigurationChangesResponseDto.class);
+    }
+
+    private Map<String, Long> versions(int node) throws IOException {
+        Map<String, Long> versions = new HashMap<>();
+        for (int i = 0; i < CONFIGURATIONS; i++) {
+            versions.put("shared" + i, getVersion(node, "shared" + i));
+        }
+        return versions;
+    }
+
+    private List<String> members() throws IOException {
+        JsonNode members = objectMapper.readTree(httpClient.execute(new HttpGet(url(0, "/shard/members"))).getEntity().getContent());
+        List<String> uris = new ArrayList<>();
+        members.get("members").forEach(member -> uris.add(member.asText()));
+        return uris;
+    }
+
+    private ConfigurationResponseDto getConfiguration(int node, String id) throws IOException {
+        HttpResponse response = httpClient.execute(new HttpGet(url(node, "/" + id)));
+        if (response.getStatusLine().getStatusCode() == HttpStatus.NOT_FOUND.value()) {
+            EntityUtils.consume(response.getEntity());
+            return null;
+        }
+        return objectMapper.readValue(response.getEntity().getContent(), ConfigurationResponseDto.class);
+    }
+
+    private List<ConfigurationResponseDto> getAll(int node) throws IOException {
+        HttpResponse response = httpClient.execute(new HttpGet(url(node, "/")));
+        return objectMapper.readerForListOf(ConfigurationResponseDto.class).readValue(response.getEntity().getContent());
+    }
+}
@@ -0,0 +1,177 @@
+package com.ercoles.configserver;
+
+import com.ercoles.configserver.dtos.ConfigurationChangeDto;
+import com.ercoles.configserver.dtos.ConfigurationChangesResponseDto;
+import com.ercoles.configserver.dtos.ConfigurationResponseDto;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.util.EntityUtils;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.http.HttpStatus;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+// delta syncs, from a first full listing through the changes since a cursor, to a start over once the client has
+// fallen behind the change log, on both web stacks
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+public class ConfigServerSyncTests {
+    private static ConfigurableApplicationContext servlet;
+    private static ConfigurableApplicationContext reactive;
+    // the cursor each stack last answered with
+    private static final Map<String, String> cursors = new HashMap<>();
+
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper;
+
+    public ConfigServerSyncTests() {
+        this.httpClient = HttpClientBuilder.create()
+                .setDefaultRequestConfig(RequestConfig.custom().setSocketTimeout(10_000).build())
+                .build();
+        this.objectMapper = new ObjectMapper();
+    }
+
+    @BeforeAll
+    static void startServers() {
+        // as arguments, which take precedence over application.properties
+        servlet = new SpringApplicationBuilder(ConfigServerApplication.class)
+                .run("--server.port=0", "--configserver.sync.log-size=3");
+        reactive = new SpringApplicationBuilder(ConfigServerApplication.class)
+                .run("--spring.main.web-application-type=reactive", "--server.port=0", "--configserver.sync.log-size=3");
+    }
+
+    @AfterAll
+    static void stopServers() {
+        servlet.close();
+        reactive.close();
+    }
+
+    @Test
+    @Order(1)
+    void testSync_startsWithEveryConfiguration() throws IOException {
+        for (String baseUrl : baseUrls()) {
+            // GIVEN
+            create(baseUrl, "test1", "test-1");
+            // WHEN
+            ConfigurationChangesResponseDto sync = sync(baseUrl, "");
+            // THEN
+            assertThat(sync.isResync()).isTrue();
+            assertThat(sync.getChanges()).isNull();
+            assertThat(sync.getConfigurations()).containsExactly(new ConfigurationResponseDto("test1", "Test Configuration", "test-1"));
+            assertThat(sync.getNext()).isNotEmpty();
+            cursors.put(baseUrl, sync.getNext());
+        }
+    }
+
+    @Test
+    @Order(2)
+    void testSync_returnsTheChangesSinceTheCursor() throws IOException {
+        for (String baseUrl : baseUrls()) {
+            // GIVEN
+            create(baseUrl, "test2", "test-2");
+            update(baseUrl, "test1", "test-1a");
+            // WHEN
+            ConfigurationChangesResponseDto first = sync(baseUrl, cursors.get(baseUrl) + "&limit=1");
+            ConfigurationChangesResponseDto second = sync(baseUrl, first.getNext());
+            ConfigurationChangesResponseDto none = sync(baseUrl, second.getNext());
+            // THEN
+            assertThat(first.isResync()).isFalse();
+            assertThat(first.getConfigurations()).isNull();
+            assertThat(first.getChanges()).extracting(ConfigurationChangeDto::getType, change -> change.getConfiguration().getValue())
+                    .containsExactly(tuple("created", "test-2"));
+            assertThat(second.getChanges()).extracting(ConfigurationChangeDto::getType, change -> change.getConfiguration().getValue())
+                    .containsExactly(tuple("updated", "test-1a"));
+            assertThat(second.getChanges().get(0).getSequence()).isGreaterThan(first.getChanges().get(0).getSequence());
+            assertThat(none.isResync()).isFalse();
+            assertThat(none.getChanges()).isEmpty();
+            assertThat(none.getNext()).isEqualTo(second.getNext());
+            cursors.put(baseUrl, none.getNext());
+        }
+    }
+
+    @Test
+    @Order(3)
+    void testSync_startsOverOnceBehindTheLog() throws IOException {
+        for (String baseUrl : baseUrls()) {
+            // GIVEN
+            String cursor = cursors.get(baseUrl);
+            EntityUtils.consume(httpClient.execute(new HttpDelete(baseUrl + "test2")).getEntity());
+            ConfigurationChangesResponseDto deleted = sync(baseUrl, cursor);
+            for (int i = 3; i < 7; i++) {
+                create(baseUrl, "test" + i, "test-" + i);
+            }
+            // WHEN
+            ConfigurationChangesResponseDto behind = sync(baseUrl, cursor);
+            // THEN
+            assertThat(deleted.getChanges()).extracting(ConfigurationChangeDto::getType).containsExactly("deleted");
+            assertThat(deleted.getChanges().get(0).getConfiguration().getId()).isEqualTo("test2");
+            assertThat(behind.isResync()).isTrue();
+            assertThat(behind.getConfigurations()).extracting(ConfigurationResponseDto::getId)
+                    .containsExactlyInAnyOrder("test1", "test3", "test4", "test5", "test6");
+            assertThat(sync(baseUrl, behind.getNext()).getChanges()).isEmpty();
+        }
+    }
+
+    @Test
+    @Order(4)
+    void testSync_rejectsInvalidCursors() throws IOException {
+        for (String baseUrl : baseUrls()) {
+            // WHEN
+            HttpResponse malformed = httpClient.execute(new HttpGet(baseUrl + "?since=not-a-cursor"));
+            EntityUtils.consume(malformed.getEntity());
+            HttpResponse tooLarge = httpClient.execute(new HttpGet(baseUrl + "?since=&limit=100000"));
+            EntityUtils.consume(tooLarge.getEntity());
+            // THEN
+            assertThat(malformed.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST.value());
+            assertThat(tooLarge.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST.value());
+        }
+    }
+
+    private ConfigurationChangesResponseDto sync(String baseUrl, String since) throws IOException {
+        HttpResponse response = httpClient.execute(new HttpGet(baseUrl + "?since=" + since));
+        assertThat(response.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.OK.value());
+        return objectMapper.readValue(response.getEntity().getContent(), ConfigurationChangesResponseDto.class);
+    }
+
+    private void create(String baseUrl, String configId, String value) throws IOException {
+        HttpPost request = new HttpPost(baseUrl + configId);
+        request.setEntity(new StringEntity("{\"name\": \"Test Configuration\", \"value\": \"" + value + "\"}", ContentType.APPLICATION_JSON));
+        EntityUtils.consume(httpClient.execute(request).getEntity());
+    }
+
+    private void update(String baseUrl, String configId, String value) throws IOException {
+        HttpPut request = new HttpPut(baseUrl + configId);
+        request.setEntity(new StringEntity("{\"name\": \"Test Configuration\", \"value\": \"" + value + "\"}", ContentType.APPLICATION_JSON));
+        EntityUtils.consume(httpClient.execute(request).getEntity());
+    }
+
+    private static List<String> baseUrls() {
+        return List.of(baseUrl(servlet), baseUrl(reactive));
+    }
+
+    private static String baseUrl(ConfigurableApplicationContext context) {
+        return "http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort() + "/";
+    }
+}
@@ -0,0 +1,72 @@
+package com.ercoles.configserver;
+
+import com.ercoles.configserver.dtos.ConfigurationResponseDto;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.util.EntityUtils;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.boot.web.embedded.tomcat.TomcatWebServer;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.http.HttpStatus;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = "configserver.threads.virtual=true")
+public class ConfigServerVirtualThreadTests {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private ServletWebServerApplicationContext context;
+
+    private final HttpClient httpClient = HttpClientBuilder.create().build();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void testVirtualThreads_runRequests() {
+        // GIVEN
+        Executor executor = ((TomcatWebServer) context.getWebServer()).getTomcat().getConnector().getProtocolHandler().getExecutor();
+        CompletableFuture<Boolean> virtual = new CompletableFuture<>();
+        // WHEN
+        executor.execute(() -> virtual.complete(Thread.currentThread().isVirtual()));
+        // THEN
+        assertThat(virtual.join()).isTrue();
+    }
+
+    @Test
+    void testVirtualThreads_serveConfigurations() throws IOException, JSONException {
+        // GIVEN
+        HttpPost create = new HttpPost("http://localhost:" + port + "/test-virtual");
+        create.addHeader("content-type", "application/json");
+        create.setEntity(new StringEntity(new JSONObject().put("name", "Test Virtual").put("value", "test-virtual").toString()));
+        HttpGet stream = new HttpGet("http://localhost:" + port + "/");
+        stream.addHeader(HttpHeaders.ACCEPT, "application/x-ndjson");
+        // WHEN
+        HttpResponse created = httpClient.execute(create);
+        EntityUtils.consume(created.getEntity());
+        HttpResponse streamed = httpClient.execute(stream);
+        String[] lines = EntityUtils.toString(streamed.getEntity()).split("\n");
+        // THEN
+        assertThat(created.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.CREATED.value());
+        assertThat(streamed.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.OK.value());
+        assertThat(lines).extracting(line -> objectMapper.readValue(line, ConfigurationResponseDto.class))
+                .contains(new ConfigurationResponseDto("test-virtual", "Test Virtual", "test-virtual"));
+    }
+}
@@ -1,7 +1,9 @@
 package com.ercoles.configserver;
 
 import com.ercoles.configserver.dtos.ConfigurationResponseDto;
-import com.ercoles.configserver.repositories.ConfigCacheException;
+import com.ercoles.configserver.repositories.ConfigCacheResult;
+import com.ercoles.configserver.repositories.ConfigPage;
+import com.ercoles.configserver.services.ConfigIterator;
 import com.ercoles.configserver.services.ConfigService;
 import com.ercoles.configserver.services.ConfigServiceException;
 import org.junit.jupiter.api.MethodOrderer;
@@ -11,6 +13,7 @@ import org.junit.jupiter.api.TestMethodOrder;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -43,7 +46,7 @@ public class ConfigServiceTests {
         String configName1 = "Test Configuration 1";
         String configValue1 = "test-1";
         // WHEN
-        ConfigurationResponseDto testConfiguration1 = configService.createConfiguration(configId1, configName1, configValue1);
+        ConfigurationResponseDto testConfiguration1 = configService.createConfiguration(configId1, configName1, configValue1).getConfiguration();
         List<ConfigurationResponseDto> configurations = configService.getAll();
         // THEN
         assertThat(configurations).hasSize(1);
@@ -55,7 +58,7 @@ public class ConfigServiceTests {
         String configName2 = "Test Configuration 2";
         String configValue2 = "test-2";
         // WHEN
-        ConfigurationResponseDto testConfiguration2 = configService.createConfiguration(configId2, configName2, configValue2);
+        ConfigurationResponseDto testConfiguration2 = configService.createConfiguration(configId2, configName2, configValue2).getConfiguration();
         configurations = configService.getAll();
         // THEN
         assertThat(configurations).hasSize(2);
@@ -83,17 +86,16 @@ public class ConfigServiceTests {
 
     @Test
     @Order(3)
-    void testConfigService_createConfigurationException_configurationAlreadyExists() {
+    void testConfigService_createConfigurationConflict_configurationAlreadyExists() throws ConfigServiceException {
         // GIVEN
         String configId = "test1";
         String configName = "Test Exception";
         String configValue = "test-exception";
         // WHEN
-        Throwable thrown = catchThrowable(() -> configService.createConfiguration(configId, configName, configValue));
+        ConfigCacheResult result = configService.createConfiguration(configId, configName, configValue);
         // THEN
-        assertThat(thrown).isInstanceOf(ConfigServiceException.class)
-                .hasCauseInstanceOf(ConfigCacheException.class)
-                .hasMessage("Error creating new configuration.");
+        assertThat(result.getOutcome()).isEqualTo(ConfigCacheResult.Outcome.CONFLICT);
+        assertThat(result.getConfiguration()).isNull();
     }
 
     @Test
@@ -109,8 +111,8 @@ public class ConfigServiceTests {
         String configValue2 = "test-2";
         ConfigurationResponseDto testConfiguration2 = new ConfigurationResponseDto(configId2, configName2, configValue2);
         // WHEN
-        ConfigurationResponseDto storedConfiguration1 = configService.getConfiguration(configId1);
-        ConfigurationResponseDto storedConfiguration2 = configService.getConfiguration(configId2);
+        ConfigurationResponseDto storedConfiguration1 = configService.getConfiguration(configId1).getConfiguration();
+        ConfigurationResponseDto storedConfiguration2 = configService.getConfiguration(configId2).getConfiguration();
         // THEN
         assertThat(storedConfiguration1).isInstanceOf(ConfigurationResponseDto.class);
         assertThat(storedConfiguration1).isEqualTo(testConfiguration1);
@@ -118,17 +120,47 @@ public class ConfigServiceTests {
         assertThat(storedConfiguration2).isEqualTo(testConfiguration2);
     }
 
+    @Test
+    @Order(4)
+    void testConfigService_retrieveConfigurationsByPrefix() throws ConfigServiceException {
+        // GIVEN
+        String prefix = "test";
+        // WHEN
+        ConfigPage page = configService.getConfigurationsByPrefix(prefix, null, 10);
+        ConfigPage resumed = configService.getConfigurationsByPrefix(prefix, "test2", 10);
+        ConfigPage other = configService.getConfigurationsByPrefix("test1x", null, 10);
+        // THEN
+        assertThat(page.getConfigurations()).extracting(ConfigurationResponseDto::getId).containsExactly("test1", "test2");
+        assertThat(page.getNext()).isNull();
+        assertThat(resumed.getConfigurations()).extracting(ConfigurationResponseDto::getId).containsExactly("test2");
+        assertThat(other.getConfigurations()).isEmpty();
+    }
+
+    @Test
+    @Order(4)
+    void testConfigService_iterateConfigurations() throws ConfigServiceException {
+        // GIVEN
+        ConfigIterator configurations = configService.iterateConfigurations(1);
+        List<String> ids = new ArrayList<>();
+        // WHEN
+        while (configurations.hasNext()) {
+            ids.add(configurations.next().getId());
+        }
+        // THEN
+        assertThat(ids).containsExactly("test1", "test2");
+        assertThat(configurations.hasNext()).isFalse();
+    }
+
     @Test
     @Order(5)
-    void testConfigService_retrieveConfigurationException() {
+    void testConfigService_retrieveConfigurationNotFound() throws ConfigServiceException {
         // GIVEN
         String configId = "test-exception";
         // WHEN
-        Throwable thrown = catchThrowable(() -> configService.getConfiguration(configId));
+        ConfigCacheResult result = configService.getConfiguration(configId);
         // THEN
-        assertThat(thrown).isInstanceOf(ConfigServiceException.class)
-                .hasCauseInstanceOf(ConfigCacheException.class)
-                .hasMessage("Error retrieving configuration.");
+        assertThat(result.getOutcome()).isEqualTo(ConfigCacheResult.Outcome.NOT_FOUND);
+        assertThat(result.getConfiguration()).isNull();
     }
 
     @Test
@@ -139,24 +171,23 @@ public class ConfigServiceTests {
         String configName1 = "Test Configuration 1";
         String configValue1Updated = "test-1a";
         // WHEN
-        ConfigurationResponseDto testConfigurationUpdated = configService.updateConfiguration(configId1, configName1, configValue1Updated);
+        ConfigurationResponseDto testConfigurationUpdated = configService.updateConfiguration(configId1, configName1, configValue1Updated).getConfiguration();
         // THEN
         assertThat(testConfigurationUpdated.getValue()).isEqualTo(configValue1Updated);
     }
 
     @Test
     @Order(7)
-    void testConfigService_updateConfigurationException() {
+    void testConfigService_updateConfigurationNotFound() throws ConfigServiceException {
         // GIVEN
         String configId = "test-exception";
         String configName = "Test Exception";
         String configValue = "test-1ex";
         // WHEN
-        Throwable thrown = catchThrowable(() -> configService.updateConfiguration(configId, configName, configValue));
+        ConfigCacheResult result = configService.updateConfiguration(configId, configName, configValue);
         // THEN
-        assertThat(thrown).isInstanceOf(ConfigServiceException.class)
-                .hasCauseInstanceOf(ConfigCacheException.class)
-                .hasMessage("Error updating configuration.");
+        assertThat(result.getOutcome()).isEqualTo(ConfigCacheResult.Outcome.NOT_FOUND);
+        assertThat(result.getConfiguration()).isNull();
     }
 
     @Test
@@ -186,7 +217,7 @@ public class ConfigServiceTests {
         // GIVEN
         String configId2 = "test2";
         // WHEN
-        ConfigurationResponseDto deletedConfiguration2 = configService.deleteConfiguration(configId2);
+        ConfigurationResponseDto deletedConfiguration2 = configService.deleteConfiguration(configId2).getConfiguration();
         List<ConfigurationResponseDto> configurations = configService.getAll();
         // THEN
         assertThat(configurations).doesNotContain(deletedConfiguration2);
@@ -194,7 +225,7 @@ public class ConfigServiceTests {
         // GIVEN
         String configId1 = "test1";
         // WHEN
-        ConfigurationResponseDto deletedConfiguration1 = configService.deleteConfiguration(configId1);
+        ConfigurationResponseDto deletedConfiguration1 = configService.deleteConfiguration(configId1).getConfiguration();
         configurations = configService.getAll();
         // THEN
         assertThat(configurations).doesNotContain(deletedConfiguration1);
@@ -202,15 +233,14 @@ public class ConfigServiceTests {
 
     @Test
     @Order(10)
-    void testConfigService_deleteConfigurationException() {
+    void testConfigService_deleteConfigurationNotFound() throws ConfigServiceException {
         // GIVEN
         String configId = "test-exception";
         // WHEN
-        Throwable thrown = catchThrowable(() -> configService.deleteConfiguration(configId));
+        ConfigCacheResult result = configService.deleteConfiguration(configId);
         // THEN
-        assertThat(thrown).isInstanceOf(ConfigServiceException.class)
-                .hasCauseInstanceOf(ConfigCacheException.class)
-                .hasMessage("Error deleting configuration.");
+        assertThat(result.getOutcome()).isEqualTo(ConfigCacheResult.Outcome.NOT_FOUND);
+        assertThat(result.getConfiguration()).isNull();
     }
 
     @Test
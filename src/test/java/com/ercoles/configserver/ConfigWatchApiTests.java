@@ -0,0 +1,163 @@
+package com.ercoles.configserver;
+
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpPut;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.util.EntityUtils;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
+public class ConfigWatchApiTests {
+
+    @LocalServerPort
+    private int port;
+
+    private final HttpClient httpClient;
+
+    public ConfigWatchApiTests() {
+        this.httpClient = HttpClientBuilder.create()
+                .setDefaultRequestConfig(RequestConfig.custom().setSocketTimeout(10_000).build())
+                .build();
+    }
+
+    @Test
+    void testApi_watchReceivesChanges() throws IOException, JSONException {
+        // GIVEN
+        String configId = "test-watch";
+        HttpGet watchRequest = new HttpGet("http://localhost:" + port + "/?watch");
+        watchRequest.addHeader(HttpHeaders.ACCEPT, "text/event-stream");
+        HttpResponse watchResponse = httpClient.execute(watchRequest);
+        String mimeType = ContentType.getOrDefault(watchResponse.getEntity()).getMimeType();
+        // WHEN
+        // the stream never ends on its own, so it is aborted rather than closed (closing would drain it)
+        BufferedReader events = new BufferedReader(new InputStreamReader(watchResponse.getEntity().getContent(), StandardCharsets.UTF_8));
+        try {
+            send(new HttpPost("http://localhost:" + port + "/" + configId), "Test Watch", "test-watch-1");
+            send(new HttpPut("http://localhost:" + port + "/" + configId), "Test Watch", "test-watch-2");
+            EntityUtils.consume(httpClient.execute(new HttpDelete("http://localhost:" + port + "/" + configId)).getEntity());
+            List<String> received = readEvents(events, 3);
+            // THEN
+            assertThat(watchResponse.getStatusLine().getStatusCode()).isEqualTo(HttpStatus.OK.value());
+            assertThat(mimeType).isEqualTo("text/event-stream");
+            assertThat(received).hasSize(3);
+            assertThat(received.get(0)).contains("event:created").contains("\"id\":\"test-watch\"").contains("\"value\":\"test-watch-1\"");
+            assertThat(received.get(1)).contains("event:updated").contains("\"value\":\"test-watch-2\"");
+            assertThat(received.get(2)).contains("event:deleted").contains("\"id\":\"test-watch\"");
+        } finally {
+            watchRequest.abort();
+        }
+    }
+
+    @Test
+    void testApi_watchResumesAfterTheLastEventId() throws IOException, JSONException {
+        // GIVEN
+        String configId = "test-resume";
+        HttpGet firstRequest = watchRequest(null);
+        String lastEventId;
+        try {
+            BufferedReader events = new BufferedReader(new InputStreamReader(httpClient.execute(firstRequest).getEntity().getContent(), StandardCharsets.UTF_8));
+            send(new HttpPost("http://localhost:" + port + "/" + configId), "Test Resume", "test-resume-1");
+            lastEventId = eventId(readEvents(events, 1).get(0));
+        } finally {
+            firstRequest.abort();
+        }
+        // changes made while the client is away
+        send(new HttpPut("http://localhost:" + port + "/" + configId), "Test Resume", "test-resume-2");
+        send(new HttpPut("http://localhost:" + port + "/" + configId), "Test Resume", "test-resume-3");
+        // WHEN
+        HttpGet resumedRequest = watchRequest(lastEventId);
+        try {
+            BufferedReader events = new BufferedReader(new InputStreamReader(httpClient.execute(resumedRequest).getEntity().getContent(), StandardCharsets.UTF_8));
+            List<String> received = readEvents(events, 2);
+            // THEN
+            assertThat(received.get(0)).contains("event:updated").contains("\"value\":\"test-resume-2\"");
+            assertThat(received.get(1)).contains("event:updated").contains("\"value\":\"test-resume-3\"");
+            assertThat(eventId(received.get(0))).isNotEqualTo(lastEventId);
+        } finally {
+            resumedRequest.abort();
+        }
+    }
+
+    @Test
+    void testApi_watchAsksClientsItCannotResumeToResync() throws IOException {
+        // GIVEN
+        HttpGet request = watchRequest("not-an-event-id");
+        try {
+            // WHEN
+            BufferedReader events = new BufferedReader(new InputStreamReader(httpClient.execute(request).getEntity().getContent(), StandardCharsets.UTF_8));
+            List<String> received = readEvents(events, 1);
+            // THEN
+            assertThat(received.get(0)).contains("event:resync").doesNotContain("id:");
+        } finally {
+            request.abort();
+        }
+    }
+
+    private HttpGet watchRequest(String lastEventId) {
+        HttpGet request = new HttpGet("http://localhost:" + port + "/?watch");
+        request.addHeader(HttpHeaders.ACCEPT, "text/event-stream");
+        if (lastEventId != null) {
+            request.addHeader("Last-Event-ID", lastEventId);
+        }
+        return request;
+    }
+
+    private static String eventId(String event) {
+        for (String line : event.split("\n")) {
+            if (line.startsWith("id:")) {
+                return line.substring("id:".length());
+            }
+        }
+        return null;
+    }
+
+    private void send(HttpEntityEnclosingRequestBase request, String name, String value) throws IOException, JSONException {
+        JSONObject jsonObject = new JSONObject();
+        jsonObject.put("name", name);
+        jsonObject.put("value", value);
+        request.addHeader("content-type", "application/json");
+        request.setEntity(new StringEntity(jsonObject.toString()));
+        EntityUtils.consume(httpClient.execute(request).getEntity());
+    }
+
+    private List<String> readEvents(BufferedReader reader, int count) throws IOException {
+        List<String> events = new ArrayList<>();
+        StringBuilder event = new StringBuilder();
+        String line;
+        while (events.size() < count && (line = reader.readLine()) != null) {
+            if (line.isEmpty()) {
+                if (event.length() > 0 && event.indexOf("event:") >= 0) {
+                    events.add(event.toString());
+                }
+                event.setLength(0);
+            } else {
+                event.append(line).append('\n');
+            }
+        }
+        return events;
+    }
+}
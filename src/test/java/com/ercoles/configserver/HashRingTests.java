@@ -0,0 +1,60 @@
+package com.ercoles.configserver;
+
+import com.ercoles.configserver.repositories.HashRing;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class HashRingTests {
+    private static final int KEYS = 30_000;
+
+    @Test
+    void testHashRing_spreadsIdsEvenly() {
+        // GIVEN
+        HashRing ring = new HashRing(List.of("http://node1", "http://node2", "http://node3"), 128);
+        Map<String, Integer> counts = new HashMap<>();
+        // WHEN
+        for (int i = 0; i < KEYS; i++) {
+            counts.merge(ring.ownerOf("config-" + i), 1, Integer::sum);
+        }
+        // THEN
+        assertThat(counts).hasSize(3);
+        assertThat(counts.values()).allSatisfy(count -> assertThat(count).isBetween(KEYS / 3 * 8 / 10, KEYS / 3 * 12 / 10));
+    }
+
+    @Test
+    void testHashRing_movesOnlyIdsOfTheNewNode() {
+        // GIVEN
+        HashRing ring = new HashRing(List.of("http://node1", "http://node2", "http://node3"), 128);
+        // WHEN
+        HashRing grown = ring.with("http://node4", 128);
+        // THEN
+        int moved = 0;
+        for (int i = 0; i < KEYS; i++) {
+            String before = ring.ownerOf("config-" + i);
+            String after = grown.ownerOf("config-" + i);
+            if (!before.equals(after)) {
+                assertThat(after).isEqualTo("http://node4");
+                moved++;
+            }
+        }
+        assertThat(moved).isBetween(KEYS / 4 * 8 / 10, KEYS / 4 * 12 / 10);
+        assertThat(grown.without("http://node4", 128).ownerOf("config-1")).isEqualTo(ring.ownerOf("config-1"));
+    }
+
+    @Test
+    void testHashRing_agreesWhateverTheOrderOfTheNodes() {
+        // GIVEN
+        HashRing ring = new HashRing(List.of("http://node1", "http://node2", "http://node3"), 16);
+        HashRing reordered = new HashRing(List.of("http://node3", "http://node1", "http://node2"), 16);
+        // THEN
+        for (int i = 0; i < 1000; i++) {
+            assertThat(reordered.ownerOf("config-" + i)).isEqualTo(ring.ownerOf("config-" + i));
+        }
+        assertThat(new HashRing(List.of("http://node1"), 16).without("http://node1", 16)).isNull();
+    }
+}
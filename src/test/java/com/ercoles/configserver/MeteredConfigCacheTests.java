@@ -0,0 +1,92 @@
+package com.ercoles.configserver;
+
+import com.ercoles.configserver.repositories.ConfigCache;
+import com.ercoles.configserver.repositories.ConfigCacheCompact;
+import com.ercoles.configserver.repositories.ConfigCacheException;
+import com.ercoles.configserver.repositories.ConfigCacheMemory;
+import com.ercoles.configserver.repositories.ConfigOperation;
+import com.ercoles.configserver.repositories.MeteredConfigCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class MeteredConfigCacheTests {
+
+    @Test
+    void testMeteredConfigCache_countsOutcomes() throws ConfigCacheException {
+        // GIVEN
+        MeterRegistry registry = new SimpleMeterRegistry();
+        ConfigCache configCache = new MeteredConfigCache(new ConfigCacheMemory(), registry);
+        // WHEN
+        configCache.create("test1", "Test Configuration 1", "test-1");
+        configCache.create("test1", "Test Configuration 1", "test-1");
+        configCache.get("test1");
+        configCache.get("test2");
+        configCache.getMany(List.of("test1", "test2", "test3"));
+        configCache.apply(List.of(ConfigOperation.update("test1", "Test Configuration 1", "test-1a"),
+                ConfigOperation.delete("test2")), false);
+        // THEN
+        assertThat(registry.get("configserver.cache.operations").tag("operation", "create").timer().count()).isEqualTo(2);
+        assertThat(registry.get("configserver.cache.operations").tag("operation", "apply").timer().count()).isEqualTo(1);
+        assertThat(count(registry, "create", "success")).isEqualTo(1);
+        assertThat(count(registry, "create", "conflict")).isEqualTo(1);
+        assertThat(count(registry, "get", "success")).isEqualTo(1);
+        assertThat(count(registry, "get", "not_found")).isEqualTo(1);
+        assertThat(count(registry, "get_many", "success")).isEqualTo(1);
+        assertThat(count(registry, "get_many", "not_found")).isEqualTo(2);
+        assertThat(count(registry, "apply", "success")).isEqualTo(1);
+        assertThat(count(registry, "apply", "not_found")).isEqualTo(1);
+    }
+
+    @Test
+    void testMeteredConfigCache_measuresStoreSize() throws ConfigCacheException {
+        // GIVEN
+        MeterRegistry registry = new SimpleMeterRegistry();
+        ConfigCache memory = new MeteredConfigCache(new ConfigCacheMemory(), new SimpleMeterRegistry());
+        ConfigCache compact = new MeteredConfigCache(new ConfigCacheCompact(), registry);
+        // WHEN
+        for (int i = 0; i < 10; i++) {
+            memory.create("test" + i, "Test Configuration " + i, "test-" + i);
+            compact.create("test" + i, "Test Configuration " + i, "test-" + i);
+        }
+        compact.delete("test0");
+        // THEN
+        assertThat(registry.get("configserver.cache.entries").gauge().value()).isEqualTo(9);
+        assertThat(memory.size()).isEqualTo(10);
+        // the compact store keeps names and values as UTF-8 plus a header, the memory one as strings
+        assertThat(memory.estimatedBytes()).isEqualTo(2 * 10 * ("test0".length() + "Test Configuration 0".length() + "test-0".length()));
+        assertThat(registry.get("configserver.cache.estimated.size").gauge().value())
+                .isEqualTo(9 * (2 * "test0".length() + 12 + "Test Configuration 0".length() + "test-0".length()));
+    }
+
+    @Test
+    void testMeteredConfigCache_followsStoreSizeThroughWrites() throws ConfigCacheException {
+        // GIVEN
+        MeterRegistry registry = new SimpleMeterRegistry();
+        ConfigCache memory = new MeteredConfigCache(new ConfigCacheMemory(), registry);
+        for (int i = 0; i < 5; i++) {
+            memory.create("test" + i, "Test Configuration " + i, "test-" + i);
+        }
+        // WHEN
+        memory.create("test0", "Test Configuration 0", "test-0");
+        memory.update("test1", "Test Configuration 1", "test-1a");
+        memory.delete("test2");
+        memory.delete("test2");
+        memory.apply(List.of(ConfigOperation.create("test5", "Test Configuration 5", "test-5"), ConfigOperation.delete("test3")), true);
+        memory.apply(List.of(ConfigOperation.create("test6", "Test Configuration 6", "test-6"), ConfigOperation.delete("test3")), true);
+        // THEN
+        assertThat(registry.get("configserver.cache.entries").gauge().value()).isEqualTo(4);
+        assertThat(memory.getAll()).hasSize(4);
+        assertThat(registry.get("configserver.cache.estimated.size").gauge().value()).isEqualTo(2 * ("test0Test Configuration 0test-0".length()
+                + "test1Test Configuration 1test-1a".length() + "test4Test Configuration 4test-4".length()
+                + "test5Test Configuration 5test-5".length()));
+    }
+
+    private static double count(MeterRegistry registry, String operation, String outcome) {
+        return registry.get("configserver.cache.results").tag("operation", operation).tag("outcome", outcome).counter().count();
+    }
+}
@@ -0,0 +1,213 @@
+package com.ercoles.configserver;
+
+import com.ercoles.configserver.dtos.ConfigurationResponseDto;
+import com.ercoles.configserver.repositories.ConfigCache;
+import com.ercoles.configserver.repositories.ConfigCacheException;
+import com.ercoles.configserver.repositories.ConfigCacheMemory;
+import com.ercoles.configserver.repositories.ConfigCacheResult;
+import com.ercoles.configserver.repositories.ConfigChangeListener;
+import com.ercoles.configserver.repositories.ConfigLookup;
+import com.ercoles.configserver.repositories.ConfigSnapshot;
+import com.ercoles.configserver.repositories.NearConfigCache;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class NearConfigCacheTests {
+
+    @Test
+    void testNearConfigCache_servesRepeatedReadsLocally() throws ConfigCacheException {
+        // GIVEN
+        SlowConfigCache backend = new SlowConfigCache();
+        backend.create("test1", "Test Configuration 1", "test-1");
+        NearConfigCache configCache = new NearConfigCache(backend, 100, Duration.ofMinutes(1));
+        // WHEN
+        long start = System.nanoTime();
+        for (int i = 0; i < 10; i++) {
+            configCache.get("test1");
+            configCache.get("test2");
+        }
+        long elapsed = System.nanoTime() - start;
+        // THEN
+        assertThat(configCache.get("test1").getConfiguration()).isEqualTo(new ConfigurationResponseDto("test1", "Test Configuration 1", "test-1"));
+        assertThat(configCache.get("test2").getOutcome()).isEqualTo(ConfigCacheResult.Outcome.NOT_FOUND);
+        // one round trip for each ID, the missing one included
+        assertThat(backend.reads.get()).isEqualTo(2);
+        assertThat(elapsed).isLessThan(TimeUnit.MILLISECONDS.toNanos(SlowConfigCache.LATENCY * 20));
+        assertThat(configCache.getStats().hitCount()).isEqualTo(20);
+        assertThat(configCache.getStats().missCount()).isEqualTo(2);
+    }
+
+    @Test
+    void testNearConfigCache_dropsWrittenEntries() throws ConfigCacheException {
+        // GIVEN
+        SlowConfigCache backend = new SlowConfigCache();
+        NearConfigCache configCache = new NearConfigCache(backend, 100, Duration.ofMinutes(1));
+        configCache.get("test1");
+        // WHEN
+        configCache.create("test1", "Test Configuration 1", "test-1");
+        ConfigCacheResult created = configCache.get("test1");
+        configCache.update("test1", "Test Configuration 1", "test-1a");
+        ConfigCacheResult updated = configCache.get("test1");
+        configCache.delete("test1");
+        ConfigCacheResult deleted = configCache.get("test1");
+        // THEN
+        assertThat(created.getConfiguration().getValue()).isEqualTo("test-1");
+        assertThat(updated.getConfiguration().getValue()).isEqualTo("test-1a");
+        assertThat(deleted.getOutcome()).isEqualTo(ConfigCacheResult.Outcome.NOT_FOUND);
+        assertThat(backend.reads.get()).isEqualTo(4);
+    }
+
+    @Test
+    void testNearConfigCache_dropsEntriesChangedInBackend() throws ConfigCacheException, InterruptedException {
+        // GIVEN
+        SlowConfigCache backend = new SlowConfigCache();
+        backend.create("test1", "Test Configuration 1", "test-1");
+        NearConfigCache configCache = new NearConfigCache(backend, 100, Duration.ofMinutes(1));
+        configCache.get("test1");
+        // WHEN
+        // as another instance writing to a shared store would
+        backend.update("test1", "Test Configuration 1", "test-1a");
+        // THEN
+        // the backend reports the change, the entry is dropped shortly after
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!configCache.get("test1").getConfiguration().getValue().equals("test-1a") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(configCache.get("test1").getConfiguration().getValue()).isEqualTo("test-1a");
+    }
+
+    @Test
+    void testNearConfigCache_expiresEntries() throws ConfigCacheException {
+        // GIVEN
+        AtomicLong time = new AtomicLong();
+        SlowConfigCache backend = new SlowConfigCache();
+        backend.create("test1", "Test Configuration 1", "test-1");
+        NearConfigCache configCache = new NearConfigCache(backend, 100, Duration.ofSeconds(30), time::get);
+        configCache.get("test1");
+        // WHEN
+        time.addAndGet(TimeUnit.SECONDS.toNanos(29));
+        configCache.get("test1");
+        int readsBeforeExpiry = backend.reads.get();
+        time.addAndGet(TimeUnit.SECONDS.toNanos(2));
+        configCache.get("test1");
+        // THEN
+        assertThat(readsBeforeExpiry).isEqualTo(1);
+        assertThat(backend.reads.get()).isEqualTo(2);
+    }
+
+    @Test
+    void testNearConfigCache_boundsEntriesAndReportsMetrics() throws ConfigCacheException, InterruptedException {
+        // GIVEN
+        MeterRegistry registry = new SimpleMeterRegistry();
+        ConfigCacheMemory backend = new ConfigCacheMemory();
+        for (int i = 0; i < 1000; i++) {
+            backend.create("test" + i, "Test Configuration " + i, "test-" + i);
+        }
+        NearConfigCache configCache = new NearConfigCache(backend, 100, Duration.ofMinutes(1));
+        configCache.bindTo(registry, "near");
+        // WHEN
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 1000; i++) {
+                configCache.get("test" + i);
+            }
+        }
+        // THEN
+        // Caffeine evicts on a pool thread, which may lag behind when the machine is busy
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (registry.get("cache.size").tag("cache", "near").gauge().value() > 100 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(configCache.getStats().evictionCount()).isGreaterThan(0);
+        assertThat(registry.get("cache.size").tag("cache", "near").gauge().value()).isLessThanOrEqualTo(100);
+        assertThat(registry.get("cache.evictions").tag("cache", "near").functionCounter().count()).isGreaterThan(0);
+        assertThat(registry.get("cache.gets").tag("cache", "near").tag("result", "miss").functionCounter().count()).isGreaterThan(0);
+    }
+
+    @Test
+    void testNearConfigCache_fetchesMissingEntriesTogether() throws ConfigCacheException {
+        // GIVEN
+        SlowConfigCache backend = new SlowConfigCache();
+        for (int i = 1; i <= 3; i++) {
+            backend.create("test" + i, "Test Configuration " + i, "test-" + i);
+        }
+        NearConfigCache configCache = new NearConfigCache(backend, 100, Duration.ofMinutes(1));
+        configCache.get("test2");
+        // WHEN
+        ConfigLookup lookup = configCache.getMany(List.of("test3", "test2", "test4", "test1"));
+        ConfigLookup repeated = configCache.getMany(List.of("test3", "test2", "test4", "test1"));
+        // THEN
+        assertThat(lookup.getConfigurations()).extracting(ConfigurationResponseDto::getId).containsExactly("test3", "test2", "test1");
+        assertThat(lookup.getMissing()).containsExactly("test4");
+        assertThat(repeated).isEqualTo(lookup);
+        assertThat(backend.reads.get()).isEqualTo(2);
+    }
+
+    // a store across the network, as far as timing goes: every call takes LATENCY milliseconds
+    static final class SlowConfigCache implements ConfigCache {
+        static final long LATENCY = 20;
+
+        final ConfigCacheMemory delegate = new ConfigCacheMemory();
+        final AtomicInteger reads = new AtomicInteger();
+
+        @Override
+        public ConfigSnapshot getAll() throws ConfigCacheException {
+            roundTrip();
+            return delegate.getAll();
+        }
+
+        @Override
+        public ConfigCacheResult get(String id) {
+            roundTrip();
+            reads.incrementAndGet();
+            return delegate.get(id);
+        }
+
+        @Override
+        public ConfigLookup getMany(Collection<String> ids) {
+            roundTrip();
+            reads.incrementAndGet();
+            return delegate.getMany(ids);
+        }
+
+        @Override
+        public ConfigCacheResult create(String id, String name, String value) {
+            roundTrip();
+            return delegate.create(id, name, value);
+        }
+
+        @Override
+        public ConfigCacheResult update(String id, String name, String value) {
+            roundTrip();
+            return delegate.update(id, name, value);
+        }
+
+        @Override
+        public ConfigCacheResult delete(String id) {
+            roundTrip();
+            return delegate.delete(id);
+        }
+
+        @Override
+        public void addChangeListener(ConfigChangeListener listener) {
+            delegate.addChangeListener(listener);
+        }
+
+        private static void roundTrip() {
+            try {
+                Thread.sleep(LATENCY);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
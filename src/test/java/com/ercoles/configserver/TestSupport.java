@@ -0,0 +1,37 @@
+package com.ercoles.configserver;
+
+import com.ercoles.configserver.dtos.ConfigurationResponseDto;
+import com.ercoles.configserver.dtos.ShardConfigurationDto;
+import com.ercoles.configserver.repositories.ConfigCacheSharded;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.entity.StringEntity;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+
+// what several test classes build their requests and entries with
+final class TestSupport {
+
+    private TestSupport() {
+    }
+
+    static HttpEntityEnclosingRequestBase withBody(HttpEntityEnclosingRequestBase request, String name, String value)
+            throws JSONException, IOException {
+        request.addHeader("content-type", "application/json");
+        request.setEntity(new StringEntity(new JSONObject().put("name", name).put("value", value).toString()));
+        return request;
+    }
+
+    static HttpEntityEnclosingRequestBase withBody(HttpEntityEnclosingRequestBase request, JSONArray operations) throws IOException {
+        request.addHeader("content-type", "application/json");
+        request.setEntity(new StringEntity(operations.toString()));
+        return request;
+    }
+
+    // a configuration as another instance hands it over, version included
+    static ConfigurationResponseDto handedOver(String id, String name, String value, long version) {
+        return ConfigCacheSharded.toConfiguration(new ShardConfigurationDto(id, name, value, version));
+    }
+}